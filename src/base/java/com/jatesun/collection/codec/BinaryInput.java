@@ -0,0 +1,214 @@
+package com.jatesun.collection.codec;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+/**
+ *
+ * @author jatesun
+ * @description 从ReadableByteChannel读取BinaryOutput写出的数据，格式（是否压缩）由流的第一个字节决定。
+ *              缓冲区是两个块大小：剩下的字节不够读一个值时，把剩下的挪到开头，再读入（解压）下一块接在后面。
+ * @date 2026年10月18日
+ */
+public class BinaryInput implements Closeable {
+
+	private final ReadableByteChannel channel;
+
+	private final byte[] buf = new byte[BinaryOutput.BLOCK_SIZE * 2];
+
+	private int pos;
+
+	private int limit;
+
+	private int format = -1;// 流的格式标记，-1表示还没有读
+
+	private byte[] compressed;
+
+	public BinaryInput(ReadableByteChannel channel) {
+		if (channel == null)
+			throw new NullPointerException();
+		this.channel = channel;
+	}
+
+	// 保证缓冲区里至少有n个字节（n不超过BLOCK_SIZE），流提前结束抛EOFException
+	private void ensure(int n) throws IOException {
+		if (limit - pos >= n)
+			return;
+		if (pos > 0) {
+			System.arraycopy(buf, pos, buf, 0, limit - pos);
+			limit -= pos;
+			pos = 0;
+		}
+		while (limit < n) {
+			if (!fill())
+				throw new EOFException();
+		}
+	}
+
+	// 在limit之后追加数据，没有数据了返回false
+	private boolean fill() throws IOException {
+		if (format < 0) {
+			byte[] h = new byte[1];
+			if (!readFully(h, 0, 1))
+				return false;
+			format = h[0];
+			if (format != BinaryOutput.RAW && format != BinaryOutput.COMPRESSED)
+				throw new StreamCorruptedException("Unknown format " + format);
+			if (format == BinaryOutput.COMPRESSED)
+				compressed = new byte[BinaryOutput.BLOCK_SIZE + 8];
+		}
+		if (format == BinaryOutput.RAW) {
+			int n = channel.read(ByteBuffer.wrap(buf, limit, BinaryOutput.BLOCK_SIZE));
+			if (n < 0)
+				return false;
+			limit += n;
+			return true;
+		}
+		byte[] c = compressed;
+		if (!readFully(c, 0, 8))
+			return false;
+		int raw = getInt(c, 0), stored = getInt(c, 4);
+		if (raw <= 0 || raw > BinaryOutput.BLOCK_SIZE || stored < 0 || stored >= raw)
+			throw new StreamCorruptedException("Bad block header");
+		if (stored == 0) {// 没有压缩的块
+			if (!readFully(buf, limit, raw))
+				throw new EOFException();
+		} else {
+			if (!readFully(c, 0, stored))
+				throw new EOFException();
+			try {
+				BlockCompressor.decompress(c, stored, buf, limit, raw);
+			} catch (IllegalArgumentException e) {
+				throw new StreamCorruptedException(e.getMessage());
+			}
+		}
+		limit += raw;
+		return true;
+	}
+
+	// 读满len个字节；一个字节都没有读到就到了流末尾返回false，读了一部分抛EOFException
+	private boolean readFully(byte[] b, int off, int len) throws IOException {
+		ByteBuffer bb = ByteBuffer.wrap(b, off, len);
+		while (bb.hasRemaining()) {
+			if (channel.read(bb) < 0) {
+				if (bb.position() == off)
+					return false;
+				throw new EOFException();
+			}
+		}
+		return true;
+	}
+
+	private static int getInt(byte[] b, int i) {
+		return (b[i] << 24) | (b[i + 1] & 0xff) << 16 | (b[i + 2] & 0xff) << 8 | (b[i + 3] & 0xff);
+	}
+
+	public byte readByte() throws IOException {
+		ensure(1);
+		return buf[pos++];
+	}
+
+	public int readInt() throws IOException {
+		ensure(4);
+		int v = getInt(buf, pos);
+		pos += 4;
+		return v;
+	}
+
+	public long readLong() throws IOException {
+		ensure(8);
+		long v = ((long) getInt(buf, pos) << 32) | (getInt(buf, pos + 4) & 0xFFFFFFFFL);
+		pos += 8;
+		return v;
+	}
+
+	public float readFloat() throws IOException {
+		return Float.intBitsToFloat(readInt());
+	}
+
+	public double readDouble() throws IOException {
+		return Double.longBitsToDouble(readLong());
+	}
+
+	public boolean readBoolean() throws IOException {
+		return readByte() != 0;
+	}
+
+	public int readVarInt() throws IOException {
+		int v = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			byte b = readByte();
+			v |= (b & 0x7F) << shift;
+			if (b >= 0)
+				return v;
+		}
+		throw new StreamCorruptedException("Malformed varint");
+	}
+
+	public long readVarLong() throws IOException {
+		long v = 0;
+		for (int shift = 0; shift < 70; shift += 7) {
+			byte b = readByte();
+			v |= (long) (b & 0x7F) << shift;
+			if (b >= 0)
+				return v;
+		}
+		throw new StreamCorruptedException("Malformed varint");
+	}
+
+	public void readBytes(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			if (pos == limit)
+				ensure(1);
+			int n = Math.min(len, limit - pos);
+			System.arraycopy(buf, pos, b, off, n);
+			pos += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	/**
+	 * 与BinaryOutput.writeString对应。长度来自流，不可信：负数按流损坏处理；字符数组按长度分配但不超过一个块，
+	 * 不够时再扩，损坏的长度不会在读到数据之前就分配一个巨大的数组。每个字符的字节数也不能超过剩下的长度。
+	 */
+	public String readString() throws IOException {
+		int utfLen = readVarInt();
+		if (utfLen < 0)
+			throw new StreamCorruptedException("Illegal string length: " + utfLen);
+		char[] chars = new char[Math.min(utfLen, BinaryOutput.BLOCK_SIZE)];// 字符数不会超过字节数
+		int n = 0;
+		while (utfLen > 0) {
+			if (chars.length - n < Math.min(utfLen, 2))// 一个字符最多占两个char
+				chars = Arrays.copyOf(chars, (int) Math.min(chars.length * 2L, n + (long) utfLen));
+			int b = readByte() & 0xff;
+			int len = b < 0x80 ? 1 : (b & 0xE0) == 0xC0 ? 2 : (b & 0xF0) == 0xE0 ? 3 : (b & 0xF8) == 0xF0 ? 4 : 0;
+			if (len == 0 || len > utfLen)
+				throw new StreamCorruptedException("Malformed UTF-8");
+			if (len == 1) {
+				chars[n++] = (char) b;
+			} else if (len == 2) {
+				chars[n++] = (char) (((b & 0x1F) << 6) | (readByte() & 0x3F));
+			} else if (len == 3) {
+				int b2 = readByte(), b3 = readByte();
+				chars[n++] = (char) (((b & 0x0F) << 12) | ((b2 & 0x3F) << 6) | (b3 & 0x3F));
+			} else {
+				int b2 = readByte(), b3 = readByte(), b4 = readByte();
+				int cp = ((b & 0x07) << 18) | ((b2 & 0x3F) << 12) | ((b3 & 0x3F) << 6) | (b4 & 0x3F);
+				chars[n++] = Character.highSurrogate(cp);
+				chars[n++] = Character.lowSurrogate(cp);
+			}
+			utfLen -= len;
+		}
+		return new String(chars, 0, n);
+	}
+
+	public void close() throws IOException {
+		channel.close();
+	}
+}
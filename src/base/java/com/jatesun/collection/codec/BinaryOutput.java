@@ -0,0 +1,219 @@
+package com.jatesun.collection.codec;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ *
+ * @author jatesun
+ * @description 写入WritableByteChannel的二进制输出，Codec和集合的writeTo都通过它写数据。
+ *              数据先写进64K的块缓冲区，满了再写入channel。流的第一个字节是格式标记：
+ *              不压缩时后面就是原始数据；压缩时每个块写成 原始长度(4) 压缩后长度(4，0表示没有压缩) 数据，
+ *              压缩后没有变小的块原样存放。一个基本类型的值不会跨块，读的时候不需要拼接。
+ *              长度、个数用varint（每字节7位，最高位表示后面还有）写，小的值只占一个字节。
+ * @question
+ * 		·varint为什么能节省空间？什么情况下反而更长？
+ * 		·为什么要先写进缓冲区，而不是每个值直接写channel？
+ * @date 2026年10月18日
+ */
+public class BinaryOutput implements Closeable {
+
+	static final int BLOCK_SIZE = 1 << 16;// 块大小
+
+	static final byte RAW = 0, COMPRESSED = 1;// 流的格式标记
+
+	private final WritableByteChannel channel;
+
+	private final boolean compress;
+
+	private final byte[] buf = new byte[BLOCK_SIZE];
+
+	private int pos;
+
+	private BlockCompressor compressor;
+
+	private byte[] compressed;
+
+	private boolean headerWritten;// 格式标记是否已经写入channel
+
+	private boolean closed;
+
+	public BinaryOutput(WritableByteChannel channel, boolean compress) {
+		if (channel == null)
+			throw new NullPointerException();
+		this.channel = channel;
+		this.compress = compress;
+		if (compress) {
+			compressor = new BlockCompressor();
+			compressed = new byte[8 + BlockCompressor.maxCompressedLength(BLOCK_SIZE)];
+		}
+	}
+
+	public BinaryOutput(WritableByteChannel channel) {
+		this(channel, false);
+	}
+
+	// 保证缓冲区还有n个字节的空间（n不超过BLOCK_SIZE）
+	private void ensure(int n) throws IOException {
+		if (pos + n > BLOCK_SIZE)
+			flushBlock();
+	}
+
+	private void flushBlock() throws IOException {
+		if (closed)
+			throw new IOException("Stream closed");
+		if (!headerWritten) {
+			writeFully(ByteBuffer.wrap(new byte[] { compress ? COMPRESSED : RAW }));
+			headerWritten = true;
+		}
+		if (pos == 0)
+			return;
+		if (!compress) {
+			writeFully(ByteBuffer.wrap(buf, 0, pos));
+		} else {
+			int n = compressor.compress(buf, pos, compressed, 8);
+			putInt(compressed, 0, pos);
+			if (n < pos) {
+				putInt(compressed, 4, n);
+				writeFully(ByteBuffer.wrap(compressed, 0, 8 + n));
+			} else {// 压缩后没有变小，原样存放
+				putInt(compressed, 4, 0);
+				writeFully(ByteBuffer.wrap(compressed, 0, 8));
+				writeFully(ByteBuffer.wrap(buf, 0, pos));
+			}
+		}
+		pos = 0;
+	}
+
+	private static void putInt(byte[] b, int i, int v) {
+		b[i] = (byte) (v >>> 24);
+		b[i + 1] = (byte) (v >>> 16);
+		b[i + 2] = (byte) (v >>> 8);
+		b[i + 3] = (byte) v;
+	}
+
+	private void writeFully(ByteBuffer bb) throws IOException {
+		while (bb.hasRemaining())
+			channel.write(bb);
+	}
+
+	public void writeByte(int v) throws IOException {
+		ensure(1);
+		buf[pos++] = (byte) v;
+	}
+
+	public void writeInt(int v) throws IOException {
+		ensure(4);
+		putInt(buf, pos, v);
+		pos += 4;
+	}
+
+	public void writeLong(long v) throws IOException {
+		ensure(8);
+		putInt(buf, pos, (int) (v >>> 32));
+		putInt(buf, pos + 4, (int) v);
+		pos += 8;
+	}
+
+	public void writeFloat(float v) throws IOException {
+		writeInt(Float.floatToIntBits(v));
+	}
+
+	public void writeDouble(double v) throws IOException {
+		writeLong(Double.doubleToLongBits(v));
+	}
+
+	public void writeBoolean(boolean v) throws IOException {
+		writeByte(v ? 1 : 0);
+	}
+
+	// 无符号varint，负数会占5个字节，有符号的值先做zigzag（见Codecs.INTEGER）
+	public void writeVarInt(int v) throws IOException {
+		ensure(5);
+		while ((v & ~0x7F) != 0) {
+			buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		buf[pos++] = (byte) v;
+	}
+
+	public void writeVarLong(long v) throws IOException {
+		ensure(10);
+		while ((v & ~0x7FL) != 0) {
+			buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		buf[pos++] = (byte) v;
+	}
+
+	// 大数组会分到多个块里
+	public void writeBytes(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			if (pos == BLOCK_SIZE)
+				flushBlock();
+			int n = Math.min(len, BLOCK_SIZE - pos);
+			System.arraycopy(b, off, buf, pos, n);
+			pos += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	/**
+	 * varint的UTF-8字节数加UTF-8编码，直接编码进缓冲区，不生成中间的byte[]。
+	 * 不成对的代理字符按3个字节编码，读回来还是原来的char，保证任何String都能原样还原。
+	 */
+	public void writeString(String s) throws IOException {
+		int len = s.length();
+		int utfLen = 0;
+		for (int i = 0; i < len; i++) {
+			char c = s.charAt(i);
+			if (c < 0x80)
+				utfLen++;
+			else if (c < 0x800)
+				utfLen += 2;
+			else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+				utfLen += 4;
+				i++;
+			} else
+				utfLen += 3;
+		}
+		writeVarInt(utfLen);
+		for (int i = 0; i < len; i++) {
+			ensure(4);
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				buf[pos++] = (byte) c;
+			} else if (c < 0x800) {
+				buf[pos++] = (byte) (0xC0 | (c >> 6));
+				buf[pos++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, s.charAt(++i));
+				buf[pos++] = (byte) (0xF0 | (cp >> 18));
+				buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+				buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+				buf[pos++] = (byte) (0x80 | (cp & 0x3F));
+			} else {
+				buf[pos++] = (byte) (0xE0 | (c >> 12));
+				buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				buf[pos++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+	}
+
+	// 把缓冲区的数据写入channel（压缩时会产生一个不满的块）
+	public void flush() throws IOException {
+		flushBlock();
+	}
+
+	// flush并关闭channel
+	public void close() throws IOException {
+		if (closed)
+			return;
+		flushBlock();
+		closed = true;
+		channel.close();
+	}
+}
@@ -0,0 +1,150 @@
+package com.jatesun.collection.codec;
+
+import java.util.Arrays;
+
+/**
+ *
+ * @author jatesun
+ * @description LZ4格式的块压缩（只实现了块格式，没有lz4的帧格式），BinaryOutput打开压缩时每个块调用一次。
+ *              遵守lz4块格式的结尾规则：最后5个字节一定是字面量，最后一个匹配在块尾之前至少12个字节开始，压缩结果标准的lz4解压器也能解。
+ *              压缩后的数据由若干序列组成，每个序列为：token(高4位字面量长度、低4位匹配长度-4，15表示后面还有长度字节)、
+ *              字面量、匹配的偏移(2字节小端)、匹配长度的附加字节。最后一个序列只有字面量。
+ *              查找匹配用一个4字节序列到位置的hash表，只保留最近一次出现的位置，速度快但压缩率一般。
+ * @question
+ * 		·LZ77类算法为什么能压缩重复的数据？偏移和长度分别表示什么？
+ * 		·为什么序列化的集合数据通常压缩效果不错？
+ * @date 2026年10月18日
+ */
+final class BlockCompressor {
+
+	private static final int HASH_BITS = 12;
+
+	private static final int MIN_MATCH = 4;
+
+	private static final int MAX_OFFSET = 65535;
+
+	private static final int LAST_LITERALS = 5;// 块末尾至少留这么多字面量，匹配不会延伸到块尾
+
+	private static final int MFLIMIT = 12;// 最后一个匹配必须在块尾之前至少这么多字节开始（lz4块格式的规定），更短的块全部是字面量
+
+	private final int[] table = new int[1 << HASH_BITS];
+
+	// 压缩结果的最大长度（全是字面量时）
+	static int maxCompressedLength(int len) {
+		return len + len / 255 + 16;
+	}
+
+	private static int readInt(byte[] b, int i) {
+		return (b[i] & 0xff) | (b[i + 1] & 0xff) << 8 | (b[i + 2] & 0xff) << 16 | (b[i + 3] & 0xff) << 24;
+	}
+
+	private static int hash(int v) {
+		return (v * -1640531535) >>> (32 - HASH_BITS);
+	}
+
+	// 压缩src[0, len)到dst[dstOff, ...)，返回压缩后的长度。dst至少要留maxCompressedLength(len)
+	int compress(byte[] src, int len, byte[] dst, int dstOff) {
+		int[] t = table;
+		Arrays.fill(t, -1);
+		int anchor = 0, dp = dstOff;
+		int limit = len - MFLIMIT;// 匹配只能从[0, limit]开始
+		int i = 0;
+		while (i <= limit) {
+			int v = readInt(src, i);
+			int h = hash(v);
+			int ref = t[h];
+			t[h] = i;
+			if (ref < 0 || i - ref > MAX_OFFSET || readInt(src, ref) != v) {
+				i++;
+				continue;
+			}
+			int matchEnd = i + MIN_MATCH;
+			int maxEnd = len - LAST_LITERALS;
+			while (matchEnd < maxEnd && src[matchEnd] == src[ref + matchEnd - i])
+				matchEnd++;
+			dp = writeSequence(src, anchor, i - anchor, i - ref, matchEnd - i, dst, dp);
+			i = anchor = matchEnd;
+		}
+		return writeLastLiterals(src, anchor, len - anchor, dst, dp) - dstOff;
+	}
+
+	private static int writeSequence(byte[] src, int litStart, int litLen, int offset, int matchLen, byte[] dst,
+			int dp) {
+		int ml = matchLen - MIN_MATCH;
+		int token = dp++;
+		dst[token] = (byte) ((Math.min(litLen, 15) << 4) | Math.min(ml, 15));
+		dp = writeLength(litLen, dst, dp);
+		System.arraycopy(src, litStart, dst, dp, litLen);
+		dp += litLen;
+		dst[dp++] = (byte) offset;
+		dst[dp++] = (byte) (offset >>> 8);
+		return writeLength(ml, dst, dp);
+	}
+
+	private static int writeLastLiterals(byte[] src, int litStart, int litLen, byte[] dst, int dp) {
+		dst[dp++] = (byte) (Math.min(litLen, 15) << 4);
+		dp = writeLength(litLen, dst, dp);
+		System.arraycopy(src, litStart, dst, dp, litLen);
+		return dp + litLen;
+	}
+
+	// 长度大于等于15时，超出的部分用若干字节表示，每个字节最多255，最后一个字节小于255
+	private static int writeLength(int len, byte[] dst, int dp) {
+		if (len < 15)
+			return dp;
+		len -= 15;
+		while (len >= 255) {
+			dst[dp++] = (byte) 255;
+			len -= 255;
+		}
+		dst[dp++] = (byte) len;
+		return dp;
+	}
+
+	// 把src[0, srcLen)解压到dst[dstOff, dstOff + rawLen)，数据不合法时抛IllegalArgumentException
+	static void decompress(byte[] src, int srcLen, byte[] dst, int dstOff, int rawLen) {
+		int sp = 0, dp = dstOff, dend = dstOff + rawLen;
+		try {
+			for (;;) {
+				int token = src[sp++] & 0xff;
+				int litLen = token >>> 4;
+				if (litLen == 15) {
+					int b;
+					do {
+						b = src[sp++] & 0xff;
+						litLen += b;
+					} while (b == 255);
+				}
+				if (litLen > dend - dp || litLen > srcLen - sp)
+					throw new IllegalArgumentException("Corrupt block");
+				System.arraycopy(src, sp, dst, dp, litLen);
+				sp += litLen;
+				dp += litLen;
+				if (sp >= srcLen)
+					break;// 最后一个序列只有字面量
+				int offset = (src[sp] & 0xff) | (src[sp + 1] & 0xff) << 8;
+				sp += 2;
+				int matchLen = token & 15;
+				if (matchLen == 15) {
+					int b;
+					do {
+						b = src[sp++] & 0xff;
+						matchLen += b;
+					} while (b == 255);
+				}
+				matchLen += MIN_MATCH;
+				int ref = dp - offset;
+				if (offset == 0 || ref < dstOff || matchLen > dend - dp)
+					throw new IllegalArgumentException("Corrupt block");
+				// 匹配可以和自己重叠（比如offset为1表示重复上一个字节），只能逐字节复制
+				for (int k = 0; k < matchLen; k++)
+					dst[dp + k] = dst[ref + k];
+				dp += matchLen;
+			}
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new IllegalArgumentException("Corrupt block");
+		}
+		if (dp != dend)
+			throw new IllegalArgumentException("Corrupt block");
+	}
+}
@@ -0,0 +1,20 @@
+package com.jatesun.collection.codec;
+
+import java.io.IOException;
+
+/**
+ *
+ * @author jatesun
+ * @description 单个类型的二进制编解码器。集合的writeTo/readFrom对每个元素（key、value）调用它，
+ *              不经过ObjectOutputStream，也不使用反射。常用类型的实现见Codecs；集合中可能有null时用Codecs.nullable包装。
+ * @question
+ * 		·java序列化为什么又慢又大？（类描述、引用表、每个对象的头部）
+ * @date 2026年10月18日
+ * @param <T>
+ */
+public interface Codec<T> {
+
+	void write(BinaryOutput out, T value) throws IOException;
+
+	T read(BinaryInput in) throws IOException;
+}
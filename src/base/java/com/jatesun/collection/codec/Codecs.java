@@ -0,0 +1,81 @@
+package com.jatesun.collection.codec;
+
+import java.io.IOException;
+
+/**
+ *
+ * @author jatesun
+ * @description 常用类型的Codec。整数用zigzag加varint，小的正负数都只占一两个字节；String用varint长度加UTF-8；
+ *              byte[]用varint长度加原始字节。这些codec都不接受null，需要时用nullable包装（多一个字节的标记）。
+ * @date 2026年10月18日
+ */
+public final class Codecs {
+
+	private Codecs() {
+	}
+
+	public static final Codec<String> STRING = new Codec<String>() {
+		public void write(BinaryOutput out, String value) throws IOException {
+			out.writeString(value);
+		}
+
+		public String read(BinaryInput in) throws IOException {
+			return in.readString();
+		}
+	};
+
+	public static final Codec<Integer> INTEGER = new Codec<Integer>() {
+		public void write(BinaryOutput out, Integer value) throws IOException {
+			out.writeVarInt((value << 1) ^ (value >> 31));
+		}
+
+		public Integer read(BinaryInput in) throws IOException {
+			int v = in.readVarInt();
+			return (v >>> 1) ^ -(v & 1);
+		}
+	};
+
+	public static final Codec<Long> LONG = new Codec<Long>() {
+		public void write(BinaryOutput out, Long value) throws IOException {
+			out.writeVarLong((value << 1) ^ (value >> 63));
+		}
+
+		public Long read(BinaryInput in) throws IOException {
+			long v = in.readVarLong();
+			return (v >>> 1) ^ -(v & 1);
+		}
+	};
+
+	public static final Codec<byte[]> BYTES = new Codec<byte[]>() {
+		public void write(BinaryOutput out, byte[] value) throws IOException {
+			out.writeVarInt(value.length);
+			out.writeBytes(value, 0, value.length);
+		}
+
+		public byte[] read(BinaryInput in) throws IOException {
+			byte[] b = new byte[in.readVarInt()];
+			in.readBytes(b, 0, b.length);
+			return b;
+		}
+	};
+
+	// 允许null：先写一个字节表示是否为null
+	public static <T> Codec<T> nullable(final Codec<T> codec) {
+		if (codec == null)
+			throw new NullPointerException();
+		return new Codec<T>() {
+			public void write(BinaryOutput out, T value) throws IOException {
+				if (value == null) {
+					out.writeByte(0);
+				} else {
+					out.writeByte(1);
+					codec.write(out, value);
+				}
+			}
+
+			public T read(BinaryInput in) throws IOException {
+				return in.readByte() == 0 ? null : codec.read(in);
+			}
+		};
+	}
+}
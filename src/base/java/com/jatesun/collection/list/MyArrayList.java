@@ -1,5 +1,7 @@
 package com.jatesun.collection.list;
 
+import java.io.IOException;
+import java.io.StreamCorruptedException;
 import java.util.AbstractList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -7,6 +9,10 @@ import java.util.ConcurrentModificationException;
 import java.util.List;
 import java.util.RandomAccess;
 
+import com.jatesun.collection.codec.BinaryInput;
+import com.jatesun.collection.codec.BinaryOutput;
+import com.jatesun.collection.codec.Codec;
+
 /**  
  * @Title: MyArrayList.java
  * @Description: 内部使用数组实现list接口的集合类
@@ -288,4 +294,26 @@ public class MyArrayList<E> extends AbstractList<E> implements List<E>, RandomAc
 			a[i] = s.readObject();
 	}
 
+	// 二进制格式：varint的size加每个元素（由codec编码），比writeObject小而且快，见com.jatesun.collection.codec
+	@SuppressWarnings("unchecked")
+	public void writeTo(BinaryOutput out, Codec<? super E> codec) throws IOException {
+		int expectedModCount = modCount;
+		out.writeVarInt(size);
+		for (int i = 0; i < size; i++)
+			codec.write(out, (E) elementData[i]);
+		if (modCount != expectedModCount) throw new ConcurrentModificationException();
+	}
+
+	// 按头部的size一次分配好elementData，读的过程中不会扩容
+	public static <E> MyArrayList<E> readFrom(BinaryInput in, Codec<? extends E> codec) throws IOException {
+		int size = in.readVarInt();
+		if (size < 0) throw new StreamCorruptedException("Illegal size: " + size);
+		MyArrayList<E> list = new MyArrayList<E>(size);
+		Object[] a = list.elementData;
+		for (int i = 0; i < size; i++)
+			a[i] = codec.read(in);
+		list.size = size;
+		return list;
+	}
+
 }
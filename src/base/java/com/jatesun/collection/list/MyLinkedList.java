@@ -1,5 +1,7 @@
 package com.jatesun.collection.list;
 
+import java.io.IOException;
+import java.io.StreamCorruptedException;
 import java.util.AbstractSequentialList;
 import java.util.Collection;
 import java.util.ConcurrentModificationException;
@@ -10,6 +12,10 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.NoSuchElementException;
 import java.util.Queue;
+
+import com.jatesun.collection.codec.BinaryInput;
+import com.jatesun.collection.codec.BinaryOutput;
+import com.jatesun.collection.codec.Codec;
 //import java.util.LinkedList.DescendingIterator;
 //import java.util.LinkedList.Entry;
 //import java.util.LinkedList.ListItr;
@@ -539,4 +545,24 @@ public class MyLinkedList<E> extends AbstractSequentialList<E>
 			addBefore((E) s.readObject(), header);
 	}
 
+	// 二进制格式：varint的size加每个元素，与MyArrayList相同，两者写出的数据可以互相读取
+	public void writeTo(BinaryOutput out, Codec<? super E> codec) throws IOException {
+		int expectedModCount = modCount;
+		out.writeVarInt(size);
+		for (Entry<E> e = header.next; e != header; e = e.next)
+			codec.write(out, e.element);
+		if (modCount != expectedModCount)
+			throw new ConcurrentModificationException();
+	}
+
+	public static <E> MyLinkedList<E> readFrom(BinaryInput in, Codec<? extends E> codec) throws IOException {
+		int size = in.readVarInt();
+		if (size < 0)
+			throw new StreamCorruptedException("Illegal size: " + size);
+		MyLinkedList<E> list = new MyLinkedList<E>();
+		for (int i = 0; i < size; i++)
+			list.addBefore(codec.read(in), list.header);
+		return list;
+	}
+
 }
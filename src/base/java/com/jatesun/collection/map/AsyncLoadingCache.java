@@ -0,0 +1,490 @@
+package com.jatesun.collection.map;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ *
+ * @author jatesun
+ * @description 异步加载的缓存。普通的“get为null就去后端查再put”在热点key未命中时，同时到来的几十个线程都会去查同一个key（缓存击穿）。
+ *              这里缓存的不是value而是CompletableFuture：第一个未命中的线程放进一个未完成的future并安排加载，
+ *              之后同一个key的请求拿到的都是这个future，等同一次加载的结果（请求合并），加载次数与并发数无关。
+ *              get(key)的未命中先记进待加载表，由一个executor任务统一取走，这期间其他key的未命中也会进来，
+ *              合并成一次CacheLoader.loadAll调用；getAll的未命中直接作为一批加载。
+ *              refreshAfterWrite：加载完成超过这个时间之后的第一次读取仍然返回旧值，同时在后台重新加载，成功后替换。
+ *              加载失败或者返回null时，等待的future以异常或null完成，并从缓存删除，下一次读取重新加载。
+ *              数据放在LruCache（基于MyLinkedHashMap）里，容量满了按LRU淘汰，所有访问都在lock里，锁里只做map操作，
+ *              加载和future的回调都在锁外。命中数包括等到了别人正在进行的加载的请求。
+ * @question
+ * 		·为什么缓存future而不是在锁里加载？在锁里加载会怎样？
+ * 		·为什么future要在锁外完成？（thenApply的回调可能就在完成它的线程里执行）
+ * 		·refreshAfterWrite和expireAfterWrite有什么区别？
+ * @date 2026年10月18日
+ * @param <K>
+ * @param <V>
+ */
+public class AsyncLoadingCache<K, V> {
+
+	public static final long NEVER = Long.MAX_VALUE;// 不刷新
+
+	private final LruCache<K, Slot<V>> data;// 由lock保护
+
+	private final CacheLoader<? super K, V> loader;
+
+	private final Executor executor;
+
+	private final long refreshAfterWriteNanos;
+
+	private final LongSupplier ticker;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	// get(key)未命中、还没有交给loader的key，由lock保护
+	private MyLinkedHashMap<K, Slot<V>> pending = new MyLinkedHashMap<K, Slot<V>>();
+
+	private boolean dispatchScheduled;// 已经安排了取走pending的任务，由lock保护
+
+	private final LongAdder hitCount = new LongAdder(), missCount = new LongAdder();
+
+	private final LongAdder loadCount = new LongAdder(), loaderCallCount = new LongAdder();
+
+	private final LongAdder loadFailureCount = new LongAdder(), refreshCount = new LongAdder();
+
+	/**
+	 * @param maximumSize 最多缓存的key个数（包括正在加载的）
+	 * @param refreshAfterWrite 加载完成之后多久在读取时后台刷新，NEVER表示不刷新
+	 * @param unit 时间单位
+	 * @param loader 加载器
+	 * @param executor 执行加载
+	 * @param ticker 纳秒时钟
+	 */
+	public AsyncLoadingCache(long maximumSize, long refreshAfterWrite, TimeUnit unit, CacheLoader<? super K, V> loader,
+			Executor executor, LongSupplier ticker) {
+		if (refreshAfterWrite <= 0)
+			throw new IllegalArgumentException("Illegal refreshAfterWrite: " + refreshAfterWrite);
+		if (unit == null || loader == null || executor == null || ticker == null)
+			throw new NullPointerException();
+		data = new LruCache<K, Slot<V>>(maximumSize);
+		refreshAfterWriteNanos = refreshAfterWrite == NEVER ? NEVER : unit.toNanos(refreshAfterWrite);
+		this.loader = loader;
+		this.executor = executor;
+		this.ticker = ticker;
+	}
+
+	public AsyncLoadingCache(long maximumSize, CacheLoader<? super K, V> loader, Executor executor) {
+		this(maximumSize, NEVER, TimeUnit.NANOSECONDS, loader, executor, System::nanoTime);
+	}
+
+	// 缓存里的一个key：加载中（future未完成）或者已经加载完成
+	static final class Slot<V> {
+		final CompletableFuture<V> future;
+		boolean loaded;// 加载成功，writeTime有效，由lock保护
+		long writeTime;
+		boolean refreshing;// 正在后台刷新，不重复安排
+		boolean invalidated;// 在pending里等待加载时被invalidate：等待的请求仍要拿到结果，但不能再放回缓存
+
+		Slot(CompletableFuture<V> future) {
+			this.future = future;
+		}
+	}
+
+	// 在lock里调用
+	private boolean needsRefresh(Slot<V> slot, long now) {
+		return refreshAfterWriteNanos != NEVER && slot.loaded && !slot.refreshing
+				&& now - slot.writeTime >= refreshAfterWriteNanos;
+	}
+
+	/**
+	 * key对应的slot，在lock里调用。还在pending里等待加载的slot可能已经被LruCache淘汰，这时放回去，
+	 * 否则新建的slot会在pending里把它替换掉，等待它的future永远不会完成。被invalidate的slot不放回去，按未命中处理。
+	 */
+	private Slot<V> lookup(K key) {
+		Slot<V> slot = data.get(key);
+		if (slot == null && (slot = pending.get(key)) != null) {
+			if (slot.invalidated)
+				return null;
+			data.put(key, slot);
+		}
+		return slot;
+	}
+
+	// 在pending里被新slot替换掉的旧slot不会再被加载，让它跟着新的slot完成，等待的请求拿到invalidate之后重新加载的结果
+	private static <V> void follow(Slot<V> stale, Slot<V> slot) {
+		slot.future.whenComplete((value, failure) -> {
+			if (failure != null)
+				stale.future.completeExceptionally(failure);
+			else
+				stale.future.complete(value);
+		});
+	}
+
+	// 线程池拒绝时在调用线程里执行，否则等待的future永远不会完成
+	private void execute(Runnable task) {
+		try {
+			executor.execute(task);
+		} catch (RejectedExecutionException e) {
+			task.run();
+		}
+	}
+
+	/**
+	 * 返回key的value，未命中时用CacheLoader加载。同一时间多个key的未命中合并成一次loadAll。
+	 */
+	public CompletableFuture<V> get(K key) {
+		if (key == null)
+			throw new NullPointerException();
+		Slot<V> slot, refresh = null, stale = null;
+		boolean miss = false, dispatch = false;
+		long now = refreshAfterWriteNanos == NEVER ? 0 : ticker.getAsLong();
+		lock.lock();
+		try {
+			slot = lookup(key);
+			if (slot == null) {
+				slot = new Slot<V>(new CompletableFuture<V>());
+				data.put(key, slot);
+				stale = pending.put(key, slot);// 替换掉的只能是被invalidate的slot
+				miss = true;
+				if (!dispatchScheduled)
+					dispatch = dispatchScheduled = true;
+			} else if (needsRefresh(slot, now)) {
+				slot.refreshing = true;
+				refresh = slot;
+			}
+		} finally {
+			lock.unlock();
+		}
+		if (miss)
+			missCount.increment();
+		else
+			hitCount.increment();
+		if (stale != null)
+			follow(stale, slot);
+		if (dispatch)
+			execute(this::dispatch);
+		if (refresh != null)
+			refresh(key, refresh);
+		return slot.future;
+	}
+
+	/**
+	 * 返回key的value，未命中时用mappingFunction单独加载（不参与批量加载），正在加载时等同一次加载的结果。
+	 */
+	public CompletableFuture<V> get(K key, Function<? super K, ? extends V> mappingFunction) {
+		if (key == null || mappingFunction == null)
+			throw new NullPointerException();
+		Slot<V> slot, refresh = null;
+		boolean miss = false;
+		long now = refreshAfterWriteNanos == NEVER ? 0 : ticker.getAsLong();
+		lock.lock();
+		try {
+			slot = lookup(key);
+			if (slot == null) {
+				slot = new Slot<V>(new CompletableFuture<V>());
+				data.put(key, slot);
+				miss = true;
+			} else if (needsRefresh(slot, now)) {
+				slot.refreshing = true;
+				refresh = slot;
+			}
+		} finally {
+			lock.unlock();
+		}
+		if (miss) {
+			missCount.increment();
+			final Slot<V> s = slot;
+			execute(() -> {
+				loaderCallCount.increment();
+				loadCount.increment();
+				V value = null;
+				Throwable failure = null;
+				try {
+					value = mappingFunction.apply(key);
+				} catch (Throwable t) {
+					failure = t;
+				}
+				finish(Collections.singletonMap(key, s), failure == null ? Collections.singletonMap(key, value) : null,
+						failure);
+			});
+		} else {
+			hitCount.increment();
+		}
+		if (refresh != null)
+			refresh(key, refresh);
+		return slot.future;
+	}
+
+	/**
+	 * 返回多个key的value（不存在的key不在结果里），所有未命中的key作为一批交给loadAll，已经在加载的key等同一次加载。
+	 * 任何一个加载失败时返回的future以异常完成。
+	 */
+	public CompletableFuture<Map<K, V>> getAll(Iterable<? extends K> keys) {
+		MyLinkedHashMap<K, CompletableFuture<V>> futures = new MyLinkedHashMap<K, CompletableFuture<V>>();
+		MyLinkedHashMap<K, Slot<V>> misses = new MyLinkedHashMap<K, Slot<V>>();
+		MyLinkedHashMap<K, Slot<V>> refreshes = null;
+		long now = refreshAfterWriteNanos == NEVER ? 0 : ticker.getAsLong();
+		boolean collected = false;
+		lock.lock();
+		try {
+			for (K key : keys) {
+				if (key == null)
+					throw new NullPointerException();
+				if (futures.containsKey(key))
+					continue;
+				Slot<V> slot = lookup(key);
+				if (slot == null) {
+					slot = new Slot<V>(new CompletableFuture<V>());
+					data.put(key, slot);
+					misses.put(key, slot);
+				} else if (needsRefresh(slot, now)) {
+					slot.refreshing = true;
+					if (refreshes == null)
+						refreshes = new MyLinkedHashMap<K, Slot<V>>();
+					refreshes.put(key, slot);
+				}
+				futures.put(key, slot.future);
+			}
+			collected = true;
+		} finally {
+			if (!collected) {// 中途出错：放进去的slot没有人加载，要删掉；标记了刷新的slot也不会刷新了
+				for (K k : misses.keySet())
+					if (data.get(k) == misses.get(k))
+						data.remove(k);
+				if (refreshes != null)
+					for (Slot<V> slot : refreshes.values())
+						slot.refreshing = false;
+			}
+			lock.unlock();
+		}
+		missCount.add(misses.size());
+		hitCount.add(futures.size() - misses.size());
+		if (!misses.isEmpty())
+			execute(() -> load(misses));
+		if (refreshes != null)
+			for (Map.Entry<K, Slot<V>> e : refreshes.entrySet())
+				refresh(e.getKey(), e.getValue());
+		return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+			Map<K, V> result = new MyLinkedHashMap<K, V>();
+			for (Map.Entry<K, CompletableFuture<V>> e : futures.entrySet()) {
+				V value = e.getValue().join();
+				if (value != null)
+					result.put(e.getKey(), value);
+			}
+			return result;
+		});
+	}
+
+	// 取走get(key)积累的未命中，一起加载
+	private void dispatch() {
+		MyLinkedHashMap<K, Slot<V>> batch;
+		lock.lock();
+		try {
+			batch = pending;
+			pending = new MyLinkedHashMap<K, Slot<V>>();
+			dispatchScheduled = false;
+		} finally {
+			lock.unlock();
+		}
+		if (!batch.isEmpty())
+			load(batch);
+	}
+
+	// 只有一个key时调用load，否则调用一次loadAll
+	private void load(Map<K, Slot<V>> batch) {
+		loaderCallCount.increment();
+		loadCount.add(batch.size());
+		Map<?, V> result = null;
+		Throwable failure = null;
+		try {
+			if (batch.size() == 1) {
+				K key = batch.keySet().iterator().next();
+				result = Collections.singletonMap(key, loader.load(key));
+			} else {
+				result = loader.loadAll(Collections.unmodifiableSet(batch.keySet()));
+			}
+		} catch (Throwable t) {
+			failure = t;
+		}
+		finish(batch, result, failure);
+	}
+
+	/**
+	 * 加载结束：成功的记下加载时间，失败和不存在的从缓存删除（还是这个slot时），然后在锁外完成future。
+	 * loader返回null或者返回的map出错都按加载失败处理，无论中间出什么错，批里的future都会完成。
+	 */
+	private void finish(Map<K, Slot<V>> batch, Map<?, ? extends V> result, Throwable failure) {
+		MyHashMap<K, V> values = new MyHashMap<K, V>();// 先取出结果，锁里只操作自己的map
+		try {
+			if (failure == null) {
+				if (result == null)
+					throw new NullPointerException("CacheLoader.loadAll returned null");
+				for (K key : batch.keySet()) {
+					V value = result.get(key);
+					if (value != null)
+						values.put(key, value);
+				}
+			}
+		} catch (Throwable t) {
+			failure = t;
+			values.clear();
+		}
+		try {
+			long now = ticker.getAsLong();
+			lock.lock();
+			try {
+				for (Map.Entry<K, Slot<V>> e : batch.entrySet()) {
+					Slot<V> slot = e.getValue();
+					if (values.containsKey(e.getKey())) {
+						slot.loaded = true;
+						slot.writeTime = now;
+					} else if (data.get(e.getKey()) == slot) {
+						data.remove(e.getKey());
+					}
+				}
+			} finally {
+				lock.unlock();
+			}
+		} finally {
+			if (failure != null)
+				loadFailureCount.add(batch.size());
+			for (Map.Entry<K, Slot<V>> e : batch.entrySet()) {
+				if (failure != null)
+					e.getValue().future.completeExceptionally(failure);
+				else
+					e.getValue().future.complete(values.get(e.getKey()));
+			}
+		}
+	}
+
+	// 后台重新加载，期间读取仍然返回旧值；成功后换成新的slot，失败时保留旧值，下次读取再刷新
+	private void refresh(K key, Slot<V> old) {
+		refreshCount.increment();
+		execute(() -> {
+			loaderCallCount.increment();
+			loadCount.increment();
+			V value = null;
+			Throwable failure = null;
+			try {
+				value = loader.load(key);
+			} catch (Throwable t) {
+				failure = t;
+			}
+			long now = ticker.getAsLong();
+			lock.lock();
+			try {
+				if (failure != null) {
+					old.refreshing = false;
+				} else if (data.get(key) == old) {
+					if (value == null) {// 后端已经没有这个key
+						data.remove(key);
+					} else {
+						Slot<V> slot = new Slot<V>(CompletableFuture.completedFuture(value));
+						slot.loaded = true;
+						slot.writeTime = now;
+						data.put(key, slot);
+					}
+				}
+			} finally {
+				lock.unlock();
+			}
+			if (failure != null)
+				loadFailureCount.increment();
+		});
+	}
+
+	// 已经加载完成的value，没有或者正在加载时返回null，不触发加载
+	public V getIfPresent(Object key) {
+		lock.lock();
+		try {
+			Slot<V> slot = data.get(key);
+			return slot == null || !slot.loaded ? null : slot.future.getNow(null);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// 直接放入value，正在等待这个key加载的请求拿到的仍是加载的结果
+	public void put(K key, V value) {
+		if (key == null || value == null)
+			throw new NullPointerException();
+		Slot<V> slot = new Slot<V>(CompletableFuture.completedFuture(value));
+		slot.loaded = true;
+		slot.writeTime = ticker.getAsLong();
+		lock.lock();
+		try {
+			data.put(key, slot);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 删除key，正在进行的加载完成后不会再放回缓存。还在pending里的slot要标记出来，
+	 * 否则下一次lookup会把它从pending放回缓存，invalidate等于没有做。
+	 */
+	public void invalidate(Object key) {
+		lock.lock();
+		try {
+			data.remove(key);
+			Slot<V> slot = pending.get(key);
+			if (slot != null)
+				slot.invalidated = true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public void invalidateAll() {
+		lock.lock();
+		try {
+			data.clear();
+			for (Slot<V> slot : pending.values())
+				slot.invalidated = true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// 缓存的key个数，包括正在加载的
+	public int size() {
+		lock.lock();
+		try {
+			return data.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public long hitCount() {
+		return hitCount.sum();
+	}
+
+	public long missCount() {
+		return missCount.sum();
+	}
+
+	// 交给loader的key个数（包括刷新）
+	public long loadCount() {
+		return loadCount.sum();
+	}
+
+	// 调用loader（load、loadAll、mappingFunction）的次数
+	public long loaderCallCount() {
+		return loaderCallCount.sum();
+	}
+
+	public long loadFailureCount() {
+		return loadFailureCount.sum();
+	}
+
+	public long refreshCount() {
+		return refreshCount.sum();
+	}
+}
@@ -0,0 +1,24 @@
+package com.jatesun.collection.map;
+
+import java.nio.ByteBuffer;
+
+/**
+ *
+ * @author jatesun
+ * @description 把对象编码成字节、从字节解码回对象，OffHeapHashMap用它把key和value存放到堆外内存。
+ *              encode从dst当前position开始写，必须正好写encodedSize个字节；decode从src当前position开始读length个字节。
+ *              常用的实现见ByteCodecs。
+ * @question
+ * 		·为什么堆外的map必须把key序列化成字节，而不能直接存对象引用？
+ * @date 2026年10月18日
+ * @param <T>
+ */
+public interface ByteCodec<T> {
+
+	// value编码后的字节数
+	int encodedSize(T value);
+
+	void encode(T value, ByteBuffer dst);
+
+	T decode(ByteBuffer src, int length);
+}
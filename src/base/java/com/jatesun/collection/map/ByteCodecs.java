@@ -0,0 +1,77 @@
+package com.jatesun.collection.map;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ *
+ * @author jatesun
+ * @description 常用类型的ByteCodec。byte[]原样存放；String按UTF-8编码；Integer、Long定长存放。
+ * @date 2026年10月18日
+ */
+public final class ByteCodecs {
+
+	private ByteCodecs() {
+	}
+
+	public static final ByteCodec<byte[]> BYTES = new ByteCodec<byte[]>() {
+		public int encodedSize(byte[] value) {
+			return value.length;
+		}
+
+		public void encode(byte[] value, ByteBuffer dst) {
+			dst.put(value);
+		}
+
+		public byte[] decode(ByteBuffer src, int length) {
+			byte[] b = new byte[length];
+			src.get(b);
+			return b;
+		}
+	};
+
+	// 字符串先编码成byte[]再写入，encodedSize和encode各编码一次，对性能敏感时可以自己实现缓存编码结果的codec
+	public static final ByteCodec<String> STRING = new ByteCodec<String>() {
+		public int encodedSize(String value) {
+			return value.getBytes(StandardCharsets.UTF_8).length;
+		}
+
+		public void encode(String value, ByteBuffer dst) {
+			dst.put(value.getBytes(StandardCharsets.UTF_8));
+		}
+
+		public String decode(ByteBuffer src, int length) {
+			byte[] b = new byte[length];
+			src.get(b);
+			return new String(b, StandardCharsets.UTF_8);
+		}
+	};
+
+	public static final ByteCodec<Integer> INTEGER = new ByteCodec<Integer>() {
+		public int encodedSize(Integer value) {
+			return 4;
+		}
+
+		public void encode(Integer value, ByteBuffer dst) {
+			dst.putInt(value);
+		}
+
+		public Integer decode(ByteBuffer src, int length) {
+			return src.getInt();
+		}
+	};
+
+	public static final ByteCodec<Long> LONG = new ByteCodec<Long>() {
+		public int encodedSize(Long value) {
+			return 8;
+		}
+
+		public void encode(Long value, ByteBuffer dst) {
+			dst.putLong(value);
+		}
+
+		public Long decode(ByteBuffer src, int length) {
+			return src.getLong();
+		}
+	};
+}
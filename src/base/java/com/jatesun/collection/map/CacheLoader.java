@@ -0,0 +1,30 @@
+package com.jatesun.collection.map;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ *
+ * @author jatesun
+ * @description AsyncLoadingCache未命中时从后端（数据库、远程服务）加载value。在AsyncLoadingCache的executor里调用，可以阻塞。
+ *              后端支持批量查询时应该重写loadAll，同一时间的多个未命中会合并成一次loadAll调用。
+ * @date 2026年10月18日
+ * @param <K>
+ * @param <V>
+ */
+public interface CacheLoader<K, V> {
+
+	// 返回null表示不存在，不会放进缓存
+	V load(K key) throws Exception;
+
+	// 批量加载，返回的map里没有的key按不存在处理。默认逐个调用load
+	default Map<K, V> loadAll(Set<? extends K> keys) throws Exception {
+		Map<K, V> result = new MyHashMap<K, V>();
+		for (K key : keys) {
+			V value = load(key);
+			if (value != null)
+				result.put(key, value);
+		}
+		return result;
+	}
+}
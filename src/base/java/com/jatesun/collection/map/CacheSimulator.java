@@ -0,0 +1,86 @@
+package com.jatesun.collection.map;
+
+import java.util.Map;
+import java.util.Random;
+
+/**
+ *
+ * @author jatesun
+ * @description 用访问序列（trace）比较缓存淘汰策略的命中率。trace是一串key，按顺序get，未命中时put，和缓存的一般用法一样。
+ *              这里只关心命中率，不计时间；同一条trace可以分别放进LruCache、TinyLfuCache比较。
+ *              zipf生成少数key占大部分访问的序列（典型的热点分布）；scanPolluted在zipf序列里周期性插入只访问一次的连续key，
+ *              模拟批量任务、全表扫描把热点挤出缓存的情况。
+ * @question
+ * 		·为什么比较命中率要用同一条trace？
+ * 		·zipf分布的skew越大，LRU和LFU的差别是变大还是变小？
+ * @date 2026年10月18日
+ */
+public final class CacheSimulator {
+
+	private CacheSimulator() {
+	}
+
+	/**
+	 * 依次访问trace里的key，未命中时放入缓存，返回命中率。
+	 */
+	public static double hitRatio(Map<Integer, Integer> cache, int[] trace) {
+		long hits = 0;
+		for (int k : trace) {
+			Integer key = k;
+			if (cache.get(key) != null)
+				hits++;
+			else
+				cache.put(key, key);
+		}
+		return trace.length == 0 ? 1.0 : (double) hits / trace.length;
+	}
+
+	/**
+	 * zipf分布的序列：第i热门的key（0到keys-1）被访问的概率与1/(i+1)^skew成正比。
+	 * 先算出累积分布，每次二分查找，keys不宜过大。
+	 */
+	public static int[] zipf(int keys, double skew, int length, long seed) {
+		if (keys <= 0 || length < 0)
+			throw new IllegalArgumentException();
+		double[] cdf = new double[keys];
+		double sum = 0;
+		for (int i = 0; i < keys; i++) {
+			sum += 1 / Math.pow(i + 1, skew);
+			cdf[i] = sum;
+		}
+		Random r = new Random(seed);
+		int[] trace = new int[length];
+		for (int i = 0; i < length; i++) {
+			double u = r.nextDouble() * sum;
+			int lo = 0, hi = keys - 1;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (cdf[mid] < u)
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+			trace[i] = lo;
+		}
+		return trace;
+	}
+
+	/**
+	 * 每访问period次zipf序列，插入一段长度为scanLength的扫描。扫描的key从keys开始递增，不会和热点重复，也不会重复出现。
+	 */
+	public static int[] scanPolluted(int keys, double skew, int length, int period, int scanLength, long seed) {
+		if (period <= 0 || scanLength < 0)
+			throw new IllegalArgumentException();
+		int[] hot = zipf(keys, skew, length, seed);
+		int scans = length / period;
+		int[] trace = new int[length + scans * scanLength];
+		int next = keys, j = 0;
+		for (int i = 0; i < length; i++) {
+			trace[j++] = hot[i];
+			if ((i + 1) % period == 0)
+				for (int s = 0; s < scanLength; s++)
+					trace[j++] = next++;
+		}
+		return trace;
+	}
+}
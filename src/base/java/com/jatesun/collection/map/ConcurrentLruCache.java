@@ -0,0 +1,433 @@
+package com.jatesun.collection.map;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ *
+ * @author jatesun
+ * @description 线程安全的LRU缓存。LruCache（MyLinkedHashMap访问顺序模式）每次get都要修改双向链表，多线程共享只能整个加锁，读也是串行的。
+ *              这里把数据和淘汰策略分开：数据放在ConcurrentMyHashMap里，value是缓存自己的节点，读操作不加锁；
+ *              访问顺序链表由evictionLock保护，get不直接修改链表，只是把节点记进一个读缓冲区，
+ *              之后由拿到锁的线程把缓冲区里的访问按顺序重放到链表上（批量移到链表尾部）。
+ *              读缓冲区按线程分成多个（striped），每个都是固定大小的无锁环形数组，写入位置用CAS领取；
+ *              缓冲区满了或者CAS失败就直接丢掉这次记录，只是让LRU的顺序稍微不准，get永远不会等锁。
+ *              缓冲区积累到一半时用tryLock尝试重放，拿不到锁说明别的线程正在重放，直接返回。
+ *              写操作（put、remove、replace）拿evictionLock，同时修改map和链表，先重放读缓冲区再淘汰，写操作之间仍然是串行的。
+ *              与ConcurrentMyHashMap一样不允许null键和null值。
+ * @question
+ * 		·为什么丢掉一部分读记录不影响正确性？对命中率有多大影响？
+ * 		·为什么读缓冲区要分成多个？只有一个会怎样？
+ * 		·重放时为什么要检查节点是否还在链表里？
+ * @date 2026年10月18日
+ * @param <K>
+ * @param <V>
+ */
+public class ConcurrentLruCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
+
+	static final int READ_BUFFER_SIZE = 16;// 每个读缓冲区的大小，2的指数
+
+	static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+
+	static final int READ_BUFFER_DRAIN_THRESHOLD = READ_BUFFER_SIZE / 2;// 缓冲区里积累到这么多条时尝试重放
+
+	// 读缓冲区的个数，不少于cpu个数
+	static final int NUMBER_OF_READ_BUFFERS = ConcurrentMyHashMap.tableSizeFor(ConcurrentMyHashMap.NCPU);
+
+	private final ConcurrentMyHashMap<K, Node<K, V>> data;
+
+	private final long maximumSize;
+
+	private final ReentrantLock evictionLock = new ReentrantLock();
+
+	private final ReadBuffer[] readBuffers;
+
+	// 访问顺序链表，head是最久没有访问的节点，由evictionLock保护
+	private Node<K, V> head, tail;
+
+	private final LongAdder hitCount = new LongAdder(), missCount = new LongAdder();
+
+	private volatile long evictionCount;// 只在evictionLock里修改
+
+	public ConcurrentLruCache(int initialCapacity, long maximumSize) {
+		if (maximumSize < 0)
+			throw new IllegalArgumentException("Illegal maximum size: " + maximumSize);
+		this.maximumSize = maximumSize;
+		data = new ConcurrentMyHashMap<K, Node<K, V>>(initialCapacity);
+		readBuffers = new ReadBuffer[NUMBER_OF_READ_BUFFERS];
+		for (int i = 0; i < readBuffers.length; i++)
+			readBuffers[i] = new ReadBuffer();
+	}
+
+	public ConcurrentLruCache(long maximumSize) {
+		this((int) Math.min(maximumSize, 1 << 12), maximumSize);
+	}
+
+	// 缓存的节点，value是volatile的，读线程不加锁也能看到；prev、next、linked只在evictionLock里访问
+	static final class Node<K, V> {
+		final K key;
+		volatile V value;
+		Node<K, V> prev, next;
+		boolean linked;// 是否在访问顺序链表里，被删除、淘汰之后读缓冲区里可能还留着它
+
+		Node(K key, V value) {
+			this.key = key;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * 一个读缓冲区。多个读线程写入（CAS领取writeCounter），只有拿到evictionLock的线程读取（readCounter），
+	 * writeCounter - readCounter就是缓冲区里的条数。
+	 */
+	static final class ReadBuffer {
+		final AtomicReferenceArray<Node<?, ?>> buffer = new AtomicReferenceArray<Node<?, ?>>(READ_BUFFER_SIZE);
+		final AtomicLong writeCounter = new AtomicLong();
+		volatile long readCounter;
+
+		// 记录一次访问，返回是否应该重放了。满了或者CAS失败就丢掉这次记录
+		boolean offer(Node<?, ?> node) {
+			long r = readCounter;
+			long w = writeCounter.get();
+			long n = w - r;
+			if (n >= READ_BUFFER_SIZE)
+				return true;
+			if (!writeCounter.compareAndSet(w, w + 1))
+				return false;
+			buffer.lazySet((int) (w & READ_BUFFER_MASK), node);
+			return n + 1 >= READ_BUFFER_DRAIN_THRESHOLD;
+		}
+
+		// 在evictionLock里调用。领取了位置但还没有写入节点的格子为null，停在那里，下次再继续
+		@SuppressWarnings("unchecked")
+		<K, V> void drainTo(ConcurrentLruCache<K, V> cache) {
+			long r = readCounter;
+			long w = writeCounter.get();
+			for (; r < w; r++) {
+				int i = (int) (r & READ_BUFFER_MASK);
+				Node<K, V> node = (Node<K, V>) buffer.get(i);
+				if (node == null)
+					break;
+				buffer.lazySet(i, null);
+				cache.onAccess(node);
+			}
+			readCounter = r;
+		}
+	}
+
+	// 按线程id选择读缓冲区，同一个线程总是写同一个缓冲区
+	private ReadBuffer readBuffer() {
+		long id = Thread.currentThread().getId();
+		int h = (int) ((id * 0x9E3779B97F4A7C15L) >>> 32);
+		return readBuffers[h & (readBuffers.length - 1)];
+	}
+
+	private void afterRead(Node<K, V> node) {
+		if (readBuffer().offer(node))
+			tryToDrain();
+	}
+
+	private void tryToDrain() {
+		if (evictionLock.tryLock()) {
+			try {
+				drainReadBuffers();
+			} finally {
+				evictionLock.unlock();
+			}
+		}
+	}
+
+	// 在evictionLock里调用
+	private void drainReadBuffers() {
+		for (ReadBuffer b : readBuffers)
+			b.drainTo(this);
+	}
+
+	// 重放一次访问：节点已经被删除（不在链表里）就忽略
+	void onAccess(Node<K, V> node) {
+		if (node.linked)
+			moveToTail(node);
+	}
+
+	// 下面几个链表操作都在evictionLock里调用
+	private void linkLast(Node<K, V> node) {
+		node.prev = tail;
+		node.next = null;
+		if (tail == null)
+			head = node;
+		else
+			tail.next = node;
+		tail = node;
+		node.linked = true;
+	}
+
+	private void unlink(Node<K, V> node) {
+		Node<K, V> p = node.prev, n = node.next;
+		if (p == null)
+			head = n;
+		else
+			p.next = n;
+		if (n == null)
+			tail = p;
+		else
+			n.prev = p;
+		node.prev = node.next = null;
+		node.linked = false;
+	}
+
+	private void moveToTail(Node<K, V> node) {
+		if (node != tail) {
+			unlink(node);
+			linkLast(node);
+		}
+	}
+
+	// 从最久没有访问的节点开始淘汰，直到不超过maximumSize
+	private void evict() {
+		while (data.size() > maximumSize && head != null) {
+			Node<K, V> node = head;
+			unlink(node);
+			data.remove(node.key, node);
+			evictionCount++;
+		}
+	}
+
+	public V get(Object key) {
+		Node<K, V> node = data.get(key);
+		if (node == null) {
+			missCount.increment();
+			return null;
+		}
+		hitCount.increment();
+		afterRead(node);
+		return node.value;
+	}
+
+	// 不算一次访问，也不计入命中率
+	public boolean containsKey(Object key) {
+		return data.containsKey(key);
+	}
+
+	public int size() {
+		return data.size();
+	}
+
+	public boolean isEmpty() {
+		return data.isEmpty();
+	}
+
+	public V put(K key, V value) {
+		return put(key, value, false);
+	}
+
+	public V putIfAbsent(K key, V value) {
+		return put(key, value, true);
+	}
+
+	private V put(K key, V value, boolean onlyIfAbsent) {
+		if (key == null || value == null)
+			throw new NullPointerException();
+		evictionLock.lock();
+		try {
+			drainReadBuffers();
+			Node<K, V> node = data.get(key);
+			if (node != null) {
+				V oldValue = node.value;
+				if (!onlyIfAbsent)
+					node.value = value;
+				moveToTail(node);
+				return oldValue;
+			}
+			node = new Node<K, V>(key, value);
+			data.put(key, node);
+			linkLast(node);
+			evict();
+			return null;
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	public V remove(Object key) {
+		evictionLock.lock();
+		try {
+			Node<K, V> node = data.remove(key);
+			if (node == null)
+				return null;
+			unlink(node);
+			return node.value;
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	public boolean remove(Object key, Object value) {
+		if (key == null)
+			throw new NullPointerException();
+		if (value == null)
+			return false;
+		evictionLock.lock();
+		try {
+			Node<K, V> node = data.get(key);
+			if (node == null || !value.equals(node.value))
+				return false;
+			data.remove(key, node);
+			unlink(node);
+			return true;
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	public boolean replace(K key, V oldValue, V newValue) {
+		if (key == null || oldValue == null || newValue == null)
+			throw new NullPointerException();
+		evictionLock.lock();
+		try {
+			Node<K, V> node = data.get(key);
+			if (node == null || !oldValue.equals(node.value))
+				return false;
+			node.value = newValue;
+			moveToTail(node);
+			return true;
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	public V replace(K key, V value) {
+		if (key == null || value == null)
+			throw new NullPointerException();
+		evictionLock.lock();
+		try {
+			Node<K, V> node = data.get(key);
+			if (node == null)
+				return null;
+			V oldValue = node.value;
+			node.value = value;
+			moveToTail(node);
+			return oldValue;
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	public void clear() {
+		evictionLock.lock();
+		try {
+			drainReadBuffers();
+			for (Node<K, V> node = head; node != null;) {
+				Node<K, V> next = node.next;
+				data.remove(node.key, node);
+				node.prev = node.next = null;
+				node.linked = false;
+				node = next;
+			}
+			head = tail = null;
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	public long maximumSize() {
+		return maximumSize;
+	}
+
+	public long hitCount() {
+		return hitCount.sum();
+	}
+
+	public long missCount() {
+		return missCount.sum();
+	}
+
+	public long evictionCount() {
+		return evictionCount;
+	}
+
+	// 命中率，没有get过时为1
+	public double hitRate() {
+		long hits = hitCount.sum(), requests = hits + missCount.sum();
+		return requests == 0 ? 1.0 : (double) hits / requests;
+	}
+
+	// 按最久没有访问到最近访问的顺序返回key（先重放读缓冲区），用于调试和测试，需要拿evictionLock
+	public Set<K> ascendingKeySet() {
+		Set<K> keys = new LinkedHashSet<K>();
+		evictionLock.lock();
+		try {
+			drainReadBuffers();
+			for (Node<K, V> node = head; node != null; node = node.next)
+				keys.add(node.key);
+		} finally {
+			evictionLock.unlock();
+		}
+		return keys;
+	}
+
+	private transient Set<Map.Entry<K, V>> entrySet = null;
+
+	// 迭代顺序是ConcurrentMyHashMap的顺序，迭代不算访问
+	public Set<Map.Entry<K, V>> entrySet() {
+		Set<Map.Entry<K, V>> es = entrySet;
+		return es != null ? es : (entrySet = new EntrySet());
+	}
+
+	private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+		public Iterator<Map.Entry<K, V>> iterator() {
+			final Iterator<Node<K, V>> it = data.values().iterator();
+			return new Iterator<Map.Entry<K, V>>() {
+				Node<K, V> current;
+
+				public boolean hasNext() {
+					return it.hasNext();
+				}
+
+				public Map.Entry<K, V> next() {
+					current = it.next();
+					return new SimpleImmutableEntry<K, V>(current.key, current.value);
+				}
+
+				public void remove() {
+					if (current == null)
+						throw new IllegalStateException();
+					ConcurrentLruCache.this.remove(current.key);
+					current = null;
+				}
+			};
+		}
+
+		public boolean contains(Object o) {
+			if (!(o instanceof Map.Entry))
+				return false;
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			Object k = e.getKey(), v = e.getValue();
+			Node<K, V> node;
+			return k != null && v != null && (node = data.get(k)) != null && v.equals(node.value);
+		}
+
+		public boolean remove(Object o) {
+			if (!(o instanceof Map.Entry))
+				return false;
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			return e.getKey() != null && ConcurrentLruCache.this.remove(e.getKey(), e.getValue());
+		}
+
+		public int size() {
+			return ConcurrentLruCache.this.size();
+		}
+
+		public void clear() {
+			ConcurrentLruCache.this.clear();
+		}
+	}
+}
@@ -0,0 +1,1026 @@
+package com.jatesun.collection.map;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ *
+ * @author jatesun
+ * @description 线程安全的hashmap。MyHashTable每个方法都synchronized整个表，多线程写入时全部串行。
+ *              这里的数据结构仍然是数组加链表，但加锁粒度是桶：空桶用CAS放入第一个节点，非空桶synchronized链表头节点，
+ *              不同桶的写入互不影响。读操作不加锁，依靠table、节点value和next都是volatile来保证可见性。
+ *              扩容时旧桶搬完后放一个转发节点（ForwardingNode），读操作遇到它就转到新数组上继续，不用等扩容结束；
+ *              写操作遇到它会先帮忙扩容：旧数组按步长（stride）切成若干段，任何一个put的线程都可以领取一段来搬运，
+ *              扩容不再由一个线程独自完成。
+ *              computeIfAbsent、computeIfPresent、compute、merge与put一样在桶的锁里执行，函数对每个key最多调用一次，
+ *              整个操作是原子的；空桶先CAS放一个占位节点（ReservationNode）并锁住它再调用函数。
+ *              函数应该简短，而且不能修改这个map：修改同一个桶、或者修改别的桶引起扩容把这个桶搬走时，
+ *              抛IllegalStateException("Recursive update")，map保持一致；其他线程同时修改别的桶可能死锁。
+ *              与MyHashTable一样不允许null键和null值（get返回null无法区分是不存在还是值为null）。
+ * @question
+ * 		·为什么读操作可以不加锁？volatile在这里保证了什么？
+ * 		·扩容时为什么不能直接修改旧链表节点的next，而要复制节点？
+ * 		·size为什么用LongAdder而不是一个volatile int？
+ * 		·多个线程一起扩容时，如何保证每个桶只被搬一次、最后由谁来切换table？
+ * @date 2026年10月18日
+ * @param <K>
+ * @param <V>
+ */
+public class ConcurrentMyHashMap<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>, Serializable {
+
+	private static final long serialVersionUID = -4603251393215093826L;
+
+	static final int MAXIMUM_CAPACITY = 1 << 30;// 最大容量
+
+	static final int DEFAULT_CAPACITY = 16;// 默认初始大小
+
+	static final int MOVED = -1;// 转发节点的hash，普通节点的hash都是非负数
+
+	static final int RESERVED = -3;// 占位节点的hash
+
+	static final int HASH_BITS = 0x7fffffff;// 去掉符号位，保证普通节点hash非负
+
+	static final int MIN_TRANSFER_STRIDE = 16;// 扩容时每个线程一次领取的最少桶数
+
+	static final int RESIZE_STAMP_BITS = 16;// sizeCtl中扩容标记所占的位数
+
+	static final int RESIZE_STAMP_SHIFT = 32 - RESIZE_STAMP_BITS;
+
+	static final int MAX_RESIZERS = (1 << (32 - RESIZE_STAMP_BITS)) - 1;// 同时参与扩容的最大线程数
+
+	static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+	transient volatile AtomicReferenceArray<Node<K, V>> table;// 存放数据的桶数组，第一次put时才分配
+
+	private transient volatile AtomicReferenceArray<Node<K, V>> nextTable;// 扩容中的新数组
+
+	// 0：使用默认大小；大于0：table未分配时为初始容量，分配后为扩容边界；-1：正在初始化；
+	// 其他负数：正在扩容，高16位是扩容标记（由旧数组长度算出），低16位是参与扩容的线程数+1
+	private transient volatile int sizeCtl;
+
+	private transient volatile int transferIndex;// 扩容时旧数组还没被领取的部分为[0, transferIndex)
+
+	private transient LongAdder count;// 元素个数，分段计数避免所有线程争抢同一个变量
+
+	private static final AtomicIntegerFieldUpdater<ConcurrentMyHashMap<?, ?>> SIZECTL = intUpdater("sizeCtl");
+
+	private static final AtomicIntegerFieldUpdater<ConcurrentMyHashMap<?, ?>> TRANSFERINDEX = intUpdater("transferIndex");
+
+	// ConcurrentMyHashMap.class是原始类型，转成带通配符的类型
+	@SuppressWarnings("unchecked")
+	private static AtomicIntegerFieldUpdater<ConcurrentMyHashMap<?, ?>> intUpdater(String field) {
+		return AtomicIntegerFieldUpdater.newUpdater((Class<ConcurrentMyHashMap<?, ?>>) (Class<?>) ConcurrentMyHashMap.class,
+				field);
+	}
+
+	public ConcurrentMyHashMap() {
+		count = new LongAdder();
+	}
+
+	public ConcurrentMyHashMap(int initialCapacity) {
+		if (initialCapacity < 0)
+			throw new IllegalArgumentException("Illegal initial capacity: " + initialCapacity);
+		count = new LongAdder();
+		sizeCtl = tableSizeFor(initialCapacity + (initialCapacity >>> 1) + 1);
+	}
+
+	public ConcurrentMyHashMap(Map<? extends K, ? extends V> m) {
+		this(m.size());
+		putAll(m);
+	}
+
+	// 不小于c的2的指数
+	static int tableSizeFor(int c) {
+		int capacity = 1;
+		while (capacity < c && capacity < MAXIMUM_CAPACITY)
+			capacity <<= 1;
+		return capacity;
+	}
+
+	// 长度为n的数组扩容时的标记，左移RESIZE_STAMP_SHIFT位后为负数
+	static int resizeStamp(int n) {
+		return Integer.numberOfLeadingZeros(n) | (1 << (RESIZE_STAMP_BITS - 1));
+	}
+
+	// MyHashMap的再散列，再去掉符号位
+	static int spread(int h) {
+		return MyHashMap.hash(h) & HASH_BITS;
+	}
+
+	// 节点。value和next是volatile的，读线程不加锁也能看到写线程的修改
+	static class Node<K, V> implements Map.Entry<K, V> {
+		final int hash;
+		final K key;
+		volatile V val;
+		volatile Node<K, V> next;
+
+		Node(int hash, K key, V val, Node<K, V> next) {
+			this.hash = hash;
+			this.key = key;
+			this.val = val;
+			this.next = next;
+		}
+
+		public final K getKey() {
+			return key;
+		}
+
+		public final V getValue() {
+			return val;
+		}
+
+		public final V setValue(V value) {
+			throw new UnsupportedOperationException();
+		}
+
+		public final int hashCode() {
+			return key.hashCode() ^ val.hashCode();
+		}
+
+		public final boolean equals(Object o) {
+			Object k, v;
+			Map.Entry<?, ?> e;
+			return ((o instanceof Map.Entry) && (k = (e = (Map.Entry<?, ?>) o).getKey()) != null
+					&& (v = e.getValue()) != null && (k == key || k.equals(key)) && (v == val || v.equals(val)));
+		}
+
+		public final String toString() {
+			return key + "=" + val;
+		}
+	}
+
+	// 转发节点：旧桶已经搬到nextTable，放在旧桶的位置上
+	static final class ForwardingNode<K, V> extends Node<K, V> {
+		final AtomicReferenceArray<Node<K, V>> nextTable;
+
+		ForwardingNode(AtomicReferenceArray<Node<K, V>> tab) {
+			super(MOVED, null, null, null);
+			this.nextTable = tab;
+		}
+	}
+
+	// 占位节点：compute类方法在空桶上调用函数时先CAS放进去并锁住，函数返回后换成真正的节点或者null
+	static final class ReservationNode<K, V> extends Node<K, V> {
+		ReservationNode() {
+			super(RESERVED, null, null, null);
+		}
+	}
+
+	public int size() {
+		long n = count.sum();
+		return (n < 0L) ? 0 : (n > Integer.MAX_VALUE) ? Integer.MAX_VALUE : (int) n;
+	}
+
+	public boolean isEmpty() {
+		return count.sum() <= 0L;
+	}
+
+	// 在tab中查找，遇到转发节点就到新数组里继续找，不加锁
+	static <K, V> Node<K, V> find(AtomicReferenceArray<Node<K, V>> tab, int h, Object k) {
+		outer: for (;;) {
+			for (Node<K, V> e = tab.get(MyHashMap.indexFor(h, tab.length())); e != null; e = e.next) {
+				if (e.hash == MOVED) {
+					tab = ((ForwardingNode<K, V>) e).nextTable;
+					continue outer;
+				}
+				K ek;
+				if (e.hash == h && ((ek = e.key) == k || k.equals(ek)))
+					return e;
+			}
+			return null;
+		}
+	}
+
+	public V get(Object key) {
+		AtomicReferenceArray<Node<K, V>> tab = table;
+		if (tab == null)
+			return null;
+		Node<K, V> e = find(tab, spread(key.hashCode()), key);
+		return e == null ? null : e.val;
+	}
+
+	public boolean containsKey(Object key) {
+		return get(key) != null;
+	}
+
+	public boolean containsValue(Object value) {
+		if (value == null)
+			throw new NullPointerException();
+		AtomicReferenceArray<Node<K, V>> tab = table;
+		if (tab != null) {
+			Traverser<K, V> it = new Traverser<K, V>(tab);
+			for (Node<K, V> p; (p = it.advance()) != null;) {
+				V v;
+				if ((v = p.val) == value || value.equals(v))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	public V put(K key, V value) {
+		return putVal(key, value, false);
+	}
+
+	public V putIfAbsent(K key, V value) {
+		return putVal(key, value, true);
+	}
+
+	final V putVal(K key, V value, boolean onlyIfAbsent) {
+		if (key == null || value == null)
+			throw new NullPointerException();
+		int hash = spread(key.hashCode());
+		for (AtomicReferenceArray<Node<K, V>> tab = table;;) {
+			Node<K, V> f;
+			int n, i;
+			if (tab == null)
+				tab = initTable();
+			else if ((f = tab.get(i = MyHashMap.indexFor(hash, n = tab.length()))) == null) {
+				// 空桶直接CAS，不加锁
+				if (tab.compareAndSet(i, null, new Node<K, V>(hash, key, value, null)))
+					break;
+			} else if (f.hash == MOVED) {
+				tab = helpTransfer(tab, (ForwardingNode<K, V>) f);// 这个桶已经搬走了，先帮忙扩容再到新数组上操作
+			} else {
+				V oldVal = null;
+				boolean done = false;
+				synchronized (f) {
+					// 加锁后再确认头节点没变（可能被删除或者被扩容搬走了），变了就重试
+					if (tab.get(i) == f) {
+						if (f.hash == RESERVED)
+							throw new IllegalStateException("Recursive update");
+						done = true;
+						for (Node<K, V> e = f;;) {
+							K ek;
+							if (e.hash == hash && ((ek = e.key) == key || key.equals(ek))) {
+								oldVal = e.val;
+								if (!onlyIfAbsent)
+									e.val = value;
+								break;
+							}
+							Node<K, V> pred = e;
+							if ((e = e.next) == null) {
+								pred.next = new Node<K, V>(hash, key, value, null);// 新节点挂在链表尾
+								break;
+							}
+						}
+					}
+				}
+				if (done) {
+					if (oldVal != null)
+						return oldVal;
+					break;
+				}
+			}
+		}
+		addCount(1L);
+		return null;
+	}
+
+	public void putAll(Map<? extends K, ? extends V> m) {
+		for (Map.Entry<? extends K, ? extends V> e : m.entrySet())
+			putVal(e.getKey(), e.getValue(), false);
+	}
+
+	public V remove(Object key) {
+		return replaceNode(key, null, null);
+	}
+
+	public boolean remove(Object key, Object value) {
+		if (key == null)
+			throw new NullPointerException();
+		return value != null && replaceNode(key, null, value) != null;
+	}
+
+	public boolean replace(K key, V oldValue, V newValue) {
+		if (key == null || oldValue == null || newValue == null)
+			throw new NullPointerException();
+		return replaceNode(key, newValue, oldValue) != null;
+	}
+
+	public V replace(K key, V value) {
+		if (key == null || value == null)
+			throw new NullPointerException();
+		return replaceNode(key, value, null);
+	}
+
+	// 删除和替换的公共实现：value为null表示删除；cv不为null时只有当前值等于cv才操作。返回旧值，没有操作返回null
+	final V replaceNode(Object key, V value, Object cv) {
+		int hash = spread(key.hashCode());
+		for (AtomicReferenceArray<Node<K, V>> tab = table;;) {
+			Node<K, V> f;
+			int i;
+			if (tab == null || (f = tab.get(i = MyHashMap.indexFor(hash, tab.length()))) == null)
+				return null;
+			if (f.hash == MOVED) {
+				tab = helpTransfer(tab, (ForwardingNode<K, V>) f);
+				continue;
+			}
+			V oldVal = null;
+			boolean validated = false;
+			synchronized (f) {
+				if (tab.get(i) == f) {
+					if (f.hash == RESERVED)
+						throw new IllegalStateException("Recursive update");
+					validated = true;
+					for (Node<K, V> e = f, pred = null; e != null; pred = e, e = e.next) {
+						K ek;
+						if (e.hash == hash && ((ek = e.key) == key || key.equals(ek))) {
+							V ev = e.val;
+							if (cv == null || cv == ev || cv.equals(ev)) {
+								oldVal = ev;
+								if (value != null)
+									e.val = value;
+								else if (pred != null)
+									pred.next = e.next;
+								else
+									tab.set(i, e.next);
+							}
+							break;
+						}
+					}
+				}
+			}
+			if (validated) {
+				if (oldVal != null && value == null)
+					addCount(-1L);
+				return oldVal;
+			}
+		}
+	}
+
+	/**
+	 * 不存在时用mappingFunction计算value放入，函数返回null时不放入。函数在桶的锁里调用，每个key最多调用一次。
+	 */
+	public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+		if (key == null || mappingFunction == null)
+			throw new NullPointerException();
+		int hash = spread(key.hashCode());
+		V val = null;
+		boolean added = false;
+		for (AtomicReferenceArray<Node<K, V>> tab = table;;) {
+			Node<K, V> f;
+			int i;
+			if (tab == null)
+				tab = initTable();
+			else if ((f = tab.get(i = MyHashMap.indexFor(hash, tab.length()))) == null) {
+				Node<K, V> r = new ReservationNode<K, V>();
+				boolean done = false, moved = false;
+				synchronized (r) {
+					if (tab.compareAndSet(i, null, r)) {
+						done = true;
+						Node<K, V> node = null;
+						try {
+							if ((val = mappingFunction.apply(key)) != null)
+								node = new Node<K, V>(hash, key, val, null);
+						} finally {
+							moved = !replaceReservation(tab, i, r, node);
+						}
+					}
+				}
+				if (done) {
+					if (moved)
+						throw new IllegalStateException("Recursive update");
+					added = val != null;
+					break;
+				}
+			} else if (f.hash == MOVED) {
+				tab = helpTransfer(tab, (ForwardingNode<K, V>) f);
+			} else {
+				boolean done = false;
+				synchronized (f) {
+					if (tab.get(i) == f) {
+						if (f.hash == RESERVED)
+							throw new IllegalStateException("Recursive update");
+						done = true;
+						for (Node<K, V> e = f;;) {
+							K ek;
+							if (e.hash == hash && ((ek = e.key) == key || key.equals(ek))) {
+								val = e.val;
+								break;
+							}
+							Node<K, V> pred = e;
+							if ((e = e.next) == null) {
+								if ((val = mappingFunction.apply(key)) != null) {
+									checkRecursiveUpdate(tab, i, f, pred, null);
+									pred.next = new Node<K, V>(hash, key, val, null);
+									added = true;
+								}
+								break;
+							}
+						}
+					}
+				}
+				if (done)
+					break;
+			}
+		}
+		if (added)
+			addCount(1L);
+		return val;
+	}
+
+	/**
+	 * 存在时用remappingFunction计算新value，返回null时删除。
+	 */
+	public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+		if (key == null || remappingFunction == null)
+			throw new NullPointerException();
+		int hash = spread(key.hashCode());
+		V val = null;
+		boolean removed = false;
+		for (AtomicReferenceArray<Node<K, V>> tab = table;;) {
+			Node<K, V> f;
+			int i;
+			if (tab == null || (f = tab.get(i = MyHashMap.indexFor(hash, tab.length()))) == null)
+				break;
+			if (f.hash == MOVED) {
+				tab = helpTransfer(tab, (ForwardingNode<K, V>) f);
+				continue;
+			}
+			boolean done = false;
+			synchronized (f) {
+				if (tab.get(i) == f) {
+					if (f.hash == RESERVED)
+						throw new IllegalStateException("Recursive update");
+					done = true;
+					for (Node<K, V> e = f, pred = null; e != null; pred = e, e = e.next) {
+						K ek;
+						if (e.hash == hash && ((ek = e.key) == key || key.equals(ek))) {
+							val = remappingFunction.apply(key, e.val);
+							checkRecursiveUpdate(tab, i, f, pred, e);
+							if (val != null)
+								e.val = val;
+							else {
+								removed = true;
+								unlink(tab, i, pred, e);
+							}
+							break;
+						}
+					}
+				}
+			}
+			if (done)
+				break;
+		}
+		if (removed)
+			addCount(-1L);
+		return val;
+	}
+
+	/**
+	 * 用remappingFunction计算新value（不存在时旧值为null），返回null时删除。
+	 */
+	public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+		if (key == null || remappingFunction == null)
+			throw new NullPointerException();
+		int hash = spread(key.hashCode());
+		V val = null;
+		int delta = 0;
+		for (AtomicReferenceArray<Node<K, V>> tab = table;;) {
+			Node<K, V> f;
+			int i;
+			if (tab == null)
+				tab = initTable();
+			else if ((f = tab.get(i = MyHashMap.indexFor(hash, tab.length()))) == null) {
+				Node<K, V> r = new ReservationNode<K, V>();
+				boolean done = false, moved = false;
+				synchronized (r) {
+					if (tab.compareAndSet(i, null, r)) {
+						done = true;
+						Node<K, V> node = null;
+						try {
+							if ((val = remappingFunction.apply(key, null)) != null)
+								node = new Node<K, V>(hash, key, val, null);
+						} finally {
+							moved = !replaceReservation(tab, i, r, node);
+						}
+					}
+				}
+				if (done) {
+					if (moved)
+						throw new IllegalStateException("Recursive update");
+					if (val != null)
+						delta = 1;
+					break;
+				}
+			} else if (f.hash == MOVED) {
+				tab = helpTransfer(tab, (ForwardingNode<K, V>) f);
+			} else {
+				boolean done = false;
+				synchronized (f) {
+					if (tab.get(i) == f) {
+						if (f.hash == RESERVED)
+							throw new IllegalStateException("Recursive update");
+						done = true;
+						for (Node<K, V> e = f, pred = null;; pred = e, e = e.next) {
+							if (e == null) {// 不存在，挂在链表尾
+								if ((val = remappingFunction.apply(key, null)) != null) {
+									checkRecursiveUpdate(tab, i, f, pred, null);
+									delta = 1;
+									pred.next = new Node<K, V>(hash, key, val, null);
+								}
+								break;
+							}
+							K ek;
+							if (e.hash == hash && ((ek = e.key) == key || key.equals(ek))) {
+								val = remappingFunction.apply(key, e.val);
+								checkRecursiveUpdate(tab, i, f, pred, e);
+								if (val != null)
+									e.val = val;
+								else {
+									delta = -1;
+									unlink(tab, i, pred, e);
+								}
+								break;
+							}
+						}
+					}
+				}
+				if (done)
+					break;
+			}
+		}
+		if (delta != 0)
+			addCount(delta);
+		return val;
+	}
+
+	/**
+	 * 不存在时放入value，存在时用remappingFunction合并旧值和value，返回null时删除。
+	 */
+	public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+		if (key == null || value == null || remappingFunction == null)
+			throw new NullPointerException();
+		int hash = spread(key.hashCode());
+		V val = null;
+		int delta = 0;
+		for (AtomicReferenceArray<Node<K, V>> tab = table;;) {
+			Node<K, V> f;
+			int i;
+			if (tab == null)
+				tab = initTable();
+			else if ((f = tab.get(i = MyHashMap.indexFor(hash, tab.length()))) == null) {
+				// 空桶不需要调用函数，和putVal一样直接CAS
+				if (tab.compareAndSet(i, null, new Node<K, V>(hash, key, value, null))) {
+					delta = 1;
+					val = value;
+					break;
+				}
+			} else if (f.hash == MOVED) {
+				tab = helpTransfer(tab, (ForwardingNode<K, V>) f);
+			} else {
+				boolean done = false;
+				synchronized (f) {
+					if (tab.get(i) == f) {
+						if (f.hash == RESERVED)
+							throw new IllegalStateException("Recursive update");
+						done = true;
+						for (Node<K, V> e = f, pred = null;; pred = e, e = e.next) {
+							if (e == null) {
+								delta = 1;
+								val = value;
+								pred.next = new Node<K, V>(hash, key, val, null);
+								break;
+							}
+							K ek;
+							if (e.hash == hash && ((ek = e.key) == key || key.equals(ek))) {
+								val = remappingFunction.apply(e.val, value);
+								checkRecursiveUpdate(tab, i, f, pred, e);
+								if (val != null)
+									e.val = val;
+								else {
+									delta = -1;
+									unlink(tab, i, pred, e);
+								}
+								break;
+							}
+						}
+					}
+				}
+				if (done)
+					break;
+			}
+		}
+		if (delta != 0)
+			addCount(delta);
+		return val;
+	}
+
+	// 从桶i的链表上摘下e，pred为null表示e是头节点。调用者持有头节点的锁
+	private static <K, V> void unlink(AtomicReferenceArray<Node<K, V>> tab, int i, Node<K, V> pred, Node<K, V> e) {
+		if (pred != null)
+			pred.next = e.next;
+		else
+			tab.set(i, e.next);
+	}
+
+	/**
+	 * 函数返回后把占位节点换成node，返回false表示占位节点已经不在桶里了，调用者抛Recursive update。
+	 * 其他线程都会在r的锁上等待，只有函数自己（同一个线程，锁可重入）能把它拿走：clear，或者引起扩容由transfer当作空桶搬走，
+	 * 这时桶里已经是null或者转发节点，不能覆盖。
+	 */
+	private static <K, V> boolean replaceReservation(AtomicReferenceArray<Node<K, V>> tab, int i, Node<K, V> r,
+			Node<K, V> node) {
+		if (tab.get(i) != r)
+			return false;
+		tab.set(i, node);
+		return true;
+	}
+
+	/**
+	 * compute类方法在桶的锁里调用完函数之后检查：函数在同一个线程里修改了这个map（锁可重入，挡不住），
+	 * 把这个桶搬到了新数组（引起扩容）、换掉了头节点，或者在pred后面插入、删除了节点，原来找到的位置已经不可信，
+	 * 这时抛IllegalStateException，而不是把修改写到已经搬走的旧链表上丢掉。e为null表示要挂在pred后面。
+	 */
+	private static <K, V> void checkRecursiveUpdate(AtomicReferenceArray<Node<K, V>> tab, int i, Node<K, V> f,
+			Node<K, V> pred, Node<K, V> e) {
+		if (tab.get(i) != f || (pred != null && pred.next != e))
+			throw new IllegalStateException("Recursive update");
+	}
+
+
+	public void clear() {
+		long delta = 0L;
+		AtomicReferenceArray<Node<K, V>> tab = table;
+		for (int i = 0; tab != null && i < tab.length();) {
+			Node<K, V> f = tab.get(i);
+			if (f == null)
+				++i;
+			else if (f.hash == MOVED) {
+				tab = helpTransfer(tab, (ForwardingNode<K, V>) f);
+				i = 0;// 换到新数组上从头清理
+			} else {
+				synchronized (f) {
+					if (tab.get(i) == f) {
+						for (Node<K, V> p = f.hash == RESERVED ? null : f; p != null; p = p.next)// 占位节点不是元素
+							--delta;
+						tab.set(i++, null);
+					}
+				}
+			}
+		}
+		if (delta != 0L)
+			addCount(delta);
+	}
+
+	// 第一次put时分配table，只有把sizeCtl从非负CAS成-1的线程负责分配，其他线程让出cpu等待
+	private AtomicReferenceArray<Node<K, V>> initTable() {
+		AtomicReferenceArray<Node<K, V>> tab;
+		int sc;
+		while ((tab = table) == null) {
+			if ((sc = sizeCtl) < 0)
+				Thread.yield();
+			else if (SIZECTL.compareAndSet(this, sc, -1)) {
+				try {
+					if ((tab = table) == null) {
+						int n = (sc > 0) ? sc : DEFAULT_CAPACITY;
+						table = tab = new AtomicReferenceArray<Node<K, V>>(n);
+						sc = n - (n >>> 2);// 0.75n
+					}
+				} finally {
+					sizeCtl = sc;
+				}
+				break;
+			}
+		}
+		return tab;
+	}
+
+	// 计数，增加元素后检查是否需要扩容：没有在扩容就发起扩容，已经在扩容就加入进去帮忙
+	private void addCount(long x) {
+		count.add(x);
+		if (x <= 0L)
+			return;
+		AtomicReferenceArray<Node<K, V>> tab, nt;
+		int n, sc;
+		long s = count.sum();
+		while (s >= (long) (sc = sizeCtl) && (tab = table) != null && (n = tab.length()) < MAXIMUM_CAPACITY) {
+			int rs = resizeStamp(n);
+			if (sc < 0) {
+				// 不是这一轮扩容、已经在收尾、帮忙的线程太多或者已经没有可以领取的桶，就不参与了
+				if ((sc >>> RESIZE_STAMP_SHIFT) != rs || sc == (rs << RESIZE_STAMP_SHIFT) + 1
+						|| sc == (rs << RESIZE_STAMP_SHIFT) + MAX_RESIZERS || (nt = nextTable) == null
+						|| transferIndex <= 0)
+					break;
+				if (SIZECTL.compareAndSet(this, sc, sc + 1))
+					transfer(tab, nt);
+			} else if (SIZECTL.compareAndSet(this, sc, (rs << RESIZE_STAMP_SHIFT) + 2))
+				transfer(tab, null);// 第一个发起扩容的线程，sizeCtl低16位为2表示一个线程
+			s = count.sum();
+		}
+	}
+
+	// 写操作遇到转发节点：扩容还在进行就先帮忙搬运，然后到新数组上继续操作
+	final AtomicReferenceArray<Node<K, V>> helpTransfer(AtomicReferenceArray<Node<K, V>> tab, ForwardingNode<K, V> f) {
+		AtomicReferenceArray<Node<K, V>> nextTab = f.nextTable;
+		int sc;
+		if (tab != null && nextTab != null) {
+			int rs = resizeStamp(tab.length());
+			while (nextTab == nextTable && table == tab && (sc = sizeCtl) < 0) {
+				if ((sc >>> RESIZE_STAMP_SHIFT) != rs || sc == (rs << RESIZE_STAMP_SHIFT) + 1
+						|| sc == (rs << RESIZE_STAMP_SHIFT) + MAX_RESIZERS || transferIndex <= 0)
+					break;
+				if (SIZECTL.compareAndSet(this, sc, sc + 1)) {
+					transfer(tab, nextTab);
+					break;
+				}
+			}
+		}
+		return nextTab;
+	}
+
+	// 扩容：旧数组从后往前按stride切段，每个参与的线程通过CAS transferIndex领取一段[bound, i]，逐个桶搬到两倍大小的新数组，
+	// 搬完的桶放转发节点，领不到新段时退出并把sizeCtl减1，最后一个退出的线程再检查一遍所有桶，然后切换table。
+	// 读线程可能正在遍历旧链表，所以不能修改旧节点的next：链表尾部落在同一个新桶的一段（lastRun）直接复用，前面的节点复制
+	private void transfer(AtomicReferenceArray<Node<K, V>> tab, AtomicReferenceArray<Node<K, V>> nextTab) {
+		int n = tab.length(), stride;
+		if ((stride = (NCPU > 1) ? (n >>> 3) / NCPU : n) < MIN_TRANSFER_STRIDE)
+			stride = MIN_TRANSFER_STRIDE;
+		if (nextTab == null) {// 发起扩容的线程负责分配新数组
+			nextTab = new AtomicReferenceArray<Node<K, V>>(n << 1);
+			nextTable = nextTab;
+			transferIndex = n;
+		}
+		int nextn = nextTab.length();
+		ForwardingNode<K, V> fwd = new ForwardingNode<K, V>(nextTab);
+		boolean advance = true;
+		boolean finishing = false;
+		for (int i = 0, bound = 0;;) {
+			Node<K, V> f;
+			// 领取下一个要处理的桶：当前段没处理完就i--，处理完了就去领新的一段
+			while (advance) {
+				int nextIndex, nextBound;
+				if (--i >= bound || finishing)
+					advance = false;
+				else if ((nextIndex = transferIndex) <= 0) {
+					i = -1;
+					advance = false;
+				} else if (TRANSFERINDEX.compareAndSet(this, nextIndex,
+						nextBound = (nextIndex > stride ? nextIndex - stride : 0))) {
+					bound = nextBound;
+					i = nextIndex - 1;
+					advance = false;
+				}
+			}
+			if (i < 0 || i >= n || i + n >= nextn) {
+				int sc;
+				if (finishing) {
+					nextTable = null;
+					table = nextTab;
+					sizeCtl = (n << 1) - (n >>> 1);// 0.75 * 2n
+					return;
+				}
+				if (SIZECTL.compareAndSet(this, sc = sizeCtl, sc - 1)) {
+					if ((sc - 2) != resizeStamp(n) << RESIZE_STAMP_SHIFT)
+						return;// 不是最后一个退出的线程
+					finishing = advance = true;
+					i = n;// 最后一个线程提交前再从头检查一遍
+				}
+			} else if ((f = tab.get(i)) == null)
+				advance = tab.compareAndSet(i, null, fwd);
+			else if (f.hash == MOVED)
+				advance = true;// 已经处理过了
+			else {
+				synchronized (f) {
+					if (tab.get(i) == f) {
+						// 占位节点只可能是本线程的compute类方法放的（函数里修改map引起了扩容），当作空桶搬走，
+						// compute在函数返回后发现占位节点不在了，抛Recursive update，扩容照常完成
+						if (f.hash != RESERVED)
+							splitBin(f, nextTab, i, n);
+						tab.set(i, fwd);
+						advance = true;
+					}
+				}
+			}
+		}
+	}
+
+	// 把以f为头的旧桶i拆成新数组的i和i+n两个桶，调用者持有f的锁
+	static <K, V> void splitBin(Node<K, V> f, AtomicReferenceArray<Node<K, V>> nextTab, int i, int n) {
+		int runBit = f.hash & n;
+		Node<K, V> lastRun = f;
+		for (Node<K, V> p = f.next; p != null; p = p.next) {
+			int b = p.hash & n;
+			if (b != runBit) {
+				runBit = b;
+				lastRun = p;
+			}
+		}
+		Node<K, V> ln = null, hn = null;
+		if (runBit == 0)
+			ln = lastRun;
+		else
+			hn = lastRun;
+		for (Node<K, V> p = f; p != lastRun; p = p.next) {
+			if ((p.hash & n) == 0)
+				ln = new Node<K, V>(p.hash, p.key, p.val, ln);
+			else
+				hn = new Node<K, V>(p.hash, p.key, p.val, hn);
+		}
+		nextTab.set(i, ln);
+		nextTab.set(i + n, hn);
+	}
+
+	// 弱一致的遍历器：遇到转发节点时先遍历新数组中对应的两个桶（i和i+n），再回到旧数组继续。与jdk1.8的Traverser相同
+	static class Traverser<K, V> {
+		AtomicReferenceArray<Node<K, V>> tab;
+		Node<K, V> next;
+		TableStack<K, V> stack, spare;
+		int index, baseIndex;
+		final int baseLimit, baseSize;
+
+		Traverser(AtomicReferenceArray<Node<K, V>> tab) {
+			this.tab = tab;
+			this.baseSize = this.baseLimit = tab == null ? 0 : tab.length();
+		}
+
+		final Node<K, V> advance() {
+			Node<K, V> e;
+			if ((e = next) != null)
+				e = e.next;
+			for (;;) {
+				AtomicReferenceArray<Node<K, V>> t;
+				int i, n;
+				if (e != null)
+					return next = e;
+				if (baseIndex >= baseLimit || (t = tab) == null || (n = t.length()) <= (i = index) || i < 0)
+					return next = null;
+				if ((e = t.get(i)) != null && e.hash < 0) {
+					if (e.hash == MOVED) {
+						tab = ((ForwardingNode<K, V>) e).nextTable;
+						e = null;
+						pushState(t, i, n);
+						continue;
+					}
+					e = null;// 占位节点，函数还没有返回
+				}
+				if (stack != null)
+					recoverState(n);
+				else if ((index = i + baseSize) >= n)
+					index = ++baseIndex;
+			}
+		}
+
+		private void pushState(AtomicReferenceArray<Node<K, V>> t, int i, int n) {
+			TableStack<K, V> s = spare;
+			if (s != null)
+				spare = s.next;
+			else
+				s = new TableStack<K, V>();
+			s.tab = t;
+			s.length = n;
+			s.index = i;
+			s.next = stack;
+			stack = s;
+		}
+
+		private void recoverState(int n) {
+			TableStack<K, V> s;
+			int len;
+			while ((s = stack) != null && (index += (len = s.length)) >= n) {
+				n = len;
+				index = s.index;
+				tab = s.tab;
+				s.tab = null;
+				TableStack<K, V> next = s.next;
+				s.next = spare;
+				stack = next;
+				spare = s;
+			}
+			if (s == null && (index += baseSize) >= n)
+				index = ++baseIndex;
+		}
+	}
+
+	static final class TableStack<K, V> {
+		int length;
+		int index;
+		AtomicReferenceArray<Node<K, V>> tab;
+		TableStack<K, V> next;
+	}
+
+	private final class EntryIterator extends Traverser<K, V> implements Iterator<Map.Entry<K, V>> {
+		Node<K, V> lastReturned;
+
+		EntryIterator() {
+			super(table);
+			advance();
+		}
+
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		public Map.Entry<K, V> next() {
+			Node<K, V> p = next;
+			if (p == null)
+				throw new NoSuchElementException();
+			lastReturned = p;
+			advance();
+			return new WriteThroughEntry(p.key, p.val);
+		}
+
+		public void remove() {
+			Node<K, V> p = lastReturned;
+			if (p == null)
+				throw new IllegalStateException();
+			lastReturned = null;
+			ConcurrentMyHashMap.this.remove(p.key);
+		}
+	}
+
+	// 迭代器返回的entry，setValue写回map
+	private final class WriteThroughEntry extends SimpleEntry<K, V> {
+		private static final long serialVersionUID = 7249069246763182397L;
+
+		WriteThroughEntry(K key, V value) {
+			super(key, value);
+		}
+
+		public V setValue(V value) {
+			if (value == null)
+				throw new NullPointerException();
+			put(getKey(), value);
+			return super.setValue(value);
+		}
+	}
+
+	// Views
+
+	private transient Set<Map.Entry<K, V>> entrySet;
+
+	public Set<Map.Entry<K, V>> entrySet() {
+		Set<Map.Entry<K, V>> es = entrySet;
+		return es != null ? es : (entrySet = new EntrySet());
+	}
+
+	private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+		public Iterator<Map.Entry<K, V>> iterator() {
+			return new EntryIterator();
+		}
+
+		public boolean contains(Object o) {
+			Object k, v, r;
+			Map.Entry<?, ?> e;
+			return ((o instanceof Map.Entry) && (k = (e = (Map.Entry<?, ?>) o).getKey()) != null
+					&& (r = get(k)) != null && (v = e.getValue()) != null && (v == r || v.equals(r)));
+		}
+
+		public boolean remove(Object o) {
+			Object k, v;
+			Map.Entry<?, ?> e;
+			return ((o instanceof Map.Entry) && (k = (e = (Map.Entry<?, ?>) o).getKey()) != null
+					&& (v = e.getValue()) != null && ConcurrentMyHashMap.this.remove(k, v));
+		}
+
+		public int size() {
+			return ConcurrentMyHashMap.this.size();
+		}
+
+		public void clear() {
+			ConcurrentMyHashMap.this.clear();
+		}
+	}
+
+	// 序列化：依次写出key、value，最后写两个null作为结束标记（遍历时大小可能在变化，不能先写size）
+	private void writeObject(java.io.ObjectOutputStream s) throws IOException {
+		s.defaultWriteObject();
+		AtomicReferenceArray<Node<K, V>> tab = table;
+		if (tab != null) {
+			Traverser<K, V> it = new Traverser<K, V>(tab);
+			for (Node<K, V> p; (p = it.advance()) != null;) {
+				s.writeObject(p.key);
+				s.writeObject(p.val);
+			}
+		}
+		s.writeObject(null);
+		s.writeObject(null);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void readObject(java.io.ObjectInputStream s) throws IOException, ClassNotFoundException {
+		s.defaultReadObject();
+		count = new LongAdder();
+		for (;;) {
+			K k = (K) s.readObject();
+			V v = (V) s.readObject();
+			if (k == null)
+				break;
+			putVal(k, v, false);
+		}
+	}
+
+}
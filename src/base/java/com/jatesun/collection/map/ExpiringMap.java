@@ -0,0 +1,340 @@
+package com.jatesun.collection.map;
+
+import java.io.IOException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ *
+ * @author jatesun
+ * @description 带过期时间的MyLinkedHashMap（插入顺序）。expireAfterWrite：写入（put、替换value）之后经过这么久过期；
+ *              expireAfterAccess：最后一次读或写之后经过这么久过期；两个都设置时先到的为准，NEVER表示不限制。
+ *              put(key, value, duration, unit)可以给单个entry指定写入后的过期时间，代替expireAfterWrite。
+ *              removeEldestEntry只能看到最老的entry，而且过期时间不一样时最老的不一定最先过期；这里每个entry按过期时间放进TimerWheel，
+ *              时间推进时只处理到期的桶，放入、删除、回收都是均摊O(1)，不需要扫描整个map。
+ *              过期的entry对get、containsKey、getOrDefault不可见，put、compute等写操作也把它当作不存在；
+ *              真正删除发生在新增entry（addEntry）或调用cleanUp时，也可以用scheduleCleanUp让后台线程定期清理。
+ *              时间轮按桶回收，过期的entry最晚要等所在的桶被处理（不超过所在层一个桶的跨度）才删除，
+ *              在这之前size()、迭代器、containsValue仍然包含它。
+ *              时间来自ticker（默认System.nanoTime），测试时可以换成手动推进的时钟。不是线程安全的。
+ * @question
+ * 		·为什么过期要惰性删除，而不是每个entry一个定时任务？
+ * 		·expireAfterAccess的entry每次读都要换桶，为什么代价仍然是O(1)？
+ * 		·System.currentTimeMillis和System.nanoTime用来计算过期有什么区别？
+ * @date 2026年10月18日
+ * @param <K>
+ * @param <V>
+ */
+public class ExpiringMap<K, V> extends MyLinkedHashMap<K, V> {
+
+	private static final long serialVersionUID = -5036215842361880463L;
+
+	public static final long NEVER = Long.MAX_VALUE;// 不过期
+
+	private static final long MAX_DURATION = Long.MAX_VALUE >>> 2;// 超过这个（约36年）按不过期处理，时间相加不会溢出
+
+	private final long expireAfterWriteNanos;
+
+	private final long expireAfterAccessNanos;
+
+	private transient LongSupplier ticker;// 反序列化之后是System.nanoTime
+
+	private transient long origin;// ticker的起点，内部时间都是相对它的非负值
+
+	private transient TimerWheel<K, V> wheel;
+
+	private transient long expiredCount;
+
+	/**
+	 * @param initialCapacity 初始容量
+	 * @param expireAfterWrite 写入之后的过期时间，NEVER表示不过期
+	 * @param expireAfterAccess 最后一次访问之后的过期时间，NEVER表示不过期
+	 * @param unit 时间单位
+	 * @param ticker 纳秒时钟
+	 */
+	public ExpiringMap(int initialCapacity, long expireAfterWrite, long expireAfterAccess, TimeUnit unit,
+			LongSupplier ticker) {
+		super(initialCapacity, DEFAULT_LOAD_FACTOR, false);
+		if (expireAfterWrite < 0)
+			throw new IllegalArgumentException("Illegal expireAfterWrite: " + expireAfterWrite);
+		if (expireAfterAccess < 0)
+			throw new IllegalArgumentException("Illegal expireAfterAccess: " + expireAfterAccess);
+		if (unit == null || ticker == null)
+			throw new NullPointerException();
+		expireAfterWriteNanos = toNanos(expireAfterWrite, unit);
+		expireAfterAccessNanos = toNanos(expireAfterAccess, unit);
+		this.ticker = ticker;
+		origin = ticker.getAsLong();
+		wheel.nanos = 0;
+	}
+
+	public ExpiringMap(long expireAfterWrite, long expireAfterAccess, TimeUnit unit) {
+		this(DEFAULT_INITIAL_CAPACITY, expireAfterWrite, expireAfterAccess, unit, System::nanoTime);
+	}
+
+	// 父类构造方法、clone、readObject都会调用，ticker为null说明在构造方法或反序列化中，由调用方设置时间
+	void init() {
+		super.init();
+		wheel = new TimerWheel<K, V>(this);
+		if (ticker != null)
+			wheel.nanos = now();
+		expiredCount = 0;
+	}
+
+	private static long toNanos(long duration, TimeUnit unit) {
+		if (duration == NEVER)
+			return NEVER;
+		long nanos = unit.toNanos(duration);
+		return nanos > MAX_DURATION ? NEVER : nanos;
+	}
+
+	private static long deadline(long now, long duration) {
+		return duration == NEVER ? NEVER : now + duration;
+	}
+
+	private long now() {
+		return ticker.getAsLong() - origin;
+	}
+
+	static final class Node<K, V> extends MyLinkedHashMap.Entry<K, V> {
+		long writeExpireTime = NEVER, accessExpireTime = NEVER;
+
+		long expireTime = NEVER;// 上面两个里早的，TimerWheel按它放桶
+
+		Node<K, V> prevInWheel, nextInWheel;// 所在桶的链表，不在时间轮里时为null
+
+		Node(int hash, K key, V value, MyHashMap.Entry<K, V> next) {
+			super(hash, key, value, next);
+		}
+
+		void recordAccess(MyHashMap<K, V> m) {
+			super.recordAccess(m);
+			((ExpiringMap<K, V>) m).onAccess(this);
+		}
+
+		void recordRemoval(MyHashMap<K, V> m) {
+			super.recordRemoval(m);
+			((ExpiringMap<K, V>) m).wheel.deschedule(this);
+		}
+	}
+
+	// 两个过期时间变化后重新放桶，不过期的不放进时间轮
+	private void updateExpireTime(Node<K, V> n) {
+		n.expireTime = Math.min(n.writeExpireTime, n.accessExpireTime);
+		if (n.expireTime == NEVER)
+			wheel.deschedule(n);
+		else
+			wheel.schedule(n);
+	}
+
+	private boolean isExpired(Node<K, V> n) {
+		return n.expireTime != NEVER && n.expireTime <= now();
+	}
+
+	MyLinkedHashMap.Entry<K, V> newEntry(int hash, K key, V value, MyHashMap.Entry<K, V> next) {
+		Node<K, V> n = new Node<K, V>(hash, key, value, next);
+		if (ticker != null) {// 反序列化时由readObject统一计算
+			long now = now();
+			n.writeExpireTime = deadline(now, expireAfterWriteNanos);
+			n.accessExpireTime = deadline(now, expireAfterAccessNanos);
+			updateExpireTime(n);
+		}
+		return n;
+	}
+
+	// 替换value算一次写入，之后put会调用recordAccess更新访问时间
+	void replaceValue(int i, MyHashMap.Entry<K, V> e, V value) {
+		super.replaceValue(i, e, value);
+		Node<K, V> n = (Node<K, V>) e;
+		n.writeExpireTime = deadline(now(), expireAfterWriteNanos);
+		updateExpireTime(n);
+	}
+
+	void onAccess(Node<K, V> n) {
+		if (expireAfterAccessNanos != NEVER) {
+			n.accessExpireTime = now() + expireAfterAccessNanos;
+			updateExpireTime(n);
+		}
+	}
+
+	// 新增entry之后顺便回收过期的entry，再按父类的规则处理removeEldestEntry和扩容
+	void addEntry(int hash, K key, V value, int bucketIndex) {
+		createEntry(hash, key, value, bucketIndex);
+		wheel.advance(now());
+		Entry<K, V> eldest = header.after;
+		if (eldest != header && removeEldestEntry(eldest)) {
+			removeEntryForKey(eldest.key);
+		} else {
+			if (size >= threshold)
+				resize(2 * table.length);
+		}
+	}
+
+	// TimerWheel发现到期时调用
+	void expire(Node<K, V> n) {
+		removeEntryForKey(n.key);
+		expiredCount++;
+	}
+
+	// 没有过期的entry，过期或不存在时返回null
+	private Node<K, V> liveEntry(Object key) {
+		Node<K, V> n = (Node<K, V>) getEntry(key);
+		return n == null || isExpired(n) ? null : n;
+	}
+
+	// 写操作之前先删掉已经过期的entry（桶还没有被处理），返回值、compute的旧值都按不存在处理
+	private void expireIfNeeded(Object key) {
+		Node<K, V> n = (Node<K, V>) getEntry(key);
+		if (n != null && isExpired(n))
+			expire(n);
+	}
+
+	/**
+	 * 推进时间轮，删除所在的桶已经到期的entry。只读不写的时候不会自动回收，可以定期调用，或者用scheduleCleanUp。
+	 */
+	public void cleanUp() {
+		wheel.advance(now());
+	}
+
+	/**
+	 * 在executor里每隔period调用一次cleanUp，返回的ScheduledFuture用来取消。
+	 * 清理时对map加锁（synchronized(map)），这时所有其他访问也必须在synchronized(map)里进行。
+	 */
+	public ScheduledFuture<?> scheduleCleanUp(ScheduledExecutorService executor, long period, TimeUnit unit) {
+		return executor.scheduleWithFixedDelay(() -> {
+			synchronized (ExpiringMap.this) {
+				cleanUp();
+			}
+		}, period, period, unit);
+	}
+
+	public V get(Object key) {
+		Node<K, V> n = liveEntry(key);
+		recordGet(n != null);
+		if (n == null)
+			return null;
+		n.recordAccess(this);
+		return n.value;
+	}
+
+	public V getOrDefault(Object key, V defaultValue) {
+		Node<K, V> n = liveEntry(key);
+		recordGet(n != null);
+		if (n == null)
+			return defaultValue;
+		n.recordAccess(this);
+		return n.value;
+	}
+
+	public boolean containsKey(Object key) {
+		return liveEntry(key) != null;
+	}
+
+	public V put(K key, V value) {
+		expireIfNeeded(key);
+		return super.put(key, value);
+	}
+
+	/**
+	 * 放入并指定这个entry写入之后的过期时间（代替expireAfterWrite，expireAfterAccess仍然有效），NEVER表示不按写入时间过期。
+	 * 之后用put替换value时恢复为expireAfterWrite。
+	 */
+	public V put(K key, V value, long duration, TimeUnit unit) {
+		if (duration < 0)
+			throw new IllegalArgumentException("Illegal duration: " + duration);
+		long nanos = toNanos(duration, unit);
+		V old = put(key, value);
+		Node<K, V> n = (Node<K, V>) getEntry(key);
+		if (n != null) {// removeEldestEntry可能已经把它删了
+			n.writeExpireTime = deadline(now(), nanos);
+			updateExpireTime(n);
+		}
+		return old;
+	}
+
+	public V putIfAbsent(K key, V value) {
+		expireIfNeeded(key);
+		return super.putIfAbsent(key, value);
+	}
+
+	public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+		expireIfNeeded(key);
+		return super.computeIfAbsent(key, mappingFunction);
+	}
+
+	public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+		expireIfNeeded(key);
+		return super.computeIfPresent(key, remappingFunction);
+	}
+
+	public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+		expireIfNeeded(key);
+		return super.compute(key, remappingFunction);
+	}
+
+	public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+		expireIfNeeded(key);
+		return super.merge(key, value, remappingFunction);
+	}
+
+	public V remove(Object key) {
+		expireIfNeeded(key);
+		return super.remove(key);
+	}
+
+	public void clear() {
+		super.clear();
+		wheel.clear();
+	}
+
+	// bulkLoad按链表顺序复制，新entry的过期时间是按现在算的，这里换回原来的。
+	// 已经过期（只是所在的桶还没处理）的entry不复制：按过去的时间放桶会落进时间轮已经走过的桶，要等时间轮转一圈才会回收
+	@SuppressWarnings("unchecked")
+	public Object clone() {
+		ExpiringMap<K, V> result = (ExpiringMap<K, V>) super.clone();
+		long now = now();
+		for (Entry<K, V> a = header.after, b = result.header.after; a != header; a = a.after) {
+			Node<K, V> from = (Node<K, V>) a, to = (Node<K, V>) b;
+			b = b.after;// to可能被删除，先取下一个
+			if (from.expireTime != NEVER && from.expireTime <= now) {
+				result.removeEntryForKey(to.key);
+				continue;
+			}
+			to.writeExpireTime = from.writeExpireTime;
+			to.accessExpireTime = from.accessExpireTime;
+			result.updateExpireTime(to);
+		}
+		return result;
+	}
+
+	public long expireAfterWrite(TimeUnit unit) {
+		return expireAfterWriteNanos == NEVER ? NEVER : unit.convert(expireAfterWriteNanos, TimeUnit.NANOSECONDS);
+	}
+
+	public long expireAfterAccess(TimeUnit unit) {
+		return expireAfterAccessNanos == NEVER ? NEVER : unit.convert(expireAfterAccessNanos, TimeUnit.NANOSECONDS);
+	}
+
+	// 已经因为过期删除的entry数
+	public long expiredCount() {
+		return expiredCount;
+	}
+
+	// ticker不序列化，另一个jvm里nanoTime的起点也不一样，反序列化出来的entry全部从现在重新计时
+	private void readObject(java.io.ObjectInputStream s) throws IOException, ClassNotFoundException {
+		s.defaultReadObject();
+		ticker = System::nanoTime;
+		origin = ticker.getAsLong();
+		wheel.nanos = 0;
+		for (Entry<K, V> e = header.after; e != header; e = e.after) {
+			Node<K, V> n = (Node<K, V>) e;
+			n.writeExpireTime = deadline(0, expireAfterWriteNanos);
+			n.accessExpireTime = deadline(0, expireAfterAccessNanos);
+			updateExpireTime(n);
+		}
+	}
+}
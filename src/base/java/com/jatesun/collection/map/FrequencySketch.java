@@ -0,0 +1,106 @@
+package com.jatesun.collection.map;
+
+import java.util.Arrays;
+
+/**
+ *
+ * @author jatesun
+ * @description 估计key最近出现次数的Count-Min sketch，TinyLfuCache用它决定新元素能不能挤掉旧元素。
+ *              每个计数器只有4位（最大15），一个long存16个计数器；每个key在4行里各对应一个计数器，
+ *              估计值取4个计数器的最小值（冲突只会让计数偏大，取最小值误差最小）。4行共用一个数组，只是下标用不同的种子散列。
+ *              计数累计到sampleSize（最大容量的10倍）次时所有计数器减半（老化），很久以前的热点会慢慢冷下来。
+ * @question
+ * 		·Count-Min sketch为什么只会高估不会低估？
+ * 		·为什么计数器4位就够了？（只需要比较相对大小，而且有老化）
+ * @date 2026年10月18日
+ */
+final class FrequencySketch implements Cloneable {
+
+	// 4行各自的散列种子
+	private static final long[] SEED = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+			0xcbf29ce484222325L };
+
+	private static final long RESET_MASK = 0x7777777777777777L;// 每个计数器右移一位后去掉从高位移进来的位
+
+	private static final long ONE_MASK = 0x1111111111111111L;// 每个计数器的最低位
+
+	private long[] table;
+
+	private final int tableMask;
+
+	private final int sampleSize;
+
+	private int size;// 上次老化以来累计的次数
+
+	FrequencySketch(long maximumSize) {
+		int n = (int) Math.min(Math.max(maximumSize, 1), 1 << 30);
+		table = new long[ConcurrentMyHashMap.tableSizeFor(n)];
+		tableMask = table.length - 1;
+		sampleSize = (int) Math.min(10L * n, Integer.MAX_VALUE);
+	}
+
+	// 第i行对应的下标
+	private int indexOf(int hash, int i) {
+		long h = (hash + SEED[i]) * SEED[i];
+		h += h >>> 32;
+		return ((int) h) & tableMask;
+	}
+
+	// 计数加1，老化时所有计数器减半
+	void increment(int hash) {
+		int start = (hash & 3) << 2;// 在long的4组计数器里选一组
+		boolean added = false;
+		for (int i = 0; i < 4; i++)
+			added |= incrementAt(indexOf(hash, i), start + i);
+		if (added && ++size == sampleSize)
+			reset();
+	}
+
+	// 第j个计数器没有到15时加1
+	private boolean incrementAt(int i, int j) {
+		int offset = j << 2;
+		long mask = 0xfL << offset;
+		if ((table[i] & mask) != mask) {
+			table[i] += 1L << offset;
+			return true;
+		}
+		return false;
+	}
+
+	// 估计的次数，0到15
+	int frequency(int hash) {
+		int start = (hash & 3) << 2;
+		int frequency = Integer.MAX_VALUE;
+		for (int i = 0; i < 4; i++) {
+			int offset = (start + i) << 2;
+			int count = (int) ((table[indexOf(hash, i)] >>> offset) & 0xfL);
+			frequency = Math.min(frequency, count);
+		}
+		return frequency;
+	}
+
+	// 老化：所有计数器减半。奇数减半时丢掉的0.5按总数的1/4估计，从size里扣掉
+	private void reset() {
+		int odd = 0;
+		for (int i = 0; i < table.length; i++) {
+			odd += Long.bitCount(table[i] & ONE_MASK);
+			table[i] = (table[i] >>> 1) & RESET_MASK;
+		}
+		size = (size >>> 1) - (odd >>> 2);
+	}
+
+	void clear() {
+		Arrays.fill(table, 0L);
+		size = 0;
+	}
+
+	public FrequencySketch clone() {
+		try {
+			FrequencySketch s = (FrequencySketch) super.clone();
+			s.table = table.clone();
+			return s;
+		} catch (CloneNotSupportedException e) {
+			throw new InternalError(e);
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package com.jatesun.collection.map;
+
+/**
+ *
+ * @author jatesun
+ * @description 散列表的健康状况快照，由MyHashMap.stats()、MyHashTable.stats()生成，生成后不再变化。
+ *              ·桶的情况（链表长度分布、最长链表、树化的桶）在调用stats()时扫描一遍数组得到，不需要打开统计。
+ *              ·get命中/未命中次数、扩容次数和耗时是运行时累计的计数器，只有enableStats之后才会记录，否则都是0。
+ *              用法：链表普遍偏长说明hashCode分布差或者loadFactor太大；扩容次数多说明初始容量给小了。
+ * @question
+ * 		·链表长度分布和loadFactor有什么关系？（理想散列下长度服从泊松分布）
+ * 		·平均探查长度怎么从链表长度分布算出来？
+ * @date 2026年10月18日
+ */
+public final class HashStats {
+
+	static final int HISTOGRAM_SIZE = 17;// 链表长度分布的最后一格统计长度>=16的桶
+
+	private final int capacity;
+
+	private final int size;
+
+	private final int[] chainLengths;
+
+	private final int maxChainLength;
+
+	private final int treeBins;
+
+	private final long probeTotal;
+
+	private final long hits, misses, resizes, resizeNanos;
+
+	HashStats(int capacity, int size, int[] chainLengths, int maxChainLength, int treeBins, long probeTotal,
+			Counter counter) {
+		this.capacity = capacity;
+		this.size = size;
+		this.chainLengths = chainLengths;
+		this.maxChainLength = maxChainLength;
+		this.treeBins = treeBins;
+		this.probeTotal = probeTotal;
+		if (counter != null) {
+			hits = counter.hits;
+			misses = counter.misses;
+			resizes = counter.resizes;
+			resizeNanos = counter.resizeNanos;
+		} else {
+			hits = misses = resizes = resizeNanos = 0;
+		}
+	}
+
+	// 把长度为len的链表记进分布
+	static void addChain(int[] chainLengths, int len) {
+		chainLengths[Math.min(len, HISTOGRAM_SIZE - 1)]++;
+	}
+
+	// 长度为len的链表里第i个元素要比较i次，合计len(len+1)/2
+	static long probes(int len) {
+		return (long) len * (len + 1) / 2;
+	}
+
+	public int capacity() {
+		return capacity;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	// 下标i是长度为i的链表（桶）个数，最后一格是长度>=16的桶个数
+	public int[] chainLengthHistogram() {
+		return chainLengths.clone();
+	}
+
+	public int emptyBuckets() {
+		return chainLengths[0];
+	}
+
+	// 最长的链表，也就是查找一个key最多要比较的次数（树化的桶实际只需要log次）
+	public int maxChainLength() {
+		return maxChainLength;
+	}
+
+	public int treeBins() {
+		return treeBins;
+	}
+
+	// 按链表顺序查找一个存在的key平均要比较的次数。树化的桶实际只需要log次，这里仍按链表计算，偏大说明hashCode有问题
+	public double averageProbeLength() {
+		return size == 0 ? 0 : (double) probeTotal / size;
+	}
+
+	public long hits() {
+		return hits;
+	}
+
+	public long misses() {
+		return misses;
+	}
+
+	public long resizes() {
+		return resizes;
+	}
+
+	public long resizeNanos() {
+		return resizeNanos;
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("capacity=").append(capacity).append(", size=").append(size);
+		sb.append(", emptyBuckets=").append(emptyBuckets()).append(", maxChainLength=").append(maxChainLength);
+		sb.append(", treeBins=").append(treeBins);
+		sb.append(", averageProbeLength=").append(String.format("%.2f", averageProbeLength()));
+		sb.append(", hits=").append(hits).append(", misses=").append(misses);
+		sb.append(", resizes=").append(resizes).append(", resizeMillis=").append(resizeNanos / 1000000);
+		sb.append(", chainLengths=[");
+		int last = chainLengths.length - 1;
+		while (last > 0 && chainLengths[last] == 0)
+			last--;
+		for (int i = 0; i <= last; i++) {
+			if (i > 0)
+				sb.append(", ");
+			sb.append(chainLengths[i]);
+		}
+		return sb.append(']').toString();
+	}
+
+	// map内部的运行时计数器。map本身不是线程安全的（MyHashTable在锁里更新），这里也不需要
+	static final class Counter {
+		long hits, misses, resizes, resizeNanos;
+
+		final ResizeListener listener;
+
+		Counter(ResizeListener listener) {
+			this.listener = listener;
+		}
+
+		void resized(Object map, int oldCapacity, int newCapacity, int size, long nanos) {
+			resizes++;
+			resizeNanos += nanos;
+			if (listener != null)
+				listener.resized(map, oldCapacity, newCapacity, size, nanos);
+		}
+	}
+}
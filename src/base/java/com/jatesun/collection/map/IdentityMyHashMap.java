@@ -0,0 +1,433 @@
+package com.jatesun.collection.map;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ *
+ * @author jatesun
+ * @description 按引用比较key的hashmap（同IdentityHashMap），用System.identityHashCode散列，用==比较，不调用key的hashCode和equals。
+ *              与MyOpenHashMap一样是线性探测、删除时前移，区别是key和value交替放在同一个数组里（key在偶数位，value紧跟在后面），
+ *              找到key时value一般在同一个缓存行里；也不需要hashes数组，identityHashCode存在对象头里，取出来很便宜，
+ *              而且key相同就是同一个对象，比较hash没有意义。
+ *              适合key本身没有合适的equals、或者只关心是不是同一个对象的场景，比如对象图遍历时记录访问过的对象、给对象挂元数据。
+ *              注意这个map违反了Map接口按equals比较key的约定。
+ * @question
+ * 		·identityHashCode和hashCode有什么区别？对象被gc移动以后identityHashCode会变吗？
+ * 		·两个equals的String放进来为什么是两个映射？
+ * @date 2026年10月18日
+ * @param <K>
+ * @param <V>
+ */
+public class IdentityMyHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V>, Cloneable, Serializable {
+
+	private static final long serialVersionUID = 3071574619024765263L;
+
+	static final int DEFAULT_INITIAL_CAPACITY = 16;// 默认初始大小
+
+	static final int MAXIMUM_CAPACITY = 1 << 29;// 最大容量，数组长度是容量的两倍
+
+	static final float DEFAULT_LOAD_FACTOR = 0.75f;// 装填因子，必须小于1
+
+	// null键的替身，table中null表示空位
+	static final Object NULL_KEY = new Object();
+
+	transient Object[] table;// key、value交替存放，长度是容量的两倍
+
+	transient int size;
+
+	int threshold;// 扩容边界（capacity*loadfactor）
+
+	final float loadFactor;
+
+	transient int modCount;
+
+	public IdentityMyHashMap(int initialCapacity, float loadFactor) {
+		if (initialCapacity < 0)
+			throw new IllegalArgumentException("Illegal initial capacity: " + initialCapacity);
+		if (initialCapacity > MAXIMUM_CAPACITY)
+			initialCapacity = MAXIMUM_CAPACITY;
+		// 开放定址数组必须至少留一个空位，否则查找不存在的key会死循环
+		if (loadFactor <= 0 || loadFactor >= 1 || Float.isNaN(loadFactor))
+			throw new IllegalArgumentException("Illegal load factor: " + loadFactor);
+
+		int capacity = 1;
+		while (capacity < initialCapacity)
+			capacity <<= 1;
+		this.loadFactor = loadFactor;
+		allocate(capacity);
+	}
+
+	public IdentityMyHashMap(int initialCapacity) {
+		this(initialCapacity, DEFAULT_LOAD_FACTOR);
+	}
+
+	public IdentityMyHashMap() {
+		this(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR);
+	}
+
+	public IdentityMyHashMap(Map<? extends K, ? extends V> m) {
+		this(Math.max((int) (m.size() / DEFAULT_LOAD_FACTOR) + 1, DEFAULT_INITIAL_CAPACITY), DEFAULT_LOAD_FACTOR);
+		putAll(m);
+	}
+
+	private void allocate(int capacity) {
+		table = new Object[capacity << 1];
+		threshold = Math.min((int) (capacity * loadFactor), capacity - 1);
+	}
+
+	static Object maskNull(Object key) {
+		return (key == null ? NULL_KEY : key);
+	}
+
+	static Object unmaskNull(Object key) {
+		return (key == NULL_KEY ? null : key);
+	}
+
+	// key在数组中的起始位置（偶数）。identityHashCode的低位分布不一定均匀，先用MyHashMap的再散列函数打散
+	static int indexFor(Object k, int length) {
+		return (MyHashMap.hash(System.identityHashCode(k)) << 1) & (length - 1);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	// 查找key所在的位置，找不到返回-1。遇到空位说明key不存在（删除时做了前移，探测序列中间不会有空洞）
+	final int indexOf(Object key) {
+		Object k = maskNull(key);
+		Object[] tab = table;
+		int len = tab.length;
+		for (int i = indexFor(k, len);; i = (i + 2) & (len - 1)) {
+			Object x = tab[i];
+			if (x == k)
+				return i;
+			if (x == null)
+				return -1;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(Object key) {
+		int i = indexOf(key);
+		return i < 0 ? null : (V) table[i + 1];
+	}
+
+	public boolean containsKey(Object key) {
+		return indexOf(key) >= 0;
+	}
+
+	public boolean containsValue(Object value) {
+		Object[] tab = table;
+		for (int i = 0; i < tab.length; i += 2)
+			if (tab[i] != null && (value == null ? tab[i + 1] == null : value.equals(tab[i + 1])))
+				return true;
+		return false;
+	}
+
+	// put方法，如果原来存在就替换，不存在就放到探测序列上的第一个空位
+	@SuppressWarnings("unchecked")
+	public V put(K key, V value) {
+		Object k = maskNull(key);
+		Object[] tab = table;
+		int len = tab.length;
+		int i = indexFor(k, len);
+		for (Object x; (x = tab[i]) != null; i = (i + 2) & (len - 1)) {
+			if (x == k) {
+				V oldValue = (V) tab[i + 1];
+				tab[i + 1] = value;
+				return oldValue;
+			}
+		}
+
+		modCount++;
+		// 先扩容再插入，保证插入后仍然至少有一个空位
+		if (size >= threshold && resize(len)) {// 数组长度正好是容量的两倍
+			tab = table;
+			len = tab.length;
+			for (i = indexFor(k, len); tab[i] != null; i = (i + 2) & (len - 1))
+				;
+		}
+		tab[i] = k;
+		tab[i + 1] = value;
+		size++;
+		return null;
+	}
+
+	// 扩容到newCapacity（是容量，不是数组长度），返回是否真的扩容了
+	final boolean resize(int newCapacity) {
+		Object[] oldTable = table;
+		if (oldTable.length >> 1 == MAXIMUM_CAPACITY) {
+			if (size >= MAXIMUM_CAPACITY - 1)
+				throw new IllegalStateException("Capacity exhausted.");
+			threshold = MAXIMUM_CAPACITY - 1;
+			return false;
+		}
+		allocate(newCapacity);
+		Object[] tab = table;
+		int len = tab.length;
+		for (int j = 0; j < oldTable.length; j += 2) {
+			Object k = oldTable[j];
+			if (k == null)
+				continue;
+			int i = indexFor(k, len);
+			while (tab[i] != null)
+				i = (i + 2) & (len - 1);
+			tab[i] = k;
+			tab[i + 1] = oldTable[j + 1];
+		}
+		return true;
+	}
+
+	public void putAll(Map<? extends K, ? extends V> m) {
+		int numKeysToBeAdded = m.size();
+		if (numKeysToBeAdded == 0)
+			return;
+		// 按添加后的总大小计算目标容量
+		int target = size + numKeysToBeAdded;
+		if (target > threshold) {
+			int capacity = table.length >> 1, newCapacity = capacity;
+			while (newCapacity < MAXIMUM_CAPACITY && (int) (newCapacity * loadFactor) < target)
+				newCapacity <<= 1;
+			if (newCapacity > capacity)
+				resize(newCapacity);
+		}
+		for (Iterator<? extends Map.Entry<? extends K, ? extends V>> i = m.entrySet().iterator(); i.hasNext();) {
+			Map.Entry<? extends K, ? extends V> e = i.next();
+			put(e.getKey(), e.getValue());
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public V remove(Object key) {
+		int i = indexOf(key);
+		if (i < 0)
+			return null;
+		V oldValue = (V) table[i + 1];
+		removeAt(i, null);
+		return oldValue;
+	}
+
+	final void removeAt(int i, HashIterator<?> it) {
+		modCount++;
+		size--;
+		shiftKeys(i, it);
+	}
+
+	// 与MyOpenHashMap.shiftKeys相同，只是每次跳两格，元素的理想位置用identityHashCode重新计算
+	private void shiftKeys(int pos, HashIterator<?> it) {
+		Object[] tab = table;
+		int len = tab.length;
+		for (;;) {
+			int last = pos;
+			pos = (pos + 2) & (len - 1);
+			for (;;) {
+				Object k = tab[pos];
+				if (k == null) {
+					tab[last] = null;
+					tab[last + 1] = null;
+					return;
+				}
+				int slot = indexFor(k, len);
+				// slot不在(last, pos]区间内，说明pos上的元素可以挪到last
+				if (last <= pos ? (last >= slot || slot > pos) : (last >= slot && slot > pos))
+					break;
+				pos = (pos + 2) & (len - 1);
+			}
+			if (it != null && pos < last)
+				it.wrapped(tab[pos], tab[pos + 1]);
+			tab[last] = tab[pos];
+			tab[last + 1] = tab[pos + 1];
+		}
+	}
+
+	public void clear() {
+		modCount++;
+		Arrays.fill(table, null);
+		size = 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	public Object clone() {
+		IdentityMyHashMap<K, V> result = null;
+		try {
+			result = (IdentityMyHashMap<K, V>) super.clone();
+		} catch (CloneNotSupportedException e) {
+			// assert false;
+		}
+		// 数组直接拷贝即可，不需要重新计算位置
+		result.table = table.clone();
+		result.entrySet = null;
+		result.modCount = 0;
+		return result;
+	}
+
+	// 迭代器从数组末尾往前遍历，原因见MyOpenHashMap.shiftKeys
+	private abstract class HashIterator<E> implements Iterator<E> {
+		int index = table.length; // 下一次从index-2开始往前找
+		int remaining = size; // 还剩多少个元素没有返回
+		int current = -1; // 上次返回的位置，-1表示没有，-2表示上次返回的是wrapped中的元素
+		Object currentKey;
+		Object nextValue;
+		ArrayList<Object> wrapped; // 删除时从未遍历区域挪到已遍历区域的元素，key和value交替存放
+		int expectedModCount = modCount;
+
+		public final boolean hasNext() {
+			return remaining > 0;
+		}
+
+		void wrapped(Object k, Object v) {
+			if (wrapped == null)
+				wrapped = new ArrayList<Object>(4);
+			wrapped.add(k);
+			wrapped.add(v);
+		}
+
+		// 返回下一个元素的key，value通过nextValue取得
+		final Object nextKey() {
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			if (remaining == 0)
+				throw new NoSuchElementException();
+			remaining--;
+			Object[] tab = table;
+			while ((index -= 2) >= 0) {
+				if (tab[index] != null) {
+					current = index;
+					nextValue = tab[index + 1];
+					return currentKey = tab[index];
+				}
+			}
+			// 数组遍历完了，剩下的是被挪过去的元素
+			int n = wrapped.size();
+			nextValue = wrapped.remove(n - 1);
+			currentKey = wrapped.remove(n - 2);
+			current = -2;
+			return currentKey;
+		}
+
+		public void remove() {
+			if (current == -1)
+				throw new IllegalStateException();
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			if (current == -2) {// 数组已经遍历完，直接按key删除
+				IdentityMyHashMap.this.remove(unmaskNull(currentKey));
+			} else {
+				removeAt(current, this);
+			}
+			current = -1;
+			expectedModCount = modCount;
+		}
+	}
+
+	private final class EntryIterator extends HashIterator<Map.Entry<K, V>> {
+		@SuppressWarnings("unchecked")
+		public Map.Entry<K, V> next() {
+			K k = (K) unmaskNull(nextKey());
+			return new SlotEntry(k, (V) nextValue);
+		}
+	}
+
+	// 迭代器返回的entry。元素的位置会因为删除而移动，所以setValue按key写回，而不是记住数组下标
+	private final class SlotEntry extends SimpleEntry<K, V> {
+		private static final long serialVersionUID = -2915283470921843207L;
+
+		SlotEntry(K key, V value) {
+			super(key, value);
+		}
+
+		public V setValue(V value) {
+			put(getKey(), value);
+			return super.setValue(value);
+		}
+	}
+
+	// Views
+
+	private transient Set<Map.Entry<K, V>> entrySet = null;
+
+	public Set<Map.Entry<K, V>> entrySet() {
+		Set<Map.Entry<K, V>> es = entrySet;
+		return es != null ? es : (entrySet = new EntrySet());
+	}
+
+	private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+		public Iterator<Map.Entry<K, V>> iterator() {
+			return new EntryIterator();
+		}
+
+		// key按引用比较，value按equals比较（与IdentityHashMap相同）
+		@SuppressWarnings("unchecked")
+		public boolean contains(Object o) {
+			if (!(o instanceof Map.Entry))
+				return false;
+			Map.Entry<K, V> e = (Map.Entry<K, V>) o;
+			int i = indexOf(e.getKey());
+			if (i < 0)
+				return false;
+			Object v = table[i + 1];
+			return v == null ? e.getValue() == null : v.equals(e.getValue());
+		}
+
+		@SuppressWarnings("unchecked")
+		public boolean remove(Object o) {
+			if (!contains(o))
+				return false;
+			removeAt(indexOf(((Map.Entry<K, V>) o).getKey()), null);
+			return true;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public void clear() {
+			IdentityMyHashMap.this.clear();
+		}
+	}
+
+	// 序列化格式与MyOpenHashMap相同：容量、大小，然后key、value交替写出。
+	// 反序列化出来的是新对象，identityHashCode都变了，只能重新put
+	private void writeObject(java.io.ObjectOutputStream s) throws IOException {
+		s.defaultWriteObject();
+		s.writeInt(table.length >> 1);
+		s.writeInt(size);
+		for (int i = 0; i < table.length; i += 2) {
+			if (table[i] != null) {
+				s.writeObject(unmaskNull(table[i]));
+				s.writeObject(table[i + 1]);
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void readObject(java.io.ObjectInputStream s) throws IOException, ClassNotFoundException {
+		s.defaultReadObject();
+		int capacity = s.readInt();
+		if (capacity <= 0 || capacity > MAXIMUM_CAPACITY || (capacity & (capacity - 1)) != 0)
+			throw new StreamCorruptedException("Illegal capacity: " + capacity);
+		allocate(capacity);
+		int size = s.readInt();
+		for (int i = 0; i < size; i++) {
+			K key = (K) s.readObject();
+			V value = (V) s.readObject();
+			put(key, value);
+		}
+	}
+
+}
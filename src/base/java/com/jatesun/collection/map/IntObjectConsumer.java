@@ -0,0 +1,13 @@
+package com.jatesun.collection.map;
+
+/**
+ *
+ * @author jatesun
+ * @description IntObjectMap.forEach的回调。key是基本类型，遍历时不装箱，与java.util.function.BiConsumer对应。
+ * @date 2026年10月18日
+ * @param <V>
+ */
+public interface IntObjectConsumer<V> {
+
+	void accept(int key, V value);
+}
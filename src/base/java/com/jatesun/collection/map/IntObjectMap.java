@@ -0,0 +1,216 @@
+package com.jatesun.collection.map;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ *
+ * @author jatesun
+ * @description int为key的hashmap。MyHashMap<Integer, V>每次get都要把key装箱成Integer，每次put还要再new一个entry，
+ *              这里key直接存在int数组里，使用开放定址（线性探测），散列沿用MyHashMap的hash和indexFor，get、put、remove都不分配对象。
+ *              数组中0表示空位，所以key为0的映射单独存放（对应MyHashMap的putForNullKey）。
+ *              删除时把后面同一探测序列上的元素往前挪，不使用墓碑，与MyOpenHashMap相同。
+ *              探测、删除前移的逻辑在OpenAddressing里，与LongObjectMap、LongLongMap共用。遍历用forEach(IntObjectConsumer)，不装箱也不分配迭代器。
+ * @question
+ * 		·为什么基本类型的map能省掉装箱和entry对象？
+ * 		·key为0时为什么要单独处理？
+ * @date 2026年10月18日
+ * @param <V>
+ */
+public class IntObjectMap<V> implements Cloneable, Serializable {
+
+	private static final long serialVersionUID = 4417820345562063018L;
+
+	int[] keys;// key数组，0表示空位
+
+	Object[] vals;// value数组
+
+	boolean hasZeroKey;// 是否存在key为0的映射
+
+	Object zeroValue;// key为0时的value
+
+	int size;
+
+	int threshold;// 扩容边界（capacity*loadfactor）
+
+	final float loadFactor;
+
+	public IntObjectMap(int initialCapacity, float loadFactor) {
+		int capacity = OpenAddressing.tableSize(initialCapacity, loadFactor);
+		this.loadFactor = loadFactor;
+		allocate(capacity);
+	}
+
+	public IntObjectMap(int initialCapacity) {
+		this(initialCapacity, OpenAddressing.DEFAULT_LOAD_FACTOR);
+	}
+
+	public IntObjectMap() {
+		this(OpenAddressing.DEFAULT_INITIAL_CAPACITY, OpenAddressing.DEFAULT_LOAD_FACTOR);
+	}
+
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		vals = new Object[capacity];
+		threshold = OpenAddressing.threshold(capacity, loadFactor);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	// 查找key所在的位置，找不到返回-1（key不能为0）
+	final int indexOf(int key) {
+		int i = OpenAddressing.find(keys, key);
+		return i < 0 ? -1 : i;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		if (key == 0)
+			return hasZeroKey ? (V) zeroValue : null;
+		int i = indexOf(key);
+		return i < 0 ? null : (V) vals[i];
+	}
+
+	public boolean containsKey(int key) {
+		return key == 0 ? hasZeroKey : indexOf(key) >= 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V put(int key, V value) {
+		if (key == 0)
+			return putForZeroKey(value);
+		int i = OpenAddressing.find(keys, key);
+		if (i >= 0) {
+			V oldValue = (V) vals[i];
+			vals[i] = value;
+			return oldValue;
+		}
+		if (size >= threshold && resize(2 * keys.length))
+			i = OpenAddressing.find(keys, key);// 扩容后重新找空位
+		keys[~i] = key;
+		vals[~i] = value;
+		size++;
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private V putForZeroKey(V value) {
+		V oldValue = (V) zeroValue;
+		zeroValue = value;
+		if (!hasZeroKey) {
+			hasZeroKey = true;
+			size++;
+		}
+		return oldValue;
+	}
+
+	final boolean resize(int newCapacity) {
+		int[] oldKeys = keys;
+		Object[] oldVals = vals;
+		if (oldKeys.length == OpenAddressing.MAXIMUM_CAPACITY) {
+			OpenAddressing.checkMaximum(size);
+			threshold = OpenAddressing.MAXIMUM_CAPACITY - 1;
+			return false;
+		}
+		allocate(newCapacity);
+		int[] ks = keys;
+		for (int j = 0; j < oldKeys.length; j++) {
+			int k = oldKeys[j];
+			if (k == 0)
+				continue;
+			int i = ~OpenAddressing.find(ks, k);
+			ks[i] = k;
+			vals[i] = oldVals[j];
+		}
+		return true;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V remove(int key) {
+		if (key == 0) {
+			if (!hasZeroKey)
+				return null;
+			V oldValue = (V) zeroValue;
+			hasZeroKey = false;
+			zeroValue = null;
+			size--;
+			return oldValue;
+		}
+		int i = indexOf(key);
+		if (i < 0)
+			return null;
+		V oldValue = (V) vals[i];
+		size--;
+		shiftKeys(i);
+		return oldValue;
+	}
+
+	// 删除pos后把后面探测序列上可以前移的元素往前挪，直到遇到空位
+	private void shiftKeys(int pos) {
+		int[] ks = keys;
+		Object[] vs = vals;
+		for (int from; (from = OpenAddressing.shiftSource(ks, pos)) >= 0; pos = from) {
+			ks[pos] = ks[from];
+			vs[pos] = vs[from];
+		}
+		ks[pos] = 0;
+		vs[pos] = null;
+	}
+
+	// 按数组顺序（key为0的映射最先）遍历所有映射，不分配迭代器和entry。action里不能修改这个map
+	@SuppressWarnings("unchecked")
+	public void forEach(IntObjectConsumer<? super V> action) {
+		if (action == null)
+			throw new NullPointerException();
+		if (hasZeroKey)
+			action.accept(0, (V) zeroValue);
+		int[] ks = keys;
+		Object[] vs = vals;
+		for (int i = 0; i < ks.length; i++) {
+			if (ks[i] != 0)
+				action.accept(ks[i], (V) vs[i]);
+		}
+	}
+
+	public void clear() {
+		Arrays.fill(keys, 0);
+		Arrays.fill(vals, null);
+		hasZeroKey = false;
+		zeroValue = null;
+		size = 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	public Object clone() {
+		IntObjectMap<V> result = null;
+		try {
+			result = (IntObjectMap<V>) super.clone();
+		} catch (CloneNotSupportedException e) {
+			// assert false;
+		}
+		result.keys = keys.clone();
+		result.vals = vals.clone();
+		return result;
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder("{");
+		if (hasZeroKey)
+			sb.append(0).append('=').append(zeroValue);
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != 0) {
+				if (sb.length() > 1)
+					sb.append(", ");
+				sb.append(keys[i]).append('=').append(vals[i]);
+			}
+		}
+		return sb.append('}').toString();
+	}
+
+}
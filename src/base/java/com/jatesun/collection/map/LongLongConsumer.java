@@ -0,0 +1,12 @@
+package com.jatesun.collection.map;
+
+/**
+ *
+ * @author jatesun
+ * @description LongLongMap.forEach的回调。key、value是基本类型，遍历时不装箱，与java.util.function.BiConsumer对应。
+ * @date 2026年10月18日
+ */
+public interface LongLongConsumer {
+
+	void accept(long key, long value);
+}
@@ -0,0 +1,236 @@
+package com.jatesun.collection.map;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ *
+ * @author jatesun
+ * @description key、value都是long的hashmap，适合计数器、id索引。MyHashMap<Long, Long>每次get都要把key装箱成Long，每次put还要再new一个entry，
+ *              这里key、value直接存在long数组里，使用开放定址（线性探测），散列先把long的高低32位异或（与Long.hashCode相同），再沿用MyHashMap的hash和indexFor，get、put、addTo、remove都不分配对象。不存在的key，get返回0（计数器的初始值），需要区分时用containsKey或getOrDefault。
+ *              数组中0表示空位，所以key为0的映射单独存放（对应MyHashMap的putForNullKey）。
+ *              删除时把后面同一探测序列上的元素往前挪，不使用墓碑，与MyOpenHashMap相同。
+ *              探测、删除前移的逻辑在OpenAddressing里，与IntObjectMap、LongObjectMap共用。遍历用forEach(LongLongConsumer)，不装箱也不分配迭代器。
+ * @question
+ * 		·为什么基本类型的map能省掉装箱和entry对象？
+ * 		·key为0时为什么要单独处理？
+ * @date 2026年10月18日
+ */
+public class LongLongMap implements Cloneable, Serializable {
+
+	private static final long serialVersionUID = 7722316914608391402L;
+
+	long[] keys;// key数组，0表示空位
+
+	long[] vals;// value数组
+
+	boolean hasZeroKey;// 是否存在key为0的映射
+
+	long zeroValue;// key为0时的value
+
+	int size;
+
+	int threshold;// 扩容边界（capacity*loadfactor）
+
+	final float loadFactor;
+
+	public LongLongMap(int initialCapacity, float loadFactor) {
+		int capacity = OpenAddressing.tableSize(initialCapacity, loadFactor);
+		this.loadFactor = loadFactor;
+		allocate(capacity);
+	}
+
+	public LongLongMap(int initialCapacity) {
+		this(initialCapacity, OpenAddressing.DEFAULT_LOAD_FACTOR);
+	}
+
+	public LongLongMap() {
+		this(OpenAddressing.DEFAULT_INITIAL_CAPACITY, OpenAddressing.DEFAULT_LOAD_FACTOR);
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		vals = new long[capacity];
+		threshold = OpenAddressing.threshold(capacity, loadFactor);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	// 查找key所在的位置，找不到返回-1（key不能为0）
+	final int indexOf(long key) {
+		int i = OpenAddressing.find(keys, key);
+		return i < 0 ? -1 : i;
+	}
+
+	public long get(long key) {
+		return getOrDefault(key, 0L);
+	}
+
+	public long getOrDefault(long key, long defaultValue) {
+		if (key == 0)
+			return hasZeroKey ? zeroValue : defaultValue;
+		int i = indexOf(key);
+		return i < 0 ? defaultValue : vals[i];
+	}
+
+	public boolean containsKey(long key) {
+		return key == 0 ? hasZeroKey : indexOf(key) >= 0;
+	}
+
+	public long put(long key, long value) {
+		if (key == 0)
+			return putForZeroKey(value);
+		int i = OpenAddressing.find(keys, key);
+		if (i >= 0) {
+			long oldValue = vals[i];
+			vals[i] = value;
+			return oldValue;
+		}
+		insertAt(~i, key, value);
+		return 0L;
+	}
+
+	// 在空位i放入新映射，需要扩容时扩容后重新找空位
+	private void insertAt(int i, long key, long value) {
+		if (size >= threshold && resize(2 * keys.length))
+			i = ~OpenAddressing.find(keys, key);// 扩容后重新找空位
+		keys[i] = key;
+		vals[i] = value;
+		size++;
+	}
+
+	private long putForZeroKey(long value) {
+		long oldValue = zeroValue;
+		zeroValue = value;
+		if (!hasZeroKey) {
+			hasZeroKey = true;
+			size++;
+		}
+		return oldValue;
+	}
+
+	// 给key对应的值加上increment（不存在时视为0），返回原来的值。计数场景下只需要一次查找，
+	// 不像MyHashMap<Long, Long>那样先get再put，还要装箱
+	public long addTo(long key, long increment) {
+		if (key == 0) {
+			long oldValue = hasZeroKey ? zeroValue : 0L;
+			putForZeroKey(oldValue + increment);
+			return oldValue;
+		}
+		int i = OpenAddressing.find(keys, key);
+		if (i >= 0) {
+			long oldValue = vals[i];
+			vals[i] = oldValue + increment;
+			return oldValue;
+		}
+		insertAt(~i, key, increment);
+		return 0L;
+	}
+
+	final boolean resize(int newCapacity) {
+		long[] oldKeys = keys;
+		long[] oldVals = vals;
+		if (oldKeys.length == OpenAddressing.MAXIMUM_CAPACITY) {
+			OpenAddressing.checkMaximum(size);
+			threshold = OpenAddressing.MAXIMUM_CAPACITY - 1;
+			return false;
+		}
+		allocate(newCapacity);
+		long[] ks = keys;
+		for (int j = 0; j < oldKeys.length; j++) {
+			long k = oldKeys[j];
+			if (k == 0)
+				continue;
+			int i = ~OpenAddressing.find(ks, k);
+			ks[i] = k;
+			vals[i] = oldVals[j];
+		}
+		return true;
+	}
+
+	public long remove(long key) {
+		if (key == 0) {
+			if (!hasZeroKey)
+				return 0L;
+			long oldValue = zeroValue;
+			hasZeroKey = false;
+			zeroValue = 0L;
+			size--;
+			return oldValue;
+		}
+		int i = indexOf(key);
+		if (i < 0)
+			return 0L;
+		long oldValue = vals[i];
+		size--;
+		shiftKeys(i);
+		return oldValue;
+	}
+
+	// 删除pos后把后面探测序列上可以前移的元素往前挪，直到遇到空位
+	private void shiftKeys(int pos) {
+		long[] ks = keys;
+		long[] vs = vals;
+		for (int from; (from = OpenAddressing.shiftSource(ks, pos)) >= 0; pos = from) {
+			ks[pos] = ks[from];
+			vs[pos] = vs[from];
+		}
+		ks[pos] = 0;
+		vs[pos] = 0L;
+	}
+
+	// 按数组顺序（key为0的映射最先）遍历所有映射，不分配迭代器和entry。action里不能修改这个map
+	public void forEach(LongLongConsumer action) {
+		if (action == null)
+			throw new NullPointerException();
+		if (hasZeroKey)
+			action.accept(0, zeroValue);
+		long[] ks = keys;
+		long[] vs = vals;
+		for (int i = 0; i < ks.length; i++) {
+			if (ks[i] != 0)
+				action.accept(ks[i], vs[i]);
+		}
+	}
+
+	public void clear() {
+		Arrays.fill(keys, 0);
+		Arrays.fill(vals, 0L);
+		hasZeroKey = false;
+		zeroValue = 0L;
+		size = 0;
+	}
+
+	public Object clone() {
+		LongLongMap result = null;
+		try {
+			result = (LongLongMap) super.clone();
+		} catch (CloneNotSupportedException e) {
+			// assert false;
+		}
+		result.keys = keys.clone();
+		result.vals = vals.clone();
+		return result;
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder("{");
+		if (hasZeroKey)
+			sb.append(0).append('=').append(zeroValue);
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != 0) {
+				if (sb.length() > 1)
+					sb.append(", ");
+				sb.append(keys[i]).append('=').append(vals[i]);
+			}
+		}
+		return sb.append('}').toString();
+	}
+
+}
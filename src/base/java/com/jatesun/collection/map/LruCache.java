@@ -0,0 +1,253 @@
+package com.jatesun.collection.map;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ *
+ * @author jatesun
+ * @description 基于MyLinkedHashMap（访问顺序）的LRU缓存，可以同时限制元素个数（maximumSize）和权重之和（maximumWeight，由Weigher计算）。
+ *              不需要再继承MyLinkedHashMap重写removeEldestEntry：每次addEntry之后从链表头（最久没有访问的entry）开始连续淘汰，
+ *              直到两个限制都满足为止，一个很重的元素放进来可以一次挤掉多个旧元素。子类重写的removeEldestEntry仍然有效，在按上限淘汰之后调用。
+ *              value被替换时重新计算权重，变重以后同样会淘汰旧元素，正在修改的这个最后淘汰（它自己就超过maximumWeight时），与放入时相同。
+ *              另外记录get的命中、未命中次数和淘汰次数。
+ *              与MyLinkedHashMap一样不是线程安全的，而且访问顺序模式下get也会修改链表，多线程读也要加锁。
+ *              通过迭代器返回的entry.setValue修改value不会重新计算权重。序列化时weigher也要能序列化。
+ * @question
+ * 		·为什么LRU用哈希表加双向链表实现？get、put、淘汰分别是什么复杂度？
+ * 		·LRU在什么样的访问模式下命中率很差？（比缓存大一点的循环扫描）
+ * @date 2026年10月18日
+ * @param <K>
+ * @param <V>
+ */
+public class LruCache<K, V> extends MyLinkedHashMap<K, V> {
+
+	private static final long serialVersionUID = -2206474305170131245L;
+
+	static final long UNLIMITED = Long.MAX_VALUE;
+
+	private final long maximumSize;
+
+	private final long maximumWeight;
+
+	private final Weigher<? super K, ? super V> weigher;// 为null时每个entry的权重为0
+
+	private transient long totalWeight;
+
+	private transient long hitCount, missCount, evictionCount;
+
+	/**
+	 * @param initialCapacity 初始容量
+	 * @param maximumSize 最多保留的元素个数，UNLIMITED表示不限制
+	 * @param maximumWeight 权重之和的上限，UNLIMITED表示不限制，限制时必须给出weigher
+	 * @param weigher 计算权重，可以为null
+	 */
+	public LruCache(int initialCapacity, long maximumSize, long maximumWeight, Weigher<? super K, ? super V> weigher) {
+		super(initialCapacity, DEFAULT_LOAD_FACTOR, true);
+		if (maximumSize < 0)
+			throw new IllegalArgumentException("Illegal maximum size: " + maximumSize);
+		if (maximumWeight < 0)
+			throw new IllegalArgumentException("Illegal maximum weight: " + maximumWeight);
+		if (maximumWeight != UNLIMITED && weigher == null)
+			throw new IllegalArgumentException("maximumWeight requires a weigher");
+		this.maximumSize = maximumSize;
+		this.maximumWeight = maximumWeight;
+		this.weigher = weigher;
+	}
+
+	// 按个数限制。初始容量按maximumSize估计，最多4096，上限很大时不一开始就分配大数组
+	public LruCache(long maximumSize) {
+		this((int) Math.min(maximumSize / DEFAULT_LOAD_FACTOR + 1, 1 << 12), maximumSize, UNLIMITED, null);
+	}
+
+	// 按权重限制
+	public LruCache(long maximumWeight, Weigher<? super K, ? super V> weigher) {
+		this(DEFAULT_INITIAL_CAPACITY, UNLIMITED, maximumWeight, weigher);
+	}
+
+	void init() {
+		super.init();
+		totalWeight = 0;// clone时重新统计
+		hitCount = missCount = evictionCount = 0;
+	}
+
+	// 带权重的entry
+	static final class Node<K, V> extends MyLinkedHashMap.Entry<K, V> {
+		int weight;
+
+		Node(int hash, K key, V value, MyHashMap.Entry<K, V> next, int weight) {
+			super(hash, key, value, next);
+			this.weight = weight;
+		}
+
+		// replaceValue可能把entry自己淘汰掉，调用者之后还会recordAccess，已经删除的entry不能再链回链表
+		void recordAccess(MyHashMap<K, V> m) {
+			if (before != null)
+				super.recordAccess(m);
+		}
+
+		void recordRemoval(MyHashMap<K, V> m) {
+			super.recordRemoval(m);
+			before = after = null;
+			((LruCache<K, V>) m).totalWeight -= weight;
+		}
+	}
+
+	private int weigh(K key, V value) {
+		if (weigher == null)
+			return 0;
+		int w = weigher.weigh(key, value);
+		if (w < 0)
+			throw new IllegalArgumentException("Negative weight: " + w);
+		return w;
+	}
+
+	MyLinkedHashMap.Entry<K, V> newEntry(int hash, K key, V value, MyHashMap.Entry<K, V> next) {
+		int w = weigh(key, value);
+		totalWeight += w;
+		return new Node<K, V>(hash, key, value, next, w);
+	}
+
+	// 替换value：重新计算权重，超出上限时先淘汰别的entry，淘汰完仍然超出（它自己就超过maximumWeight）时淘汰它自己
+	void replaceValue(int i, MyHashMap.Entry<K, V> e, V value) {
+		Node<K, V> n = (Node<K, V>) e;
+		int w = weigh(e.key, value);
+		super.replaceValue(i, e, value);
+		totalWeight += w - n.weight;
+		n.weight = w;
+		evict(n);
+		if (overflow()) {
+			removeEntryForKey(n.key);
+			evictionCount++;
+		}
+	}
+
+	// 先放入再淘汰，新放入的entry在链表尾部，最后才会被淘汰（它自己超过maximumWeight时也会被淘汰）。
+	// 之后再按MyLinkedHashMap的约定问一次removeEldestEntry
+	void addEntry(int hash, K key, V value, int bucketIndex) {
+		createEntry(hash, key, value, bucketIndex);
+		evict(null);
+		MyLinkedHashMap.Entry<K, V> eldest = header.after;
+		if (eldest != header && removeEldestEntry(eldest)) {
+			removeEntryForKey(eldest.key);
+			evictionCount++;
+		} else if (size >= threshold) {
+			resize(2 * table.length);
+		}
+	}
+
+	private boolean overflow() {
+		return size > maximumSize || totalWeight > maximumWeight;
+	}
+
+	// 从最久没有访问的entry开始淘汰，直到不超过上限，跳过keep
+	private void evict(MyLinkedHashMap.Entry<K, V> keep) {
+		MyLinkedHashMap.Entry<K, V> e = header.after;
+		while (overflow() && e != header) {
+			MyLinkedHashMap.Entry<K, V> next = e.after;
+			if (e != keep) {
+				removeEntryForKey(e.key);
+				evictionCount++;
+			}
+			e = next;
+		}
+	}
+
+	public V get(Object key) {
+		MyHashMap.Entry<K, V> e = getEntry(key);
+		recordGet(e != null);
+		if (e == null) {
+			missCount++;
+			return null;
+		}
+		hitCount++;
+		e.recordAccess(this);
+		return e.value;
+	}
+
+	public V getOrDefault(Object key, V defaultValue) {
+		MyHashMap.Entry<K, V> e = getEntry(key);
+		recordGet(e != null);
+		if (e == null) {
+			missCount++;
+			return defaultValue;
+		}
+		hitCount++;
+		e.recordAccess(this);
+		return e.value;
+	}
+
+	// computeIfAbsent是缓存最常用的加载方式，也计入命中、未命中
+	public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+		MyHashMap.Entry<K, V> e = getEntry(key);
+		if (e != null && e.value != null) {
+			hitCount++;
+			e.recordAccess(this);
+			return e.value;
+		}
+		missCount++;
+		return super.computeIfAbsent(key, mappingFunction);
+	}
+
+	// 逐个put，每放一个都按上限淘汰并计入淘汰次数。不像父类那样按m的大小预先扩容：缓存装不下m时不分配用不上的大数组
+	public void putAll(Map<? extends K, ? extends V> m) {
+		if (m == this)
+			return;
+		for (Map.Entry<? extends K, ? extends V> e : m.entrySet())
+			put(e.getKey(), e.getValue());
+	}
+
+	public void clear() {
+		super.clear();
+		totalWeight = 0;
+	}
+
+	public long maximumSize() {
+		return maximumSize;
+	}
+
+	public long maximumWeight() {
+		return maximumWeight;
+	}
+
+	// 当前权重之和
+	public long weightedSize() {
+		return totalWeight;
+	}
+
+	public long hitCount() {
+		return hitCount;
+	}
+
+	public long missCount() {
+		return missCount;
+	}
+
+	public long evictionCount() {
+		return evictionCount;
+	}
+
+	// 命中率，没有get过时为1（与guava相同）
+	public double hitRate() {
+		long requests = hitCount + missCount;
+		return requests == 0 ? 1.0 : (double) hitCount / requests;
+	}
+
+	public void resetStats() {
+		hitCount = missCount = evictionCount = 0;
+	}
+
+	// 父类反序列化元素时weigher还没有读出来，权重都是0，这里重新计算
+	private void readObject(java.io.ObjectInputStream s) throws IOException, ClassNotFoundException {
+		s.defaultReadObject();
+		long total = 0;
+		for (MyLinkedHashMap.Entry<K, V> e = header.after; e != header; e = e.after) {
+			Node<K, V> n = (Node<K, V>) e;
+			n.weight = weigh(n.key, n.value);
+			total += n.weight;
+		}
+		totalWeight = total;
+		evict(null);
+	}
+}
@@ -0,0 +1,833 @@
+package com.jatesun.collection.map;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32;
+
+/**
+ *
+ * @author jatesun
+ * @description 内存映射文件（FileChannel.map）实现的持久化hashmap，结构与OffHeapHashMap相同（桶数组加链表），只是内存换成了文件：
+ *              ·数据文件（file）：只追加的记录日志，按段（segment）映射，记录不跨段。每条记录为
+ *                len(4) crc(4) hash(4) type(1+3) next(8) keyLen(4) valLen(4) key value，8字节对齐。
+ *                put追加一条PUT记录，remove追加一条TOMBSTONE记录，旧记录成为垃圾。next是链表指针，不在crc范围内。
+ *              ·索引文件（file + ".idx"）：头部加桶数组，每个桶存链表第一条记录在数据文件中的位置。
+ *              打开时如果索引是正常close()写下的（clean标记，且fileId与数据文件一致），直接映射两个文件即可使用，
+ *              不读取任何记录，页面在访问时才由操作系统载入，所以重新打开是毫秒级的。
+ *              索引在打开期间一直标记为不干净，进程崩溃后重新打开会丢弃索引，从头重放数据文件重建，
+ *              遇到crc不对或者不完整的记录就认为日志到此结束，并把后面的内容清零。flush()之后的数据在断电后也不会丢失。
+ *              垃圾超过一半时整理：把存活的记录写到新文件，再用原子rename替换旧文件，任何时候崩溃都能恢复到整理前或整理后。
+ *              不允许null键、null值；不是线程安全的；同一个文件同时只能被一个实例打开。
+ * @question
+ * 		·内存映射文件为什么能让重新打开变快？和readObject逐个putForCreate有什么区别？
+ * 		·只追加的日志加crc，怎样保证崩溃后数据一致？
+ * 		·为什么整理时要先写新文件再rename，而不是在原文件上原地整理？
+ * @date 2026年10月18日
+ * @param <K>
+ * @param <V>
+ */
+public class MappedHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V>, Closeable {
+
+	static final int DEFAULT_INITIAL_CAPACITY = 16;// 默认初始桶个数
+
+	static final int MAXIMUM_CAPACITY = 1 << 30;// 最大容量
+
+	static final float LOAD_FACTOR = 0.75f;// 装填因子
+
+	static final int DEFAULT_SEGMENT_SHIFT = 28;// 数据文件每段256M
+
+	static final int PAGE_SHIFT = 17;// 索引每页1<<17个桶
+
+	static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+
+	static final int MAGIC = 0x4D484D31;// "MHM1"
+
+	static final int VERSION = 1;
+
+	// 数据文件头
+	static final int D_MAGIC = 0, D_VERSION = 4, D_FILE_ID = 8, D_SEGMENT_SHIFT = 16, DATA_HEADER = 64;
+
+	// 索引文件头
+	static final int I_MAGIC = 0, I_CLEAN = 4, I_FILE_ID = 8, I_CAPACITY = 16, I_SIZE = 24, I_DATA_END = 32,
+			I_GARBAGE = 40, INDEX_HEADER = 64;
+
+	// 记录各字段的偏移
+	static final int LEN = 0, CRC = 4, HASH = 8, TYPE = 12, NEXT = 16, KEY_LEN = 24, VAL_LEN = 28, RECORD_HEADER = 32;
+
+	static final byte PUT = 1, TOMBSTONE = 2;
+
+	static final int SKIP = -1;// 段尾放不下下一条记录时写入，表示跳到下一段
+
+	static final long MIN_COMPACT_GARBAGE = 1 << 20;// 垃圾至少这么多才自动整理
+
+	private final File file;
+
+	private final File indexFile;
+
+	private final ByteCodec<K> keyCodec;
+
+	private final ByteCodec<V> valueCodec;
+
+	private int segmentShift;
+
+	private int segmentSize;
+
+	private RandomAccessFile dataRaf;
+
+	private MappedByteBuffer[] segments;// 数据文件的各段
+
+	private int segmentCount;
+
+	private long fileId;
+
+	private long dataEnd;// 下一条记录的位置，之后的内容全是0
+
+	private RandomAccessFile indexRaf;
+
+	private MappedByteBuffer indexHeader;
+
+	private MappedByteBuffer[] buckets;// 桶数组的页
+
+	private int capacity;
+
+	private long threshold;
+
+	private long size;
+
+	private long garbageBytes;// 被覆盖、删除的记录和墓碑占用的字节
+
+	private int modCount;
+
+	private boolean closed;
+
+	private ByteBuffer keyScratch = ByteBuffer.allocate(64);// 编码key用的缓冲区
+
+	private ByteBuffer valueScratch = ByteBuffer.allocate(64);// 编码value用的缓冲区
+
+	private final CRC32 crc = new CRC32();
+
+	private final byte[] crcHeader = new byte[13];
+
+	public MappedHashMap(File file, ByteCodec<K> keyCodec, ByteCodec<V> valueCodec) throws IOException {
+		this(file, keyCodec, valueCodec, DEFAULT_SEGMENT_SHIFT);
+	}
+
+	/**
+	 * 打开（不存在则创建）file上的map。segmentShift只对新建的文件有效，已存在的文件使用文件头里记录的段大小。
+	 */
+	public MappedHashMap(File file, ByteCodec<K> keyCodec, ByteCodec<V> valueCodec, int segmentShift)
+			throws IOException {
+		if (keyCodec == null || valueCodec == null)
+			throw new NullPointerException();
+		if (segmentShift < 12 || segmentShift > 30)
+			throw new IllegalArgumentException("Illegal segment shift: " + segmentShift);
+		this.file = file;
+		this.indexFile = new File(file.getPath() + ".idx");
+		this.keyCodec = keyCodec;
+		this.valueCodec = valueCodec;
+		this.segmentShift = segmentShift;
+		open();
+	}
+
+	private void open() throws IOException {
+		dataRaf = new RandomAccessFile(file, "rw");
+		FileChannel ch = dataRaf.getChannel();
+		boolean fresh = ch.size() == 0;
+		if (!fresh) {
+			ByteBuffer h = ByteBuffer.allocate(DATA_HEADER);
+			ch.read(h, 0);
+			if (h.getInt(D_MAGIC) != MAGIC || h.getInt(D_VERSION) != VERSION)
+				throw new IOException("Not a MappedHashMap file: " + file);
+			segmentShift = h.getInt(D_SEGMENT_SHIFT);
+		}
+		segmentSize = 1 << segmentShift;
+		segments = new MappedByteBuffer[8];
+		segmentCount = 0;
+		long length = ch.size();
+		do {
+			mapSegment(segmentCount);
+		} while (((long) segmentCount << segmentShift) < length);
+		MappedByteBuffer s0 = segments[0];
+		if (fresh) {
+			s0.putInt(D_MAGIC, MAGIC);
+			s0.putInt(D_VERSION, VERSION);
+			s0.putLong(D_FILE_ID, ThreadLocalRandom.current().nextLong() | 1);
+			s0.putInt(D_SEGMENT_SHIFT, segmentShift);
+			s0.force();
+		}
+		fileId = s0.getLong(D_FILE_ID);
+		if (!openIndex())
+			rebuildIndex();
+		indexHeader.putInt(I_CLEAN, 0);// 打开期间索引不可信，崩溃后重新打开时重建
+		indexHeader.force();
+	}
+
+	private void mapSegment(int i) throws IOException {
+		if (i == segments.length) {
+			MappedByteBuffer[] newSegments = new MappedByteBuffer[i * 2];
+			System.arraycopy(segments, 0, newSegments, 0, i);
+			segments = newSegments;
+		}
+		// 映射超出文件长度的区域会自动扩展文件（稀疏文件，不实际占用磁盘）
+		segments[i] = dataRaf.getChannel().map(FileChannel.MapMode.READ_WRITE, (long) i << segmentShift, segmentSize);
+		segmentCount = i + 1;
+	}
+
+	// 正常关闭的索引直接映射使用，返回false表示需要重建
+	private boolean openIndex() throws IOException {
+		if (!indexFile.exists() || indexFile.length() < INDEX_HEADER)
+			return false;
+		indexRaf = new RandomAccessFile(indexFile, "rw");
+		FileChannel ch = indexRaf.getChannel();
+		indexHeader = ch.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER);
+		int cap = indexHeader.getInt(I_CAPACITY);
+		if (indexHeader.getInt(I_MAGIC) != MAGIC || indexHeader.getInt(I_CLEAN) != 1
+				|| indexHeader.getLong(I_FILE_ID) != fileId || cap <= 0 || (cap & (cap - 1)) != 0
+				|| ch.size() < INDEX_HEADER + ((long) cap << 3)) {
+			closeIndex();
+			return false;
+		}
+		buckets = mapPages(ch, cap);
+		capacity = cap;
+		threshold = (long) (cap * (double) LOAD_FACTOR);
+		size = indexHeader.getLong(I_SIZE);
+		dataEnd = indexHeader.getLong(I_DATA_END);
+		garbageBytes = indexHeader.getLong(I_GARBAGE);
+		return true;
+	}
+
+	private static MappedByteBuffer[] mapPages(FileChannel ch, int capacity) throws IOException {
+		int pageCount = Math.max(1, capacity >>> PAGE_SHIFT);
+		int pageBytes = Math.min(capacity, 1 << PAGE_SHIFT) << 3;
+		MappedByteBuffer[] pages = new MappedByteBuffer[pageCount];
+		for (int i = 0; i < pageCount; i++)
+			pages[i] = ch.map(FileChannel.MapMode.READ_WRITE, INDEX_HEADER + (long) i * pageBytes, pageBytes);
+		return pages;
+	}
+
+	// 新建一个空的索引文件并映射，返回它的RandomAccessFile，头部和桶数组通过out返回
+	private RandomAccessFile createIndex(File f, int cap, MappedByteBuffer[][] out) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(f, "rw");
+		raf.setLength(0);
+		FileChannel ch = raf.getChannel();
+		MappedByteBuffer h = ch.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER);
+		h.putInt(I_MAGIC, MAGIC);
+		h.putInt(I_CLEAN, 0);
+		h.putLong(I_FILE_ID, fileId);
+		h.putInt(I_CAPACITY, cap);
+		out[0] = new MappedByteBuffer[] { h };
+		out[1] = mapPages(ch, cap);
+		return raf;
+	}
+
+	// 丢弃索引，从头重放数据文件
+	private void rebuildIndex() throws IOException {
+		MappedByteBuffer[][] out = new MappedByteBuffer[2][];
+		indexRaf = createIndex(indexFile, DEFAULT_INITIAL_CAPACITY, out);
+		indexHeader = out[0][0];
+		buckets = out[1];
+		capacity = DEFAULT_INITIAL_CAPACITY;
+		threshold = (long) (capacity * (double) LOAD_FACTOR);
+		size = 0;
+		garbageBytes = 0;
+		long pos = DATA_HEADER;
+		for (;;) {
+			int off = offset(pos);
+			if (segmentSize - off < RECORD_HEADER) {
+				pos = nextSegment(pos);
+				continue;
+			}
+			int seg = (int) (pos >>> segmentShift);
+			if (seg >= segmentCount)
+				break;
+			MappedByteBuffer s = segments[seg];
+			int len = s.getInt(off + LEN);
+			if (len == SKIP) {
+				garbageBytes += segmentSize - off;
+				pos = nextSegment(pos);
+				continue;
+			}
+			if (!validRecord(s, off, len))
+				break;// 日志结束，或者崩溃时没写完的记录
+			int hash = s.getInt(off + HASH);
+			int klen = s.getInt(off + KEY_LEN);
+			loadKey(s, off + RECORD_HEADER, klen);
+			if (unlink(hash, klen) != 0)
+				size--;
+			if (s.get(off + TYPE) == PUT) {
+				link(pos, hash);
+				size++;
+			} else {
+				garbageBytes += len;// 墓碑本身也是垃圾
+			}
+			pos += len;
+		}
+		dataEnd = pos;
+		zeroTail();
+	}
+
+	private boolean validRecord(MappedByteBuffer s, int off, int len) {
+		if (len < RECORD_HEADER || (len & 7) != 0 || (long) off + len > segmentSize)
+			return false;
+		byte type = s.get(off + TYPE);
+		int klen = s.getInt(off + KEY_LEN), vlen = s.getInt(off + VAL_LEN);
+		if ((type != PUT && type != TOMBSTONE) || klen < 0 || vlen < 0
+				|| (long) RECORD_HEADER + klen + vlen > len)
+			return false;
+		return checksum(s, off) == s.getInt(off + CRC);
+	}
+
+	// 把dataEnd之后的内容清零、多余的段截掉，保证日志末尾之后全是0（旧的有效记录不会在下次重放时被误读）
+	private void zeroTail() throws IOException {
+		int seg = (int) (dataEnd >>> segmentShift);
+		if (seg < segmentCount) {
+			MappedByteBuffer s = segments[seg];
+			byte[] zeros = new byte[8192];
+			for (int off = offset(dataEnd); off < segmentSize;) {
+				int n = Math.min(zeros.length, segmentSize - off);
+				s.position(off);
+				s.put(zeros, 0, n);
+				off += n;
+			}
+			s.clear();
+		}
+		int keep = Math.max(1, seg + 1);
+		if (segmentCount > keep) {
+			for (int i = keep; i < segmentCount; i++) {
+				OffHeapHashMap.free(segments[i]);
+				segments[i] = null;
+			}
+			segmentCount = keep;
+			dataRaf.setLength((long) keep << segmentShift);
+		}
+	}
+
+	private int offset(long pos) {
+		return (int) (pos & (segmentSize - 1));
+	}
+
+	private long nextSegment(long pos) {
+		return ((pos >>> segmentShift) + 1) << segmentShift;
+	}
+
+	private MappedByteBuffer segment(long pos) {
+		return segments[(int) (pos >>> segmentShift)];
+	}
+
+	private static long getBucket(MappedByteBuffer[] pages, int i) {
+		return pages[i >>> PAGE_SHIFT].getLong((i & PAGE_MASK) << 3);
+	}
+
+	private static void setBucket(MappedByteBuffer[] pages, int i, long p) {
+		pages[i >>> PAGE_SHIFT].putLong((i & PAGE_MASK) << 3, p);
+	}
+
+	private long next(long p) {
+		return segment(p).getLong(offset(p) + NEXT);
+	}
+
+	private void setNext(long p, long next) {
+		segment(p).putLong(offset(p) + NEXT, next);
+	}
+
+	private int recordLength(long p) {
+		return segment(p).getInt(offset(p) + LEN);
+	}
+
+	// crc覆盖hash、type、keyLen、valLen和key、value的内容，不包括会被修改的next
+	private int checksum(MappedByteBuffer s, int off) {
+		int klen = s.getInt(off + KEY_LEN), vlen = s.getInt(off + VAL_LEN);
+		ByteBuffer h = ByteBuffer.wrap(crcHeader);
+		h.putInt(s.getInt(off + HASH)).put(s.get(off + TYPE)).putInt(klen).putInt(vlen);
+		crc.reset();
+		crc.update(crcHeader, 0, crcHeader.length);
+		s.limit(off + RECORD_HEADER + klen + vlen).position(off + RECORD_HEADER);
+		crc.update(s);
+		s.clear();
+		return (int) crc.getValue();
+	}
+
+	private void checkOpen() {
+		if (closed)
+			throw new IllegalStateException("Map has been closed");
+	}
+
+	@SuppressWarnings("unchecked")
+	private int encodeKey(Object key) {
+		K k = (K) key;
+		int len = keyCodec.encodedSize(k);
+		if (keyScratch.capacity() < len)
+			keyScratch = ByteBuffer.allocate(Math.max(len, keyScratch.capacity() * 2));
+		keyScratch.clear();
+		keyCodec.encode(k, keyScratch);
+		if (keyScratch.position() != len)
+			throw new IllegalStateException("Key codec wrote " + keyScratch.position() + " bytes, expected " + len);
+		return len;
+	}
+
+	private int encodeValue(V value) {
+		int len = valueCodec.encodedSize(value);
+		if (valueScratch.capacity() < len)
+			valueScratch = ByteBuffer.allocate(Math.max(len, valueScratch.capacity() * 2));
+		valueScratch.clear();
+		valueCodec.encode(value, valueScratch);
+		if (valueScratch.position() != len)
+			throw new IllegalStateException("Value codec wrote " + valueScratch.position() + " bytes, expected " + len);
+		return len;
+	}
+
+	// 把记录中的key复制到keyScratch（重放和整理时使用）
+	private void loadKey(MappedByteBuffer s, int off, int klen) {
+		if (keyScratch.capacity() < klen)
+			keyScratch = ByteBuffer.allocate(Math.max(klen, keyScratch.capacity() * 2));
+		keyScratch.clear();
+		s.limit(off + klen).position(off);
+		keyScratch.put(s);
+		s.clear();
+	}
+
+	private boolean keyEquals(long p, int hash, int klen) {
+		MappedByteBuffer s = segment(p);
+		int o = offset(p);
+		if (s.getInt(o + HASH) != hash || s.getInt(o + KEY_LEN) != klen)
+			return false;
+		o += RECORD_HEADER;
+		int i = 0;
+		for (; i + 8 <= klen; i += 8)
+			if (s.getLong(o + i) != keyScratch.getLong(i))
+				return false;
+		for (; i < klen; i++)
+			if (s.get(o + i) != keyScratch.get(i))
+				return false;
+		return true;
+	}
+
+	private long find(int hash, int klen) {
+		for (long p = getBucket(buckets, MyHashMap.indexFor(hash, capacity)); p != 0; p = next(p))
+			if (keyEquals(p, hash, klen))
+				return p;
+		return 0;
+	}
+
+	// 把keyScratch中的key从链表中摘除，返回被摘除的记录位置，没有返回0
+	private long unlink(int hash, int klen) {
+		int i = MyHashMap.indexFor(hash, capacity);
+		long prev = 0;
+		for (long p = getBucket(buckets, i); p != 0; prev = p, p = next(p)) {
+			if (!keyEquals(p, hash, klen))
+				continue;
+			if (prev == 0)
+				setBucket(buckets, i, next(p));
+			else
+				setNext(prev, next(p));
+			garbageBytes += recordLength(p);
+			return p;
+		}
+		return 0;
+	}
+
+	private void link(long p, int hash) throws IOException {
+		int i = MyHashMap.indexFor(hash, capacity);
+		setNext(p, getBucket(buckets, i));
+		setBucket(buckets, i, p);
+		if (size >= threshold && capacity < MAXIMUM_CAPACITY)
+			resizeIndex(capacity * 2);
+	}
+
+	// 记录的长度，8字节对齐。一条记录必须能放进一个段
+	private int recordLength(int klen, int vlen) {
+		long len = (RECORD_HEADER + (long) klen + vlen + 7) & ~7L;
+		if (len > segmentSize - DATA_HEADER)
+			throw new IllegalArgumentException("Record of " + len + " bytes does not fit in a segment");
+		return (int) len;
+	}
+
+	// 追加一条记录：key在keyScratch，value在valueScratch（墓碑vlen为0）
+	private long append(byte type, int hash, int klen, int vlen) throws IOException {
+		int len = recordLength(klen, vlen);
+		int off = offset(dataEnd);
+		if (off + len > segmentSize) {
+			if (segmentSize - off >= RECORD_HEADER)
+				segment(dataEnd).putInt(off + LEN, SKIP);
+			garbageBytes += segmentSize - off;
+			dataEnd = nextSegment(dataEnd);
+			off = 0;
+		}
+		int seg = (int) (dataEnd >>> segmentShift);
+		if (seg >= segmentCount)
+			mapSegment(seg);
+		MappedByteBuffer s = segments[seg];
+		s.putInt(off + HASH, hash);
+		s.put(off + TYPE, type);
+		s.putLong(off + NEXT, 0L);
+		s.putInt(off + KEY_LEN, klen);
+		s.putInt(off + VAL_LEN, vlen);
+		s.position(off + RECORD_HEADER);
+		keyScratch.limit(klen).position(0);
+		s.put(keyScratch);
+		if (vlen > 0) {
+			valueScratch.limit(vlen).position(0);
+			s.put(valueScratch);
+		}
+		s.clear();
+		s.putInt(off + CRC, checksum(s, off));
+		s.putInt(off + LEN, len);
+		long p = dataEnd;
+		dataEnd += len;
+		return p;
+	}
+
+	private V decodeValue(long p) {
+		MappedByteBuffer s = segment(p);
+		int o = offset(p);
+		int vo = o + RECORD_HEADER + s.getInt(o + KEY_LEN);
+		int vlen = s.getInt(o + VAL_LEN);
+		s.limit(vo + vlen).position(vo);
+		try {
+			return valueCodec.decode(s, vlen);
+		} finally {
+			s.clear();
+		}
+	}
+
+	private K decodeKey(long p) {
+		MappedByteBuffer s = segment(p);
+		int o = offset(p);
+		int klen = s.getInt(o + KEY_LEN);
+		s.limit(o + RECORD_HEADER + klen).position(o + RECORD_HEADER);
+		try {
+			return keyCodec.decode(s, klen);
+		} finally {
+			s.clear();
+		}
+	}
+
+	public int size() {
+		return (int) Math.min(size, Integer.MAX_VALUE);
+	}
+
+	public long longSize() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public V get(Object key) {
+		checkOpen();
+		if (key == null)
+			throw new NullPointerException();
+		int klen = encodeKey(key);
+		long p = find(OffHeapHashMap.hashBytes(keyScratch, 0, klen), klen);
+		return p == 0 ? null : decodeValue(p);
+	}
+
+	public boolean containsKey(Object key) {
+		checkOpen();
+		if (key == null)
+			throw new NullPointerException();
+		int klen = encodeKey(key);
+		return find(OffHeapHashMap.hashBytes(keyScratch, 0, klen), klen) != 0;
+	}
+
+	public V put(K key, V value) {
+		return putVal(key, value, true);
+	}
+
+	private V putVal(K key, V value, boolean compact) {
+		checkOpen();
+		if (key == null || value == null)
+			throw new NullPointerException();
+		try {
+			int klen = encodeKey(key);
+			int hash = OffHeapHashMap.hashBytes(keyScratch, 0, klen);
+			int vlen = encodeValue(value);
+			recordLength(klen, vlen);// 放不下的记录在修改链表之前就拒绝
+			long old = unlink(hash, klen);
+			V oldValue = old == 0 ? null : decodeValue(old);
+			long p = append(PUT, hash, klen, vlen);
+			if (old == 0) {
+				modCount++;
+				size++;
+			}
+			link(p, hash);
+			if (compact)
+				maybeCompact();
+			return oldValue;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public V remove(Object key) {
+		return removeKey(key, true);
+	}
+
+	private V removeKey(Object key, boolean compact) {
+		checkOpen();
+		if (key == null)
+			throw new NullPointerException();
+		try {
+			int klen = encodeKey(key);
+			int hash = OffHeapHashMap.hashBytes(keyScratch, 0, klen);
+			long old = unlink(hash, klen);
+			if (old == 0)
+				return null;
+			V oldValue = decodeValue(old);
+			long p = append(TOMBSTONE, hash, klen, 0);
+			garbageBytes += recordLength(p);
+			modCount++;
+			size--;
+			if (compact)
+				maybeCompact();
+			return oldValue;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// 索引扩容：写到临时文件，完成后rename替换。打开期间索引本来就不可信，中途崩溃也没关系
+	private void resizeIndex(int newCapacity) throws IOException {
+		File tmp = new File(indexFile.getPath() + ".tmp");
+		MappedByteBuffer[][] out = new MappedByteBuffer[2][];
+		RandomAccessFile raf = createIndex(tmp, newCapacity, out);
+		MappedByteBuffer[] newPages = out[1];
+		for (int j = 0; j < capacity; j++) {
+			long p = getBucket(buckets, j);
+			while (p != 0) {
+				long next = next(p);
+				int i = MyHashMap.indexFor(segment(p).getInt(offset(p) + HASH), newCapacity);
+				setNext(p, getBucket(newPages, i));
+				setBucket(newPages, i, p);
+				p = next;
+			}
+		}
+		closeIndex();
+		Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		indexRaf = raf;
+		indexHeader = out[0][0];
+		buckets = newPages;
+		capacity = newCapacity;
+		threshold = (long) (newCapacity * (double) LOAD_FACTOR);
+	}
+
+	private void maybeCompact() throws IOException {
+		if (garbageBytes >= MIN_COMPACT_GARBAGE && garbageBytes * 2 > dataEnd)
+			rewrite(true);
+	}
+
+	// 整理：只保留存活的记录
+	public void compact() {
+		checkOpen();
+		try {
+			rewrite(true);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public void clear() {
+		checkOpen();
+		try {
+			rewrite(false);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * 把存活的记录（keep为false时不复制）写到新的数据文件和索引文件，正常关闭后依次rename替换旧文件：
+	 * 先替换索引，这时新索引的fileId和旧数据文件对不上，崩溃后会从旧数据文件重建；再替换数据文件，两个文件就都是新的了。
+	 */
+	private void rewrite(boolean keep) throws IOException {
+		File tmp = new File(file.getPath() + ".compact");
+		File tmpIndex = new File(tmp.getPath() + ".idx");
+		tmp.delete();
+		tmpIndex.delete();
+		MappedHashMap<K, V> dst = new MappedHashMap<K, V>(tmp, keyCodec, valueCodec, segmentShift);
+		try {
+			if (keep) {
+				for (int i = 0; i < capacity; i++) {
+					for (long p = getBucket(buckets, i); p != 0; p = next(p))
+						dst.copyRecord(segment(p), offset(p));
+				}
+			}
+		} finally {
+			dst.close();
+		}
+		modCount++;
+		closeFiles();
+		Files.move(tmpIndex.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		open();
+	}
+
+	// 原样复制一条PUT记录（整理时使用）
+	private void copyRecord(MappedByteBuffer s, int off) throws IOException {
+		int hash = s.getInt(off + HASH);
+		int klen = s.getInt(off + KEY_LEN), vlen = s.getInt(off + VAL_LEN);
+		loadKey(s, off + RECORD_HEADER, klen);
+		if (valueScratch.capacity() < vlen)
+			valueScratch = ByteBuffer.allocate(Math.max(vlen, valueScratch.capacity() * 2));
+		valueScratch.clear();
+		s.limit(off + RECORD_HEADER + klen + vlen).position(off + RECORD_HEADER + klen);
+		valueScratch.put(s);
+		s.clear();
+		long p = append(PUT, hash, klen, vlen);
+		size++;
+		link(p, hash);
+	}
+
+	/**
+	 * 把数据和索引写回磁盘。之后即使断电，重新打开时也能从数据文件恢复到这个时刻的内容。
+	 */
+	public void flush() {
+		checkOpen();
+		for (int i = 0; i < segmentCount; i++)
+			segments[i].force();
+		writeIndexHeader();
+		for (MappedByteBuffer page : buckets)
+			page.force();
+		indexHeader.force();
+	}
+
+	private void writeIndexHeader() {
+		indexHeader.putLong(I_SIZE, size);
+		indexHeader.putLong(I_DATA_END, dataEnd);
+		indexHeader.putLong(I_GARBAGE, garbageBytes);
+	}
+
+	// 写回全部数据，把索引标记为干净，下次打开时直接使用。modCount加1，关闭之前创建的迭代器不能再继续
+	public void close() throws IOException {
+		if (closed)
+			return;
+		modCount++;
+		flush();
+		indexHeader.putInt(I_CLEAN, 1);
+		indexHeader.force();
+		closeFiles();
+		closed = true;
+	}
+
+	private void closeFiles() throws IOException {
+		for (int i = 0; i < segmentCount; i++) {
+			OffHeapHashMap.free(segments[i]);
+			segments[i] = null;
+		}
+		segmentCount = 0;
+		dataRaf.close();
+		closeIndex();
+	}
+
+	private void closeIndex() throws IOException {
+		if (buckets != null)
+			for (MappedByteBuffer page : buckets)
+				OffHeapHashMap.free(page);
+		OffHeapHashMap.free(indexHeader);
+		buckets = null;
+		indexHeader = null;
+		indexRaf.close();
+	}
+
+	// Views
+
+	private transient Set<Map.Entry<K, V>> entrySet = null;
+
+	public Set<Map.Entry<K, V>> entrySet() {
+		Set<Map.Entry<K, V>> es = entrySet;
+		return es != null ? es : (entrySet = new EntrySet());
+	}
+
+	private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+		public Iterator<Map.Entry<K, V>> iterator() {
+			return new EntryIterator();
+		}
+
+		public int size() {
+			return MappedHashMap.this.size();
+		}
+
+		public void clear() {
+			MappedHashMap.this.clear();
+		}
+	}
+
+	// 与OffHeapHashMap相同：迭代器中的setValue和remove不触发整理，保证持有的记录位置不失效
+	private final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+		long next;
+		int index;
+		int expectedModCount;
+		MappedEntry lastReturned;
+
+		EntryIterator() {
+			checkOpen();
+			expectedModCount = modCount;
+			advance();
+		}
+
+		private void advance() {
+			while (next == 0 && index < capacity)
+				next = getBucket(buckets, index++);
+		}
+
+		public boolean hasNext() {
+			return next != 0;
+		}
+
+		// map关闭以后文件映射已经释放，先检查，不能去读已经释放的buckets
+		public Map.Entry<K, V> next() {
+			checkOpen();
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			long p = next;
+			if (p == 0)
+				throw new NoSuchElementException();
+			next = MappedHashMap.this.next(p);
+			advance();
+			return lastReturned = new MappedEntry(decodeKey(p), decodeValue(p));
+		}
+
+		public void remove() {
+			if (lastReturned == null)
+				throw new IllegalStateException();
+			checkOpen();
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			removeKey(lastReturned.getKey(), false);
+			lastReturned = null;
+			expectedModCount = modCount;
+		}
+	}
+
+	private final class MappedEntry extends SimpleEntry<K, V> {
+		private static final long serialVersionUID = 1L;
+
+		MappedEntry(K key, V value) {
+			super(key, value);
+		}
+
+		public V setValue(V value) {
+			putVal(getKey(), value, false);
+			return super.setValue(value);
+		}
+	}
+}
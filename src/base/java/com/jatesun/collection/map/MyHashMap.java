@@ -2,6 +2,7 @@ package com.jatesun.collection.map;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.io.StreamCorruptedException;
 import java.util.AbstractCollection;
 import java.util.AbstractMap;
 import java.util.AbstractSet;
@@ -12,6 +13,18 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import com.jatesun.collection.codec.BinaryInput;
+import com.jatesun.collection.codec.BinaryOutput;
+import com.jatesun.collection.codec.Codec;
 //import java.util.HashMap.Entry;
 //import java.util.HashMap.EntryIterator;
 //import java.util.HashMap.EntrySet;
@@ -47,17 +60,96 @@ public class MyHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clo
 
 	static final float DEFAULT_LOAD_FACTOR = 0.75f;// 装填因子
 
-	transient Entry[] table;// 存放数据的entry数组
+	static final int TREEIFY_THRESHOLD = 8;// 链表长度达到该值时为桶建立红黑树
+
+	static final int UNTREEIFY_THRESHOLD = 6;// 删除或扩容后桶内元素不超过该值时退化回纯链表
+
+	static final int MIN_TREEIFY_CAPACITY = 64;// 数组太小时优先扩容而不是树化
+
+	static final int MIN_INCREMENTAL_CAPACITY = 1 << 10;// 增量扩容模式下，数组小于该值时一次性扩容更划算
+
+	static final int REHASH_STEP = 8;// 增量扩容模式下每次get/put/remove顺带搬运的旧桶个数
+
+	static final int PARALLEL_TRANSFER_THRESHOLD = 1 << 20;// 旧数组达到该大小时用fork-join并行transfer
+
+	static final int TRANSFER_CHUNK = 1 << 16;// 并行transfer时每个任务负责的旧桶个数
+
+	// 还没有放入过元素的map共用的数组。长度为1，查找时indexFor总是0，读到的总是null，不需要到处判断数组是否存在；
+	// 所有放入元素的路径（addEntry、createEntry、bulkLoad）都会先换成真正的数组，这个数组里永远不会写入entry
+	static final Entry<?, ?>[] EMPTY_TABLE = new Entry<?, ?>[1];
+
+	transient Entry<K, V>[] table;// 存放数据的entry数组，第一次放入元素时才分配
+
+	// 与table平行的树桶数组，只有出现过长链表时才分配。链表（next）始终完整保留，树只是该桶的查找索引
+	transient TreeBin<K, V>[] treeBins;
 
 	transient int size;
 
-	int threshold;// 扩容边界（capacity*loadfactor）
+	int threshold;// 扩容边界（capacity*loadfactor）。table还是EMPTY_TABLE时存的是将要分配的容量
 
 	final float loadFactor;
 
 	transient volatile int modCount;
 
+	// 增量扩容模式：扩容时不一次性transfer，而是新旧两个数组同时存在，之后每次get/put/remove搬运几个旧桶
+	private final boolean incrementalResize;
+
+	transient Entry<K, V>[] rehashTable;// 正在迁移的旧数组，不在迁移时为null
+
+	transient TreeBin<K, V>[] rehashTreeBins;// 旧数组对应的树桶
+
+	transient int rehashIndex;// rehashIndex之前的旧桶已经全部搬到了table
+
+	// 随机种子散列：key的hash值掺入每个实例自己的随机种子，外部无法预先构造出大量落在同一个桶里的key
+	private final boolean randomizedHash;
+
+	transient int hashSeed;// 随机种子，反序列化时重新生成，不写入流
+
+	transient HashStats.Counter stats;// 运行时统计，enableStats之前为null，不写入流
+
+	// 桶指纹（见enableFingerprints），与table等长，null表示没有打开
+	transient int[] fingerprints;
+
+	// 快照模式（见enableSnapshots）。下面几个字段只在快照模式下使用
+	transient boolean snapshots;
+
+	transient volatile int writeSeq;// 写线程修改结构期间为奇数，读线程只在偶数时冻结数组
+
+	transient int writeDepth;// 写操作的嵌套层数（addEntry里会resize），只有最外层修改writeSeq
+
+	transient volatile Entry<K, V>[] frozen;// 读线程最近一次冻结的数组，写线程不能再修改它以及从它能访问到的entry
+
+	transient long[] ownedBuckets;// 复制数组之后已经复制成自己的桶（位图），null表示所有entry都只属于当前数组
+
+	// 自动收缩：remove之后元素少于扩容边界的1/4时把数组缩小到一半左右的装填程度，clear时释放整个数组
+	private final boolean autoShrink;
+
 	public MyHashMap(int initialCapacity, float loadFactor) {
+		this(initialCapacity, loadFactor, false);
+	}
+
+	public MyHashMap(int initialCapacity, float loadFactor, boolean incrementalResize) {
+		this(initialCapacity, loadFactor, incrementalResize, false);
+	}
+
+	/**
+	 * incrementalResize为true时扩容变为增量的：resize只分配新数组，旧桶在之后的get/put/remove中分批搬运，
+	 * 单次put不会再因为transfer全部元素而卡顿。注意这个模式下get也会修改内部结构（搬运旧桶），
+	 * 即使只读也不能在没有外部同步的情况下多线程共享。
+	 * randomizedHash为true时使用带随机种子的散列（见seededHash），key来自不可信的外部输入（比如http头）时打开，
+	 * 代价是String的hash每次都要重新计算而不能用String缓存的hashCode。
+	 */
+	public MyHashMap(int initialCapacity, float loadFactor, boolean incrementalResize, boolean randomizedHash) {
+		this(initialCapacity, loadFactor, incrementalResize, randomizedHash, false);
+	}
+
+	/**
+	 * autoShrink为true时map会把内存还回去：remove(Object)之后元素个数低于扩容边界的1/4时缩小数组，
+	 * clear时直接释放数组。缩小后的数组只装到loadFactor的一半左右，之后再增长或者再删除都要翻倍的变化才会再次调整，
+	 * 不会在边界附近反复扩容缩容。迭代器、视图的remove以及compute系列删除元素不会触发收缩。
+	 */
+	public MyHashMap(int initialCapacity, float loadFactor, boolean incrementalResize, boolean randomizedHash,
+			boolean autoShrink) {
 		if (initialCapacity < 0)
 			throw new IllegalArgumentException("Illegal initial capacity: " + initialCapacity);
 		if (initialCapacity > MAXIMUM_CAPACITY)
@@ -69,10 +161,14 @@ public class MyHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clo
 		int capacity = 1;
 		while (capacity < initialCapacity)
 			capacity <<= 1;
-		// 初始loadfactor、threshold、entry数组
+		// 初始loadfactor、threshold，数组等到第一次放入元素时再按capacity分配
 		this.loadFactor = loadFactor;
-		threshold = (int) (capacity * loadFactor);
-		table = new Entry[capacity];
+		this.incrementalResize = incrementalResize;
+		this.randomizedHash = randomizedHash;
+		this.autoShrink = autoShrink;
+		initHashSeed();
+		threshold = capacity;
+		table = emptyTable();
 		init();
 	}
 
@@ -82,19 +178,90 @@ public class MyHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clo
 
 	public MyHashMap() {
 		this.loadFactor = DEFAULT_LOAD_FACTOR;
-		threshold = (int) (DEFAULT_INITIAL_CAPACITY * DEFAULT_LOAD_FACTOR);
-		table = new Entry[DEFAULT_INITIAL_CAPACITY];
+		this.incrementalResize = false;
+		this.randomizedHash = false;
+		this.autoShrink = false;
+		// 很多map创建出来一直是空的，不预先分配数组
+		threshold = DEFAULT_INITIAL_CAPACITY;
+		table = emptyTable();
 		init();// 钩子方法，用于子类初始化自己的内容
 	}
 
 	public MyHashMap(Map<? extends K, ? extends V> m) {
 		this(Math.max((int) (m.size() / DEFAULT_LOAD_FACTOR) + 1, DEFAULT_INITIAL_CAPACITY), DEFAULT_LOAD_FACTOR);
-		putAllForCreate(m);
+		bulkLoad(m);
 	}
 
 	void init() {
 	}
 
+	// 泛型数组不能直接new，与jdk1.8的resize一样创建后强转
+	@SuppressWarnings("unchecked")
+	static <K, V> Entry<K, V>[] newTable(int n) {
+		return (Entry<K, V>[]) new Entry<?, ?>[n];
+	}
+
+	@SuppressWarnings("unchecked")
+	static <K, V> TreeBin<K, V>[] newTreeBins(int n) {
+		return (TreeBin<K, V>[]) new TreeBin<?, ?>[n];
+	}
+
+	// EMPTY_TABLE永远不会写入entry，当作任意类型的数组使用是安全的
+	@SuppressWarnings("unchecked")
+	final Entry<K, V>[] emptyTable() {
+		return (Entry<K, V>[]) EMPTY_TABLE;
+	}
+
+	// 第一次放入元素时按threshold里存的容量分配数组
+	private void inflateTable() {
+		int capacity = threshold;
+		table = newTable(capacity);
+		threshold = (int) Math.min(capacity * loadFactor, Integer.MAX_VALUE);
+		if (fingerprints != null)
+			fingerprints = new int[capacity];
+	}
+
+	/**
+	 * 打开桶指纹：与table平行的int[]，每个桶一个32位的位图，桶里每个entry按hash算出一位（见fingerprint）在位图里置上。
+	 * 查找时先看指纹，对应的位没有置上说明桶里一定没有这个key，不用访问链表上的entry（每个entry都可能是一次cache miss）。
+	 * 删除元素时不清除位（同一位可能还属于别的entry），指纹只会多不会少，不影响正确性，扩容、缩容时按实际元素重建。
+	 * 链表越长（loadFactor越大）、未命中的查找越多，效果越明显；代价是每个桶多4个字节，命中的查找多访问一次指纹数组。
+	 * 指纹不随序列化保留。
+	 */
+	public void enableFingerprints() {
+		if (fingerprints == null)
+			rebuildFingerprints();
+	}
+
+	public void disableFingerprints() {
+		fingerprints = null;
+	}
+
+	// hash在位图里对应的位。hash(int)只把高位往低位散，小整数的hash高位全是0，所以先乘一个奇数常量再取最高5位，
+	// 乘法结果的高位与hash的每一位都有关，同一个桶里的key（低位相同）也能分到不同的位
+	static int fingerprint(int hash) {
+		return 1 << ((hash * 0x9E3779B9) >>> 27);
+	}
+
+	// table换成新数组之后调用，按现有的元素重新计算
+	private void rebuildFingerprints() {
+		Entry<K, V>[] tab = table;
+		int[] fp = new int[tab.length];
+		for (int i = 0; i < tab.length; i++) {
+			for (Entry<K, V> e = tab[i]; e != null; e = e.next)
+				fp[i] |= fingerprint(e.hash);
+		}
+		fingerprints = fp;
+	}
+
+	// 放入元素前调用：数组还没有分配就先分配，返回hash在（新）数组里的桶
+	final int ensureTable(int hash, int bucketIndex) {
+		if (table != EMPTY_TABLE)
+			return bucketIndex;
+		inflateTable();
+		return indexFor(hash, table.length);
+	}
+
 	// 对hash值进行再散列，减少散列冲突
 	static int hash(int h) {
 		// This function ensures that hashCodes that differ only by
@@ -104,11 +271,71 @@ public class MyHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clo
 		return h ^ (h >>> 7) ^ (h >>> 4);
 	}
 
+	final void initHashSeed() {
+		hashSeed = randomizedHash ? ThreadLocalRandom.current().nextInt() : 0;
+	}
+
+	// key的hash值，null为0。默认与原来一样用hash(key.hashCode())，打开randomizedHash时用带种子的散列
+	final int hashOf(Object key) {
+		if (key == null)
+			return 0;
+		return randomizedHash ? seededHash(key, hashSeed) : hash(key.hashCode());
+	}
+
+	/**
+	 * 带种子的散列。hash(int)只是打散hashCode，hashCode相同的key打散以后还是相同，
+	 * 而String的hashCode很容易批量构造出相同值（"Aa"和"BB"的hashCode相同，任意拼接后仍然相同），
+	 * 所以String不用hashCode，而是把种子和字符内容一起做murmur3散列，不知道种子就无法构造冲突。
+	 * 其他类型只能在hashCode上掺入种子再做murmur3的fmix32，hashCode完全相同的key仍然会冲突，由树化桶兜底。
+	 * byte[]的equals是比较引用，只能按hashCode（identityHashCode）处理。
+	 */
+	static int seededHash(Object key, int seed) {
+		if (key instanceof String)
+			return stringHash((String) key, seed);
+		return fmix32(key.hashCode() ^ seed);
+	}
+
+	// murmur3_32，每次处理两个char（32位）
+	static int stringHash(String s, int seed) {
+		int h = seed;
+		int len = s.length();
+		int i = 0;
+		for (; i + 1 < len; i += 2) {
+			int k = s.charAt(i) | (s.charAt(i + 1) << 16);
+			h ^= mixK(k);
+			h = Integer.rotateLeft(h, 13) * 5 + 0xe6546b64;
+		}
+		if (i < len)
+			h ^= mixK(s.charAt(i));
+		return fmix32(h ^ (len << 1));
+	}
+
+	static int mixK(int k) {
+		k *= 0xcc9e2d51;
+		k = Integer.rotateLeft(k, 15);
+		return k * 0x1b873593;
+	}
+
+	// murmur3的最终混合，每一位输入都会影响到每一位输出
+	static int fmix32(int h) {
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		return h ^ (h >>> 16);
+	}
+
 	// 计算hash值对应的数组index
 	static int indexFor(int h, int length) {
 		return h & (length - 1);
 	}
 
+	// 取得index对应的树桶，没有树化返回null
+	final TreeBin<K, V> treeBinAt(int i) {
+		TreeBin<K, V>[] bins = treeBins;
+		return bins == null ? null : bins[i];
+	}
+
 	public int size() {
 		return size;
 	}
@@ -121,34 +348,132 @@ public class MyHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clo
 		// 校验参数，入参检查程序健壮性必备步骤
 		if (key == null)
 			return getForNullKey();// hashmap key可以为null。
-		int hash = hash(key.hashCode());
-		// indexfor知道hash对应的index位置，其实提出来看的更加明确，但是简单起见直接写到for循环条件里。
-		for (Entry<K, V> e = table[indexFor(hash, table.length)]; e != null; e = e.next) {
+		int hash = hashOf(key);
+		if (rehashTable != null)
+			rehashStep(hash);
+		int i = indexFor(hash, table.length);
+		int[] fp = fingerprints;
+		if (fp != null && (fp[i] & fingerprint(hash)) == 0) {// 指纹里没有，一定不存在
+			recordGet(false);
+			return null;
+		}
+		TreeBin<K, V> tb = treeBinAt(i);
+		if (tb != null) {// 已树化的桶走红黑树查找，最坏O(log n)
+			Entry<K, V> e = tb.find(hash, key);
+			recordGet(e != null);
+			return e == null ? null : e.value;
+		}
+		for (Entry<K, V> e = table[i]; e != null; e = e.next) {
 			Object k;
 			// 元素hash值相同、key的类型相同相等才认为找到
-			if (e.hash == hash && ((k = e.key) == key || key.equals(k)))
+			if (e.hash == hash && ((k = e.key) == key || key.equals(k))) {
+				recordGet(true);
 				return e.value;
+			}
 		}
+		recordGet(false);
 		return null;// 默认返回null
 	}
 
 	private V getForNullKey() {
 		// 可以看出由于null没有hash值所有null键默认存放在数组的第一个位置，我们日常开发遇到这种不能处理的情况也可以默认存在第一个位置
+		if (rehashTable != null)
+			rehashStep(0);
+		TreeBin<K, V> tb = treeBinAt(0);
+		if (tb != null) {
+			Entry<K, V> e = tb.find(0, null);
+			recordGet(e != null);
+			return e == null ? null : e.value;
+		}
 		for (Entry<K, V> e = table[0]; e != null; e = e.next) {
-			if (e.key == null)
+			if (e.key == null) {
+				recordGet(true);
 				return e.value;
+			}
 		}
+		recordGet(false);
 		return null;
 	}
 
+	// 没有打开统计时只是一次null判断。重写了get的子类（MyLinkedHashMap等）也要调用
+	final void recordGet(boolean hit) {
+		HashStats.Counter s = stats;
+		if (s != null) {
+			if (hit)
+				s.hits++;
+			else
+				s.misses++;
+		}
+	}
+
+	// 扩容（缩容）结束时记录次数、耗时，start是开始时的System.nanoTime()（没有打开统计时为0）
+	private void recordResize(int oldCapacity, int newCapacity, long start) {
+		HashStats.Counter s = stats;
+		if (s != null)
+			s.resized(this, oldCapacity, newCapacity, size, System.nanoTime() - start);
+	}
+
+	/**
+	 * 打开运行时统计：get（getOrDefault）的命中、未命中次数，扩容（缩容）的次数和耗时。
+	 * listener不为null时每次扩容后回调，可以在这里提交JFR事件。没有打开时这些路径上只多一次字段的null判断。
+	 * 重新调用会清零计数器。统计不会被clone、序列化带走。
+	 */
+	public void enableStats(ResizeListener listener) {
+		stats = new HashStats.Counter(listener);
+	}
+
+	public void enableStats() {
+		enableStats(null);
+	}
+
+	public void disableStats() {
+		stats = null;
+	}
+
+	// 扫描一遍数组生成快照，O(capacity)。增量扩容还没完成时先搬完
+	public HashStats stats() {
+		if (rehashTable != null)
+			finishRehash();
+		Entry<K, V>[] tab = table;
+		int[] chainLengths = new int[HashStats.HISTOGRAM_SIZE];
+		long probes = 0;
+		int max = 0, bins = 0;
+		int capacity = tab == EMPTY_TABLE ? 0 : tab.length;
+		for (int i = 0; i < capacity; i++) {
+			int n = 0;
+			for (Entry<K, V> e = tab[i]; e != null; e = e.next)
+				n++;
+			HashStats.addChain(chainLengths, n);
+			probes += HashStats.probes(n);
+			if (n > max)
+				max = n;
+			if (treeBinAt(i) != null)
+				bins++;
+		}
+		return new HashStats(capacity, size, chainLengths, max, bins, probes, stats);
+	}
+
 	public boolean containsKey(Object key) {
 		return getEntry(key) != null;
 	}
 
 	final Entry<K, V> getEntry(Object key) {
-		int hash = (key == null) ? 0 : hash(key.hashCode());// 获取hash值
+		int hash = hashOf(key);// 获取hash值
+		if (rehashTable != null)
+			rehashStep(hash);
 		// 取key对应的index，然后在遍历该链表，如果找到对应的key返回对应的entry
-		for (Entry<K, V> e = table[indexFor(hash, table.length)]; e != null; e = e.next) {
+		return findEntry(indexFor(hash, table.length), hash, key);
+	}
+
+	// 在桶i中查找key（key可以为null），树化的桶查红黑树
+	final Entry<K, V> findEntry(int i, int hash, Object key) {
+		int[] fp = fingerprints;
+		if (fp != null && (fp[i] & fingerprint(hash)) == 0)
+			return null;
+		TreeBin<K, V> tb = treeBinAt(i);
+		if (tb != null)
+			return tb.find(hash, key);
+		for (Entry<K, V> e = table[i]; e != null; e = e.next) {
 			Object k;
 			if (e.hash == hash && ((k = e.key) == key || (key != null && key.equals(k))))
 				return e;
@@ -160,17 +485,33 @@ public class MyHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clo
 	public V put(K key, V value) {
 		if (key == null)
 			return putForNullKey(value);// 如果为null，调用put null的专用值
-		int hash = hash(key.hashCode());
+		int hash = hashOf(key);
+		if (rehashTable != null)
+			rehashStep(hash);
 		int i = indexFor(hash, table.length);
-		// 不为空计算出索引，然后遍历链表，找到就替换，找不到就新建
-		for (Entry<K, V> e = table[i]; e != null; e = e.next) {
-			Object k;
-			if (e.hash == hash && ((k = e.key) == key || key.equals(k))) {
+		TreeBin<K, V> tb = treeBinAt(i);
+		int[] fp = fingerprints;
+		if (fp != null && (fp[i] & fingerprint(hash)) == 0) {
+			// 指纹里没有，不用查找，直接添加
+		} else if (tb != null) {
+			Entry<K, V> e = tb.find(hash, key);
+			if (e != null) {
 				V oldValue = e.value;
-				e.value = value;
+				replaceValue(i, e, value);
 				e.recordAccess(this);
 				return oldValue;
 			}
+		} else {
+			// 不为空计算出索引，然后遍历链表，找到就替换，找不到就新建
+			for (Entry<K, V> e = table[i]; e != null; e = e.next) {
+				Object k;
+				if (e.hash == hash && ((k = e.key) == key || key.equals(k))) {
+					V oldValue = e.value;
+					replaceValue(i, e, value);
+					e.recordAccess(this);
+					return oldValue;
+				}
+			}
 		}
 
 		modCount++;
@@ -180,13 +521,20 @@ public class MyHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clo
 
 	private V putForNullKey(V value) {
 		// for循环遍历table[0]的链表，如果找到key为null则替换。
-		for (Entry<K, V> e = table[0]; e != null; e = e.next) {
-			if (e.key == null) {
-				V oldValue = e.value;
-				e.value = value;
-				e.recordAccess(this);
-				return oldValue;
-			}
+		if (rehashTable != null)
+			rehashStep(0);
+		TreeBin<K, V> tb = treeBinAt(0);
+		Entry<K, V> e = null;
+		if (tb != null)
+			e = tb.find(0, null);
+		else
+			for (e = table[0]; e != null && e.key != null; e = e.next)
+				;
+		if (e != null) {
+			V oldValue = e.value;
+			replaceValue(0, e, value);
+			e.recordAccess(this);
+			return oldValue;
 		}
 		modCount++;
 		addEntry(0, null, value, 0);// 不存在就新建
@@ -195,29 +543,132 @@ public class MyHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clo
 
 	// 只在clone和readobject方法时用到这个方法。
 	private void putForCreate(K key, V value) {
-		int hash = (key == null) ? 0 : hash(key.hashCode());
+		int hash = hashOf(key);
 		int i = indexFor(hash, table.length);
-		for (Entry<K, V> e = table[i]; e != null; e = e.next) {
-			Object k;
-			if (e.hash == hash && ((k = e.key) == key || (key != null && key.equals(k)))) {
-				e.value = value;
+		TreeBin<K, V> tb = treeBinAt(i);
+		if (tb != null) {
+			Entry<K, V> e = tb.find(hash, key);
+			if (e != null) {
+				replaceValue(i, e, value);
 				return;
 			}
+		} else {
+			for (Entry<K, V> e = table[i]; e != null; e = e.next) {
+				Object k;
+				if (e.hash == hash && ((k = e.key) == key || (key != null && key.equals(k)))) {
+					replaceValue(i, e, value);
+					return;
+				}
+			}
 		}
 
 		createEntry(hash, key, value, i);
 	}
 
-	private void putAllForCreate(Map<? extends K, ? extends V> m) {
-		for (Iterator<? extends Map.Entry<? extends K, ? extends V>> i = m.entrySet().iterator(); i.hasNext();) {
-			Map.Entry<? extends K, ? extends V> e = i.next();
-			putForCreate(e.getKey(), e.getValue());
+	/**
+	 * 批量装入到空map，调用前table已经分配到足够大（装完不会超过threshold）。不经过addEntry，只用于复制构造方法、clone，
+	 * 以及按桶存放（bucketCopy）的类的putAll，需要在addEntry里淘汰的子类putAll时逐个put。按m的类型分三种情况：
+	 * ·m是散列方式相同的MyHashMap：直接用entry里存的hash，不重新计算；key一定互不相等，也不查重。
+	 * 	如果本类按桶存放（bucketCopy）并且table不比m的小，m的桶j只会落到table的j、j+m.table.length...这几个桶，
+	 * 	不同的桶互不干扰，按桶整段复制，数组很大时用fork-join并行复制。
+	 * ·m是HashMap、MyHashMap：key互不相等，只计算hash不查重。
+	 * ·其他map（比如TreeMap可以用自己的比较器认为equals不同的key相同）：逐个putForCreate查重。
+	 */
+	private void bulkLoad(Map<? extends K, ? extends V> m) {
+		if (m.isEmpty())
+			return;
+		if (table == EMPTY_TABLE)
+			inflateTable();
+		if (m instanceof MyHashMap && sameHash((MyHashMap<?, ?>) m)) {
+			MyHashMap<? extends K, ? extends V> src = (MyHashMap<? extends K, ? extends V>) m;
+			if (src.rehashTable != null)
+				src.finishRehash();
+			Entry<? extends K, ? extends V>[] st = src.table;
+			Entry<K, V>[] tab = table;
+			if (bucketCopy() && tab.length >= st.length) {
+				if (st.length >= PARALLEL_TRANSFER_THRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1)
+					ForkJoinPool.commonPool().invoke(new CopyTask<K, V>(st, tab, 0, st.length));
+				else
+					copyBuckets(st, tab, 0, st.length);
+				size += src.size;
+				if (fingerprints != null)
+					rebuildFingerprints();
+				// 复制后的链表只会比原来的短，只有原来树化的桶需要重新判断
+				if (src.treeBins != null)
+					retreeify(src.treeBins);
+				return;
+			}
+			// 需要保持顺序的子类（MyLinkedHashMap）按m的迭代顺序逐个createEntry
+			for (Iterator<? extends Map.Entry<? extends K, ? extends V>> i = src.entrySet0().iterator(); i.hasNext();) {
+				Entry<? extends K, ? extends V> e = (Entry<? extends K, ? extends V>) i.next();
+				createEntry(e.hash, e.key, e.value, indexFor(e.hash, table.length));
+			}
+		} else if (m instanceof MyHashMap || m instanceof HashMap) {
+			for (Iterator<? extends Map.Entry<? extends K, ? extends V>> i = m.entrySet().iterator(); i.hasNext();) {
+				Map.Entry<? extends K, ? extends V> e = i.next();
+				K key = e.getKey();
+				int hash = hashOf(key);
+				createEntry(hash, key, e.getValue(), indexFor(hash, table.length));
+			}
+		} else {
+			for (Iterator<? extends Map.Entry<? extends K, ? extends V>> i = m.entrySet().iterator(); i.hasNext();) {
+				Map.Entry<? extends K, ? extends V> e = i.next();
+				putForCreate(e.getKey(), e.getValue());
+			}
+		}
+	}
+
+	// 两个map对同一个key算出的hash是否相同（都不用随机种子，或者种子相同，比如clone出来的）
+	final boolean sameHash(MyHashMap<?, ?> m) {
+		return m.randomizedHash == randomizedHash && m.hashSeed == hashSeed;
+	}
+
+	// 是否可以绕过createEntry按桶整段复制entry。需要在createEntry里维护额外结构的子类返回false
+	boolean bucketCopy() {
+		return true;
+	}
+
+	// 把src[from, to)桶里的entry复制一份，头插到dst对应的桶（dst不比src小）。桶内顺序会反过来，不影响查找
+	static <K, V> void copyBuckets(Entry<? extends K, ? extends V>[] src, Entry<K, V>[] dst, int from, int to) {
+		int n = dst.length;
+		for (int j = from; j < to; j++) {
+			for (Entry<? extends K, ? extends V> e = src[j]; e != null; e = e.next) {
+				int i = indexFor(e.hash, n);
+				dst[i] = new Entry<K, V>(e.hash, e.key, e.value, dst[i]);
+			}
+		}
+	}
+
+	// 并行复制任务，与TransferTask一样各任务写的桶互不重叠
+	static final class CopyTask<K, V> extends RecursiveAction {
+		private static final long serialVersionUID = 4690921634418377525L;
+		final Entry<? extends K, ? extends V>[] src;
+		final Entry<K, V>[] dst;
+		final int from, to;
+
+		CopyTask(Entry<? extends K, ? extends V>[] src, Entry<K, V>[] dst, int from, int to) {
+			this.src = src;
+			this.dst = dst;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			if (to - from <= TRANSFER_CHUNK) {
+				copyBuckets(src, dst, from, to);
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new CopyTask<K, V>(src, dst, from, mid), new CopyTask<K, V>(src, dst, mid, to));
+			}
 		}
 	}
 
 	// 扩容操作，将原来的元素放到新的entry数组里
 	void resize(int newCapacity) {
-		Entry[] oldTable = table;
+		long start = stats != null ? System.nanoTime() : 0;
+		if (rehashTable != null)
+			finishRehash();// 上一轮增量迁移还没完成，先全部搬完
+		Entry<K, V>[] oldTable = table;
 		int oldCapacity = oldTable.length;
 		// 如果容量已经最大了，仅仅把临界容量变大一些即可。
 		if (oldCapacity == MAXIMUM_CAPACITY) {
@@ -225,17 +676,50 @@ public class MyHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clo
 			return;
 		}
 		// 进行扩容转移操作
-		Entry[] newTable = new Entry[newCapacity];
+		Entry<K, V>[] newTable = newTable(newCapacity);
+		TreeBin<K, V>[] oldBins = treeBins;
+		if (incrementalResize && oldCapacity >= MIN_INCREMENTAL_CAPACITY) {
+			// 增量扩容：只切换数组，旧桶留到之后的操作里分批搬运
+			rehashTable = oldTable;
+			rehashTreeBins = oldBins;
+			rehashIndex = 0;
+			table = newTable;
+			treeBins = null;
+			if (fingerprints != null)
+				fingerprints = new int[newCapacity];// 旧桶搬过来时（migrateBucket）再置位
+			threshold = (int) (newCapacity * loadFactor);
+			recordResize(oldCapacity, newCapacity, start);
+			return;
+		}
 		transfer(newTable);
 		table = newTable;// 将新的entry数组索引付给新的table
+		treeBins = null;
+		if (fingerprints != null)
+			rebuildFingerprints();
+		if (oldBins != null)
+			retreeify(oldBins);
 		// 重新计算扩容边界大小
 		threshold = (int) (newCapacity * loadFactor);
+		recordResize(oldCapacity, newCapacity, start);
 	}
 
 	// 将旧元素移到新的元素数组里
-	void transfer(Entry[] newTable) {
-		Entry[] src = table;
+	void transfer(Entry<K, V>[] newTable) {
+		Entry<K, V>[] src = table;
 		int newCapacity = newTable.length;
+		if (ownedBuckets != null) {// 快照模式下还有entry被快照共享，不能改它们的next，全部复制一份
+			copyBuckets(src, newTable, 0, src.length);
+			ownedBuckets = null;
+			return;
+		}
+		// 容量翻倍（绝大多数情况）时走lo/hi拆分，数组很大时再按桶区间并行
+		if (newCapacity == src.length << 1) {
+			if (src.length >= PARALLEL_TRANSFER_THRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1)
+				ForkJoinPool.commonPool().invoke(new TransferTask<K, V>(src, newTable, 0, src.length));
+			else
+				splitBuckets(src, newTable, 0, src.length);
+			return;
+		}
 		// for循环从旧元素数组第一个索引开始，将每个索引对应的链表放到新的元素数组
 		for (int j = 0; j < src.length; j++) {
 			Entry<K, V> e = src[j];// j对应的原entry
@@ -253,39 +737,689 @@ public class MyHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clo
 		}
 	}
 
+	// 增量扩容：先把hash所在的旧桶搬到新数组（之后只需要查新数组，相当于同时查了新旧两个数组），
+	// 再顺着rehashIndex搬运REHASH_STEP个旧桶。每次最多搬运REHASH_STEP+1个桶，耗时有上界
+	final void rehashStep(int hash) {
+		Entry<K, V>[] old = rehashTable;
+		migrateBucket(indexFor(hash, old.length));
+		for (int n = 0; n < REHASH_STEP && rehashIndex < old.length; n++)
+			migrateBucket(rehashIndex++);
+		if (rehashIndex == old.length) {// 全部搬完，丢弃旧数组
+			rehashTable = null;
+			rehashTreeBins = null;
+		}
+	}
+
+	// 一次性搬完剩下的旧桶，遍历整个map（迭代器、containsValue等）以及再次扩容之前调用
+	final void finishRehash() {
+		Entry<K, V>[] old = rehashTable;
+		while (rehashIndex < old.length)
+			migrateBucket(rehashIndex++);
+		rehashTable = null;
+		rehashTreeBins = null;
+	}
+
+	// 把旧数组的第j个桶整体搬到新数组。新数组的桶只会接收同一个旧桶的元素，所以旧桶没搬之前对应的新桶一定是空的
+	private void migrateBucket(int j) {
+		Entry<K, V>[] old = rehashTable;
+		Entry<K, V> e = old[j];
+		if (e == null)
+			return;
+		int[] fp = fingerprints;
+		if (fp != null) {
+			for (Entry<K, V> p = e; p != null; p = p.next)
+				fp[indexFor(p.hash, fp.length)] |= fingerprint(p.hash);
+		}
+		if (table.length == old.length << 1) {
+			splitBuckets(old, table, j, j + 1);
+		} else {
+			old[j] = null;
+			do {
+				Entry<K, V> next = e.next;
+				int i = indexFor(e.hash, table.length);
+				e.next = table[i];
+				table[i] = e;
+				e = next;
+			} while (e != null);
+		}
+		TreeBin<K, V>[] oldBins = rehashTreeBins;
+		if (oldBins != null && oldBins[j] != null) {
+			retreeifyBin(oldBins[j]);
+			oldBins[j] = null;
+		}
+	}
+
+	// 容量翻倍时旧桶j里的元素只可能去新数组的j或者j+oldCap，只要看hash在oldCap那一位是0还是1，不用重新indexFor。
+	// 拆成lo、hi两条链表尾插，保持原来的先后顺序（头插会把链表反过来）
+	static <K, V> void splitBuckets(Entry<K, V>[] src, Entry<K, V>[] dst, int from, int to) {
+		int oldCap = src.length;
+		for (int j = from; j < to; j++) {
+			Entry<K, V> e = src[j];
+			if (e == null)
+				continue;
+			src[j] = null;
+			Entry<K, V> loHead = null, loTail = null, hiHead = null, hiTail = null;
+			do {
+				if ((e.hash & oldCap) == 0) {
+					if (loTail == null)
+						loHead = e;
+					else
+						loTail.next = e;
+					loTail = e;
+				} else {
+					if (hiTail == null)
+						hiHead = e;
+					else
+						hiTail.next = e;
+					hiTail = e;
+				}
+				e = e.next;
+			} while (e != null);
+			if (loTail != null) {
+				loTail.next = null;
+				dst[j] = loHead;
+			}
+			if (hiTail != null) {
+				hiTail.next = null;
+				dst[j + oldCap] = hiHead;
+			}
+		}
+	}
+
+	// 并行transfer任务：不同的旧桶写入的新桶互不重叠（j和j+oldCap），所以各任务之间不需要加锁
+	static final class TransferTask<K, V> extends RecursiveAction {
+		private static final long serialVersionUID = -2532148862093611127L;
+		final Entry<K, V>[] src, dst;
+		final int from, to;
+
+		TransferTask(Entry<K, V>[] src, Entry<K, V>[] dst, int from, int to) {
+			this.src = src;
+			this.dst = dst;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			if (to - from <= TRANSFER_CHUNK) {
+				splitBuckets(src, dst, from, to);
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new TransferTask<K, V>(src, dst, from, mid), new TransferTask<K, V>(src, dst, mid, to));
+			}
+		}
+	}
+
+	// 扩容后只有原来树化的桶才可能仍然过长（拆分只会让链表变短），对它们拆出来的新桶重新判断是否需要树化
+	private void retreeify(TreeBin<?, ?>[] oldBins) {
+		for (int j = 0; j < oldBins.length; j++) {
+			if (oldBins[j] != null)
+				retreeifyBin(oldBins[j]);
+		}
+	}
+
+	private void retreeifyBin(TreeBin<?, ?> old) {
+		for (TreeNode<?, ?> p = old.first(); p != null; p = TreeBin.successor(p)) {
+			int i = indexFor(p.entry.hash, table.length);
+			if (treeBinAt(i) == null && chainLength(i, UNTREEIFY_THRESHOLD + 1) > UNTREEIFY_THRESHOLD)
+				buildTreeBin(i);
+		}
+	}
+
+	// 数table[i]链表的长度，数到limit就停止
+	private int chainLength(int i, int limit) {
+		int n = 0;
+		for (Entry<K, V> e = table[i]; e != null && n < limit; e = e.next)
+			n++;
+		return n;
+	}
+
+	private void buildTreeBin(int i) {
+		if (treeBins == null)
+			treeBins = newTreeBins(table.length);
+		treeBins[i] = new TreeBin<K, V>(table[i]);
+	}
+
+	// 链表过长时树化；table还很小时说明是容量不够而不是散列太差，直接扩容
+	final void treeifyBin(int i) {
+		if (table.length < MIN_TREEIFY_CAPACITY)
+			resize(2 * table.length);
+		else
+			buildTreeBin(i);
+	}
+
+	// 新entry已经挂到table[bucketIndex]链表头之后调用：树化的桶同步插入树，否则判断链表是否过长需要树化
+	final void binAdded(Entry<K, V> e, int bucketIndex) {
+		int[] fp = fingerprints;
+		if (fp != null)
+			fp[bucketIndex] |= fingerprint(e.hash);
+		TreeBin<K, V> tb = treeBinAt(bucketIndex);
+		if (tb != null)
+			tb.insert(e);
+		else if (chainLength(bucketIndex, TREEIFY_THRESHOLD) >= TREEIFY_THRESHOLD)
+			treeifyBin(bucketIndex);
+	}
+
+	// 从桶i中摘除已经找到的e。单向链表没有prev指针：普通桶按引用找前驱（不调用equals，链表本来就短）；
+	// 树化的桶从树节点的prev直接拿到前驱，整个删除O(log n)，否则排空一个全冲突的桶会退化成O(n^2)
+	private void unlinkEntry(int i, Entry<K, V> e) {
+		beginWrite();
+		try {
+			modCount++;
+			size--;
+			Entry<K, V> x = ownEntry(i, e);// 快照模式下前驱的next可能被快照共享，先复制桶
+			TreeBin<K, V> tb = treeBinAt(i);// ownEntry可能重建了树，复制之后再取
+			TreeNode<K, V> node = null;
+			Entry<K, V> prev = null;
+			if (tb != null) {
+				node = tb.node(x);
+				if (node.prev != null)
+					prev = node.prev.entry;
+			} else {
+				for (Entry<K, V> p = table[i]; p != x; p = p.next)
+					prev = p;
+			}
+			if (prev == null)
+				table[i] = x.next;
+			else
+				prev.next = x.next;
+			if (tb != null) {
+				tb.delete(node);
+				if (tb.count <= UNTREEIFY_THRESHOLD)
+					treeBins[i] = null;// 元素少了退化回链表
+			}
+		} finally {
+			endWrite();
+		}
+		e.recordRemoval(this);
+	}
+
+	// 下面几个方法与jdk1.8的语义相同，但都只计算一次hash、查找一次桶：找不到时直接在同一个桶里addEntry，
+	// 不像get之后再put那样重新计算hash、重新遍历链表。找到的entry会调用recordAccess（MyLinkedHashMap的访问顺序）
+
+	public V getOrDefault(Object key, V defaultValue) {
+		int hash = hashOf(key);
+		if (rehashTable != null)
+			rehashStep(hash);
+		Entry<K, V> e = findEntry(indexFor(hash, table.length), hash, key);
+		recordGet(e != null);
+		if (e == null)
+			return defaultValue;
+		e.recordAccess(this);
+		return e.value;
+	}
+
+	// 不存在或者value为null时放入value，返回原来的value
+	public V putIfAbsent(K key, V value) {
+		int hash = hashOf(key);
+		if (rehashTable != null)
+			rehashStep(hash);
+		int i = indexFor(hash, table.length);
+		Entry<K, V> e = findEntry(i, hash, key);
+		if (e != null) {
+			V oldValue = e.value;
+			if (oldValue == null)
+				replaceValue(i, e, value);
+			e.recordAccess(this);
+			return oldValue;
+		}
+		modCount++;
+		addEntry(hash, key, value, i);
+		return null;
+	}
+
+	public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+		if (mappingFunction == null)
+			throw new NullPointerException();
+		int hash = hashOf(key);
+		if (rehashTable != null)
+			rehashStep(hash);
+		int i = indexFor(hash, table.length);
+		Entry<K, V> e = findEntry(i, hash, key);
+		if (e != null && e.value != null) {
+			e.recordAccess(this);
+			return e.value;
+		}
+		int mc = modCount;
+		V v = mappingFunction.apply(key);
+		if (mc != modCount)// 函数里修改了map，i和e都可能已经失效
+			throw new ConcurrentModificationException();
+		if (v == null)
+			return null;
+		if (e != null) {
+			replaceValue(i, e, v);
+			e.recordAccess(this);
+			return v;
+		}
+		modCount++;
+		addEntry(hash, key, v, i);
+		return v;
+	}
+
+	public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+		if (remappingFunction == null)
+			throw new NullPointerException();
+		int hash = hashOf(key);
+		if (rehashTable != null)
+			rehashStep(hash);
+		int i = indexFor(hash, table.length);
+		Entry<K, V> e = findEntry(i, hash, key);
+		if (e == null || e.value == null)
+			return null;
+		int mc = modCount;
+		V v = remappingFunction.apply(key, e.value);
+		if (mc != modCount)
+			throw new ConcurrentModificationException();
+		if (v == null) {
+			unlinkEntry(i, e);// 新值为null表示删除
+		} else {
+			replaceValue(i, e, v);
+			e.recordAccess(this);
+		}
+		return v;
+	}
+
+	public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+		if (remappingFunction == null)
+			throw new NullPointerException();
+		int hash = hashOf(key);
+		if (rehashTable != null)
+			rehashStep(hash);
+		int i = indexFor(hash, table.length);
+		Entry<K, V> e = findEntry(i, hash, key);
+		int mc = modCount;
+		V v = remappingFunction.apply(key, e == null ? null : e.value);
+		if (mc != modCount)
+			throw new ConcurrentModificationException();
+		if (e != null) {
+			if (v == null) {
+				unlinkEntry(i, e);
+			} else {
+				replaceValue(i, e, v);
+				e.recordAccess(this);
+			}
+		} else if (v != null) {
+			modCount++;
+			addEntry(hash, key, v, i);
+		}
+		return v;
+	}
+
+	// 计数、聚合的常用写法：map.merge(word, 1, Integer::sum)
+	public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+		if (value == null || remappingFunction == null)
+			throw new NullPointerException();
+		int hash = hashOf(key);
+		if (rehashTable != null)
+			rehashStep(hash);
+		int i = indexFor(hash, table.length);
+		Entry<K, V> e = findEntry(i, hash, key);
+		if (e == null) {
+			modCount++;
+			addEntry(hash, key, value, i);
+			return value;
+		}
+		V v;
+		if (e.value == null) {
+			v = value;
+		} else {
+			int mc = modCount;
+			v = remappingFunction.apply(e.value, value);
+			if (mc != modCount)
+				throw new ConcurrentModificationException();
+		}
+		if (v == null) {
+			unlinkEntry(i, e);
+		} else {
+			replaceValue(i, e, v);
+			e.recordAccess(this);
+		}
+		return v;
+	}
+
 	public void putAll(Map<? extends K, ? extends V> m) {
 		int numKeysToBeAdded = m.size();
-		if (numKeysToBeAdded == 0)
+		if (numKeysToBeAdded == 0 || m == this)
 			return;
-		// 这里仅计算要添加的m的大小 与 threshold相比，而不是跟m加原来map大小。（方便起见？）
-		if (numKeysToBeAdded > threshold) {// 添加的元素大于扩容边界
-			// 计算targetcapacity（需要添加的元素大小 除 装填因子）
-			int targetCapacity = (int) (numKeysToBeAdded / loadFactor + 1);
-			if (targetCapacity > MAXIMUM_CAPACITY)
-				targetCapacity = MAXIMUM_CAPACITY;
-			// 计算数组元素需要的大小，并resize大小。
-			int newCapacity = table.length;
+		// jdk1.6只拿m的大小和threshold比，合并两个大map时会一边put一边扩容好几轮。
+		// 这里按合并后最多的元素个数（原size加m的size）一次算好最终容量，最多resize一次；key有重叠时容量会偏大
+		long expected = (long) size + numKeysToBeAdded;
+		boolean lazy = table == EMPTY_TABLE;
+		int capacity = lazy ? threshold : table.length;
+		if (lazy || expected > threshold) {
+			// 计算targetcapacity（需要的元素大小 除 装填因子）
+			int targetCapacity = (int) Math.min(expected / loadFactor + 1, MAXIMUM_CAPACITY);
+			// 计算数组元素需要的大小
+			int newCapacity = capacity;
 			while (newCapacity < targetCapacity)
 				newCapacity <<= 1;
-			if (newCapacity > table.length)
-				resize(newCapacity);
+			if (lazy || newCapacity > capacity) {
+				beginWrite();
+				try {
+					if (size == 0) {// 空map没有元素要搬，直接换成新数组
+						table = newTable(newCapacity);
+						treeBins = null;
+						rehashTable = null;
+						rehashTreeBins = null;
+						ownedBuckets = null;
+						if (fingerprints != null)
+							fingerprints = new int[newCapacity];
+						threshold = (int) Math.min(newCapacity * loadFactor, Integer.MAX_VALUE);
+					} else {
+						resize(newCapacity);
+					}
+				} finally {
+					endWrite();
+				}
+			}
+		}
+		// 空map直接批量装入。bulkLoad只走createEntry，不经过addEntry，子类在addEntry里做的淘汰
+		// （removeEldestEntry、LruCache、TinyLfuCache的上限）都会被跳过，所以只有按桶存放的类才走这条路
+		if (size == 0 && bucketCopy()) {
+			modCount++;
+			beginWrite();
+			try {
+				bulkLoad(m);
+			} finally {
+				endWrite();
+			}
+			return;
+		}
+		// 调整完后，for循环添加元素。m是散列方式相同的MyHashMap时直接用它算好的hash
+		if (m instanceof MyHashMap && sameHash((MyHashMap<?, ?>) m)) {
+			for (Iterator<? extends Map.Entry<? extends K, ? extends V>> i = ((MyHashMap<? extends K, ? extends V>) m)
+					.entrySet0().iterator(); i.hasNext();) {
+				Entry<? extends K, ? extends V> e = (Entry<? extends K, ? extends V>) i.next();
+				putVal(e.hash, e.key, e.value);
+			}
+		} else {
+			for (Iterator<? extends Map.Entry<? extends K, ? extends V>> i = m.entrySet().iterator(); i.hasNext();) {
+				Map.Entry<? extends K, ? extends V> e = i.next();
+				put(e.getKey(), e.getValue());
+			}
 		}
-		// 调整完后，for循环添加元素。
-		for (Iterator<? extends Map.Entry<? extends K, ? extends V>> i = m.entrySet().iterator(); i.hasNext();) {
-			Map.Entry<? extends K, ? extends V> e = i.next();
-			put(e.getKey(), e.getValue());
+	}
+
+	// hash已经算好的put（key可以为null）
+	private V putVal(int hash, K key, V value) {
+		if (rehashTable != null)
+			rehashStep(hash);
+		int i = indexFor(hash, table.length);
+		Entry<K, V> e = findEntry(i, hash, key);
+		if (e != null) {
+			V oldValue = e.value;
+			replaceValue(i, e, value);
+			e.recordAccess(this);
+			return oldValue;
 		}
+		modCount++;
+		addEntry(hash, key, value, i);
+		return null;
 	}
 
 	public V remove(Object key) {
 		Entry<K, V> e = removeEntryForKey(key);
+		if (e != null && autoShrink && size < threshold >>> 2 && table.length > DEFAULT_INITIAL_CAPACITY) {
+			beginWrite();
+			try {
+				shrink(Math.max(tableSizeFor(size * 2), DEFAULT_INITIAL_CAPACITY));
+			} finally {
+				endWrite();
+			}
+		}
 		return (e == null ? null : e.value);
 	}
 
+	// 与MyArrayList.trimToSize一样，把数组缩小到刚好能放下现有元素（不超过扩容边界）的大小，空map释放整个数组
+	public void trimToSize() {
+		modCount++;
+		beginWrite();
+		try {
+			if (size == 0) {
+				releaseTable();
+				return;
+			}
+			int capacity = tableSizeFor(size);
+			if (capacity < table.length)
+				shrink(capacity);
+		} finally {
+			endWrite();
+		}
+	}
+
+	// 放下n个元素不超过扩容边界的最小容量
+	private int tableSizeFor(int n) {
+		int capacity = 1;
+		while (capacity < MAXIMUM_CAPACITY && capacity * loadFactor < n)
+			capacity <<= 1;
+		return capacity;
+	}
+
+	// 换成较小的数组。元素从多个旧桶合并到一个新桶，链表可能变长，所以全部重新判断是否需要树化
+	private void shrink(int newCapacity) {
+		long start = stats != null ? System.nanoTime() : 0;
+		if (rehashTable != null)
+			finishRehash();
+		int oldCapacity = table.length;
+		Entry<K, V>[] newTable = newTable(newCapacity);
+		transfer(newTable);
+		table = newTable;
+		treeBins = null;
+		if (fingerprints != null)
+			rebuildFingerprints();
+		threshold = (int) (newCapacity * loadFactor);
+		if (newCapacity >= MIN_TREEIFY_CAPACITY) {
+			for (int i = 0; i < newCapacity; i++) {
+				if (chainLength(i, TREEIFY_THRESHOLD) >= TREEIFY_THRESHOLD)
+					buildTreeBin(i);
+			}
+		}
+		recordResize(oldCapacity, newCapacity, start);
+	}
+
+	/**
+	 * 打开快照模式，用于一个写线程、多个读线程的场景：读线程调用snapshot()得到某一时刻的只读视图，
+	 * 遍历期间写线程照常修改，读线程不会因为ConcurrentModificationException重试，写线程也不会被阻塞。
+	 * 实现是写时复制：snapshot()只是冻结当前的数组（不复制任何东西）；写线程在冻结后的第一次修改时复制数组（只复制引用），
+	 * 之后每个桶第一次被修改（改value、删除、扩容）时再把这个桶的链表复制一份，头插新entry不需要复制。
+	 * 被冻结的数组和entry之后不会再被修改，快照可以一直持有。
+	 * 必须在map交给读线程之前由写线程调用；不支持增量扩容和MyLinkedHashMap（快照按桶遍历，没有插入顺序）。
+	 * 写线程通过Entry.setValue（比如entrySet迭代时）修改value会直接改到共享的entry，快照模式下请用put。
+	 */
+	public void enableSnapshots() {
+		if (incrementalResize || !bucketCopy())
+			throw new UnsupportedOperationException("Snapshots need a plain MyHashMap without incremental resize");
+		snapshots = true;
+	}
+
+	// 读线程调用：在写线程没有修改结构的时刻冻结数组。写线程正在修改时等它这一步做完，不会等整个compute之类的函数
+	public Map<K, V> snapshot() {
+		if (!snapshots)
+			throw new IllegalStateException("Snapshots are not enabled");
+		for (;;) {
+			int seq = writeSeq;
+			if ((seq & 1) == 0) {
+				Entry<K, V>[] t = table;
+				int n = size;
+				frozen = t;
+				// 写线程先改writeSeq再读frozen，读线程先写frozen再读writeSeq（都是volatile）：
+				// writeSeq没变说明之后的写操作一定能看到frozen，会先复制数组
+				if (writeSeq == seq)
+					return new Snapshot(t, n);
+			}
+			Thread.yield();
+		}
+	}
+
+	// 写操作修改结构之前调用（可以嵌套）。数组被读线程冻结了就换成一份复制的，之后所有的桶都要复制后才能修改
+	final void beginWrite() {
+		if (!snapshots || writeDepth++ > 0)
+			return;
+		writeSeq++;
+		Entry<K, V>[] f = frozen;
+		if (f != null) {
+			if (f == table && f != EMPTY_TABLE) {
+				table = f.clone();
+				ownedBuckets = new long[(f.length + 63) >>> 6];
+			}
+			frozen = null;// 不再持有旧数组，由快照自己持有
+		}
+	}
+
+	final void endWrite() {
+		if (snapshots && --writeDepth == 0)
+			writeSeq++;
+	}
+
+	// 修改找到的entry的value，快照模式下e可能被快照共享，先复制桶
+	void replaceValue(int i, Entry<K, V> e, V value) {
+		if (!snapshots) {
+			e.value = value;
+			return;
+		}
+		beginWrite();
+		try {
+			ownEntry(i, e).value = value;
+		} finally {
+			endWrite();
+		}
+	}
+
+	// 在写操作里调用：桶i还和快照共享时把整条链表复制一份（树化的桶重建树），返回e在复制后的链表里对应的entry
+	private Entry<K, V> ownEntry(int i, Entry<K, V> e) {
+		long[] owned = ownedBuckets;
+		if (owned == null || (owned[i >>> 6] & (1L << i)) != 0)
+			return e;
+		owned[i >>> 6] |= 1L << i;
+		Entry<K, V> head = null, tail = null, copy = null;
+		for (Entry<K, V> p = table[i]; p != null; p = p.next) {
+			Entry<K, V> c = new Entry<K, V>(p.hash, p.key, p.value, null);
+			if (tail == null)
+				head = c;
+			else
+				tail.next = c;
+			tail = c;
+			if (p == e)
+				copy = c;
+		}
+		table[i] = head;
+		if (treeBinAt(i) != null)
+			treeBins[i] = new TreeBin<K, V>(head);
+		return copy;
+	}
+
+	// 冻结的数组上的只读map。数组和entry不会再变化，查找只走链表（树在写线程那边）
+	private final class Snapshot extends AbstractMap<K, V> {
+		private final MyHashMap.Entry<K, V>[] tab;
+
+		private final int size;
+
+		private Set<Map.Entry<K, V>> entrySet;
+
+		Snapshot(MyHashMap.Entry<K, V>[] tab, int size) {
+			this.tab = tab;
+			this.size = size;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		private MyHashMap.Entry<K, V> find(Object key) {
+			int hash = hashOf(key);
+			for (MyHashMap.Entry<K, V> e = tab[indexFor(hash, tab.length)]; e != null; e = e.next) {
+				Object k;
+				if (e.hash == hash && ((k = e.key) == key || (key != null && key.equals(k))))
+					return e;
+			}
+			return null;
+		}
+
+		public V get(Object key) {
+			MyHashMap.Entry<K, V> e = find(key);
+			return e == null ? null : e.value;
+		}
+
+		public boolean containsKey(Object key) {
+			return find(key) != null;
+		}
+
+		public Set<Map.Entry<K, V>> entrySet() {
+			Set<Map.Entry<K, V>> es = entrySet;
+			return es != null ? es : (entrySet = new AbstractSet<Map.Entry<K, V>>() {
+				public int size() {
+					return size;
+				}
+
+				public Iterator<Map.Entry<K, V>> iterator() {
+					return new SnapshotIterator(tab);
+				}
+			});
+		}
+	}
+
+	// 返回不可修改的entry，快照里的entry不能被setValue
+	private final class SnapshotIterator implements Iterator<Map.Entry<K, V>> {
+		private final Entry<K, V>[] tab;
+
+		private Entry<K, V> next;
+
+		private int index;
+
+		SnapshotIterator(Entry<K, V>[] tab) {
+			this.tab = tab;
+			advance(null);
+		}
+
+		private void advance(Entry<K, V> e) {
+			next = e;
+			while (next == null && index < tab.length)
+				next = tab[index++];
+		}
+
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		public Map.Entry<K, V> next() {
+			Entry<K, V> e = next;
+			if (e == null)
+				throw new NoSuchElementException();
+			advance(e.next);
+			return new AbstractMap.SimpleImmutableEntry<K, V>(e.key, e.value);
+		}
+	}
+
+	// 换回EMPTY_TABLE，下次放入元素时按默认容量重新分配
+	private void releaseTable() {
+		table = emptyTable();
+		if (fingerprints != null)
+			fingerprints = new int[1];
+		ownedBuckets = null;
+		treeBins = null;
+		rehashTable = null;
+		rehashTreeBins = null;
+		threshold = DEFAULT_INITIAL_CAPACITY;
+	}
+
 	// 根据key删除entry方法。找到对应的数组索引，遍历链表找到key然后删除即可。
 	final Entry<K, V> removeEntryForKey(Object key) {
-		int hash = (key == null) ? 0 : hash(key.hashCode());
+		int hash = hashOf(key);
+		if (rehashTable != null)
+			rehashStep(hash);
 		int i = indexFor(hash, table.length);
+		TreeBin<K, V> tb = treeBinAt(i);
+		if (tb != null) {
+			Entry<K, V> e = tb.find(hash, key);
+			if (e != null)
+				unlinkEntry(i, e);
+			return e;
+		}
+		if (snapshots) {// 快照模式下要先复制桶再摘除，统一走unlinkEntry
+			Entry<K, V> e = findEntry(i, hash, key);
+			if (e != null)
+				unlinkEntry(i, e);
+			return e;
+		}
 		// 将 prev e赋值，初始为第一个
 		Entry<K, V> prev = table[i];
 		Entry<K, V> e = prev;
@@ -312,14 +1446,25 @@ public class MyHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clo
 	}
 
 	// 根据对象删除o，内部其实也是先取到key然后根据key操作
+	@SuppressWarnings("unchecked")
 	final Entry<K, V> removeMapping(Object o) {
 		if (!(o instanceof Map.Entry))
 			return null;
 
 		Map.Entry<K, V> entry = (Map.Entry<K, V>) o;
 		Object key = entry.getKey();
-		int hash = (key == null) ? 0 : hash(key.hashCode());
+		int hash = hashOf(key);
+		if (rehashTable != null)
+			rehashStep(hash);
 		int i = indexFor(hash, table.length);
+		TreeBin<K, V> tb = treeBinAt(i);
+		if (tb != null || snapshots) {
+			Entry<K, V> e = findEntry(i, hash, key);
+			if (e == null || !e.equals(entry))
+				return null;
+			unlinkEntry(i, e);
+			return e;
+		}
 		Entry<K, V> prev = table[i];
 		Entry<K, V> e = prev;
 
@@ -344,36 +1489,56 @@ public class MyHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clo
 
 	public void clear() {
 		modCount++;
-		Entry[] tab = table;// 将table引用付给tab
-		// 直接将entry数组的头元素置null即可。每个entry数组索引对应的entry链表没有引用了自然会被gc回收
-		// 这里涉及到gc的知识点，有的童鞋不明白为什么不用清理链表，其实这里涉及到gc的部分内容，博文也会介绍jvm的知识
-		for (int i = 0; i < tab.length; i++)
-			tab[i] = null;
-		size = 0;
+		beginWrite();
+		try {
+			Entry<K, V>[] tab = table;// 将table引用付给tab（快照模式下beginWrite已经换成了自己的数组）
+			// 直接将entry数组的头元素置null即可。每个entry数组索引对应的entry链表没有引用了自然会被gc回收
+			// 这里涉及到gc的知识点，有的童鞋不明白为什么不用清理链表，其实这里涉及到gc的部分内容，博文也会介绍jvm的知识
+			if (autoShrink) {
+				releaseTable();
+			} else {
+				for (int i = 0; i < tab.length; i++)
+					tab[i] = null;
+				if (fingerprints != null)
+					fingerprints = new int[tab.length];
+				treeBins = null;
+				rehashTable = null;
+				rehashTreeBins = null;
+				ownedBuckets = null;
+			}
+			size = 0;
+		} finally {
+			endWrite();
+		}
 	}
 
 	public boolean containsValue(Object value) {
 		if (value == null)
 			return containsNullValue();// 允许value为null，特殊的null值方法
 		// 双层for循环，没什么好讲的
-		Entry[] tab = table;
+		if (rehashTable != null)
+			finishRehash();
+		Entry<K, V>[] tab = table;
 		for (int i = 0; i < tab.length; i++)
-			for (Entry e = tab[i]; e != null; e = e.next)
+			for (Entry<K, V> e = tab[i]; e != null; e = e.next)
 				if (value.equals(e.value))// 注意这里，把你确定有值的数放前面，否则会NPE
 					return true;
 		return false;
 	}
 
 	private boolean containsNullValue() {
-		Entry[] tab = table;
+		if (rehashTable != null)
+			finishRehash();
+		Entry<K, V>[] tab = table;
 		// 双层for循环
 		for (int i = 0; i < tab.length; i++)
-			for (Entry e = tab[i]; e != null; e = e.next)
+			for (Entry<K, V> e = tab[i]; e != null; e = e.next)
 				if (e.value == null)
 					return true;
 		return false;
 	}
 
+	@SuppressWarnings("unchecked")
 	public Object clone() {
 		MyHashMap<K, V> result = null;
 		try {
@@ -381,12 +1546,24 @@ public class MyHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clo
 		} catch (CloneNotSupportedException e) {
 			// assert false;
 		}
-		result.table = new Entry[table.length];
+		result.table = table == EMPTY_TABLE ? table : MyHashMap.<K, V> newTable(table.length);
+		result.fingerprints = fingerprints == null ? null : new int[result.table.length];
+		result.treeBins = null;
+		result.rehashTable = null;
+		result.rehashTreeBins = null;
 		result.entrySet = null;
+		result.keySet = null;
+		result.values = null;
+		result.stats = null;
+		result.snapshots = false;
+		result.frozen = null;
+		result.ownedBuckets = null;
+		result.writeSeq = 0;
+		result.writeDepth = 0;
 		result.modCount = 0;
 		result.size = 0;
 		result.init();
-		result.putAllForCreate(this);
+		result.bulkLoad(this);
 
 		return result;
 	}
@@ -422,7 +1599,7 @@ public class MyHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clo
 		public final boolean equals(Object o) {
 			if (!(o instanceof Map.Entry))
 				return false;
-			Map.Entry e = (Map.Entry) o;
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
 			Object k1 = getKey();
 			Object k2 = e.getKey();
 			// 判断相等的依据是key和value都相等，而且比较是要类型，内容都相等才相等
@@ -450,20 +1627,427 @@ public class MyHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clo
 		}
 	}
 
+	// 红黑树节点，只是对entry的一层包装，entry本身（包括LinkedHashMap的before/after）不做任何改动。
+	// prev/next按桶里链表的顺序把节点串成双向链表，删除时由此O(1)拿到链表前驱
+	static final class TreeNode<K, V> {
+		Entry<K, V> entry;
+		TreeNode<K, V> parent, left, right;
+		TreeNode<K, V> prev, next;
+		boolean red;
+
+		TreeNode(Entry<K, V> entry, TreeNode<K, V> parent) {
+			this.entry = entry;
+			this.parent = parent;
+		}
+	}
+
+	/**
+	 * 树化桶：当某个桶的链表过长（大量key的hash冲突，比如被人恶意构造的key）时，为这个桶建立一棵红黑树，
+	 * 查找从O(n)降到O(log n)。排序规则与jdk1.8相同：先比较hash，hash相同且key是同一个Comparable类型时
+	 * 用compareTo，都无法区分时用类名和identityHashCode打破平局（这时查找需要搜两棵子树）。
+	 */
+	static final class TreeBin<K, V> {
+		TreeNode<K, V> root;
+		TreeNode<K, V> head;// 链表头entry对应的节点
+		int count;
+
+		TreeBin(Entry<K, V> first) {
+			TreeNode<K, V> tail = null;
+			for (Entry<K, V> e = first; e != null; e = e.next) {
+				TreeNode<K, V> x = add(e);
+				if (tail == null)
+					head = x;
+				else
+					tail.next = x;
+				x.prev = tail;
+				tail = x;
+			}
+		}
+
+		// 按hash和key查找entry，找不到返回null
+		Entry<K, V> find(int h, Object k) {
+			TreeNode<K, V> p = find(root, h, k, null);
+			return p == null ? null : p.entry;
+		}
+
+		private static <K, V> TreeNode<K, V> find(TreeNode<K, V> p, int h, Object k, Class<?> kc) {
+			while (p != null) {
+				int ph, dir;
+				Object pk;
+				TreeNode<K, V> pl = p.left, pr = p.right, q;
+				if ((ph = p.entry.hash) > h)
+					p = pl;
+				else if (ph < h)
+					p = pr;
+				else if ((pk = p.entry.key) == k || (k != null && k.equals(pk)))
+					return p;
+				else if (pl == null)
+					p = pr;
+				else if (pr == null)
+					p = pl;
+				else if ((kc != null || (kc = comparableClassFor(k)) != null)
+						&& (dir = compareComparables(kc, k, pk)) != 0)
+					p = (dir < 0) ? pl : pr;
+				else if ((q = find(pr, h, k, kc)) != null)// 无法判断方向，两棵子树都要找
+					return q;
+				else
+					p = pl;
+			}
+			return null;
+		}
+
+		// e对应的节点，e必须在树中
+		TreeNode<K, V> node(Entry<K, V> e) {
+			TreeNode<K, V> p = find(root, e.hash, e.key, null);
+			if (p == null || p.entry != e)
+				throw new IllegalStateException();
+			return p;
+		}
+
+		// 插入一个确定不在树中的entry（调用者已经查找过），e刚挂到链表头
+		void insert(Entry<K, V> e) {
+			TreeNode<K, V> x = add(e);
+			x.next = head;
+			if (head != null)
+				head.prev = x;
+			head = x;
+		}
+
+		private TreeNode<K, V> add(Entry<K, V> e) {
+			count++;
+			if (root == null)
+				return root = new TreeNode<K, V>(e, null);
+			int h = e.hash;
+			Object k = e.key;
+			Class<?> kc = null;
+			TreeNode<K, V> p = root;
+			for (;;) {
+				int ph = p.entry.hash, dir;
+				Object pk = p.entry.key;
+				if (ph > h)
+					dir = -1;
+				else if (ph < h)
+					dir = 1;
+				else if ((kc == null && (kc = comparableClassFor(k)) == null)
+						|| (dir = compareComparables(kc, k, pk)) == 0)
+					dir = tieBreakOrder(k, pk);
+				TreeNode<K, V> next = (dir <= 0) ? p.left : p.right;
+				if (next == null) {
+					TreeNode<K, V> x = new TreeNode<K, V>(e, p);
+					if (dir <= 0)
+						p.left = x;
+					else
+						p.right = x;
+					fixAfterInsertion(x);
+					return x;
+				}
+				p = next;
+			}
+		}
+
+		// 删除节点p（p.entry已经从链表上摘下）
+		void delete(TreeNode<K, V> p) {
+			count--;
+			unlinkNode(p);
+			// 有两个子节点时，把后继的entry挪到p上，转为删除后继（后继最多一个子节点），与TreeMap相同。
+			// p随entry一起接替后继在链表顺序里的位置
+			if (p.left != null && p.right != null) {
+				TreeNode<K, V> s = successor(p);
+				p.entry = s.entry;
+				TreeNode<K, V> sp = s.prev, sn = s.next;
+				p.prev = sp;
+				p.next = sn;
+				if (sp == null)
+					head = p;
+				else
+					sp.next = p;
+				if (sn != null)
+					sn.prev = p;
+				s.prev = s.next = null;
+				p = s;
+			}
+			TreeNode<K, V> replacement = (p.left != null ? p.left : p.right);
+			if (replacement != null) {
+				replacement.parent = p.parent;
+				if (p.parent == null)
+					root = replacement;
+				else if (p == p.parent.left)
+					p.parent.left = replacement;
+				else
+					p.parent.right = replacement;
+				p.left = p.right = p.parent = null;
+				if (!p.red)
+					fixAfterDeletion(replacement);
+			} else if (p.parent == null) {
+				root = null;
+			} else {
+				if (!p.red)
+					fixAfterDeletion(p);
+				if (p.parent != null) {
+					if (p == p.parent.left)
+						p.parent.left = null;
+					else if (p == p.parent.right)
+						p.parent.right = null;
+					p.parent = null;
+				}
+			}
+		}
+
+		private void unlinkNode(TreeNode<K, V> p) {
+			TreeNode<K, V> pp = p.prev, pn = p.next;
+			if (pp == null)
+				head = pn;
+			else
+				pp.next = pn;
+			if (pn != null)
+				pn.prev = pp;
+			p.prev = p.next = null;
+		}
+
+		// 中序遍历的第一个节点
+		TreeNode<K, V> first() {
+			TreeNode<K, V> p = root;
+			if (p != null)
+				while (p.left != null)
+					p = p.left;
+			return p;
+		}
+
+		static <K, V> TreeNode<K, V> successor(TreeNode<K, V> t) {
+			if (t == null)
+				return null;
+			if (t.right != null) {
+				TreeNode<K, V> p = t.right;
+				while (p.left != null)
+					p = p.left;
+				return p;
+			}
+			TreeNode<K, V> p = t.parent, ch = t;
+			while (p != null && ch == p.right) {
+				ch = p;
+				p = p.parent;
+			}
+			return p;
+		}
+
+		// 下面的旋转、修正方法与TreeMap一致，null节点视为黑色
+		private static <K, V> boolean colorOf(TreeNode<K, V> p) {
+			return p != null && p.red;
+		}
+
+		private static <K, V> TreeNode<K, V> parentOf(TreeNode<K, V> p) {
+			return p == null ? null : p.parent;
+		}
+
+		private static <K, V> void setColor(TreeNode<K, V> p, boolean red) {
+			if (p != null)
+				p.red = red;
+		}
+
+		private static <K, V> TreeNode<K, V> leftOf(TreeNode<K, V> p) {
+			return p == null ? null : p.left;
+		}
+
+		private static <K, V> TreeNode<K, V> rightOf(TreeNode<K, V> p) {
+			return p == null ? null : p.right;
+		}
+
+		private void rotateLeft(TreeNode<K, V> p) {
+			if (p != null) {
+				TreeNode<K, V> r = p.right;
+				p.right = r.left;
+				if (r.left != null)
+					r.left.parent = p;
+				r.parent = p.parent;
+				if (p.parent == null)
+					root = r;
+				else if (p.parent.left == p)
+					p.parent.left = r;
+				else
+					p.parent.right = r;
+				r.left = p;
+				p.parent = r;
+			}
+		}
+
+		private void rotateRight(TreeNode<K, V> p) {
+			if (p != null) {
+				TreeNode<K, V> l = p.left;
+				p.left = l.right;
+				if (l.right != null)
+					l.right.parent = p;
+				l.parent = p.parent;
+				if (p.parent == null)
+					root = l;
+				else if (p.parent.right == p)
+					p.parent.right = l;
+				else
+					p.parent.left = l;
+				l.right = p;
+				p.parent = l;
+			}
+		}
+
+		private void fixAfterInsertion(TreeNode<K, V> x) {
+			x.red = true;
+			while (x != null && x != root && x.parent.red) {
+				if (parentOf(x) == leftOf(parentOf(parentOf(x)))) {
+					TreeNode<K, V> y = rightOf(parentOf(parentOf(x)));
+					if (colorOf(y)) {
+						setColor(parentOf(x), false);
+						setColor(y, false);
+						setColor(parentOf(parentOf(x)), true);
+						x = parentOf(parentOf(x));
+					} else {
+						if (x == rightOf(parentOf(x))) {
+							x = parentOf(x);
+							rotateLeft(x);
+						}
+						setColor(parentOf(x), false);
+						setColor(parentOf(parentOf(x)), true);
+						rotateRight(parentOf(parentOf(x)));
+					}
+				} else {
+					TreeNode<K, V> y = leftOf(parentOf(parentOf(x)));
+					if (colorOf(y)) {
+						setColor(parentOf(x), false);
+						setColor(y, false);
+						setColor(parentOf(parentOf(x)), true);
+						x = parentOf(parentOf(x));
+					} else {
+						if (x == leftOf(parentOf(x))) {
+							x = parentOf(x);
+							rotateRight(x);
+						}
+						setColor(parentOf(x), false);
+						setColor(parentOf(parentOf(x)), true);
+						rotateLeft(parentOf(parentOf(x)));
+					}
+				}
+			}
+			root.red = false;
+		}
+
+		private void fixAfterDeletion(TreeNode<K, V> x) {
+			while (x != root && !colorOf(x)) {
+				if (x == leftOf(parentOf(x))) {
+					TreeNode<K, V> sib = rightOf(parentOf(x));
+					if (colorOf(sib)) {
+						setColor(sib, false);
+						setColor(parentOf(x), true);
+						rotateLeft(parentOf(x));
+						sib = rightOf(parentOf(x));
+					}
+					if (!colorOf(leftOf(sib)) && !colorOf(rightOf(sib))) {
+						setColor(sib, true);
+						x = parentOf(x);
+					} else {
+						if (!colorOf(rightOf(sib))) {
+							setColor(leftOf(sib), false);
+							setColor(sib, true);
+							rotateRight(sib);
+							sib = rightOf(parentOf(x));
+						}
+						setColor(sib, colorOf(parentOf(x)));
+						setColor(parentOf(x), false);
+						setColor(rightOf(sib), false);
+						rotateLeft(parentOf(x));
+						x = root;
+					}
+				} else {
+					TreeNode<K, V> sib = leftOf(parentOf(x));
+					if (colorOf(sib)) {
+						setColor(sib, false);
+						setColor(parentOf(x), true);
+						rotateRight(parentOf(x));
+						sib = leftOf(parentOf(x));
+					}
+					if (!colorOf(rightOf(sib)) && !colorOf(leftOf(sib))) {
+						setColor(sib, true);
+						x = parentOf(x);
+					} else {
+						if (!colorOf(leftOf(sib))) {
+							setColor(rightOf(sib), false);
+							setColor(sib, true);
+							rotateLeft(sib);
+							sib = leftOf(parentOf(x));
+						}
+						setColor(sib, colorOf(parentOf(x)));
+						setColor(parentOf(x), false);
+						setColor(leftOf(sib), false);
+						rotateRight(parentOf(x));
+						x = root;
+					}
+				}
+			}
+			setColor(x, false);
+		}
+	}
+
+	// x的类型形如"class C implements Comparable<C>"时返回C，否则返回null（与jdk1.8 HashMap相同）
+	static Class<?> comparableClassFor(Object x) {
+		if (x instanceof Comparable) {
+			Class<?> c;
+			java.lang.reflect.Type[] ts, as;
+			java.lang.reflect.Type t;
+			java.lang.reflect.ParameterizedType p;
+			if ((c = x.getClass()) == String.class)// 最常见的情况直接返回
+				return c;
+			if ((ts = c.getGenericInterfaces()) != null) {
+				for (int i = 0; i < ts.length; ++i) {
+					if (((t = ts[i]) instanceof java.lang.reflect.ParameterizedType)
+							&& ((p = (java.lang.reflect.ParameterizedType) t).getRawType() == Comparable.class)
+							&& (as = p.getActualTypeArguments()) != null && as.length == 1 && as[0] == c)
+						return c;
+				}
+			}
+		}
+		return null;
+	}
+
+	// x的类型为kc时返回k.compareTo(x)，否则返回0
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	static int compareComparables(Class<?> kc, Object k, Object x) {
+		return (x == null || x.getClass() != kc ? 0 : ((Comparable) k).compareTo(x));
+	}
+
+	// hash相同且无法比较时的平局规则，只要求同一对对象每次结果一致，从不返回0
+	static int tieBreakOrder(Object a, Object b) {
+		int d;
+		if (a == null || b == null || (d = a.getClass().getName().compareTo(b.getClass().getName())) == 0)
+			d = (System.identityHashCode(a) <= System.identityHashCode(b) ? -1 : 1);
+		return d;
+	}
+
 	// 增加entry，注意实在链表的最前面添加而不是后面
+	// 头插不修改已有的entry，快照模式下只需要beginWrite保证数组是自己的
 	void addEntry(int hash, K key, V value, int bucketIndex) {
-		Entry<K, V> e = table[bucketIndex];// 取出排头的第一个entry。
-		table[bucketIndex] = new Entry<K, V>(hash, key, value, e);// new一个entry，next为原来的第一个元素。排头元素改为自己。
-		// 有必要就扩容。
-		if (size++ >= threshold)
-			resize(2 * table.length);
+		beginWrite();
+		try {
+			bucketIndex = ensureTable(hash, bucketIndex);
+			Entry<K, V> e = table[bucketIndex];// 取出排头的第一个entry。
+			table[bucketIndex] = new Entry<K, V>(hash, key, value, e);// new一个entry，next为原来的第一个元素。排头元素改为自己。
+			binAdded(table[bucketIndex], bucketIndex);
+			// 有必要就扩容。
+			if (size++ >= threshold)
+				resize(2 * table.length);
+		} finally {
+			endWrite();
+		}
 	}
 
 	// 不需要考虑size变化的createentry方法
 	void createEntry(int hash, K key, V value, int bucketIndex) {
-		Entry<K, V> e = table[bucketIndex];
-		table[bucketIndex] = new Entry<K, V>(hash, key, value, e);
-		size++;
+		beginWrite();
+		try {
+			bucketIndex = ensureTable(hash, bucketIndex);
+			Entry<K, V> e = table[bucketIndex];
+			table[bucketIndex] = new Entry<K, V>(hash, key, value, e);
+			size++;
+			binAdded(table[bucketIndex], bucketIndex);
+		} finally {
+			endWrite();
+		}
 	}
 
 	// 剩下略
@@ -474,9 +2058,11 @@ public class MyHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clo
 		Entry<K, V> current; // current entry
 
 		HashIterator() {
+			if (rehashTable != null)
+				finishRehash();// 迭代需要所有元素都在table里
 			expectedModCount = modCount;
 			if (size > 0) { // advance to first entry
-				Entry[] t = table;
+				Entry<K, V>[] t = table;
 				while (index < t.length && (next = t[index++]) == null)
 					;
 			}
@@ -494,7 +2080,7 @@ public class MyHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clo
 				throw new NoSuchElementException();
 
 			if ((next = e.next) == null) {
-				Entry[] t = table;
+				Entry<K, V>[] t = table;
 				while (index < t.length && (next = t[index++]) == null)
 					;
 			}
@@ -546,10 +2132,232 @@ public class MyHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clo
 		return new EntryIterator();
 	}
 
+	// 同上，子类（MyLinkedHashMap）覆盖以改变视图spliterator()的遍历顺序
+	Spliterator<K> newKeySpliterator() {
+		return new KeySpliterator<K, V>(this, 0, -1, 0, 0);
+	}
+
+	Spliterator<V> newValueSpliterator() {
+		return new ValueSpliterator<K, V>(this, 0, -1, 0, 0);
+	}
+
+	Spliterator<Map.Entry<K, V>> newEntrySpliterator() {
+		return new EntrySpliterator<K, V>(this, 0, -1, 0, 0);
+	}
+
+	// 直接遍历table数组，不创建迭代器对象。子类覆盖以按自己的顺序遍历
+	void forEachEntry(Consumer<? super Entry<K, V>> action) {
+		if (action == null)
+			throw new NullPointerException();
+		if (rehashTable != null)
+			finishRehash();
+		int mc = modCount;
+		Entry<K, V>[] tab = table;
+		for (int i = 0; i < tab.length && modCount == mc; i++)
+			for (Entry<K, V> e = tab[i]; e != null; e = e.next)
+				action.accept(e);
+		if (modCount != mc)
+			throw new ConcurrentModificationException();
+	}
+
+	public void forEach(final BiConsumer<? super K, ? super V> action) {
+		if (action == null)
+			throw new NullPointerException();
+		forEachEntry(e -> action.accept(e.key, e.value));
+	}
+
+	/**
+	 * 按桶区间拆分的spliterator（与jdk1.8相同）：[index, fence)为负责的桶范围，trySplit把范围对半分。
+	 * 只有没有拆分过的spliterator大小是精确的（SIZED），拆分后est只是估计值。
+	 * fence为-1表示还没有绑定到table，第一次使用时才读取table、size和modCount。
+	 */
+	static class HashMapSpliterator<K, V> {
+		final MyHashMap<K, V> map;
+		Entry<K, V> current; // 当前桶中下一个要返回的entry
+		int index; // 下一个要访问的桶
+		int fence; // 最后一个桶+1
+		int est; // 估计大小
+		int expectedModCount; // 快速失败
+
+		HashMapSpliterator(MyHashMap<K, V> m, int origin, int fence, int est, int expectedModCount) {
+			this.map = m;
+			this.index = origin;
+			this.fence = fence;
+			this.est = est;
+			this.expectedModCount = expectedModCount;
+		}
+
+		final int getFence() {
+			int hi;
+			if ((hi = fence) < 0) {
+				MyHashMap<K, V> m = map;
+				if (m.rehashTable != null)
+					m.finishRehash();// 增量扩容还没完成时先搬完，保证所有元素都在table里
+				est = m.size;
+				expectedModCount = m.modCount;
+				hi = fence = m.table.length;
+			}
+			return hi;
+		}
+
+		public final long estimateSize() {
+			getFence();
+			return (long) est;
+		}
+
+		// 从current或者后续的桶里取下一个entry，没有返回null
+		final Entry<K, V> advance() {
+			Entry<K, V>[] tab = map.table;
+			int hi = getFence();
+			while (current != null || index < hi) {
+				if (current == null) {
+					current = tab[index++];
+				} else {
+					Entry<K, V> e = current;
+					current = current.next;
+					if (map.modCount != expectedModCount)
+						throw new ConcurrentModificationException();
+					return e;
+				}
+			}
+			return null;
+		}
+
+		// 遍历剩下的所有桶，整个过程只在最后检查一次modCount
+		final void forEachRemainingEntry(Consumer<? super Entry<K, V>> action) {
+			if (action == null)
+				throw new NullPointerException();
+			int hi = getFence();
+			Entry<K, V>[] tab = map.table;
+			int i = index;
+			if (tab.length >= hi && i >= 0 && (i < (index = hi) || current != null)) {
+				Entry<K, V> p = current;
+				current = null;
+				do {
+					if (p == null)
+						p = tab[i++];
+					else {
+						action.accept(p);
+						p = p.next;
+					}
+				} while (p != null || i < hi);
+				if (map.modCount != expectedModCount)
+					throw new ConcurrentModificationException();
+			}
+		}
+
+		final boolean splittable(int lo, int mid) {
+			return lo < mid && current == null;
+		}
+
+		final int sizedFlag() {
+			return (fence < 0 || est == map.size) ? Spliterator.SIZED : 0;
+		}
+	}
+
+	static final class KeySpliterator<K, V> extends HashMapSpliterator<K, V> implements Spliterator<K> {
+		KeySpliterator(MyHashMap<K, V> m, int origin, int fence, int est, int expectedModCount) {
+			super(m, origin, fence, est, expectedModCount);
+		}
+
+		public KeySpliterator<K, V> trySplit() {
+			int hi = getFence(), lo = index, mid = (lo + hi) >>> 1;
+			return !splittable(lo, mid) ? null
+					: new KeySpliterator<K, V>(map, lo, index = mid, est >>>= 1, expectedModCount);
+		}
+
+		public void forEachRemaining(final Consumer<? super K> action) {
+			if (action == null)
+				throw new NullPointerException();
+			forEachRemainingEntry(e -> action.accept(e.key));
+		}
+
+		public boolean tryAdvance(Consumer<? super K> action) {
+			if (action == null)
+				throw new NullPointerException();
+			Entry<K, V> e = advance();
+			if (e == null)
+				return false;
+			action.accept(e.key);
+			return true;
+		}
+
+		public int characteristics() {
+			return sizedFlag() | Spliterator.DISTINCT;
+		}
+	}
+
+	static final class ValueSpliterator<K, V> extends HashMapSpliterator<K, V> implements Spliterator<V> {
+		ValueSpliterator(MyHashMap<K, V> m, int origin, int fence, int est, int expectedModCount) {
+			super(m, origin, fence, est, expectedModCount);
+		}
+
+		public ValueSpliterator<K, V> trySplit() {
+			int hi = getFence(), lo = index, mid = (lo + hi) >>> 1;
+			return !splittable(lo, mid) ? null
+					: new ValueSpliterator<K, V>(map, lo, index = mid, est >>>= 1, expectedModCount);
+		}
+
+		public void forEachRemaining(final Consumer<? super V> action) {
+			if (action == null)
+				throw new NullPointerException();
+			forEachRemainingEntry(e -> action.accept(e.value));
+		}
+
+		public boolean tryAdvance(Consumer<? super V> action) {
+			if (action == null)
+				throw new NullPointerException();
+			Entry<K, V> e = advance();
+			if (e == null)
+				return false;
+			action.accept(e.value);
+			return true;
+		}
+
+		public int characteristics() {
+			return sizedFlag();
+		}
+	}
+
+	static final class EntrySpliterator<K, V> extends HashMapSpliterator<K, V> implements Spliterator<Map.Entry<K, V>> {
+		EntrySpliterator(MyHashMap<K, V> m, int origin, int fence, int est, int expectedModCount) {
+			super(m, origin, fence, est, expectedModCount);
+		}
+
+		public EntrySpliterator<K, V> trySplit() {
+			int hi = getFence(), lo = index, mid = (lo + hi) >>> 1;
+			return !splittable(lo, mid) ? null
+					: new EntrySpliterator<K, V>(map, lo, index = mid, est >>>= 1, expectedModCount);
+		}
+
+		public void forEachRemaining(Consumer<? super Map.Entry<K, V>> action) {
+			forEachRemainingEntry(action);
+		}
+
+		public boolean tryAdvance(Consumer<? super Map.Entry<K, V>> action) {
+			if (action == null)
+				throw new NullPointerException();
+			Entry<K, V> e = advance();
+			if (e == null)
+				return false;
+			action.accept(e);
+			return true;
+		}
+
+		public int characteristics() {
+			return sizedFlag() | Spliterator.DISTINCT;
+		}
+	}
+
 	// Views
 
 	private transient Set<Map.Entry<K, V>> entrySet = null;
 
+	// AbstractMap里的keySet、values字段是包内可见的，这里无法使用，所以自己保存一份
+	private transient Set<K> keySet = null;
+
+	private transient Collection<V> values = null;
+
 	/**
 	 * Returns a {@link Set} view of the keys contained in this map. The set is
 	 * backed by the map, so changes to the map are reflected in the set, and
@@ -561,10 +2369,10 @@ public class MyHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clo
 	 * <tt>retainAll</tt>, and <tt>clear</tt> operations. It does not support
 	 * the <tt>add</tt> or <tt>addAll</tt> operations.
 	 */
-	// public Set<K> keySet() {
-	// Set<K> ks = keySet;
-	// return (ks != null ? ks : (keySet = new KeySet()));
-	// }
+	public Set<K> keySet() {
+		Set<K> ks = keySet;
+		return (ks != null ? ks : (keySet = new KeySet()));
+	}
 
 	private final class KeySet extends AbstractSet<K> {
 		public Iterator<K> iterator() {
@@ -586,6 +2394,16 @@ public class MyHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clo
 		public void clear() {
 			MyHashMap.this.clear();
 		}
+
+		public Spliterator<K> spliterator() {
+			return newKeySpliterator();
+		}
+
+		public void forEach(final Consumer<? super K> action) {
+			if (action == null)
+				throw new NullPointerException();
+			forEachEntry(e -> action.accept(e.key));
+		}
 	}
 
 	/**
@@ -600,10 +2418,10 @@ public class MyHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clo
 	 * <tt>clear</tt> operations. It does not support the <tt>add</tt> or
 	 * <tt>addAll</tt> operations.
 	 */
-	// public Collection<V> values() {
-	// Collection<V> vs = values;
-	// return (vs != null ? vs : (values = new Values()));
-	// }
+	public Collection<V> values() {
+		Collection<V> vs = values;
+		return (vs != null ? vs : (values = new Values()));
+	}
 
 	private final class Values extends AbstractCollection<V> {
 		public Iterator<V> iterator() {
@@ -621,6 +2439,16 @@ public class MyHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clo
 		public void clear() {
 			MyHashMap.this.clear();
 		}
+
+		public Spliterator<V> spliterator() {
+			return newValueSpliterator();
+		}
+
+		public void forEach(final Consumer<? super V> action) {
+			if (action == null)
+				throw new NullPointerException();
+			forEachEntry(e -> action.accept(e.value));
+		}
 	}
 
 	/**
@@ -651,6 +2479,7 @@ public class MyHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clo
 			return newEntryIterator();
 		}
 
+		@SuppressWarnings("unchecked")
 		public boolean contains(Object o) {
 			if (!(o instanceof Map.Entry))
 				return false;
@@ -670,6 +2499,14 @@ public class MyHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clo
 		public void clear() {
 			MyHashMap.this.clear();
 		}
+
+		public Spliterator<Map.Entry<K, V>> spliterator() {
+			return newEntrySpliterator();
+		}
+
+		public void forEach(Consumer<? super Map.Entry<K, V>> action) {
+			forEachEntry(action);
+		}
 	}
 
 	/**
@@ -688,8 +2525,8 @@ public class MyHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clo
 		// Write out the threshold, loadfactor, and any hidden stuff
 		s.defaultWriteObject();
 
-		// Write out number of buckets
-		s.writeInt(table.length);
+		// Write out number of buckets（数组还没有分配时写将要分配的容量）
+		s.writeInt(capacity());
 
 		// Write out size (number of Mappings)
 		s.writeInt(size);
@@ -710,13 +2547,18 @@ public class MyHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clo
 	 * Reconstitute the <tt>HashMap</tt> instance from a stream (i.e.,
 	 * deserialize it).
 	 */
+	@SuppressWarnings("unchecked")
 	private void readObject(java.io.ObjectInputStream s) throws IOException, ClassNotFoundException {
 		// Read in the threshold, loadfactor, and any hidden stuff
 		s.defaultReadObject();
+		initHashSeed();// 种子不写入流，反序列化出来的map使用新的种子
 
 		// Read in number of buckets and allocate the bucket array;
 		int numBuckets = s.readInt();
-		table = new Entry[numBuckets];
+		if (numBuckets <= 0 || numBuckets > MAXIMUM_CAPACITY || (numBuckets & (numBuckets - 1)) != 0)
+			throw new StreamCorruptedException("Illegal number of buckets: " + numBuckets);
+		table = emptyTable();// 第一次putForCreate时按numBuckets分配
+		threshold = numBuckets;
 
 		init(); // Give subclass a chance to do its thing.
 
@@ -731,9 +2573,52 @@ public class MyHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clo
 		}
 	}
 
+	/**
+	 * 二进制格式：varint的size、loadFactor，然后key、value交替（由codec编码）。
+	 * MyLinkedHashMap按链表顺序写出，用MyLinkedHashMap.readFrom读回时顺序不变。
+	 */
+	public void writeTo(BinaryOutput out, Codec<? super K> keyCodec, Codec<? super V> valueCodec) throws IOException {
+		int expectedModCount = modCount;
+		out.writeVarInt(size);
+		out.writeFloat(loadFactor);
+		for (Iterator<Map.Entry<K, V>> i = entrySet0().iterator(); i.hasNext();) {
+			Map.Entry<K, V> e = i.next();
+			keyCodec.write(out, e.getKey());
+			valueCodec.write(out, e.getValue());
+		}
+		if (modCount != expectedModCount)
+			throw new ConcurrentModificationException();
+	}
+
+	// 按头部的size算出数组大小，之后用putForCreate逐个放入，整个过程不会扩容
+	public static <K, V> MyHashMap<K, V> readFrom(BinaryInput in, Codec<? extends K> keyCodec,
+			Codec<? extends V> valueCodec) throws IOException {
+		int size = in.readVarInt();
+		float loadFactor = in.readFloat();
+		MyHashMap<K, V> m = new MyHashMap<K, V>(capacityFor(size, loadFactor), loadFactor);
+		m.readEntries(in, keyCodec, valueCodec, size);
+		return m;
+	}
+
+	static int capacityFor(int size, float loadFactor) throws StreamCorruptedException {
+		if (size < 0 || !(loadFactor > 0))
+			throw new StreamCorruptedException("Illegal size or load factor: " + size + ", " + loadFactor);
+		return (int) Math.min(Math.max(size / loadFactor + 1, DEFAULT_INITIAL_CAPACITY), MAXIMUM_CAPACITY);
+	}
+
+	final void readEntries(BinaryInput in, Codec<? extends K> keyCodec, Codec<? extends V> valueCodec, int size)
+			throws IOException {
+		for (int i = 0; i < size; i++) {
+			K key = keyCodec.read(in);
+			V value = valueCodec.read(in);
+			putForCreate(key, value);
+		}
+	}
+
 	// These methods are used when serializing HashSets
+	// 数组还没有分配时table是长度为1的EMPTY_TABLE，返回threshold里存的将要分配的容量
 	int capacity() {
-		return table.length;
+		return table == EMPTY_TABLE ? threshold : table.length;
 	}
 
 	float loadFactor() {
@@ -14,6 +14,11 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.jatesun.collection.codec.BinaryInput;
+import com.jatesun.collection.codec.BinaryOutput;
+import com.jatesun.collection.codec.Codec;
 //import java.util.Hashtable.EmptyEnumerator;
 //import java.util.Hashtable.EmptyIterator;
 //import java.util.Hashtable.Entry;
@@ -38,7 +43,7 @@ import java.util.Set;
  */
 public class MyHashTable<K, V> extends Dictionary<K, V> implements Map<K, V>, Cloneable, java.io.Serializable {
 
-	private transient Entry[] table;// 存放元素数组
+	private transient Entry<K, V>[] table;// 存放元素数组
 
 	private transient int count;// 元素大小
 
@@ -48,10 +53,20 @@ public class MyHashTable<K, V> extends Dictionary<K, V> implements Map<K, V>, Cl
 
 	private transient int modCount = 0;
 
+	private final boolean randomizedHash;// 是否使用带随机种子的散列，见MyHashMap.seededHash
+
+	private transient int hashSeed;// 随机种子，不写入流
+
+	private transient HashStats.Counter stats;// 运行时统计，见MyHashMap.enableStats
+
 	private static final long serialVersionUID = 1421746759512286392L;
 
-	// 最重要的构造方法
 	public MyHashTable(int initialCapacity, float loadFactor) {
+		this(initialCapacity, loadFactor, false);
+	}
+
+	// 最重要的构造方法。randomizedHash为true时key的hash掺入随机种子，防止外部输入故意构造大量冲突的key
+	public MyHashTable(int initialCapacity, float loadFactor, boolean randomizedHash) {
 		// 校验参数
 		if (initialCapacity < 0)
 			throw new IllegalArgumentException("Illegal Capacity: " + initialCapacity);
@@ -62,10 +77,18 @@ public class MyHashTable<K, V> extends Dictionary<K, V> implements Map<K, V>, Cl
 			initialCapacity = 1;
 		// 初始化entry、计算临界容量
 		this.loadFactor = loadFactor;
-		table = new Entry[initialCapacity];
+		this.randomizedHash = randomizedHash;
+		initHashSeed();
+		table = newTable(initialCapacity);
 		threshold = (int) (initialCapacity * loadFactor);
 	}
 
+	// 泛型数组不能直接new，创建后强转
+	@SuppressWarnings("unchecked")
+	private static <K, V> Entry<K, V>[] newTable(int n) {
+		return (Entry<K, V>[]) new Entry<?, ?>[n];
+	}
+
 	public MyHashTable(int initialCapacity) {
 		this(initialCapacity, 0.75f);
 	}
@@ -79,6 +102,15 @@ public class MyHashTable<K, V> extends Dictionary<K, V> implements Map<K, V>, Cl
 		putAll(t);
 	}
 
+	private void initHashSeed() {
+		hashSeed = randomizedHash ? ThreadLocalRandom.current().nextInt() : 0;
+	}
+
+	// key的hash值。默认直接用hashCode（不允许null，key为null时抛NullPointerException）
+	private int hashOf(Object key) {
+		return randomizedHash ? MyHashMap.seededHash(key, hashSeed) : key.hashCode();
+	}
+
 	public synchronized int size() {
 		return count;
 	}
@@ -101,7 +133,7 @@ public class MyHashTable<K, V> extends Dictionary<K, V> implements Map<K, V>, Cl
 			throw new NullPointerException();
 		}
 
-		Entry tab[] = table;
+		Entry<K, V> tab[] = table;
 		// 双层for循环遍历
 		for (int i = tab.length; i-- > 0;) {
 			for (Entry<K, V> e = tab[i]; e != null; e = e.next) {
@@ -118,8 +150,8 @@ public class MyHashTable<K, V> extends Dictionary<K, V> implements Map<K, V>, Cl
 	}
 
 	public synchronized boolean containsKey(Object key) {
-		Entry tab[] = table;
-		int hash = key.hashCode();
+		Entry<K, V> tab[] = table;
+		int hash = hashOf(key);
 		int index = (hash & 0x7FFFFFFF) % tab.length;// 与hashmap的index计算方法不同。也没有再hash
 		// for循环查找链表
 		for (Entry<K, V> e = tab[index]; e != null; e = e.next) {
@@ -131,24 +163,59 @@ public class MyHashTable<K, V> extends Dictionary<K, V> implements Map<K, V>, Cl
 	}
 
 	public synchronized V get(Object key) {
-		Entry tab[] = table;
-		int hash = key.hashCode();
+		Entry<K, V> tab[] = table;
+		int hash = hashOf(key);
 		int index = (hash & 0x7FFFFFFF) % tab.length;
 		for (Entry<K, V> e = tab[index]; e != null; e = e.next) {
 			if ((e.hash == hash) && e.key.equals(key)) {
+				if (stats != null)
+					stats.hits++;
 				return e.value;
 			}
 		}
+		if (stats != null)
+			stats.misses++;
 		return null;
 	}
 
+	// 与MyHashMap.enableStats相同，统计get命中、未命中和rehash的次数、耗时
+	public synchronized void enableStats(ResizeListener listener) {
+		stats = new HashStats.Counter(listener);
+	}
+
+	public synchronized void enableStats() {
+		enableStats(null);
+	}
+
+	public synchronized void disableStats() {
+		stats = null;
+	}
+
+	public synchronized HashStats stats() {
+		Entry<K, V>[] tab = table;
+		int[] chainLengths = new int[HashStats.HISTOGRAM_SIZE];
+		long probes = 0;
+		int max = 0;
+		for (int i = 0; i < tab.length; i++) {
+			int n = 0;
+			for (Entry<K, V> e = tab[i]; e != null; e = e.next)
+				n++;
+			HashStats.addChain(chainLengths, n);
+			probes += HashStats.probes(n);
+			if (n > max)
+				max = n;
+		}
+		return new HashStats(tab.length, count, chainLengths, max, 0, probes, stats);
+	}
+
 	// 需要扩容之后的rehash。
 	protected void rehash() {
+		long start = stats != null ? System.nanoTime() : 0;
 		int oldCapacity = table.length;
-		Entry[] oldMap = table;
+		Entry<K, V>[] oldMap = table;
 
 		int newCapacity = oldCapacity * 2 + 1;
-		Entry[] newMap = new Entry[newCapacity];
+		Entry<K, V>[] newMap = newTable(newCapacity);
 
 		modCount++;
 		threshold = (int) (newCapacity * loadFactor);
@@ -164,6 +231,8 @@ public class MyHashTable<K, V> extends Dictionary<K, V> implements Map<K, V>, Cl
 				newMap[index] = e;
 			}
 		}
+		if (stats != null)
+			stats.resized(this, oldCapacity, newCapacity, count, System.nanoTime() - start);
 	}
 
 	public synchronized V put(K key, V value) {
@@ -172,8 +241,8 @@ public class MyHashTable<K, V> extends Dictionary<K, V> implements Map<K, V>, Cl
 		}
 
 		// 如果已经存在就替换value。
-		Entry tab[] = table;
-		int hash = key.hashCode();
+		Entry<K, V> tab[] = table;
+		int hash = hashOf(key);
 		int index = (hash & 0x7FFFFFFF) % tab.length;
 		for (Entry<K, V> e = tab[index]; e != null; e = e.next) {
 			if ((e.hash == hash) && e.key.equals(key)) {
@@ -199,8 +268,8 @@ public class MyHashTable<K, V> extends Dictionary<K, V> implements Map<K, V>, Cl
 	}
 
 	public synchronized V remove(Object key) {
-		Entry tab[] = table;
-		int hash = key.hashCode();
+		Entry<K, V> tab[] = table;
+		int hash = hashOf(key);
 		int index = (hash & 0x7FFFFFFF) % tab.length;
 		for (Entry<K, V> e = tab[index], prev = null; e != null; prev = e, e = e.next) {
 			if ((e.hash == hash) && e.key.equals(key)) {
@@ -227,17 +296,18 @@ public class MyHashTable<K, V> extends Dictionary<K, V> implements Map<K, V>, Cl
 
 	// 跟hashmap差不多，不赘述
 	public synchronized void clear() {
-		Entry tab[] = table;
+		Entry<K, V> tab[] = table;
 		modCount++;
 		for (int index = tab.length; --index >= 0;)
 			tab[index] = null;
 		count = 0;
 	}
 
+	@SuppressWarnings("unchecked")
 	public synchronized Object clone() {
 		try {
 			MyHashTable<K, V> t = (MyHashTable<K, V>) super.clone();
-			t.table = new Entry[table.length];
+			t.table = newTable(table.length);
 			for (int i = table.length; i-- > 0;) {
 				t.table[i] = (table[i] != null) ? (Entry<K, V>) table[i].clone() : null;
 			}
@@ -245,6 +315,7 @@ public class MyHashTable<K, V> extends Dictionary<K, V> implements Map<K, V>, Cl
 			t.entrySet = null;
 			t.values = null;
 			t.modCount = 0;
+			t.stats = null;
 			return t;
 		} catch (CloneNotSupportedException e) {
 			// this shouldn't happen, since we are Cloneable
@@ -275,6 +346,7 @@ public class MyHashTable<K, V> extends Dictionary<K, V> implements Map<K, V>, Cl
 		}
 	}
 
+	@SuppressWarnings("unchecked")
 	private <T> Enumeration<T> getEnumeration(int type) {
 		if (count == 0) {
 			return (Enumeration<T>) emptyEnumerator;
@@ -283,6 +355,7 @@ public class MyHashTable<K, V> extends Dictionary<K, V> implements Map<K, V>, Cl
 		}
 	}
 
+	@SuppressWarnings("unchecked")
 	private <T> Iterator<T> getIterator(int type) {
 		if (count == 0) {
 			return (Iterator<T>) emptyIterator;
@@ -359,25 +432,26 @@ public class MyHashTable<K, V> extends Dictionary<K, V> implements Map<K, V>, Cl
 		public boolean contains(Object o) {
 			if (!(o instanceof Map.Entry))
 				return false;
-			Map.Entry entry = (Map.Entry) o;
+			Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
 			Object key = entry.getKey();
-			Entry[] tab = table;
-			int hash = key.hashCode();
+			Entry<K, V>[] tab = table;
+			int hash = hashOf(key);
 			int index = (hash & 0x7FFFFFFF) % tab.length;
 
-			for (Entry e = tab[index]; e != null; e = e.next)
+			for (Entry<K, V> e = tab[index]; e != null; e = e.next)
 				if (e.hash == hash && e.equals(entry))
 					return true;
 			return false;
 		}
 
+		@SuppressWarnings("unchecked")
 		public boolean remove(Object o) {
 			if (!(o instanceof Map.Entry))
 				return false;
 			Map.Entry<K, V> entry = (Map.Entry<K, V>) o;
 			K key = entry.getKey();
-			Entry[] tab = table;
-			int hash = key.hashCode();
+			Entry<K, V>[] tab = table;
+			int hash = hashOf(key);
 			int index = (hash & 0x7FFFFFFF) % tab.length;
 
 			for (Entry<K, V> e = tab[index], prev = null; e != null; prev = e, e = e.next) {
@@ -447,6 +521,7 @@ public class MyHashTable<K, V> extends Dictionary<K, V> implements Map<K, V>, Cl
 
 	// Comparison and hashing
 
+	@SuppressWarnings("unchecked")
 	public synchronized boolean equals(Object o) {
 		if (o == this)
 			return true;
@@ -486,9 +561,9 @@ public class MyHashTable<K, V> extends Dictionary<K, V> implements Map<K, V>, Cl
 			return h; // Returns zero
 
 		loadFactor = -loadFactor; // Mark hashCode computation in progress
-		Entry[] tab = table;
+		Entry<K, V>[] tab = table;
 		for (int i = 0; i < tab.length; i++)
-			for (Entry e = tab[i]; e != null; e = e.next)
+			for (Entry<K, V> e = tab[i]; e != null; e = e.next)
 				h += e.key.hashCode() ^ e.value.hashCode();
 		loadFactor = -loadFactor; // Mark hashCode computation complete
 
@@ -503,7 +578,7 @@ public class MyHashTable<K, V> extends Dictionary<K, V> implements Map<K, V>, Cl
 		s.writeInt(table.length);
 		s.writeInt(count);
 		for (int index = table.length - 1; index >= 0; index--) {
-			Entry entry = table[index];
+			Entry<K, V> entry = table[index];
 
 			while (entry != null) {
 				s.writeObject(entry.key);
@@ -516,9 +591,11 @@ public class MyHashTable<K, V> extends Dictionary<K, V> implements Map<K, V>, Cl
 	/**
 	 * Reconstitute the Hashtable from a stream (i.e., deserialize it).
 	 */
+	@SuppressWarnings("unchecked")
 	private void readObject(java.io.ObjectInputStream s) throws IOException, ClassNotFoundException {
 		// Read in the length, threshold, and loadfactor
 		s.defaultReadObject();
+		initHashSeed();
 
 		// Read the original length of the array and number of elements
 		int origlength = s.readInt();
@@ -534,7 +611,7 @@ public class MyHashTable<K, V> extends Dictionary<K, V> implements Map<K, V>, Cl
 		if (origlength > 0 && length > origlength)
 			length = origlength;
 
-		Entry[] table = new Entry[length];
+		Entry<K, V>[] table = newTable(length);
 		count = 0;
 
 		// Read the number of elements and then all the key/value objects
@@ -558,13 +635,13 @@ public class MyHashTable<K, V> extends Dictionary<K, V> implements Map<K, V>, Cl
 	 * because we are creating a new instance. Also, no return value
 	 * is needed.
 	 */
-	private void reconstitutionPut(Entry[] tab, K key, V value) throws StreamCorruptedException {
+	private void reconstitutionPut(Entry<K, V>[] tab, K key, V value) throws StreamCorruptedException {
 		if (value == null) {
 			throw new java.io.StreamCorruptedException();
 		}
 		// Makes sure the key is not already in the hashtable.
 		// This should not happen in deserialized version.
-		int hash = key.hashCode();
+		int hash = hashOf(key);
 		int index = (hash & 0x7FFFFFFF) % tab.length;
 		for (Entry<K, V> e = tab[index]; e != null; e = e.next) {
 			if ((e.hash == hash) && e.key.equals(key)) {
@@ -577,6 +654,37 @@ public class MyHashTable<K, V> extends Dictionary<K, V> implements Map<K, V>, Cl
 		count++;
 	}
 
+	// 二进制格式与MyHashMap.writeTo相同：varint的size、loadFactor，然后key、value交替。key和value都不能为null
+	public synchronized void writeTo(BinaryOutput out, Codec<? super K> keyCodec, Codec<? super V> valueCodec)
+			throws IOException {
+		out.writeVarInt(count);
+		out.writeFloat(loadFactor);
+		Entry<K, V>[] tab = table;
+		for (int index = tab.length - 1; index >= 0; index--) {
+			for (Entry<K, V> e = tab[index]; e != null; e = e.next) {
+				keyCodec.write(out, e.key);
+				valueCodec.write(out, e.value);
+			}
+		}
+	}
+
+	// 数组按size一次分配好，用reconstitutionPut放入，不会rehash
+	public static <K, V> MyHashTable<K, V> readFrom(BinaryInput in, Codec<? extends K> keyCodec,
+			Codec<? extends V> valueCodec) throws IOException {
+		int size = in.readVarInt();
+		float loadFactor = in.readFloat();
+		// size来自流，预分配的数组大小与MyHashMap.readFrom一样限制在MAXIMUM_CAPACITY以内，同时检查size和loadFactor
+		MyHashTable<K, V> t = new MyHashTable<K, V>(MyHashMap.capacityFor(size, loadFactor), loadFactor);
+		for (int i = 0; i < size; i++) {
+			K key = keyCodec.read(in);
+			V value = valueCodec.read(in);
+			if (key == null)
+				throw new StreamCorruptedException();
+			t.reconstitutionPut(t.table, key, value);
+		}
+		return t;
+	}
+
 	// hashtable的entry节点。与hashmap的一样，不在详解
 	private static class Entry<K, V> implements Map.Entry<K, V> {
 		int hash;
@@ -591,6 +699,7 @@ public class MyHashTable<K, V> extends Dictionary<K, V> implements Map<K, V>, Cl
 			this.next = next;
 		}
 
+		@SuppressWarnings("unchecked")
 		protected Object clone() {
 			return new Entry<K, V>(hash, key, value, (next == null ? null : (Entry<K, V>) next.clone()));
 		}
@@ -615,14 +724,15 @@ public class MyHashTable<K, V> extends Dictionary<K, V> implements Map<K, V>, Cl
 		public boolean equals(Object o) {
 			if (!(o instanceof Map.Entry))
 				return false;
-			Map.Entry e = (Map.Entry) o;
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
 
 			return (key == null ? e.getKey() == null : key.equals(e.getKey()))
 					&& (value == null ? e.getValue() == null : value.equals(e.getValue()));
 		}
 
 		public int hashCode() {
-			return hash ^ (value == null ? 0 : value.hashCode());
+			// 打开randomizedHash后hash字段不再等于key.hashCode()，这里按Map.Entry的约定重新计算
+			return key.hashCode() ^ (value == null ? 0 : value.hashCode());
 		}
 
 		public String toString() {
@@ -643,7 +753,7 @@ public class MyHashTable<K, V> extends Dictionary<K, V> implements Map<K, V>, Cl
 	 * by passing an Enumeration.
 	 */
 	private class Enumerator<T> implements Enumeration<T>, Iterator<T> {
-		Entry[] table = MyHashTable.this.table;
+		Entry<K, V>[] table = MyHashTable.this.table;
 		int index = table.length;
 		Entry<K, V> entry = null;
 		Entry<K, V> lastReturned = null;
@@ -670,7 +780,7 @@ public class MyHashTable<K, V> extends Dictionary<K, V> implements Map<K, V>, Cl
 		public boolean hasMoreElements() {
 			Entry<K, V> e = entry;
 			int i = index;
-			Entry[] t = table;
+			Entry<K, V>[] t = table;
 			/* Use locals for faster loop iteration */
 			while (e == null && i > 0) {
 				e = t[--i];
@@ -680,10 +790,11 @@ public class MyHashTable<K, V> extends Dictionary<K, V> implements Map<K, V>, Cl
 			return e != null;
 		}
 
+		@SuppressWarnings("unchecked")
 		public T nextElement() {
 			Entry<K, V> et = entry;
 			int i = index;
-			Entry[] t = table;
+			Entry<K, V>[] t = table;
 			/* Use locals for faster loop iteration */
 			while (et == null && i > 0) {
 				et = t[--i];
@@ -718,7 +829,7 @@ public class MyHashTable<K, V> extends Dictionary<K, V> implements Map<K, V>, Cl
 				throw new ConcurrentModificationException();
 
 			synchronized (MyHashTable.this) {
-				Entry[] tab = MyHashTable.this.table;
+				Entry<K, V>[] tab = MyHashTable.this.table;
 				int index = (lastReturned.hash & 0x7FFFFFFF) % tab.length;
 
 				for (Entry<K, V> e = tab[index], prev = null; e != null; prev = e, e = e.next) {
@@ -739,8 +850,8 @@ public class MyHashTable<K, V> extends Dictionary<K, V> implements Map<K, V>, Cl
 		}
 	}
 
-	private static Enumeration emptyEnumerator = new EmptyEnumerator();
-	private static Iterator emptyIterator = new EmptyIterator();
+	private static Enumeration<?> emptyEnumerator = new EmptyEnumerator();
+	private static Iterator<?> emptyIterator = new EmptyIterator();
 
 	/**
 	 * A hashtable enumerator class for empty hash tables, specializes
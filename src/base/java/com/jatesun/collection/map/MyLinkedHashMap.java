@@ -1,11 +1,17 @@
 package com.jatesun.collection.map;
 
+import java.io.IOException;
 import java.util.ConcurrentModificationException;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+import com.jatesun.collection.codec.BinaryInput;
+import com.jatesun.collection.codec.Codec;
 //import java.util.LinkedHashMap.Entry;
 //import java.util.LinkedHashMap.EntryIterator;
 //import java.util.LinkedHashMap.KeyIterator;
@@ -27,7 +33,7 @@ public class MyLinkedHashMap<K, V> extends MyHashMap<K, V> implements Map<K, V>
 
 	private static final long serialVersionUID = 3801124242820219131L;
 
-	private transient Entry<K, V> header;// 头节点
+	transient Entry<K, V> header;// 头节点，header.after是最早加入（最久没有访问）的entry
 
 	private final boolean accessOrder;// TODO
 
@@ -56,15 +62,36 @@ public class MyLinkedHashMap<K, V> extends MyHashMap<K, V> implements Map<K, V>
 		this.accessOrder = accessOrder;
 	}
 
+	// randomizedHash见MyHashMap
+	public MyLinkedHashMap(int initialCapacity, float loadFactor, boolean accessOrder, boolean randomizedHash) {
+		super(initialCapacity, loadFactor, false, randomizedHash);
+		this.accessOrder = accessOrder;
+	}
+
+	// 读取MyHashMap.writeTo写出的数据，保持写出时的顺序
+	public static <K, V> MyLinkedHashMap<K, V> readFrom(BinaryInput in, Codec<? extends K> keyCodec,
+			Codec<? extends V> valueCodec) throws IOException {
+		int size = in.readVarInt();
+		float loadFactor = in.readFloat();
+		MyLinkedHashMap<K, V> m = new MyLinkedHashMap<K, V>(capacityFor(size, loadFactor), loadFactor);
+		m.readEntries(in, keyCodec, valueCodec, size);
+		return m;
+	}
+
 	void init() {
 		header = new Entry<K, V>(-1, null, null, null);
 		header.before = header.after = header;
 	}
 
-	void transfer(MyHashMap.Entry[] newTable) {
+	// 链表上e之后的下一个entry。TinyLfuCache在链表里放了分段的标记节点，遍历时要跳过
+	Entry<K, V> successor(Entry<K, V> e) {
+		return e.after;
+	}
+
+	void transfer(MyHashMap.Entry<K, V>[] newTable) {
 		int newCapacity = newTable.length;
 		// 转移到新的enry中。直接遍历有序链表即可。
-		for (Entry<K, V> e = header.after; e != header; e = e.after) {
+		for (Entry<K, V> e = successor(header); e != header; e = successor(e)) {
 			int index = indexFor(e.hash, newCapacity);
 			e.next = newTable[index];
 			newTable[index] = e;
@@ -73,11 +100,11 @@ public class MyLinkedHashMap<K, V> extends MyHashMap<K, V> implements Map<K, V>
 
 	public boolean containsValue(Object value) {
 		if (value == null) {
-			for (Entry e = header.after; e != header; e = e.after)
+			for (Entry<K, V> e = successor(header); e != header; e = successor(e))
 				if (e.value == null)
 					return true;
 		} else {
-			for (Entry e = header.after; e != header; e = e.after)
+			for (Entry<K, V> e = successor(header); e != header; e = successor(e))
 				if (value.equals(e.value))
 					return true;
 		}
@@ -86,6 +113,7 @@ public class MyLinkedHashMap<K, V> extends MyHashMap<K, V> implements Map<K, V>
 
 	public V get(Object key) {
 		Entry<K, V> e = (Entry<K, V>) getEntry(key);
+		recordGet(e != null);
 		if (e == null)
 			return null;
 		e.recordAccess(this);
@@ -97,20 +125,20 @@ public class MyLinkedHashMap<K, V> extends MyHashMap<K, V> implements Map<K, V>
 		header.before = header.after = header;
 	}
 
-	private static class Entry<K, V> extends MyHashMap.Entry<K, V> {
+	static class Entry<K, V> extends MyHashMap.Entry<K, V> {
 		Entry<K, V> before, after;
 
 		Entry(int hash, K key, V value, MyHashMap.Entry<K, V> next) {
 			super(hash, key, value, next);
 		}
 
-		private void remove() {
+		void remove() {
 			before.after = after;
 			after.before = before;
 		}
 
 		// addbefore方法
-		private void addBefore(Entry<K, V> existingEntry) {
+		void addBefore(Entry<K, V> existingEntry) {
 			after = existingEntry;
 			before = existingEntry.before;
 			before.after = this;
@@ -126,13 +154,14 @@ public class MyLinkedHashMap<K, V> extends MyHashMap<K, V> implements Map<K, V>
 			}
 		}
 
-		void recordRemoval(HashMap<K, V> m) {
+		// 参数必须是MyHashMap，否则不会覆盖父类的方法，删除后节点还留在双向链表里
+		void recordRemoval(MyHashMap<K, V> m) {
 			remove();
 		}
 	}
 
 	private abstract class LinkedHashIterator<T> implements Iterator<T> {
-		Entry<K, V> nextEntry = header.after;
+		Entry<K, V> nextEntry = successor(header);
 		Entry<K, V> lastReturned = null;
 
 		/**
@@ -164,7 +193,7 @@ public class MyLinkedHashMap<K, V> extends MyHashMap<K, V> implements Map<K, V>
 				throw new NoSuchElementException();
 
 			Entry<K, V> e = lastReturned = nextEntry;
-			nextEntry = e.after;
+			nextEntry = successor(e);
 			return e;
 		}
 	}
@@ -200,6 +229,32 @@ public class MyLinkedHashMap<K, V> extends MyHashMap<K, V> implements Map<K, V>
 		return new EntryIterator();
 	}
 
+	// 按桶拆分会打乱链表顺序，这里用基于迭代器的spliterator，保证ORDERED
+	Spliterator<K> newKeySpliterator() {
+		return Spliterators.spliterator(newKeyIterator(), size,
+				Spliterator.SIZED | Spliterator.ORDERED | Spliterator.DISTINCT);
+	}
+
+	Spliterator<V> newValueSpliterator() {
+		return Spliterators.spliterator(newValueIterator(), size, Spliterator.SIZED | Spliterator.ORDERED);
+	}
+
+	Spliterator<Map.Entry<K, V>> newEntrySpliterator() {
+		return Spliterators.spliterator(newEntryIterator(), size,
+				Spliterator.SIZED | Spliterator.ORDERED | Spliterator.DISTINCT);
+	}
+
+	// 沿着before/after链表遍历，保持插入（访问）顺序
+	void forEachEntry(Consumer<? super MyHashMap.Entry<K, V>> action) {
+		if (action == null)
+			throw new NullPointerException();
+		int mc = modCount;
+		for (Entry<K, V> e = successor(header); modCount == mc && e != header; e = successor(e))
+			action.accept(e);
+		if (modCount != mc)
+			throw new ConcurrentModificationException();
+	}
+
 	void addEntry(int hash, K key, V value, int bucketIndex) {
 		createEntry(hash, key, value, bucketIndex);
 		Entry<K, V> eldest = header.after;
@@ -211,14 +266,27 @@ public class MyLinkedHashMap<K, V> extends MyHashMap<K, V> implements Map<K, V>
 		}
 	}
 
+	// entry要按顺序链进双向链表，不能按桶复制
+	boolean bucketCopy() {
+		return false;
+	}
+
 	// 新建节点方法
 	void createEntry(int hash, K key, V value, int bucketIndex) {
+		bucketIndex = ensureTable(hash, bucketIndex);
 		MyHashMap.Entry<K, V> old = table[bucketIndex];
-		Entry<K, V> e = new Entry<K, V>(hash, key, value, old);
+		Entry<K, V> e = newEntry(hash, key, value, old);
 		table[bucketIndex] = e;
 		e.addBefore(header);
 		size++;
+		binAdded(e, bucketIndex);
 	}
+
+	// 子类（LruCache）可以换成带额外字段的entry
+	Entry<K, V> newEntry(int hash, K key, V value, MyHashMap.Entry<K, V> next) {
+		return new Entry<K, V>(hash, key, value, next);
+	}
+
 	protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
 		return false;
 	}
@@ -0,0 +1,457 @@
+package com.jatesun.collection.map;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ *
+ * @author jatesun
+ * @description 开放定址（线性探测）的hashmap。与MyHashMap的区别是没有entry对象和链表，key、value、hash分别存放在三个平行数组里，
+ *              冲突时往后找下一个空位。每个映射只占两个引用加一个int，查找时也是在连续的数组上顺序访问，对cpu缓存更友好。
+ *              删除时不使用墓碑标记，而是把后面同一探测序列上的元素往前挪（backward shift），所以查找长度不会因为删除而变长。
+ *              适合读多写少的查找表，跟MyHashMap一样允许null键、null值。
+ * @question
+ * 		·开放定址和拉链法（MyHashMap）各自的优缺点？
+ * 		·为什么开放定址的装填因子必须小于1？
+ * 		·删除元素时为什么不能直接把数组位置置null？
+ * @date 2026年10月18日
+ * @param <K>
+ * @param <V>
+ */
+public class MyOpenHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V>, Cloneable, Serializable {
+
+	private static final long serialVersionUID = -6198765124387290613L;
+
+	static final int DEFAULT_INITIAL_CAPACITY = 16;// 默认初始大小
+
+	static final int MAXIMUM_CAPACITY = 1 << 30;// 最大容量
+
+	static final float DEFAULT_LOAD_FACTOR = 0.75f;// 装填因子，必须小于1
+
+	// null键的替身，keys数组中null表示空位，所以null键用这个对象存放（与IdentityHashMap相同）
+	static final Object NULL_KEY = new Object();
+
+	transient Object[] keys;// 存放key的数组，null表示空位
+
+	transient Object[] vals;// 存放value的数组
+
+	transient int[] hashes;// key再散列后的hash值，比较key之前先比较hash，扩容时也不用重新计算hashCode
+
+	transient int size;
+
+	int threshold;// 扩容边界（capacity*loadfactor）
+
+	final float loadFactor;
+
+	transient int modCount;
+
+	public MyOpenHashMap(int initialCapacity, float loadFactor) {
+		if (initialCapacity < 0)
+			throw new IllegalArgumentException("Illegal initial capacity: " + initialCapacity);
+		if (initialCapacity > MAXIMUM_CAPACITY)
+			initialCapacity = MAXIMUM_CAPACITY;
+		// 开放定址数组必须至少留一个空位，否则查找不存在的key会死循环
+		if (loadFactor <= 0 || loadFactor >= 1 || Float.isNaN(loadFactor))
+			throw new IllegalArgumentException("Illegal load factor: " + loadFactor);
+
+		int capacity = 1;
+		while (capacity < initialCapacity)
+			capacity <<= 1;
+		this.loadFactor = loadFactor;
+		allocate(capacity);
+	}
+
+	public MyOpenHashMap(int initialCapacity) {
+		this(initialCapacity, DEFAULT_LOAD_FACTOR);
+	}
+
+	public MyOpenHashMap() {
+		this(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR);
+	}
+
+	public MyOpenHashMap(Map<? extends K, ? extends V> m) {
+		this(Math.max((int) (m.size() / DEFAULT_LOAD_FACTOR) + 1, DEFAULT_INITIAL_CAPACITY), DEFAULT_LOAD_FACTOR);
+		putAll(m);
+	}
+
+	private void allocate(int capacity) {
+		keys = new Object[capacity];
+		vals = new Object[capacity];
+		hashes = new int[capacity];
+		threshold = Math.min((int) (capacity * loadFactor), capacity - 1);
+	}
+
+	static Object maskNull(Object key) {
+		return (key == null ? NULL_KEY : key);
+	}
+
+	static Object unmaskNull(Object key) {
+		return (key == NULL_KEY ? null : key);
+	}
+
+	// 复用MyHashMap的再散列函数，NULL_KEY的hash为0
+	static int hash(Object k) {
+		return k == NULL_KEY ? 0 : MyHashMap.hash(k.hashCode());
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	// 查找key所在的位置，找不到返回-1。遇到空位说明key不存在（删除时做了前移，探测序列中间不会有空洞）
+	final int indexOf(Object key) {
+		Object k = maskNull(key);
+		int h = hash(k);
+		Object[] ks = keys;
+		int[] hs = hashes;
+		int mask = ks.length - 1;
+		for (int i = h & mask;; i = (i + 1) & mask) {
+			Object x = ks[i];
+			if (x == null)
+				return -1;
+			if (hs[i] == h && (x == k || k.equals(x)))
+				return i;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(Object key) {
+		int i = indexOf(key);
+		return i < 0 ? null : (V) vals[i];
+	}
+
+	public boolean containsKey(Object key) {
+		return indexOf(key) >= 0;
+	}
+
+	public boolean containsValue(Object value) {
+		Object[] ks = keys, vs = vals;
+		for (int i = 0; i < ks.length; i++)
+			if (ks[i] != null && (value == null ? vs[i] == null : value.equals(vs[i])))
+				return true;
+		return false;
+	}
+
+	// put方法，如果原来存在就替换，不存在就放到探测序列上的第一个空位
+	@SuppressWarnings("unchecked")
+	public V put(K key, V value) {
+		Object k = maskNull(key);
+		int h = hash(k);
+		Object[] ks = keys;
+		int mask = ks.length - 1;
+		int i = h & mask;
+		for (Object x; (x = ks[i]) != null; i = (i + 1) & mask) {
+			if (hashes[i] == h && (x == k || k.equals(x))) {
+				V oldValue = (V) vals[i];
+				vals[i] = value;
+				return oldValue;
+			}
+		}
+
+		modCount++;
+		// 先扩容再插入，保证插入后仍然至少有一个空位
+		if (size >= threshold && resize(2 * ks.length)) {
+			ks = keys;
+			mask = ks.length - 1;
+			for (i = h & mask; ks[i] != null; i = (i + 1) & mask)
+				;
+		}
+		ks[i] = k;
+		vals[i] = value;
+		hashes[i] = h;
+		size++;
+		return null;
+	}
+
+	// 扩容，hash值已经存在hashes数组里，直接重新放一遍即可。返回是否真的扩容了
+	final boolean resize(int newCapacity) {
+		Object[] oldKeys = keys, oldVals = vals;
+		int[] oldHashes = hashes;
+		if (oldKeys.length == MAXIMUM_CAPACITY) {
+			if (size >= MAXIMUM_CAPACITY - 1)
+				throw new IllegalStateException("Capacity exhausted.");
+			threshold = MAXIMUM_CAPACITY - 1;
+			return false;
+		}
+		allocate(newCapacity);
+		Object[] ks = keys, vs = vals;
+		int[] hs = hashes;
+		int mask = newCapacity - 1;
+		for (int j = 0; j < oldKeys.length; j++) {
+			Object k = oldKeys[j];
+			if (k == null)
+				continue;
+			int h = oldHashes[j];
+			int i = h & mask;
+			while (ks[i] != null)
+				i = (i + 1) & mask;
+			ks[i] = k;
+			vs[i] = oldVals[j];
+			hs[i] = h;
+		}
+		return true;
+	}
+
+	public void putAll(Map<? extends K, ? extends V> m) {
+		int numKeysToBeAdded = m.size();
+		if (numKeysToBeAdded == 0)
+			return;
+		// 与MyHashMap不同，这里按添加后的总大小计算目标容量
+		int target = size + numKeysToBeAdded;
+		if (target > threshold) {
+			int newCapacity = keys.length;
+			while (newCapacity < MAXIMUM_CAPACITY && (int) (newCapacity * loadFactor) < target)
+				newCapacity <<= 1;
+			if (newCapacity > keys.length)
+				resize(newCapacity);
+		}
+		for (Iterator<? extends Map.Entry<? extends K, ? extends V>> i = m.entrySet().iterator(); i.hasNext();) {
+			Map.Entry<? extends K, ? extends V> e = i.next();
+			put(e.getKey(), e.getValue());
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public V remove(Object key) {
+		int i = indexOf(key);
+		if (i < 0)
+			return null;
+		V oldValue = (V) vals[i];
+		removeAt(i, null);
+		return oldValue;
+	}
+
+	final void removeAt(int i, HashIterator<?> it) {
+		modCount++;
+		size--;
+		shiftKeys(i, it);
+	}
+
+	// 删除pos位置后，把后面探测序列上"本该在pos或之前"的元素往前挪，直到遇到空位。
+	// 迭代器从后往前遍历，如果有元素从数组开头（还没遍历到的区域）绕回挪到了后面（已经遍历过的区域），交给迭代器单独记下来
+	private void shiftKeys(int pos, HashIterator<?> it) {
+		Object[] ks = keys, vs = vals;
+		int[] hs = hashes;
+		int mask = ks.length - 1;
+		for (;;) {
+			int last = pos;
+			pos = (pos + 1) & mask;
+			for (;;) {
+				if (ks[pos] == null) {
+					ks[last] = null;
+					vs[last] = null;
+					return;
+				}
+				int slot = hs[pos] & mask;
+				// slot不在(last, pos]区间内，说明pos上的元素可以挪到last
+				if (last <= pos ? (last >= slot || slot > pos) : (last >= slot && slot > pos))
+					break;
+				pos = (pos + 1) & mask;
+			}
+			if (it != null && pos < last)
+				it.wrapped(ks[pos], vs[pos]);
+			ks[last] = ks[pos];
+			vs[last] = vs[pos];
+			hs[last] = hs[pos];
+		}
+	}
+
+	public void clear() {
+		modCount++;
+		Arrays.fill(keys, null);
+		Arrays.fill(vals, null);
+		size = 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	public Object clone() {
+		MyOpenHashMap<K, V> result = null;
+		try {
+			result = (MyOpenHashMap<K, V>) super.clone();
+		} catch (CloneNotSupportedException e) {
+			// assert false;
+		}
+		// 数组直接拷贝即可，不需要重新计算位置
+		result.keys = keys.clone();
+		result.vals = vals.clone();
+		result.hashes = hashes.clone();
+		result.entrySet = null;
+		result.modCount = 0;
+		return result;
+	}
+
+	// 迭代器从数组末尾往前遍历，原因见shiftKeys
+	private abstract class HashIterator<E> implements Iterator<E> {
+		int index = keys.length; // 下一次从index-1开始往前找
+		int remaining = size; // 还剩多少个元素没有返回
+		int current = -1; // 上次返回的位置，-1表示没有，-2表示上次返回的是wrapped中的元素
+		Object currentKey;
+		Object nextValue;
+		ArrayList<Object> wrapped; // 删除时从未遍历区域挪到已遍历区域的元素，key和value交替存放
+		int expectedModCount = modCount;
+
+		public final boolean hasNext() {
+			return remaining > 0;
+		}
+
+		void wrapped(Object k, Object v) {
+			if (wrapped == null)
+				wrapped = new ArrayList<Object>(4);
+			wrapped.add(k);
+			wrapped.add(v);
+		}
+
+		// 返回下一个元素的key，value通过nextValue取得
+		final Object nextKey() {
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			if (remaining == 0)
+				throw new NoSuchElementException();
+			remaining--;
+			Object[] ks = keys;
+			while (--index >= 0) {
+				if (ks[index] != null) {
+					current = index;
+					nextValue = vals[index];
+					return currentKey = ks[index];
+				}
+			}
+			// 数组遍历完了，剩下的是被挪过去的元素
+			int n = wrapped.size();
+			nextValue = wrapped.remove(n - 1);
+			currentKey = wrapped.remove(n - 2);
+			current = -2;
+			return currentKey;
+		}
+
+		public void remove() {
+			if (current == -1)
+				throw new IllegalStateException();
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			if (current == -2) {// 数组已经遍历完，直接按key删除
+				MyOpenHashMap.this.remove(unmaskNull(currentKey));
+			} else {
+				removeAt(current, this);
+			}
+			current = -1;
+			expectedModCount = modCount;
+		}
+	}
+
+	private final class EntryIterator extends HashIterator<Map.Entry<K, V>> {
+		@SuppressWarnings("unchecked")
+		public Map.Entry<K, V> next() {
+			K k = (K) unmaskNull(nextKey());
+			return new SlotEntry(k, (V) nextValue);
+		}
+	}
+
+	// 迭代器返回的entry。元素的位置会因为删除而移动，所以setValue按key写回，而不是记住数组下标
+	private final class SlotEntry extends SimpleEntry<K, V> {
+		private static final long serialVersionUID = 5140589264716862581L;
+
+		SlotEntry(K key, V value) {
+			super(key, value);
+		}
+
+		public V setValue(V value) {
+			put(getKey(), value);
+			return super.setValue(value);
+		}
+	}
+
+	// Views
+
+	private transient Set<Map.Entry<K, V>> entrySet = null;
+
+	public Set<Map.Entry<K, V>> entrySet() {
+		Set<Map.Entry<K, V>> es = entrySet;
+		return es != null ? es : (entrySet = new EntrySet());
+	}
+
+	private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+		public Iterator<Map.Entry<K, V>> iterator() {
+			return new EntryIterator();
+		}
+
+		@SuppressWarnings("unchecked")
+		public boolean contains(Object o) {
+			if (!(o instanceof Map.Entry))
+				return false;
+			Map.Entry<K, V> e = (Map.Entry<K, V>) o;
+			int i = indexOf(e.getKey());
+			if (i < 0)
+				return false;
+			Object v = vals[i];
+			return v == null ? e.getValue() == null : v.equals(e.getValue());
+		}
+
+		@SuppressWarnings("unchecked")
+		public boolean remove(Object o) {
+			if (!contains(o))
+				return false;
+			removeAt(indexOf(((Map.Entry<K, V>) o).getKey()), null);
+			return true;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public void clear() {
+			MyOpenHashMap.this.clear();
+		}
+	}
+
+	// 序列化格式与MyHashMap相同：容量、大小，然后key、value交替写出
+	private void writeObject(java.io.ObjectOutputStream s) throws IOException {
+		s.defaultWriteObject();
+		s.writeInt(keys.length);
+		s.writeInt(size);
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != null) {
+				s.writeObject(unmaskNull(keys[i]));
+				s.writeObject(vals[i]);
+			}
+		}
+	}
+
+	/**
+	 * 流里的装填因子、容量和元素个数都不可信：装填因子不小于1时查找不存在的key会死循环，容量不是2的幂时下标计算出错，
+	 * 容量不大于元素个数时放不下，这些都按流损坏处理，不能等到put时才出现死循环或者数组越界。
+	 */
+	@SuppressWarnings("unchecked")
+	private void readObject(java.io.ObjectInputStream s) throws IOException, ClassNotFoundException {
+		s.defaultReadObject();
+		if (loadFactor <= 0 || loadFactor >= 1 || Float.isNaN(loadFactor))
+			throw new InvalidObjectException("Illegal load factor: " + loadFactor);
+		int capacity = s.readInt();
+		int size = s.readInt();
+		if (capacity <= 0 || capacity > MAXIMUM_CAPACITY || (capacity & (capacity - 1)) != 0)
+			throw new InvalidObjectException("Illegal capacity: " + capacity);
+		if (size < 0 || size >= capacity)
+			throw new InvalidObjectException("Illegal size: " + size + ", capacity: " + capacity);
+		allocate(capacity);
+		for (int i = 0; i < size; i++) {
+			K key = (K) s.readObject();
+			V value = (V) s.readObject();
+			put(key, value);
+		}
+	}
+
+}
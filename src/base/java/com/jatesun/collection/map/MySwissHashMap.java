@@ -0,0 +1,437 @@
+package com.jatesun.collection.map;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ *
+ * @author jatesun
+ * @description SwissTable风格的开放定址hashmap。每个槽位有一个控制字节：最高位为0表示有元素，低7位存key的hash的7位（H2）；
+ *              0x80表示空位，0xFE表示已删除（墓碑）。8个槽位为一组，一组的控制字节正好是一个long，
+ *              查找时用long上的位运算（SWAR）一次比较8个控制字节，只有H2相同的槽位才会去比较key，
+ *              所以大部分不存在的key（miss）根本不会访问keys数组。组与组之间按三角数序列探测，遇到有空位的组就停止。
+ *              与MyHashMap一样允许null键、null值。装填因子固定为7/8。
+ * @question
+ * 		·为什么控制字节只存hash的7位就能过滤掉绝大部分不匹配的槽位？
+ * 		·删除时什么情况可以直接标记为空位，什么情况必须留下墓碑？
+ * 		·SWAR匹配会有误报吗？为什么误报不影响正确性？
+ * @date 2026年10月18日
+ * @param <K>
+ * @param <V>
+ */
+public class MySwissHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V>, Cloneable, Serializable {
+
+	private static final long serialVersionUID = 2971438210776520946L;
+
+	static final int GROUP_WIDTH = 8;// 每组槽位数，一组控制字节为一个long
+
+	static final int MAXIMUM_CAPACITY = 1 << 30;// 最大容量
+
+	static final int DEFAULT_INITIAL_CAPACITY = 16;// 默认初始大小
+
+	static final long EMPTY = 0x80L;// 空位
+
+	static final long DELETED = 0xFEL;// 墓碑
+
+	static final long LSBS = 0x0101010101010101L;// 每个字节的最低位
+
+	static final long MSBS = 0x8080808080808080L;// 每个字节的最高位
+
+	static final long EMPTY_GROUP = EMPTY * LSBS;// 8个空位
+
+	transient long[] ctrl;// 控制字节，第i个槽位在ctrl[i >>> 3]的第(i & 7)个字节
+
+	transient Object[] keys;// key数组，null键用MyOpenHashMap.NULL_KEY代替
+
+	transient Object[] vals;// value数组
+
+	transient int size;
+
+	transient int growthLeft;// 还能往空位里放多少个元素，墓碑不会归还，所以删除多了需要原地重建
+
+	transient int modCount;
+
+	public MySwissHashMap(int initialCapacity) {
+		if (initialCapacity < 0)
+			throw new IllegalArgumentException("Illegal initial capacity: " + initialCapacity);
+		allocate(capacityFor(initialCapacity));
+	}
+
+	public MySwissHashMap() {
+		this(DEFAULT_INITIAL_CAPACITY);
+	}
+
+	public MySwissHashMap(Map<? extends K, ? extends V> m) {
+		this(Math.max(m.size(), DEFAULT_INITIAL_CAPACITY));
+		putAll(m);
+	}
+
+	// 能放下expected个元素（装填因子7/8）的最小2的指数容量，至少一组
+	static int capacityFor(int expected) {
+		long want = (long) expected * 8 / 7 + 1;
+		int capacity = GROUP_WIDTH;
+		while (capacity < want && capacity < MAXIMUM_CAPACITY)
+			capacity <<= 1;
+		return capacity;
+	}
+
+	private void allocate(int capacity) {
+		ctrl = new long[capacity / GROUP_WIDTH];
+		Arrays.fill(ctrl, EMPTY_GROUP);
+		keys = new Object[capacity];
+		vals = new Object[capacity];
+		growthLeft = capacity - capacity / 8 - size;
+	}
+
+	// 先用MyHashMap.hash再散列，再乘黄金分割数把各位打散：高7位做H2存到控制字节，剩下的位决定从哪一组开始探测
+	static int hash(Object k) {
+		return (k == MyOpenHashMap.NULL_KEY ? 0 : MyHashMap.hash(k.hashCode())) * 0x9E3779B9;
+	}
+
+	static int h2(int h) {
+		return h >>> 25;
+	}
+
+	static int h1(int h) {
+		return h ^ (h >>> 16);
+	}
+
+	// 组内控制字节等于h2的槽位，对应字节最高位置1。相邻字节可能误报，调用者会再比较key
+	static long match(long group, int h2) {
+		long x = group ^ (LSBS * h2);
+		return (x - LSBS) & ~x & MSBS;
+	}
+
+	// 组内空位（0x80）：最高位为1且第1位为0，墓碑0xFE第1位为1
+	static long matchEmpty(long group) {
+		return group & ~(group << 6) & MSBS;
+	}
+
+	// 组内空位或墓碑：最高位为1
+	static long matchEmptyOrDeleted(long group) {
+		return group & MSBS;
+	}
+
+	// 最低的那个置位对应的组内下标
+	static int lowestByte(long mask) {
+		return Long.numberOfTrailingZeros(mask) >>> 3;
+	}
+
+	final void setCtrl(int i, long b) {
+		int shift = (i & 7) << 3;
+		int w = i >>> 3;
+		ctrl[w] = (ctrl[w] & ~(0xFFL << shift)) | (b << shift);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	// 查找key所在槽位，找不到返回-1
+	final int indexOf(Object key) {
+		Object k = MyOpenHashMap.maskNull(key);
+		int h = hash(k);
+		int h2 = h2(h);
+		long[] c = ctrl;
+		Object[] ks = keys;
+		int groupMask = c.length - 1;
+		int g = h1(h) & groupMask;
+		for (int step = 1;; g = (g + step++) & groupMask) {
+			long group = c[g];
+			for (long m = match(group, h2); m != 0; m &= m - 1) {
+				int i = (g << 3) + lowestByte(m);
+				Object x = ks[i];
+				if (x == k || k.equals(x))
+					return i;
+			}
+			if (matchEmpty(group) != 0)// 组内有空位，key不可能在后面的组
+				return -1;
+		}
+	}
+
+	// 插入时的目标槽位：探测序列上第一个空位或墓碑
+	private int findInsertSlot(int h) {
+		long[] c = ctrl;
+		int groupMask = c.length - 1;
+		int g = h1(h) & groupMask;
+		for (int step = 1;; g = (g + step++) & groupMask) {
+			long m = matchEmptyOrDeleted(c[g]);
+			if (m != 0)
+				return (g << 3) + lowestByte(m);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(Object key) {
+		int i = indexOf(key);
+		return i < 0 ? null : (V) vals[i];
+	}
+
+	public boolean containsKey(Object key) {
+		return indexOf(key) >= 0;
+	}
+
+	public boolean containsValue(Object value) {
+		long[] c = ctrl;
+		for (int g = 0; g < c.length; g++) {
+			for (long m = ~c[g] & MSBS; m != 0; m &= m - 1) {
+				Object v = vals[(g << 3) + lowestByte(m)];
+				if (value == null ? v == null : value.equals(v))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V put(K key, V value) {
+		int i = indexOf(key);
+		if (i >= 0) {
+			V oldValue = (V) vals[i];
+			vals[i] = value;
+			return oldValue;
+		}
+		modCount++;
+		Object k = MyOpenHashMap.maskNull(key);
+		int h = hash(k);
+		i = findInsertSlot(h);
+		// 只有占用空位才消耗growthLeft，复用墓碑不消耗
+		if (growthLeft == 0 && ((ctrl[i >>> 3] >>> ((i & 7) << 3)) & 0xFFL) == EMPTY) {
+			rehash(keys.length);
+			i = findInsertSlot(h);
+		}
+		if (((ctrl[i >>> 3] >>> ((i & 7) << 3)) & 0xFFL) == EMPTY)
+			growthLeft--;
+		setCtrl(i, h2(h));
+		keys[i] = k;
+		vals[i] = value;
+		size++;
+		return null;
+	}
+
+	// 空位用完时重建：元素不到容量的一半说明主要是墓碑占了空间，原地重建清除墓碑即可，否则容量翻倍
+	private void rehash(int capacity) {
+		int newCapacity = capacity;
+		if (size >= (capacity - capacity / 8) / 2) {
+			if (capacity == MAXIMUM_CAPACITY)
+				throw new IllegalStateException("Capacity exhausted.");
+			newCapacity = capacity << 1;
+		}
+		resize(newCapacity);
+	}
+
+	final void resize(int newCapacity) {
+		long[] oldCtrl = ctrl;
+		Object[] oldKeys = keys, oldVals = vals;
+		allocate(newCapacity);
+		for (int g = 0; g < oldCtrl.length; g++) {
+			for (long m = ~oldCtrl[g] & MSBS; m != 0; m &= m - 1) {
+				int j = (g << 3) + lowestByte(m);
+				int h = hash(oldKeys[j]);
+				int i = findInsertSlot(h);
+				setCtrl(i, h2(h));
+				keys[i] = oldKeys[j];
+				vals[i] = oldVals[j];
+			}
+		}
+	}
+
+	public void putAll(Map<? extends K, ? extends V> m) {
+		int numKeysToBeAdded = m.size();
+		if (numKeysToBeAdded == 0)
+			return;
+		int newCapacity = capacityFor(size + numKeysToBeAdded);
+		if (newCapacity > keys.length)
+			resize(newCapacity);
+		for (Iterator<? extends Map.Entry<? extends K, ? extends V>> i = m.entrySet().iterator(); i.hasNext();) {
+			Map.Entry<? extends K, ? extends V> e = i.next();
+			put(e.getKey(), e.getValue());
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public V remove(Object key) {
+		int i = indexOf(key);
+		if (i < 0)
+			return null;
+		V oldValue = (V) vals[i];
+		removeAt(i);
+		return oldValue;
+	}
+
+	// 组内本来就有空位时，说明从来没有探测序列越过这个组，可以直接标记为空位；否则必须留墓碑，不能截断后面组的探测
+	final void removeAt(int i) {
+		modCount++;
+		size--;
+		keys[i] = null;
+		vals[i] = null;
+		if (matchEmpty(ctrl[i >>> 3]) != 0) {
+			setCtrl(i, EMPTY);
+			growthLeft++;
+		} else {
+			setCtrl(i, DELETED);
+		}
+	}
+
+	public void clear() {
+		modCount++;
+		Arrays.fill(ctrl, EMPTY_GROUP);
+		Arrays.fill(keys, null);
+		Arrays.fill(vals, null);
+		size = 0;
+		growthLeft = keys.length - keys.length / 8;
+	}
+
+	@SuppressWarnings("unchecked")
+	public Object clone() {
+		MySwissHashMap<K, V> result = null;
+		try {
+			result = (MySwissHashMap<K, V>) super.clone();
+		} catch (CloneNotSupportedException e) {
+			// assert false;
+		}
+		result.ctrl = ctrl.clone();
+		result.keys = keys.clone();
+		result.vals = vals.clone();
+		result.entrySet = null;
+		result.modCount = 0;
+		return result;
+	}
+
+	// 按控制字节遍历有元素的槽位。删除只修改控制字节，不会移动元素，迭代过程中删除不影响后续遍历
+	private final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+		int group = -1;
+		long pending;// 当前组还没返回的有元素槽位
+		int remaining = size;
+		int current = -1;
+		int expectedModCount = modCount;
+
+		public boolean hasNext() {
+			return remaining > 0;
+		}
+
+		@SuppressWarnings("unchecked")
+		public Map.Entry<K, V> next() {
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			if (remaining == 0)
+				throw new NoSuchElementException();
+			while (pending == 0)
+				pending = ~ctrl[++group] & MSBS;
+			current = (group << 3) + lowestByte(pending);
+			pending &= pending - 1;
+			remaining--;
+			return new SlotEntry((K) MyOpenHashMap.unmaskNull(keys[current]), (V) vals[current]);
+		}
+
+		public void remove() {
+			if (current < 0)
+				throw new IllegalStateException();
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			removeAt(current);
+			current = -1;
+			expectedModCount = modCount;
+		}
+	}
+
+	// setValue按key写回，与MyOpenHashMap一致
+	private final class SlotEntry extends SimpleEntry<K, V> {
+		private static final long serialVersionUID = -3408021457290143862L;
+
+		SlotEntry(K key, V value) {
+			super(key, value);
+		}
+
+		public V setValue(V value) {
+			put(getKey(), value);
+			return super.setValue(value);
+		}
+	}
+
+	// Views
+
+	private transient Set<Map.Entry<K, V>> entrySet = null;
+
+	public Set<Map.Entry<K, V>> entrySet() {
+		Set<Map.Entry<K, V>> es = entrySet;
+		return es != null ? es : (entrySet = new EntrySet());
+	}
+
+	private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+		public Iterator<Map.Entry<K, V>> iterator() {
+			return new EntryIterator();
+		}
+
+		@SuppressWarnings("unchecked")
+		public boolean contains(Object o) {
+			if (!(o instanceof Map.Entry))
+				return false;
+			Map.Entry<K, V> e = (Map.Entry<K, V>) o;
+			int i = indexOf(e.getKey());
+			if (i < 0)
+				return false;
+			Object v = vals[i];
+			return v == null ? e.getValue() == null : v.equals(e.getValue());
+		}
+
+		@SuppressWarnings("unchecked")
+		public boolean remove(Object o) {
+			if (!contains(o))
+				return false;
+			removeAt(indexOf(((Map.Entry<K, V>) o).getKey()));
+			return true;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public void clear() {
+			MySwissHashMap.this.clear();
+		}
+	}
+
+	// 序列化格式与MyHashMap相同：容量、大小，然后key、value交替写出
+	private void writeObject(java.io.ObjectOutputStream s) throws IOException {
+		s.defaultWriteObject();
+		s.writeInt(keys.length);
+		s.writeInt(size);
+		for (Map.Entry<K, V> e : entrySet()) {
+			s.writeObject(e.getKey());
+			s.writeObject(e.getValue());
+		}
+	}
+
+	// 容量和元素个数检查同MyOpenHashMap，容量还要至少一组，否则控制字节数组是空的
+	@SuppressWarnings("unchecked")
+	private void readObject(java.io.ObjectInputStream s) throws IOException, ClassNotFoundException {
+		s.defaultReadObject();
+		int capacity = s.readInt();
+		int size = s.readInt();
+		if (capacity < GROUP_WIDTH || capacity > MAXIMUM_CAPACITY || (capacity & (capacity - 1)) != 0)
+			throw new InvalidObjectException("Illegal capacity: " + capacity);
+		if (size < 0 || size >= capacity)
+			throw new InvalidObjectException("Illegal size: " + size + ", capacity: " + capacity);
+		allocate(Math.max(capacity, capacityFor(size)));
+		for (int i = 0; i < size; i++) {
+			K key = (K) s.readObject();
+			V value = (V) s.readObject();
+			put(key, value);
+		}
+	}
+
+}
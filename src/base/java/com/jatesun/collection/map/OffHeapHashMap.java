@@ -0,0 +1,620 @@
+package com.jatesun.collection.map;
+
+import java.io.Closeable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ *
+ * @author jatesun
+ * @description 堆外内存的hashmap。结构与MyHashMap相同（桶数组加链表），但桶数组和所有entry都放在direct ByteBuffer里，
+ *              堆上只有几十个ByteBuffer对象，几千万个映射也不会增加gc需要扫描、复制的对象。
+ *              ·桶数组：每个桶一个long（entry的地址，0表示空），按页分成多个ByteBuffer，突破单个ByteBuffer 2G的限制。
+ *              ·entry：从slab（大块direct内存）里顺序分配，格式为hash(4) next(8) keyLen(4) valLen(4) valCap(4) key value，
+ *                地址的高32位是slab下标+1，低32位是slab内偏移。
+ *              ·key、value用ByteCodec编码成字节存放，key按编码后的字节比较相等（byte[]按内容而不是按引用比较，与MyHashMap不同）。
+ *              ·删除和变长的value会在slab里留下垃圾，垃圾超过一半时整理（compact），把存活的entry复制到新的slab。
+ *              ·close()立即释放全部堆外内存，不等gc；关闭后再使用抛IllegalStateException。
+ *              不允许null键、null值；不是线程安全的（读操作也会用到内部的编码缓冲区）。
+ * @question
+ * 		·堆外内存为什么能减少gc停顿？代价是什么（序列化、反序列化）？
+ * 		·direct ByteBuffer的内存什么时候释放？为什么要手动释放？
+ * 		·为什么删除元素后需要整理内存？
+ * @date 2026年10月18日
+ * @param <K>
+ * @param <V>
+ */
+public class OffHeapHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V>, Closeable {
+
+	static final int DEFAULT_INITIAL_CAPACITY = 16;// 默认初始大小
+
+	static final int MAXIMUM_CAPACITY = 1 << 30;// 最大容量
+
+	static final float DEFAULT_LOAD_FACTOR = 0.75f;// 装填因子
+
+	static final int DEFAULT_SLAB_SIZE = 1 << 24;// 默认每个slab 16M
+
+	static final int PAGE_SHIFT = 17;// 桶数组每页1<<17个桶（1M字节）
+
+	static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+
+	// entry各字段的偏移
+	static final int HASH = 0, NEXT = 4, KEY_LEN = 12, VAL_LEN = 16, VAL_CAP = 20, HEADER = 24;
+
+	private final ByteCodec<K> keyCodec;
+
+	private final ByteCodec<V> valueCodec;
+
+	private final float loadFactor;
+
+	private final int slabSize;
+
+	private ByteBuffer[] buckets;// 桶数组的页
+
+	private int capacity;// 桶的个数
+
+	private long threshold;
+
+	private ByteBuffer[] slabs = new ByteBuffer[8];
+
+	private int slabCount;
+
+	private int slabPos;// 最后一个slab中下一个可分配的位置
+
+	private long usedBytes;// slab中已经分配的字节（包括垃圾）
+
+	private long garbageBytes;// 已经删除、被替换的entry占用的字节
+
+	private long size;
+
+	private int modCount;
+
+	private boolean closed;
+
+	private ByteBuffer scratch = ByteBuffer.allocate(64);// 编码key用的堆上缓冲区，查找时用它与slab中的key逐字节比较
+
+	public OffHeapHashMap(ByteCodec<K> keyCodec, ByteCodec<V> valueCodec, int initialCapacity, float loadFactor,
+			int slabSize) {
+		if (keyCodec == null || valueCodec == null)
+			throw new NullPointerException();
+		if (initialCapacity < 0)
+			throw new IllegalArgumentException("Illegal initial capacity: " + initialCapacity);
+		if (initialCapacity > MAXIMUM_CAPACITY)
+			initialCapacity = MAXIMUM_CAPACITY;
+		if (loadFactor <= 0 || Float.isNaN(loadFactor))
+			throw new IllegalArgumentException("Illegal load factor: " + loadFactor);
+		if (slabSize < HEADER)
+			throw new IllegalArgumentException("Illegal slab size: " + slabSize);
+		int capacity = 1;
+		while (capacity < initialCapacity)
+			capacity <<= 1;
+		this.keyCodec = keyCodec;
+		this.valueCodec = valueCodec;
+		this.loadFactor = loadFactor;
+		this.slabSize = slabSize;
+		allocateBuckets(capacity);
+	}
+
+	public OffHeapHashMap(ByteCodec<K> keyCodec, ByteCodec<V> valueCodec, int initialCapacity) {
+		this(keyCodec, valueCodec, initialCapacity, DEFAULT_LOAD_FACTOR, DEFAULT_SLAB_SIZE);
+	}
+
+	public OffHeapHashMap(ByteCodec<K> keyCodec, ByteCodec<V> valueCodec) {
+		this(keyCodec, valueCodec, DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR, DEFAULT_SLAB_SIZE);
+	}
+
+	private void allocateBuckets(int capacity) {
+		buckets = newPages(capacity);
+		this.capacity = capacity;
+		threshold = (long) (capacity * (double) loadFactor);
+	}
+
+	// direct内存分配出来就是全0，即所有桶都为空
+	private static ByteBuffer[] newPages(int capacity) {
+		int pageCount = Math.max(1, capacity >>> PAGE_SHIFT);
+		int pageBytes = Math.min(capacity, 1 << PAGE_SHIFT) << 3;
+		ByteBuffer[] pages = new ByteBuffer[pageCount];
+		for (int i = 0; i < pageCount; i++)
+			pages[i] = ByteBuffer.allocateDirect(pageBytes);
+		return pages;
+	}
+
+	private static long getBucket(ByteBuffer[] pages, int i) {
+		return pages[i >>> PAGE_SHIFT].getLong((i & PAGE_MASK) << 3);
+	}
+
+	private static void setBucket(ByteBuffer[] pages, int i, long p) {
+		pages[i >>> PAGE_SHIFT].putLong((i & PAGE_MASK) << 3, p);
+	}
+
+	private ByteBuffer slab(long p) {
+		return slabs[(int) (p >>> 32) - 1];
+	}
+
+	private long next(long p) {
+		return slab(p).getLong((int) p + NEXT);
+	}
+
+	private void setNext(long p, long next) {
+		slab(p).putLong((int) p + NEXT, next);
+	}
+
+	// 从slab中分配bytes个字节，返回地址
+	private long allocate(int bytes) {
+		if (slabCount == 0 || slabPos + bytes > slabs[slabCount - 1].capacity()) {
+			if (slabCount == slabs.length) {
+				ByteBuffer[] newSlabs = new ByteBuffer[slabCount * 2];
+				System.arraycopy(slabs, 0, newSlabs, 0, slabCount);
+				slabs = newSlabs;
+			}
+			slabs[slabCount++] = ByteBuffer.allocateDirect(Math.max(slabSize, bytes));// 超大的entry单独占一个slab
+			slabPos = 0;
+		}
+		long p = ((long) slabCount << 32) | slabPos;
+		slabPos += bytes;
+		usedBytes += bytes;
+		return p;
+	}
+
+	private void checkOpen() {
+		if (closed)
+			throw new IllegalStateException("Map has been closed");
+	}
+
+	// 把key编码到scratch的[0, 返回值)
+	@SuppressWarnings("unchecked")
+	private int encodeKey(Object key) {
+		K k = (K) key;
+		int len = keyCodec.encodedSize(k);
+		if (scratch.capacity() < len)
+			scratch = ByteBuffer.allocate(Math.max(len, scratch.capacity() * 2));
+		scratch.clear();
+		keyCodec.encode(k, scratch);
+		if (scratch.position() != len)
+			throw new IllegalStateException("Key codec wrote " + scratch.position() + " bytes, expected " + len);
+		return len;
+	}
+
+	// 对编码后的字节做murmur3散列
+	static int hashBytes(ByteBuffer b, int off, int len) {
+		int h = len;
+		int i = 0;
+		for (; i + 4 <= len; i += 4) {
+			h ^= MyHashMap.mixK(b.getInt(off + i));
+			h = Integer.rotateLeft(h, 13) * 5 + 0xe6546b64;
+		}
+		if (i < len) {// 剩下不足4个字节
+			int k = 0;
+			for (int shift = 0; i < len; i++, shift += 8)
+				k |= (b.get(off + i) & 0xff) << shift;
+			h ^= MyHashMap.mixK(k);
+		}
+		return MyHashMap.fmix32(h);
+	}
+
+	// 比较p处entry的key和scratch中的key
+	private boolean keyEquals(long p, int hash, int klen) {
+		ByteBuffer s = slab(p);
+		int o = (int) p;
+		if (s.getInt(o + HASH) != hash || s.getInt(o + KEY_LEN) != klen)
+			return false;
+		o += HEADER;
+		int i = 0;
+		for (; i + 8 <= klen; i += 8)
+			if (s.getLong(o + i) != scratch.getLong(i))
+				return false;
+		for (; i < klen; i++)
+			if (s.get(o + i) != scratch.get(i))
+				return false;
+		return true;
+	}
+
+	// 查找scratch中的key，找不到返回0
+	private long find(int hash, int klen) {
+		for (long p = getBucket(buckets, MyHashMap.indexFor(hash, capacity)); p != 0; p = next(p))
+			if (keyEquals(p, hash, klen))
+				return p;
+		return 0;
+	}
+
+	private K decodeKey(long p) {
+		ByteBuffer s = slab(p);
+		int o = (int) p;
+		int klen = s.getInt(o + KEY_LEN);
+		s.limit(o + HEADER + klen).position(o + HEADER);
+		try {
+			return keyCodec.decode(s, klen);
+		} finally {
+			s.limit(s.capacity());
+		}
+	}
+
+	private V decodeValue(long p) {
+		ByteBuffer s = slab(p);
+		int o = (int) p;
+		int vo = o + HEADER + s.getInt(o + KEY_LEN);
+		int vlen = s.getInt(o + VAL_LEN);
+		s.limit(vo + vlen).position(vo);
+		try {
+			return valueCodec.decode(s, vlen);
+		} finally {
+			s.limit(s.capacity());
+		}
+	}
+
+	// 把value编码到p处entry的value区域
+	private void writeValue(long p, V value, int vlen) {
+		ByteBuffer s = slab(p);
+		int o = (int) p;
+		int vo = o + HEADER + s.getInt(o + KEY_LEN);
+		s.putInt(o + VAL_LEN, vlen);
+		s.limit(vo + vlen).position(vo);
+		try {
+			valueCodec.encode(value, s);
+			if (s.position() != vo + vlen)
+				throw new IllegalStateException("Value codec wrote " + (s.position() - vo) + " bytes, expected " + vlen);
+		} finally {
+			s.limit(s.capacity());
+		}
+	}
+
+	// 新建entry：key从scratch复制，value直接编码到slab
+	private long newEntry(int hash, int klen, V value, int vlen) {
+		long p = allocate(HEADER + klen + vlen);
+		ByteBuffer s = slab(p);
+		int o = (int) p;
+		s.putInt(o + HASH, hash);
+		s.putLong(o + NEXT, 0L);
+		s.putInt(o + KEY_LEN, klen);
+		s.putInt(o + VAL_CAP, vlen);
+		s.position(o + HEADER);
+		scratch.limit(klen).position(0);
+		s.put(scratch);
+		writeValue(p, value, vlen);
+		return p;
+	}
+
+	private int entryBytes(long p) {
+		ByteBuffer s = slab(p);
+		int o = (int) p;
+		return HEADER + s.getInt(o + KEY_LEN) + s.getInt(o + VAL_CAP);
+	}
+
+	public int size() {
+		return (int) Math.min(size, Integer.MAX_VALUE);
+	}
+
+	// 映射个数可能超过int范围
+	public long longSize() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public V get(Object key) {
+		checkOpen();
+		if (key == null)
+			throw new NullPointerException();
+		int klen = encodeKey(key);
+		long p = find(hashBytes(scratch, 0, klen), klen);
+		return p == 0 ? null : decodeValue(p);
+	}
+
+	public boolean containsKey(Object key) {
+		checkOpen();
+		if (key == null)
+			throw new NullPointerException();
+		int klen = encodeKey(key);
+		return find(hashBytes(scratch, 0, klen), klen) != 0;
+	}
+
+	public V put(K key, V value) {
+		return putVal(key, value, true);
+	}
+
+	// compact为false时不整理内存（迭代器中调用，整理会移动entry）
+	private V putVal(K key, V value, boolean compact) {
+		checkOpen();
+		if (key == null || value == null)
+			throw new NullPointerException();
+		int klen = encodeKey(key);
+		int hash = hashBytes(scratch, 0, klen);
+		int vlen = valueCodec.encodedSize(value);
+		int i = MyHashMap.indexFor(hash, capacity);
+		long prev = 0;
+		for (long p = getBucket(buckets, i); p != 0; prev = p, p = next(p)) {
+			if (!keyEquals(p, hash, klen))
+				continue;
+			V oldValue = decodeValue(p);
+			if (vlen <= slab(p).getInt((int) p + VAL_CAP)) {
+				writeValue(p, value, vlen);// 原来的位置放得下就原地覆盖
+			} else {
+				long q = newEntry(hash, klen, value, vlen);
+				setNext(q, next(p));
+				if (prev == 0)
+					setBucket(buckets, i, q);
+				else
+					setNext(prev, q);
+				garbageBytes += entryBytes(p);
+				if (compact)
+					maybeCompact();
+			}
+			return oldValue;
+		}
+		long q = newEntry(hash, klen, value, vlen);
+		setNext(q, getBucket(buckets, i));
+		setBucket(buckets, i, q);
+		modCount++;
+		if (size++ >= threshold && capacity < MAXIMUM_CAPACITY)
+			resize(capacity * 2);
+		return null;
+	}
+
+	public V remove(Object key) {
+		return removeKey(key, true);
+	}
+
+	private V removeKey(Object key, boolean compact) {
+		checkOpen();
+		if (key == null)
+			throw new NullPointerException();
+		int klen = encodeKey(key);
+		int hash = hashBytes(scratch, 0, klen);
+		int i = MyHashMap.indexFor(hash, capacity);
+		long prev = 0;
+		for (long p = getBucket(buckets, i); p != 0; prev = p, p = next(p)) {
+			if (!keyEquals(p, hash, klen))
+				continue;
+			V oldValue = decodeValue(p);
+			if (prev == 0)
+				setBucket(buckets, i, next(p));
+			else
+				setNext(prev, next(p));
+			modCount++;
+			size--;
+			garbageBytes += entryBytes(p);
+			if (compact)
+				maybeCompact();
+			return oldValue;
+		}
+		return null;
+	}
+
+	// 扩容只重建桶数组，entry的hash已经存好，改next指针即可，不移动entry本身
+	private void resize(int newCapacity) {
+		ByteBuffer[] oldPages = buckets;
+		int oldCapacity = capacity;
+		ByteBuffer[] newPages = newPages(newCapacity);
+		for (int j = 0; j < oldCapacity; j++) {
+			long p = getBucket(oldPages, j);
+			while (p != 0) {
+				long next = next(p);
+				int i = MyHashMap.indexFor(slab(p).getInt((int) p + HASH), newCapacity);
+				setNext(p, getBucket(newPages, i));
+				setBucket(newPages, i, p);
+				p = next;
+			}
+		}
+		buckets = newPages;
+		capacity = newCapacity;
+		threshold = (long) (newCapacity * (double) loadFactor);
+		for (ByteBuffer page : oldPages)
+			free(page);
+	}
+
+	private void maybeCompact() {
+		if (garbageBytes >= slabSize && garbageBytes * 2 > usedBytes)
+			compact();
+	}
+
+	/**
+	 * 整理内存：把存活的entry按桶的顺序复制到新的slab，然后释放旧的slab。
+	 * 同时把每个entry的valCap收缩到valLen。
+	 */
+	public void compact() {
+		checkOpen();
+		modCount++;
+		ByteBuffer[] oldSlabs = slabs;
+		int oldCount = slabCount;
+		slabs = new ByteBuffer[8];
+		slabCount = 0;
+		slabPos = 0;
+		usedBytes = 0;
+		garbageBytes = 0;
+		for (int i = 0; i < capacity; i++) {
+			long prev = 0;
+			for (long p = getBucket(buckets, i); p != 0;) {
+				ByteBuffer src = oldSlabs[(int) (p >>> 32) - 1].duplicate();
+				int o = (int) p;
+				long next = src.getLong(o + NEXT);
+				int len = HEADER + src.getInt(o + KEY_LEN) + src.getInt(o + VAL_LEN);
+				long q = allocate(len);
+				ByteBuffer dst = slab(q);
+				src.limit(o + len).position(o);
+				dst.position((int) q);
+				dst.put(src);
+				dst.putInt((int) q + VAL_CAP, src.getInt(o + VAL_LEN));
+				dst.putLong((int) q + NEXT, 0L);
+				if (prev == 0)
+					setBucket(buckets, i, q);
+				else
+					setNext(prev, q);
+				prev = q;
+				p = next;
+			}
+		}
+		for (int i = 0; i < oldCount; i++)
+			free(oldSlabs[i]);
+	}
+
+	public void clear() {
+		checkOpen();
+		modCount++;
+		freeAll();
+		slabs = new ByteBuffer[8];
+		allocateBuckets(DEFAULT_INITIAL_CAPACITY);
+	}
+
+	// 立即释放全部堆外内存
+	public void close() {
+		if (closed)
+			return;
+		closed = true;
+		modCount++;
+		freeAll();
+		buckets = null;
+		slabs = null;
+	}
+
+	private void freeAll() {
+		for (ByteBuffer page : buckets)
+			free(page);
+		for (int i = 0; i < slabCount; i++)
+			free(slabs[i]);
+		slabCount = 0;
+		slabPos = 0;
+		usedBytes = 0;
+		garbageBytes = 0;
+		size = 0;
+	}
+
+	// 当前占用的堆外内存（桶数组加slab）
+	public long offHeapBytes() {
+		if (closed)
+			return 0;
+		long bytes = (long) buckets.length * buckets[0].capacity();
+		for (int i = 0; i < slabCount; i++)
+			bytes += slabs[i].capacity();
+		return bytes;
+	}
+
+	// 释放direct buffer的方法：jdk9以后是Unsafe.invokeCleaner，jdk8是DirectBuffer.cleaner().clean()。都找不到时只能等gc
+	private static final Object UNSAFE;
+	private static final Method INVOKE_CLEANER;
+
+	static {
+		Object unsafe = null;
+		Method invokeCleaner = null;
+		try {
+			Class<?> c = Class.forName("sun.misc.Unsafe");
+			Field f = c.getDeclaredField("theUnsafe");
+			f.setAccessible(true);
+			unsafe = f.get(null);
+			invokeCleaner = c.getMethod("invokeCleaner", ByteBuffer.class);
+		} catch (Exception e) {
+			unsafe = null;
+			invokeCleaner = null;
+		}
+		UNSAFE = unsafe;
+		INVOKE_CLEANER = invokeCleaner;
+	}
+
+	static void free(ByteBuffer buf) {
+		if (buf == null || !buf.isDirect())
+			return;
+		try {
+			if (INVOKE_CLEANER != null) {
+				INVOKE_CLEANER.invoke(UNSAFE, buf);
+			} else {
+				Method cleaner = buf.getClass().getMethod("cleaner");
+				cleaner.setAccessible(true);
+				Object c = cleaner.invoke(buf);
+				if (c != null)
+					c.getClass().getMethod("clean").invoke(c);
+			}
+		} catch (Exception e) {
+			// 释放失败就交给gc
+		}
+	}
+
+	// Views
+
+	private transient Set<Map.Entry<K, V>> entrySet = null;
+
+	public Set<Map.Entry<K, V>> entrySet() {
+		Set<Map.Entry<K, V>> es = entrySet;
+		return es != null ? es : (entrySet = new EntrySet());
+	}
+
+	private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+		public Iterator<Map.Entry<K, V>> iterator() {
+			return new EntryIterator();
+		}
+
+		public int size() {
+			return OffHeapHashMap.this.size();
+		}
+
+		public void clear() {
+			OffHeapHashMap.this.clear();
+		}
+	}
+
+	// 迭代时把key、value解码成堆上的对象。setValue和remove不会整理内存，保证迭代器持有的地址不失效
+	private final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+		long next;// 下一个要返回的entry地址
+		int index;// 下一个要访问的桶
+		int expectedModCount;
+		OffHeapEntry lastReturned;
+
+		EntryIterator() {
+			checkOpen();
+			expectedModCount = modCount;
+			advance();
+		}
+
+		private void advance() {
+			while (next == 0 && index < capacity)
+				next = getBucket(buckets, index++);
+		}
+
+		public boolean hasNext() {
+			return next != 0;
+		}
+
+		public Map.Entry<K, V> next() {
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			long p = next;
+			if (p == 0)
+				throw new NoSuchElementException();
+			next = OffHeapHashMap.this.next(p);
+			advance();
+			return lastReturned = new OffHeapEntry(decodeKey(p), decodeValue(p));
+		}
+
+		public void remove() {
+			if (lastReturned == null)
+				throw new IllegalStateException();
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			removeKey(lastReturned.getKey(), false);
+			lastReturned = null;
+			expectedModCount = modCount;
+		}
+	}
+
+	// setValue写回map
+	private final class OffHeapEntry extends SimpleEntry<K, V> {
+		private static final long serialVersionUID = 1L;
+
+		OffHeapEntry(K key, V value) {
+			super(key, value);
+		}
+
+		public V setValue(V value) {
+			putVal(getKey(), value, false);
+			return super.setValue(value);
+		}
+	}
+}
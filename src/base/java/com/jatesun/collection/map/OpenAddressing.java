@@ -0,0 +1,111 @@
+package com.jatesun.collection.map;
+
+/**
+ *
+ * @author jatesun
+ * @description IntObjectMap、LongObjectMap、LongLongMap共用的开放定址（线性探测）逻辑：容量计算、散列、查找、删除后的前移。
+ *              这几个类只是key、value数组的类型不同，探测序列完全一样，都放在这里，各个类只负责按下标读写自己的数组。
+ *              数组中0表示空位，调用者保证传进来的key不为0。
+ * @question
+ * 		·删除时为什么可以不用墓碑？
+ * @date 2026年10月18日
+ */
+final class OpenAddressing {
+
+	static final int DEFAULT_INITIAL_CAPACITY = 16;// 默认初始大小
+
+	static final int MAXIMUM_CAPACITY = 1 << 30;// 最大容量
+
+	static final float DEFAULT_LOAD_FACTOR = 0.75f;// 装填因子，必须小于1
+
+	private OpenAddressing() {
+	}
+
+	// 检查参数，返回不小于initialCapacity的2的幂
+	static int tableSize(int initialCapacity, float loadFactor) {
+		if (initialCapacity < 0)
+			throw new IllegalArgumentException("Illegal initial capacity: " + initialCapacity);
+		if (initialCapacity > MAXIMUM_CAPACITY)
+			initialCapacity = MAXIMUM_CAPACITY;
+		if (loadFactor <= 0 || loadFactor >= 1 || Float.isNaN(loadFactor))
+			throw new IllegalArgumentException("Illegal load factor: " + loadFactor);
+		int capacity = 1;
+		while (capacity < initialCapacity)
+			capacity <<= 1;
+		return capacity;
+	}
+
+	// 至少留一个空位，否则查找不存在的key时探测不会停下来
+	static int threshold(int capacity, float loadFactor) {
+		return Math.min((int) (capacity * loadFactor), capacity - 1);
+	}
+
+	// 已经是最大容量时不能再扩容，只要还剩一个空位就继续放
+	static void checkMaximum(int size) {
+		if (size >= MAXIMUM_CAPACITY - 1)
+			throw new IllegalStateException("Capacity exhausted.");
+	}
+
+	static int slot(int key, int length) {
+		return MyHashMap.indexFor(MyHashMap.hash(key), length);
+	}
+
+	// 高低32位异或（与Long.hashCode相同）后再用MyHashMap的hash再散列
+	static int slot(long key, int length) {
+		return MyHashMap.indexFor(MyHashMap.hash((int) (key ^ (key >>> 32))), length);
+	}
+
+	// 返回key所在的位置；不存在时返回~i，i是插入时应该放的空位
+	static int find(int[] ks, int key) {
+		int mask = ks.length - 1;
+		for (int i = slot(key, ks.length);; i = (i + 1) & mask) {
+			int k = ks[i];
+			if (k == key)
+				return i;
+			if (k == 0)
+				return ~i;
+		}
+	}
+
+	static int find(long[] ks, long key) {
+		int mask = ks.length - 1;
+		for (int i = slot(key, ks.length);; i = (i + 1) & mask) {
+			long k = ks[i];
+			if (k == key)
+				return i;
+			if (k == 0)
+				return ~i;
+		}
+	}
+
+	/*
+	 * 删除last位置上的元素后，找下一个可以挪到last的元素：沿探测序列往后找，第一个初始位置不在(last, pos]
+	 * 之间（循环意义下）的元素可以前移，返回它的位置；先遇到空位说明后面的元素都不受影响，返回-1，last可以直接置空。
+	 * 调用者把找到的元素挪到last之后，再以它原来的位置为last继续，与MyOpenHashMap相同
+	 */
+	static int shiftSource(int[] ks, int last) {
+		int mask = ks.length - 1;
+		for (int pos = (last + 1) & mask;; pos = (pos + 1) & mask) {
+			int k = ks[pos];
+			if (k == 0)
+				return -1;
+			if (movable(last, slot(k, ks.length), pos))
+				return pos;
+		}
+	}
+
+	static int shiftSource(long[] ks, int last) {
+		int mask = ks.length - 1;
+		for (int pos = (last + 1) & mask;; pos = (pos + 1) & mask) {
+			long k = ks[pos];
+			if (k == 0)
+				return -1;
+			if (movable(last, slot(k, ks.length), pos))
+				return pos;
+		}
+	}
+
+	private static boolean movable(int last, int slot, int pos) {
+		return last <= pos ? (last >= slot || slot > pos) : (last >= slot && slot > pos);
+	}
+}
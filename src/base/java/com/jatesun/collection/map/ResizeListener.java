@@ -0,0 +1,20 @@
+package com.jatesun.collection.map;
+
+/**
+ *
+ * @author jatesun
+ * @description 扩容（缩容）完成后的回调，通过MyHashMap.enableStats、MyHashTable.enableStats注册。
+ *              回调在执行扩容的线程里同步调用（MyHashTable持有锁），实现要尽量轻，比如只是提交一个JFR事件或者记一条日志。
+ * @date 2026年10月18日
+ */
+public interface ResizeListener {
+
+	/**
+	 * @param map 发生扩容的map
+	 * @param oldCapacity 原来的桶个数
+	 * @param newCapacity 新的桶个数
+	 * @param size 扩容时的元素个数
+	 * @param nanos 扩容耗时（增量扩容模式下只是切换数组的时间，搬运旧桶的时间分摊在之后的操作里）
+	 */
+	void resized(Object map, int oldCapacity, int newCapacity, int size, long nanos);
+}
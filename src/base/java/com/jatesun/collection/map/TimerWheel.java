@@ -0,0 +1,136 @@
+package com.jatesun.collection.map;
+
+/**
+ *
+ * @author jatesun
+ * @description ExpiringMap用的分层时间轮。每层是一圈桶，每个桶是一个双向循环链表（哨兵节点），entry按过期时间放进某一层的某个桶：
+ *              剩余时间不到约1.1分钟的放第0层（64个桶，每个约1.07秒），不到约1.2小时的放第1层（64个桶，每个约1.14分钟），
+ *              第2层32个桶覆盖约1.6天，第3层4个桶覆盖约6.5天，更远的放最后一层唯一的桶。
+ *              每层桶的时间跨度都是2的幂，时间（纳秒）右移就得到桶的编号，放入、删除都是O(1)。
+ *              advance推进时间时，每一层只处理从上次时间到现在经过的桶：到期的entry交给map删除，没到期的（高层的桶跨度大，
+ *              里面的entry不一定都到期了）按剩余时间重新放到更低的层。每个entry最多下降层数次，所以均摊是O(1)，不需要扫描整个map。
+ *              桶的粒度最小约1秒，entry实际到期之后可能还要等到所在的桶被处理才删除，ExpiringMap的get会自己检查是否过期。
+ * @question
+ * 		·为什么不用优先队列（堆）按过期时间排序？放入、删除的复杂度是多少？
+ * 		·为什么桶的跨度取2的幂？
+ * @date 2026年10月18日
+ * @param <K>
+ * @param <V>
+ */
+final class TimerWheel<K, V> {
+
+	static final int[] BUCKETS = { 64, 64, 32, 4, 1 };// 每层的桶数
+
+	// 每层一个桶的跨度（纳秒）：2^30约1.07秒，2^36约1.14分钟，2^42约1.22小时，2^47约1.63天，2^49约6.5天
+	static final long[] SPANS = { 1L << 30, 1L << 36, 1L << 42, 1L << 47, 1L << 49, 1L << 49 };
+
+	static final int[] SHIFT = { 30, 36, 42, 47, 49 };
+
+	private final ExpiringMap<K, V> map;
+
+	private final ExpiringMap.Node<K, V>[][] wheel;
+
+	long nanos;// 上次advance的时间
+
+	@SuppressWarnings("unchecked")// 泛型数组不能直接new
+	TimerWheel(ExpiringMap<K, V> map) {
+		this.map = map;
+		wheel = (ExpiringMap.Node<K, V>[][]) new ExpiringMap.Node<?, ?>[BUCKETS.length][];
+		for (int i = 0; i < wheel.length; i++) {
+			wheel[i] = (ExpiringMap.Node<K, V>[]) new ExpiringMap.Node<?, ?>[BUCKETS[i]];
+			for (int j = 0; j < wheel[i].length; j++)
+				wheel[i][j] = sentinel();
+		}
+	}
+
+	private static <K, V> ExpiringMap.Node<K, V> sentinel() {
+		ExpiringMap.Node<K, V> s = new ExpiringMap.Node<K, V>(0, null, null, null);
+		s.prevInWheel = s.nextInWheel = s;
+		return s;
+	}
+
+	/**
+	 * 时间推进到currentNanos，删除到期的entry。每层从上次的桶开始处理到现在的桶，经过的桶数超过一圈时只处理一圈。
+	 * 某一层的时间没有跨过一个桶时，更高的层也不会跨过，直接结束。
+	 */
+	void advance(long currentNanos) {
+		long previousNanos = nanos;
+		nanos = currentNanos;
+		for (int i = 0; i < SHIFT.length; i++) {
+			long previousTicks = previousNanos >>> SHIFT[i];
+			long currentTicks = currentNanos >>> SHIFT[i];
+			long delta = currentTicks - previousTicks;
+			if (delta <= 0)
+				break;
+			expire(i, previousTicks, delta);
+		}
+	}
+
+	// 第index层从previousTicks开始的delta+1个桶（包括上次所在的桶）：取下整条链表，到期的删除，其余重新放入
+	private void expire(int index, long previousTicks, long delta) {
+		ExpiringMap.Node<K, V>[] buckets = wheel[index];
+		int mask = buckets.length - 1;
+		int steps = (int) Math.min(1 + delta, buckets.length);
+		int start = (int) (previousTicks & mask);
+		for (int i = start; i < start + steps; i++) {
+			ExpiringMap.Node<K, V> sentinel = buckets[i & mask];
+			ExpiringMap.Node<K, V> node = sentinel.nextInWheel;
+			sentinel.prevInWheel = sentinel.nextInWheel = sentinel;
+			while (node != sentinel) {
+				ExpiringMap.Node<K, V> next = node.nextInWheel;
+				node.prevInWheel = node.nextInWheel = null;
+				if (node.expireTime - nanos <= 0)
+					map.expire(node);
+				else
+					schedule(node);
+				node = next;
+			}
+		}
+	}
+
+	// 按过期时间放进桶里（原来在某个桶里时先取出来）
+	void schedule(ExpiringMap.Node<K, V> node) {
+		deschedule(node);
+		ExpiringMap.Node<K, V> sentinel = findBucket(node.expireTime);
+		node.nextInWheel = sentinel;
+		node.prevInWheel = sentinel.prevInWheel;
+		sentinel.prevInWheel.nextInWheel = node;
+		sentinel.prevInWheel = node;
+	}
+
+	void deschedule(ExpiringMap.Node<K, V> node) {
+		if (node.nextInWheel != null) {
+			node.prevInWheel.nextInWheel = node.nextInWheel;
+			node.nextInWheel.prevInWheel = node.prevInWheel;
+			node.prevInWheel = node.nextInWheel = null;
+		}
+	}
+
+	// 剩余时间小于下一层一个桶的跨度时放在这一层，桶的编号是过期时间右移SHIFT位
+	private ExpiringMap.Node<K, V> findBucket(long time) {
+		long duration = time - nanos;
+		int last = wheel.length - 1;
+		for (int i = 0; i < last; i++) {
+			if (duration < SPANS[i + 1]) {
+				long ticks = time >>> SHIFT[i];
+				return wheel[i][(int) (ticks & (wheel[i].length - 1))];
+			}
+		}
+		return wheel[last][0];
+	}
+
+	// 所有桶置空，不处理里面的entry
+	void clear() {
+		for (ExpiringMap.Node<K, V>[] buckets : wheel) {
+			for (ExpiringMap.Node<K, V> sentinel : buckets) {
+				ExpiringMap.Node<K, V> node = sentinel.nextInWheel;
+				while (node != sentinel) {
+					ExpiringMap.Node<K, V> next = node.nextInWheel;
+					node.prevInWheel = node.nextInWheel = null;
+					node = next;
+				}
+				sentinel.prevInWheel = sentinel.nextInWheel = sentinel;
+			}
+		}
+	}
+}
@@ -0,0 +1,278 @@
+package com.jatesun.collection.map;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ *
+ * @author jatesun
+ * @description W-TinyLFU缓存。LruCache只看最近一次访问，一次大范围的扫描（每个key只访问一次）就能把热点全部挤出去。
+ *              这里把缓存分成三段，都是MyLinkedHashMap.Entry的before/after组成的LRU链表：
+ *              ·window（约1%）：新元素先放进来，让刚出现的突发访问有机会积累频率；
+ *              ·probation（main的20%）：从window淘汰出来的元素，等待再次被访问；
+ *              ·protected（main的80%）：在probation里再次被访问的元素，满了以后最久没访问的降回probation。
+ *              window满了以后它的LRU元素（候选者）进入probation，总数超过上限时，候选者和probation的LRU元素（受害者）比较
+ *              FrequencySketch估计的访问频率，频率高的留下。扫描的key频率都很低，进不了main，热点不会被冲掉。
+ *              三段放在同一个双向链表里，用两个标记节点隔开：header → probation → protected标记 → protected → window标记 → window → header，
+ *              新元素在header之前（window的尾部），与MyLinkedHashMap的createEntry一致；迭代、扩容时跳过两个标记。
+ *              与LruCache一样记录命中、未命中和淘汰次数，不是线程安全的。
+ * @question
+ * 		·为什么新元素要先放进window，而不是直接和main里的元素比较频率？
+ * 		·为什么sketch要定期老化？不老化会怎样？
+ * 		·为什么要分probation和protected两段？
+ * @date 2026年10月18日
+ * @param <K>
+ * @param <V>
+ */
+public class TinyLfuCache<K, V> extends MyLinkedHashMap<K, V> {
+
+	private static final long serialVersionUID = 8512974016238863513L;
+
+	static final byte WINDOW = 0, PROBATION = 1, PROTECTED = 2;// 元素所在的段
+
+	private final long maximumSize;
+
+	private final long windowMaximum;
+
+	private final long protectedMaximum;
+
+	private transient FrequencySketch sketch;
+
+	// 下面几个字段在init里初始化（父类构造方法里调用，不能有初始值）
+	private transient Entry<K, V> protectedMarker, windowMarker;// 分段标记
+
+	private transient long windowSize, protectedSize;// probation的大小是size减去这两个
+
+	private transient long hitCount, missCount, evictionCount;
+
+	public TinyLfuCache(int initialCapacity, long maximumSize) {
+		super(initialCapacity, DEFAULT_LOAD_FACTOR, false);
+		if (maximumSize < 0)
+			throw new IllegalArgumentException("Illegal maximum size: " + maximumSize);
+		this.maximumSize = maximumSize;
+		windowMaximum = maximumSize == 0 ? 0 : Math.max(1, maximumSize / 100);
+		protectedMaximum = (maximumSize - windowMaximum) * 4 / 5;
+		sketch = new FrequencySketch(maximumSize);
+	}
+
+	public TinyLfuCache(long maximumSize) {
+		this((int) Math.min(maximumSize / DEFAULT_LOAD_FACTOR + 1, 1 << 12), maximumSize);
+	}
+
+	void init() {
+		super.init();
+		protectedMarker = new Entry<K, V>(-1, null, null, null);
+		windowMarker = new Entry<K, V>(-1, null, null, null);
+		protectedMarker.addBefore(header);
+		windowMarker.addBefore(header);
+		windowSize = protectedSize = 0;
+		hitCount = missCount = evictionCount = 0;
+	}
+
+	// 跳过分段标记
+	Entry<K, V> successor(Entry<K, V> e) {
+		Entry<K, V> n = e.after;
+		while (n == protectedMarker || n == windowMarker)
+			n = n.after;
+		return n;
+	}
+
+	static final class Node<K, V> extends MyLinkedHashMap.Entry<K, V> {
+		byte queue = WINDOW;
+
+		Node(int hash, K key, V value, MyHashMap.Entry<K, V> next) {
+			super(hash, key, value, next);
+		}
+
+		void recordAccess(MyHashMap<K, V> m) {
+			((TinyLfuCache<K, V>) m).onAccess(this);
+		}
+
+		void recordRemoval(MyHashMap<K, V> m) {
+			super.recordRemoval(m);
+			((TinyLfuCache<K, V>) m).onRemoval(this);
+		}
+	}
+
+	MyLinkedHashMap.Entry<K, V> newEntry(int hash, K key, V value, MyHashMap.Entry<K, V> next) {
+		return new Node<K, V>(hash, key, value, next);
+	}
+
+	// 新元素放在window的尾部（header之前）
+	void createEntry(int hash, K key, V value, int bucketIndex) {
+		super.createEntry(hash, key, value, bucketIndex);
+		windowSize++;
+	}
+
+	void addEntry(int hash, K key, V value, int bucketIndex) {
+		createEntry(hash, key, value, bucketIndex);
+		sketch.increment(hash);
+		evict();
+		if (size >= threshold)
+			resize(2 * table.length);
+	}
+
+	// 命中（get、put替换value）：频率加1，移到所在段的尾部，probation里的元素升到protected
+	void onAccess(Node<K, V> node) {
+		sketch.increment(node.hash);
+		modCount++;
+		node.remove();
+		if (node.queue == WINDOW) {
+			node.addBefore(header);
+		} else if (node.queue == PROTECTED) {
+			node.addBefore(windowMarker);
+		} else {
+			node.queue = PROTECTED;
+			node.addBefore(windowMarker);
+			if (++protectedSize > protectedMaximum) {// protected满了，最久没访问的降回probation
+				Node<K, V> demoted = (Node<K, V>) protectedMarker.after;
+				demoted.remove();
+				demoted.addBefore(protectedMarker);
+				demoted.queue = PROBATION;
+				protectedSize--;
+			}
+		}
+	}
+
+	void onRemoval(Node<K, V> node) {
+		if (node.queue == WINDOW)
+			windowSize--;
+		else if (node.queue == PROTECTED)
+			protectedSize--;
+	}
+
+	// 段里最久没有访问的元素，段是空的返回null
+	private Node<K, V> first(Entry<K, V> marker, Entry<K, V> end) {
+		Entry<K, V> e = marker.after;
+		return e == end ? null : (Node<K, V>) e;
+	}
+
+	/**
+	 * window超出的元素移到probation尾部，成为候选者；然后总数超过上限时，候选者（从最早移过去的开始）和probation的LRU元素比较频率，
+	 * 淘汰频率低的一方（相等时淘汰候选者，已经在main里的元素优先）。
+	 */
+	private void evict() {
+		Node<K, V> candidate = null;
+		while (windowSize > windowMaximum) {
+			Node<K, V> node = first(windowMarker, header);
+			node.remove();
+			node.addBefore(protectedMarker);
+			node.queue = PROBATION;
+			windowSize--;
+			if (candidate == null)
+				candidate = node;
+		}
+		while (size > maximumSize) {
+			Node<K, V> victim = first(header, protectedMarker);
+			if (victim == null)
+				victim = first(protectedMarker, windowMarker);
+			if (victim == null)
+				victim = first(windowMarker, header);
+			Node<K, V> evicted;
+			if (candidate == null || candidate == victim)
+				evicted = victim;
+			else
+				evicted = sketch.frequency(candidate.hash) > sketch.frequency(victim.hash) ? victim : candidate;
+			if (evicted == candidate) {// 下一个候选者是它后面的元素（如果还在probation里）
+				Entry<K, V> next = candidate.after;
+				candidate = next == protectedMarker ? null : (Node<K, V>) next;
+			}
+			removeEntryForKey(evicted.key);
+			evictionCount++;
+		}
+	}
+
+	public V get(Object key) {
+		MyHashMap.Entry<K, V> e = getEntry(key);
+		recordGet(e != null);
+		if (e == null) {
+			missCount++;
+			return null;
+		}
+		hitCount++;
+		e.recordAccess(this);
+		return e.value;
+	}
+
+	public V getOrDefault(Object key, V defaultValue) {
+		MyHashMap.Entry<K, V> e = getEntry(key);
+		recordGet(e != null);
+		if (e == null) {
+			missCount++;
+			return defaultValue;
+		}
+		hitCount++;
+		e.recordAccess(this);
+		return e.value;
+	}
+
+	public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+		MyHashMap.Entry<K, V> e = getEntry(key);
+		if (e != null && e.value != null) {
+			hitCount++;
+			e.recordAccess(this);
+			return e.value;
+		}
+		missCount++;
+		return super.computeIfAbsent(key, mappingFunction);
+	}
+
+	// 频率信息保留，清空之后原来的热点重新放进来时还能很快进入main
+	// 逐个put：每个新元素都要进window、计入频率并按maximumSize淘汰，不能走父类的批量装入，也不按m的大小预先扩容
+	public void putAll(Map<? extends K, ? extends V> m) {
+		if (m == this)
+			return;
+		for (Map.Entry<? extends K, ? extends V> e : m.entrySet())
+			put(e.getKey(), e.getValue());
+	}
+
+	public void clear() {
+		super.clear();
+		protectedMarker.addBefore(header);
+		windowMarker.addBefore(header);
+		windowSize = protectedSize = 0;
+	}
+
+	// 复制出来的元素都在window里，evict把多出来的移到probation
+	@SuppressWarnings("unchecked")
+	public Object clone() {
+		TinyLfuCache<K, V> result = (TinyLfuCache<K, V>) super.clone();
+		result.sketch = sketch.clone();
+		result.evict();
+		return result;
+	}
+
+	public long maximumSize() {
+		return maximumSize;
+	}
+
+	public long hitCount() {
+		return hitCount;
+	}
+
+	public long missCount() {
+		return missCount;
+	}
+
+	public long evictionCount() {
+		return evictionCount;
+	}
+
+	// 命中率，没有get过时为1
+	public double hitRate() {
+		long requests = hitCount + missCount;
+		return requests == 0 ? 1.0 : (double) hitCount / requests;
+	}
+
+	public void resetStats() {
+		hitCount = missCount = evictionCount = 0;
+	}
+
+	// 频率信息不序列化，反序列化出来的元素都在window里，同clone
+	private void readObject(java.io.ObjectInputStream s) throws IOException, ClassNotFoundException {
+		s.defaultReadObject();
+		sketch = new FrequencySketch(maximumSize);
+		evict();
+	}
+}
@@ -0,0 +1,456 @@
+package com.jatesun.collection.map;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ *
+ * @author jatesun
+ * @description 弱引用key的hashmap，结构与MyHashMap相同（数组加链表），但entry本身是key的WeakReference，
+ *              key只被这个map引用时可以被gc回收，适合挂在对象上的元数据缓存，对象不用了元数据自动清掉，不会内存泄漏。
+ *              key被回收以后，gc把entry放进ReferenceQueue，map在之后的操作里从队列取出这些entry，按entry里存的hash直接找到桶摘除，
+ *              不需要扫描整个数组。get/containsKey每次最多清理EXPUNGE_BATCH个，读操作的耗时不会因为一次gc回收了大量key而突然变长；
+ *              put/remove/size和扩容时清理全部。
+ *              打开identityKeys时按引用比较key、用System.identityHashCode散列（像IdentityHashMap），不调用key的equals和hashCode。
+ *              value是强引用，value引用了自己的key时key永远不会被回收（与WeakHashMap相同）。
+ *              不是线程安全的，gc线程只是往队列里放entry，不会修改map。
+ * @question
+ * 		·强引用、软引用、弱引用、虚引用的区别？
+ * 		·为什么value引用key会导致key无法回收？
+ * 		·key被回收以后，entry为什么不能由gc直接从map里删掉？
+ * @date 2026年10月18日
+ * @param <K>
+ * @param <V>
+ */
+public class WeakMyHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V> {
+
+	static final int DEFAULT_INITIAL_CAPACITY = 16;// 默认初始大小
+
+	static final int MAXIMUM_CAPACITY = 1 << 30;// 最大容量
+
+	static final float DEFAULT_LOAD_FACTOR = 0.75f;// 装填因子
+
+	static final int EXPUNGE_BATCH = 64;// 读操作每次最多清理的失效entry个数
+
+	// null键的替身，静态强引用，永远不会被回收
+	static final Object NULL_KEY = new Object();
+
+	Entry<K, V>[] table;
+
+	int size;// 包含key已经被回收、但还没有清理的entry
+
+	int threshold;// 扩容边界（capacity*loadfactor）
+
+	final float loadFactor;
+
+	final boolean identityKeys;// 按引用比较key
+
+	// key被回收的entry由gc放进这个队列
+	private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+
+	int modCount;
+
+	public WeakMyHashMap(int initialCapacity, float loadFactor, boolean identityKeys) {
+		if (initialCapacity < 0)
+			throw new IllegalArgumentException("Illegal initial capacity: " + initialCapacity);
+		if (initialCapacity > MAXIMUM_CAPACITY)
+			initialCapacity = MAXIMUM_CAPACITY;
+		if (loadFactor <= 0 || Float.isNaN(loadFactor))
+			throw new IllegalArgumentException("Illegal load factor: " + loadFactor);
+		int capacity = 1;
+		while (capacity < initialCapacity)
+			capacity <<= 1;
+		this.loadFactor = loadFactor;
+		this.identityKeys = identityKeys;
+		threshold = (int) (capacity * loadFactor);
+		table = newTable(capacity);
+	}
+
+	public WeakMyHashMap(int initialCapacity, float loadFactor) {
+		this(initialCapacity, loadFactor, false);
+	}
+
+	public WeakMyHashMap(int initialCapacity) {
+		this(initialCapacity, DEFAULT_LOAD_FACTOR, false);
+	}
+
+	public WeakMyHashMap() {
+		this(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR, false);
+	}
+
+	public WeakMyHashMap(Map<? extends K, ? extends V> m) {
+		this(Math.max((int) (m.size() / DEFAULT_LOAD_FACTOR) + 1, DEFAULT_INITIAL_CAPACITY), DEFAULT_LOAD_FACTOR, false);
+		putAll(m);
+	}
+
+	@SuppressWarnings("unchecked")
+	private Entry<K, V>[] newTable(int n) {
+		return (Entry<K, V>[]) new Entry<?, ?>[n];
+	}
+
+	static Object maskNull(Object key) {
+		return (key == null ? NULL_KEY : key);
+	}
+
+	static Object unmaskNull(Object key) {
+		return (key == NULL_KEY ? null : key);
+	}
+
+	final int hash(Object k) {
+		return MyHashMap.hash(identityKeys ? System.identityHashCode(k) : k.hashCode());
+	}
+
+	// k是已经mask过的key，x是entry里取出的key（可能已经被回收为null）
+	final boolean eq(Object k, Object x) {
+		return k == x || (!identityKeys && x != null && k.equals(x));
+	}
+
+	static int indexFor(int h, int length) {
+		return h & (length - 1);
+	}
+
+	/**
+	 * 从队列里取出key已经被回收的entry，从所在的桶里摘除，最多处理max个。
+	 * entry可能在扩容时已经被丢掉（见transfer），这时在桶里找不到，直接跳过。
+	 */
+	@SuppressWarnings("unchecked")
+	private void expungeStaleEntries(int max) {
+		for (Object x; max-- > 0 && (x = queue.poll()) != null;) {
+			Entry<K, V> e = (Entry<K, V>) x;
+			int i = indexFor(e.hash, table.length);
+			Entry<K, V> prev = null;
+			for (Entry<K, V> p = table[i]; p != null; prev = p, p = p.next) {
+				if (p == e) {
+					if (prev == null)
+						table[i] = e.next;
+					else
+						prev.next = e.next;
+					e.value = null;// 帮助gc回收value
+					size--;
+					break;
+				}
+			}
+		}
+	}
+
+	private void expungeStaleEntries() {
+		expungeStaleEntries(Integer.MAX_VALUE);
+	}
+
+	// 清理之后的大小。gc随时可能回收key，返回值只是当时的近似值
+	public int size() {
+		if (size == 0)
+			return 0;
+		expungeStaleEntries();
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	public V get(Object key) {
+		Entry<K, V> e = getEntry(key);
+		return e == null ? null : e.value;
+	}
+
+	public boolean containsKey(Object key) {
+		return getEntry(key) != null;
+	}
+
+	final Entry<K, V> getEntry(Object key) {
+		expungeStaleEntries(EXPUNGE_BATCH);
+		Object k = maskNull(key);
+		int hash = hash(k);
+		for (Entry<K, V> e = table[indexFor(hash, table.length)]; e != null; e = e.next) {
+			if (e.hash == hash && eq(k, e.get()))
+				return e;
+		}
+		return null;
+	}
+
+	public V put(K key, V value) {
+		expungeStaleEntries();
+		Object k = maskNull(key);
+		int hash = hash(k);
+		int i = indexFor(hash, table.length);
+		for (Entry<K, V> e = table[i]; e != null; e = e.next) {
+			if (e.hash == hash && eq(k, e.get())) {
+				V oldValue = e.value;
+				e.value = value;
+				return oldValue;
+			}
+		}
+
+		modCount++;
+		table[i] = new Entry<K, V>(k, value, queue, hash, table[i]);
+		if (++size >= threshold) {
+			int oldCapacity = table.length;
+			resize(2 * oldCapacity);
+			// transfer时丢掉了一些失效entry，剩下的不到原来扩容边界的一半就换回原来的大小，避免gc频繁时数组只增不减
+			if (size < threshold / 4) {
+				expungeStaleEntries();
+				resize(oldCapacity);
+			}
+		}
+		return null;
+	}
+
+	void resize(int newCapacity) {
+		Entry<K, V>[] oldTable = table;
+		if (oldTable.length == MAXIMUM_CAPACITY) {
+			threshold = Integer.MAX_VALUE;
+			return;
+		}
+		Entry<K, V>[] newTable = newTable(newCapacity);
+		transfer(oldTable, newTable);
+		table = newTable;
+		threshold = (int) (newCapacity * loadFactor);
+	}
+
+	// 搬运时顺带丢掉key已经被回收的entry，它们之后从队列里取出时在桶里找不到，不会重复减size
+	private void transfer(Entry<K, V>[] src, Entry<K, V>[] dest) {
+		for (int j = 0; j < src.length; j++) {
+			Entry<K, V> e = src[j];
+			src[j] = null;
+			while (e != null) {
+				Entry<K, V> next = e.next;
+				if (e.get() == null) {
+					e.next = null;
+					e.value = null;
+					size--;
+				} else {
+					int i = indexFor(e.hash, dest.length);
+					e.next = dest[i];
+					dest[i] = e;
+				}
+				e = next;
+			}
+		}
+	}
+
+	public void putAll(Map<? extends K, ? extends V> m) {
+		int numKeysToBeAdded = m.size();
+		if (numKeysToBeAdded == 0)
+			return;
+		// 按添加后的总大小预先扩容，与MyHashMap.putAll相同
+		int target = size + numKeysToBeAdded;
+		if (target > threshold) {
+			int newCapacity = table.length;
+			while (newCapacity < MAXIMUM_CAPACITY && (int) (newCapacity * loadFactor) < target)
+				newCapacity <<= 1;
+			if (newCapacity > table.length)
+				resize(newCapacity);
+		}
+		for (Map.Entry<? extends K, ? extends V> e : m.entrySet())
+			put(e.getKey(), e.getValue());
+	}
+
+	public V remove(Object key) {
+		expungeStaleEntries();
+		Object k = maskNull(key);
+		int hash = hash(k);
+		int i = indexFor(hash, table.length);
+		Entry<K, V> prev = null;
+		for (Entry<K, V> e = table[i]; e != null; prev = e, e = e.next) {
+			if (e.hash == hash && eq(k, e.get())) {
+				modCount++;
+				size--;
+				if (prev == null)
+					table[i] = e.next;
+				else
+					prev.next = e.next;
+				// 不clear引用，迭代器返回过的entry删除以后还能取到key和value；key被回收后它仍会进队列，那时在桶里找不到，直接跳过
+				return e.value;
+			}
+		}
+		return null;
+	}
+
+	public void clear() {
+		modCount++;
+		Entry<K, V>[] tab = table;
+		for (int i = 0; i < tab.length; i++)
+			tab[i] = null;
+		size = 0;
+		// 队列里的entry都属于丢掉的链表，不用再摘除，直接丢弃
+		while (queue.poll() != null)
+			;
+	}
+
+	public boolean containsValue(Object value) {
+		expungeStaleEntries();
+		Entry<K, V>[] tab = table;
+		for (int i = 0; i < tab.length; i++) {
+			for (Entry<K, V> e = tab[i]; e != null; e = e.next) {
+				if (e.get() != null && (value == null ? e.value == null : value.equals(e.value)))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	// entry就是key的弱引用，get()返回null表示key已经被回收
+	static class Entry<K, V> extends WeakReference<Object> implements Map.Entry<K, V> {
+		final int hash;
+		V value;
+		Entry<K, V> next;
+
+		Entry(Object key, V value, ReferenceQueue<Object> queue, int hash, Entry<K, V> next) {
+			super(key, queue);
+			this.hash = hash;
+			this.value = value;
+			this.next = next;
+		}
+
+		@SuppressWarnings("unchecked")
+		public final K getKey() {
+			return (K) unmaskNull(get());
+		}
+
+		public final V getValue() {
+			return value;
+		}
+
+		public final V setValue(V newValue) {
+			V oldValue = value;
+			value = newValue;
+			return oldValue;
+		}
+
+		public final boolean equals(Object o) {
+			if (!(o instanceof Map.Entry))
+				return false;
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			Object k1 = getKey();
+			Object k2 = e.getKey();
+			if (k1 == k2 || (k1 != null && k1.equals(k2))) {
+				Object v1 = getValue();
+				Object v2 = e.getValue();
+				if (v1 == v2 || (v1 != null && v1.equals(v2)))
+					return true;
+			}
+			return false;
+		}
+
+		public final int hashCode() {
+			Object k = getKey();
+			return (k == null ? 0 : k.hashCode()) ^ (value == null ? 0 : value.hashCode());
+		}
+
+		public final String toString() {
+			return getKey() + "=" + getValue();
+		}
+	}
+
+	/**
+	 * 迭代器跳过key已经被回收的entry。hasNext找到下一个entry时把它的key保存为强引用，
+	 * 保证hasNext返回true以后，next返回的entry的key不会在这期间被回收。
+	 */
+	private abstract class HashIterator<E> implements Iterator<E> {
+		private int index;
+		private Entry<K, V> entry;// 下一个要检查的entry
+		private Entry<K, V> lastReturned;
+		private int expectedModCount = modCount;
+		private Object nextKey;// 下一个要返回的entry的key（强引用）
+		private Object currentKey;// 上一次返回的entry的key（强引用），remove时用
+
+		HashIterator() {
+			index = isEmpty() ? 0 : table.length;
+		}
+
+		public boolean hasNext() {
+			Entry<K, V>[] t = table;
+			while (nextKey == null) {
+				Entry<K, V> e = entry;
+				int i = index;
+				while (e == null && i > 0)
+					e = t[--i];
+				entry = e;
+				index = i;
+				if (e == null) {
+					currentKey = null;
+					return false;
+				}
+				nextKey = e.get();// 为null说明key已经被回收，跳过
+				if (nextKey == null)
+					entry = entry.next;
+			}
+			return true;
+		}
+
+		protected Entry<K, V> nextEntry() {
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			if (nextKey == null && !hasNext())
+				throw new NoSuchElementException();
+			lastReturned = entry;
+			entry = entry.next;
+			currentKey = nextKey;
+			nextKey = null;
+			return lastReturned;
+		}
+
+		public void remove() {
+			if (lastReturned == null)
+				throw new IllegalStateException();
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			WeakMyHashMap.this.remove(unmaskNull(currentKey));
+			expectedModCount = modCount;
+			lastReturned = null;
+			currentKey = null;
+		}
+	}
+
+	private final class EntryIterator extends HashIterator<Map.Entry<K, V>> {
+		public Map.Entry<K, V> next() {
+			return nextEntry();
+		}
+	}
+
+	private transient Set<Map.Entry<K, V>> entrySet = null;
+
+	public Set<Map.Entry<K, V>> entrySet() {
+		Set<Map.Entry<K, V>> es = entrySet;
+		return es != null ? es : (entrySet = new EntrySet());
+	}
+
+	private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+		public Iterator<Map.Entry<K, V>> iterator() {
+			return new EntryIterator();
+		}
+
+		@SuppressWarnings("unchecked")
+		public boolean contains(Object o) {
+			if (!(o instanceof Map.Entry))
+				return false;
+			Map.Entry<K, V> e = (Map.Entry<K, V>) o;
+			Entry<K, V> candidate = getEntry(e.getKey());
+			return candidate != null && candidate.equals(e);
+		}
+
+		@SuppressWarnings("unchecked")
+		public boolean remove(Object o) {
+			if (!contains(o))
+				return false;
+			WeakMyHashMap.this.remove(((Map.Entry<K, V>) o).getKey());
+			return true;
+		}
+
+		public int size() {
+			return WeakMyHashMap.this.size();
+		}
+
+		public void clear() {
+			WeakMyHashMap.this.clear();
+		}
+	}
+}
@@ -0,0 +1,16 @@
+package com.jatesun.collection.map;
+
+/**
+ *
+ * @author jatesun
+ * @description 计算缓存中一个映射的权重（比如value占用的字节数），LruCache按权重之和限制容量。
+ *              放入时计算一次并记在entry里，之后value被替换时重新计算。实现要轻，不能修改缓存。
+ * @date 2026年10月18日
+ * @param <K>
+ * @param <V>
+ */
+public interface Weigher<K, V> {
+
+	// 返回值不能为负数
+	int weigh(K key, V value);
+}
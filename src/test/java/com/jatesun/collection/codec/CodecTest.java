@@ -0,0 +1,120 @@
+package com.jatesun.collection.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.Random;
+
+import com.jatesun.collection.map.MyHashTable;
+
+/**
+ *
+ * @author jatesun
+ * @description BlockCompressor和BinaryInput的检查：压缩结果遵守lz4块格式的结尾规则并且能解压回原数据；
+ *              readString、MyHashTable.readFrom遇到损坏的长度时抛StreamCorruptedException或EOFException，
+ *              不会抛数组越界，也不会按损坏的长度分配巨大的数组。
+ *              没有引入测试框架，直接运行main，失败时抛AssertionError。
+ * @date 2026年10月18日
+ */
+public class CodecTest {
+
+	private static final int LAST_LITERALS = 5;
+
+	private static final int MFLIMIT = 12;
+
+	public static void main(String[] args) throws IOException {
+		blocksFollowLz4EndRules();
+		corruptStringLengthIsRejected();
+		corruptTableSizeIsRejected();
+		System.out.println("CodecTest ok");
+	}
+
+	static void blocksFollowLz4EndRules() {
+		Random r = new Random(5);
+		BlockCompressor compressor = new BlockCompressor();
+		for (int len : new int[] { 0, 1, 5, 12, 13, 16, 17, 20, 64, 1000, BinaryOutput.BLOCK_SIZE }) {
+			for (int kind = 0; kind < 3; kind++) {
+				byte[] src = new byte[len];
+				for (int i = 0; i < len; i++)// 0：全部相同，1：短周期重复，2：随机中夹着重复
+					src[i] = (byte) (kind == 0 ? 'a' : kind == 1 ? i % 7 : r.nextInt(4) == 0 ? r.nextInt() : i % 13);
+				byte[] dst = new byte[BlockCompressor.maxCompressedLength(len)];
+				int n = compressor.compress(src, len, dst, 0);
+				checkEndRules(dst, n, len);
+				byte[] back = new byte[len];
+				BlockCompressor.decompress(dst, n, back, 0, len);
+				check(Arrays.equals(src, back), "round trip, len " + len + ", kind " + kind);
+			}
+		}
+	}
+
+	// 逐个序列解析：每个匹配都在块尾之前至少MFLIMIT个字节开始，最后一个序列的字面量至少覆盖最后LAST_LITERALS个字节
+	static void checkEndRules(byte[] block, int blockLen, int rawLen) {
+		int sp = 0, dp = 0, matchEnd = 0;
+		for (;;) {
+			int token = block[sp++] & 0xff;
+			int litLen = token >>> 4;
+			if (litLen == 15)
+				for (int b = 255; b == 255; litLen += b)
+					b = block[sp++] & 0xff;
+			sp += litLen;
+			dp += litLen;
+			if (sp >= blockLen)
+				break;
+			check(dp <= rawLen - MFLIMIT, "match starts at " + dp + " in a block of " + rawLen);
+			sp += 2;
+			int matchLen = token & 15;
+			if (matchLen == 15)
+				for (int b = 255; b == 255; matchLen += b)
+					b = block[sp++] & 0xff;
+			matchEnd = dp += matchLen + 4;
+		}
+		check(dp == rawLen, "decoded length " + dp + ", expected " + rawLen);
+		check(sp == blockLen, "trailing bytes in the block");
+		check(rawLen - matchEnd >= Math.min(rawLen, LAST_LITERALS), "last literals too short");
+	}
+
+	// 不压缩格式的流：格式标记后面直接是数据
+	static BinaryInput raw(int... bytes) {
+		byte[] data = new byte[bytes.length + 1];
+		data[0] = BinaryOutput.RAW;
+		for (int i = 0; i < bytes.length; i++)
+			data[i + 1] = (byte) bytes[i];
+		return new BinaryInput(Channels.newChannel(new ByteArrayInputStream(data)));
+	}
+
+	static void corruptStringLengthIsRejected() throws IOException {
+		check(raw(3, 'a', 'b', 'c').readString().equals("abc"), "plain string");
+		check(raw(4, 0xF0, 0x9F, 0x98, 0x80).readString().equals("\uD83D\uDE00"), "surrogate pair");
+		expect(StreamCorruptedException.class, raw(0xFF, 0xFF, 0xFF, 0xFF, 0x0F, 'a'));// 长度-1
+		expect(StreamCorruptedException.class, raw(1, 0xF0, 0x9F, 0x98, 0x80));// 4字节的字符超出长度
+		expect(StreamCorruptedException.class, raw(2, 0xE2, 0x82, 0xAC));// 3字节的字符超出长度
+		expect(StreamCorruptedException.class, raw(1, 0xFF));// 不合法的首字节
+		expect(EOFException.class, raw(0xFF, 0xFF, 0xFF, 0xFF, 0x07, 'a'));// 长度Integer.MAX_VALUE，数据提前结束
+	}
+
+	static void expect(Class<? extends IOException> type, BinaryInput in) {
+		try {
+			in.readString();
+		} catch (IOException e) {
+			check(type.isInstance(e), "expected " + type.getSimpleName() + ", got " + e);
+			return;
+		}
+		throw new AssertionError("expected " + type.getSimpleName());
+	}
+
+	static void corruptTableSizeIsRejected() throws IOException {
+		try {
+			MyHashTable.readFrom(raw(0xFF, 0xFF, 0xFF, 0xFF, 0x0F, 0x3F, 0x40, 0, 0), Codecs.STRING, Codecs.STRING);
+			throw new AssertionError("negative size accepted");
+		} catch (StreamCorruptedException expected) {
+		}
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition)
+			throw new AssertionError(message);
+	}
+}
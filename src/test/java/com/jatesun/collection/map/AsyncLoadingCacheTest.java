@@ -0,0 +1,194 @@
+package com.jatesun.collection.map;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ *
+ * @author jatesun
+ * @description AsyncLoadingCache的检查：同一个key的并发未命中合并成一次加载，不同key的未命中合并成一次loadAll，
+ *              加载失败不留在缓存里，等待加载时invalidate之后不会被放回缓存。
+ *              后端是内存里的map，executor只把任务排队，由测试决定什么时候执行，结果是确定的。
+ *              没有引入测试框架，直接运行main，失败时抛AssertionError。
+ * @date 2026年10月18日
+ */
+public class AsyncLoadingCacheTest {
+
+	public static void main(String[] args) {
+		sameKeyMissesAreCoalesced();
+		distinctKeyMissesAreBatched();
+		getAllLoadsMissesAsOneBatch();
+		failedLoadIsNotCached();
+		invalidateDuringPendingLoad();
+		invalidateAllDuringPendingLoad();
+		System.out.println("AsyncLoadingCacheTest ok");
+	}
+
+	// 内存里的后端，记录load和loadAll的调用
+	static final class Store implements CacheLoader<String, String> {
+		final Map<String, String> values = new MyHashMap<String, String>();
+		int loadCalls, loadAllCalls;
+		Set<String> lastBatch;
+		boolean failing;
+
+		public String load(String key) throws Exception {
+			loadCalls++;
+			if (failing)
+				throw new Exception("store down");
+			return values.get(key);
+		}
+
+		public Map<String, String> loadAll(Set<? extends String> keys) throws Exception {
+			loadAllCalls++;
+			lastBatch = new HashSet<String>(keys);// 拿到的是只读视图，复制一份留着检查
+			if (failing)
+				throw new Exception("store down");
+			Map<String, String> result = new MyHashMap<String, String>();
+			for (String key : keys)
+				if (values.containsKey(key))
+					result.put(key, values.get(key));
+			return result;
+		}
+	}
+
+	// 任务先排队，runAll时在当前线程执行
+	static final class QueueExecutor implements Executor {
+		final ArrayDeque<Runnable> tasks = new ArrayDeque<Runnable>();
+
+		public void execute(Runnable task) {
+			tasks.add(task);
+		}
+
+		void runAll() {
+			for (Runnable task; (task = tasks.poll()) != null;)
+				task.run();
+		}
+	}
+
+	static Store store(String... keys) {
+		Store store = new Store();
+		for (String key : keys)
+			store.values.put(key, "v" + key);
+		return store;
+	}
+
+	static void sameKeyMissesAreCoalesced() {
+		Store store = store("a");
+		QueueExecutor executor = new QueueExecutor();
+		AsyncLoadingCache<String, String> cache = new AsyncLoadingCache<String, String>(100, store, executor);
+		CompletableFuture<String> first = cache.get("a");
+		for (int i = 0; i < 9; i++)
+			check(cache.get("a") == first, "waiters must share the pending future");
+		check(!first.isDone(), "loaded before the executor ran");
+		executor.runAll();
+		check("va".equals(first.join()), "value " + first.join());
+		check(store.loadCalls + store.loadAllCalls == 1, "loader calls " + (store.loadCalls + store.loadAllCalls));
+		check(cache.missCount() == 1 && cache.hitCount() == 9, "stats " + cache.missCount() + "/" + cache.hitCount());
+		check("va".equals(cache.getIfPresent("a")), "not cached");
+	}
+
+	static void distinctKeyMissesAreBatched() {
+		Store store = store("a", "b", "c");
+		QueueExecutor executor = new QueueExecutor();
+		AsyncLoadingCache<String, String> cache = new AsyncLoadingCache<String, String>(100, store, executor);
+		CompletableFuture<String> a = cache.get("a"), b = cache.get("b"), c = cache.get("c"), d = cache.get("d");
+		check(executor.tasks.size() == 1, "one dispatch task expected, got " + executor.tasks.size());
+		executor.runAll();
+		check(store.loadAllCalls == 1 && store.loadCalls == 0, "calls " + store.loadAllCalls + "/" + store.loadCalls);
+		check(store.lastBatch.equals(new HashSet<String>(Arrays.asList("a", "b", "c", "d"))),
+				"batch " + store.lastBatch);
+		check("va".equals(a.join()) && "vb".equals(b.join()) && "vc".equals(c.join()), "values");
+		check(d.join() == null, "missing key must complete with null");
+		check(cache.size() == 3, "missing key must not stay cached, size " + cache.size());
+		check(cache.loadCount() == 4 && cache.loaderCallCount() == 1, "load stats");
+	}
+
+	static void getAllLoadsMissesAsOneBatch() {
+		Store store = store("a", "b", "c");
+		QueueExecutor executor = new QueueExecutor();
+		AsyncLoadingCache<String, String> cache = new AsyncLoadingCache<String, String>(100, store, executor);
+		CompletableFuture<String> pending = cache.get("a");// 已经在等待加载的key不再进getAll的批
+		CompletableFuture<Map<String, String>> all = cache.getAll(Arrays.asList("a", "b", "c", "x"));
+		executor.runAll();
+		check(store.loadAllCalls == 1 && store.loadCalls == 1, "calls " + store.loadAllCalls + "/" + store.loadCalls);
+		check(store.lastBatch.equals(new HashSet<String>(Arrays.asList("b", "c", "x"))), "batch " + store.lastBatch);
+		Map<String, String> result = all.join();
+		check(result.size() == 3 && "va".equals(result.get("a")) && "vc".equals(result.get("c")), "result " + result);
+		check(pending.join().equals("va"), "pending");
+		cache.getAll(Arrays.asList("a", "b", "c")).join();
+		check(store.loadAllCalls == 1 && executor.tasks.isEmpty(), "all hits must not load");
+	}
+
+	static void failedLoadIsNotCached() {
+		Store store = store("a");
+		store.failing = true;
+		QueueExecutor executor = new QueueExecutor();
+		AsyncLoadingCache<String, String> cache = new AsyncLoadingCache<String, String>(100, store, executor);
+		CompletableFuture<String> failed = cache.get("a");
+		executor.runAll();
+		check(failed.isCompletedExceptionally(), "future must fail");
+		try {
+			failed.join();
+			throw new AssertionError("join must throw");
+		} catch (CompletionException expected) {
+		}
+		check(cache.size() == 0 && cache.loadFailureCount() == 1, "failure stats");
+		store.failing = false;
+		CompletableFuture<String> retry = cache.get("a");
+		check(retry != failed, "failed future reused");
+		executor.runAll();
+		check("va".equals(retry.join()), "retry");
+	}
+
+	// invalidate时key还在等待加载：之后的读取不能再拿到这个slot，等待它的请求仍然要完成
+	static void invalidateDuringPendingLoad() {
+		Store store = store("a");
+		QueueExecutor executor = new QueueExecutor();
+		AsyncLoadingCache<String, String> cache = new AsyncLoadingCache<String, String>(100, store, executor);
+		CompletableFuture<String> before = cache.get("a");
+		cache.invalidate("a");
+		check(cache.size() == 0, "size after invalidate " + cache.size());
+		check(cache.getIfPresent("a") == null, "present after invalidate");
+		store.values.put("a", "va2");
+		CompletableFuture<String> after = cache.get("a");
+		check(after != before, "invalidated slot was put back");
+		check(cache.missCount() == 2, "second get must miss");
+		executor.runAll();
+		check("va2".equals(after.join()), "after " + after.join());
+		check("va2".equals(before.join()), "waiter of the invalidated load " + before.join());
+		check(store.loadCalls + store.loadAllCalls == 1, "loader calls " + (store.loadCalls + store.loadAllCalls));
+		check("va2".equals(cache.getIfPresent("a")), "reloaded value not cached");
+
+		// 没有人再读取时，加载完成后也不放回缓存
+		CompletableFuture<String> orphan = cache.get("b");
+		cache.invalidate("b");
+		store.values.put("b", "vb");
+		executor.runAll();
+		check("vb".equals(orphan.join()), "waiter must still complete");
+		check(cache.getIfPresent("b") == null && cache.size() == 1, "invalidated load was cached");
+	}
+
+	static void invalidateAllDuringPendingLoad() {
+		Store store = store("a", "b");
+		QueueExecutor executor = new QueueExecutor();
+		AsyncLoadingCache<String, String> cache = new AsyncLoadingCache<String, String>(100, store, executor);
+		CompletableFuture<String> a = cache.get("a"), b = cache.get("b");
+		cache.invalidateAll();
+		CompletableFuture<String> a2 = cache.get("a");
+		check(a2 != a, "invalidated slot was put back");
+		executor.runAll();
+		check("va".equals(a.join()) && "vb".equals(b.join()) && "va".equals(a2.join()), "values");
+		check(cache.size() == 1 && cache.getIfPresent("b") == null, "size " + cache.size());
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition)
+			throw new AssertionError(message);
+	}
+}
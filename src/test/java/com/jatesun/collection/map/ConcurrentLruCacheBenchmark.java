@@ -0,0 +1,117 @@
+package com.jatesun.collection.map;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *
+ * @author jatesun
+ * @description ConcurrentLruCache与synchronized包装的MyLinkedHashMap（访问顺序）的吞吐量对比，线程数从1加倍到最大线程数。
+ *              64K个key按Zipf(1.0)分布访问，容量16K，未命中时put，每个点跑DURATION_NANOS，先完整跑一遍预热。
+ *              读缓冲区要在多核上才能体现作用：线程数超过cpu个数时，多出来的线程只是在分时，数字反映的是锁竞争和调度，
+ *              不能说明读操作能不能随核数扩展，运行时会打印cpu个数。
+ *              运行：java com.jatesun.collection.map.ConcurrentLruCacheBenchmark [最大线程数]，默认32。
+ * @date 2026年10月18日
+ */
+public class ConcurrentLruCacheBenchmark {
+
+	private static final int KEYS = 1 << 16;
+
+	private static final int CAPACITY = KEYS / 4;
+
+	private static final long DURATION_NANOS = 400000000L;
+
+	public static void main(String[] args) throws InterruptedException {
+		int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+		int cpus = Runtime.getRuntime().availableProcessors();
+		System.out.println("cpus " + cpus + (cpus < maxThreads ? ", runs with more than " + cpus + " threads do not measure scaling" : ""));
+		int[] trace = zipfTrace(KEYS, 1.0, 1 << 20, new Random(3));
+		Integer[] boxed = new Integer[KEYS];
+		for (int i = 0; i < KEYS; i++)
+			boxed[i] = i;
+		for (int rep = 0; rep < 2; rep++) {// 第一遍只用来预热
+			for (boolean concurrent : new boolean[] { false, true }) {
+				StringBuilder line = new StringBuilder(concurrent ? "ConcurrentLruCache  " : "synchronized MLHM   ");
+				for (int threads = 1; threads <= maxThreads; threads <<= 1) {
+					Map<Integer, Integer> map = concurrent ? new ConcurrentLruCache<Integer, Integer>(CAPACITY) : synchronizedLru(CAPACITY);
+					for (Integer key : boxed)
+						map.put(key, key);
+					line.append(String.format("%3d:%6.2f ", threads, run(map, threads, trace, boxed)));
+				}
+				if (rep == 1)
+					System.out.println(line.append("Mops/s"));
+			}
+		}
+	}
+
+	static Map<Integer, Integer> synchronizedLru(final int capacity) {
+		return Collections.synchronizedMap(new MyLinkedHashMap<Integer, Integer>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<Integer, Integer> eldest) {
+				return size() > capacity;
+			}
+		});
+	}
+
+	// 每个线程从trace的不同位置开始读，未命中时put，返回每秒百万次操作
+	static double run(final Map<Integer, Integer> map, int threads, final int[] trace, final Integer[] boxed)
+			throws InterruptedException {
+		final AtomicLong ops = new AtomicLong();
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			final int offset = t * 7919;
+			workers[t] = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				long end = System.nanoTime() + DURATION_NANOS, count = 0;
+				int j = offset;
+				while (System.nanoTime() < end) {
+					for (int i = 0; i < 256; i++) {
+						Integer key = boxed[trace[(j++) & (trace.length - 1)]];
+						if (map.get(key) == null)
+							map.put(key, key);
+					}
+					count += 256;
+				}
+				ops.addAndGet(count);
+			});
+			workers[t].start();
+		}
+		start.countDown();
+		for (Thread worker : workers)
+			worker.join();
+		return ops.get() / (DURATION_NANOS / 1e9) / 1e6;
+	}
+
+	// 按Zipf(s)分布生成length个0到n-1之间的key，length是2的幂
+	static int[] zipfTrace(int n, double s, int length, Random r) {
+		double[] cdf = new double[n];
+		double sum = 0;
+		for (int i = 0; i < n; i++)
+			cdf[i] = sum += 1 / Math.pow(i + 1, s);
+		for (int i = 0; i < n; i++)
+			cdf[i] /= sum;
+		int[] trace = new int[length];
+		for (int i = 0; i < length; i++) {
+			double u = r.nextDouble();
+			int lo = 0, hi = n - 1;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (cdf[mid] < u)
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+			trace[i] = lo;
+		}
+		return trace;
+	}
+}
@@ -0,0 +1,138 @@
+package com.jatesun.collection.map;
+
+/**
+ *
+ * @author jatesun
+ * @description ConcurrentMyHashMap的compute类方法里函数修改map（递归修改）的检查：修改同一个桶，或者引起扩容把正在计算的桶搬走时，
+ *              抛IllegalStateException("Recursive update")；函数自己做的修改保留，计算的key不放入，之后map仍然一致，扩容能完成。
+ *              没有引入测试框架，直接运行main，失败时抛AssertionError。
+ * @date 2026年10月18日
+ */
+public class ConcurrentMyHashMapTest {
+
+	private static final int FILL = 200;// 函数里放入这么多个key，保证初始容量16的map会扩容
+
+	public static void main(String[] args) {
+		resizeFromEmptyBin();
+		resizeFromChainedBin();
+		sameBinAppend();
+		sameBinRemove();
+		System.out.println("ConcurrentMyHashMapTest ok");
+	}
+
+	// hash可以指定的key，用来把几个key放进同一个桶
+	static final class Key {
+		final int hash, id;
+
+		Key(int hash, int id) {
+			this.hash = hash;
+			this.id = id;
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+
+		public boolean equals(Object o) {
+			return o instanceof Key && ((Key) o).id == id;
+		}
+	}
+
+	// 函数里放入FILL个hash为偶数的key，只落在偶数桶里，不会碰到正在计算的hash为奇数的桶，只是引起扩容
+	static Object fill(ConcurrentMyHashMap<Object, Object> map) {
+		for (int i = 0; i < FILL; i++)
+			map.put(new Key(2 * i, 1000 + i), i);
+		return "computed";
+	}
+
+	// 空桶：占位节点被扩容当作空桶搬走
+	static void resizeFromEmptyBin() {
+		ConcurrentMyHashMap<Object, Object> map = new ConcurrentMyHashMap<Object, Object>();
+		Key key = new Key(15, 0);
+		expectRecursiveUpdate(() -> map.computeIfAbsent(key, k -> fill(map)));
+		checkConsistent(map, FILL);
+		check(!map.containsKey(key), "computed key was added");
+
+		ConcurrentMyHashMap<Object, Object> map2 = new ConcurrentMyHashMap<Object, Object>();
+		expectRecursiveUpdate(() -> map2.compute(key, (k, v) -> fill(map2)));
+		checkConsistent(map2, FILL);
+	}
+
+	// 非空桶：桶被扩容搬到新数组后，不能再挂到旧链表上，也不能修改旧链表上复制过的节点
+	static void resizeFromChainedBin() {
+		ConcurrentMyHashMap<Object, Object> map = new ConcurrentMyHashMap<Object, Object>();
+		Key head = new Key(15, 0);
+		map.put(head, "head");
+		expectRecursiveUpdate(() -> map.computeIfAbsent(new Key(15, 1), k -> fill(map)));
+		checkConsistent(map, FILL + 1);
+		check("head".equals(map.get(head)), "head lost");
+		check(!map.containsKey(new Key(15, 1)), "computed key was added");
+
+		ConcurrentMyHashMap<Object, Object> map2 = new ConcurrentMyHashMap<Object, Object>();
+		map2.put(head, "head");
+		expectRecursiveUpdate(() -> map2.merge(head, "value", (v1, v2) -> fill(map2)));
+		checkConsistent(map2, FILL + 1);
+		check("head".equals(map2.get(head)), "value changed after recursive update");
+	}
+
+	// 同一个桶里递归追加：锁可重入，挡不住，只能在函数返回后发现
+	static void sameBinAppend() {
+		ConcurrentMyHashMap<Object, Object> map = new ConcurrentMyHashMap<Object, Object>();
+		map.put(new Key(1, 0), "head");
+		expectRecursiveUpdate(() -> map.compute(new Key(1, 1), (k, v) -> {
+			map.put(new Key(1, 2), "nested");
+			return "computed";
+		}));
+		checkConsistent(map, 2);
+		check("nested".equals(map.get(new Key(1, 2))) && !map.containsKey(new Key(1, 1)), "bin " + map);
+		// 空桶上递归修改同一个桶
+		expectRecursiveUpdate(() -> map.computeIfAbsent(new Key(2, 3), k -> map.put(new Key(2, 4), "nested")));
+		checkConsistent(map, 2);
+	}
+
+	static void sameBinRemove() {
+		ConcurrentMyHashMap<Object, Object> map = new ConcurrentMyHashMap<Object, Object>();
+		Key head = new Key(1, 0), next = new Key(1, 1);
+		map.put(head, "head");
+		map.put(next, "next");
+		expectRecursiveUpdate(() -> map.computeIfPresent(next, (k, v) -> {
+			map.remove(head);
+			return "changed";
+		}));
+		checkConsistent(map, 1);
+		check("next".equals(map.get(next)), "value changed after recursive update");
+	}
+
+	static void expectRecursiveUpdate(Runnable r) {
+		try {
+			r.run();
+		} catch (IllegalStateException e) {
+			check("Recursive update".equals(e.getMessage()), "message " + e.getMessage());
+			return;
+		}
+		throw new AssertionError("recursive update not detected");
+	}
+
+	// size与遍历到的元素个数一致，每个元素都能get到；之后继续放入能正常扩容
+	static void checkConsistent(ConcurrentMyHashMap<Object, Object> map, int expected) {
+		check(map.size() == expected, "size " + map.size() + ", expected " + expected);
+		int n = 0;
+		for (Object k : map.keySet()) {
+			check(map.get(k) != null, "unreachable key " + k);
+			n++;
+		}
+		check(n == expected, "iterated " + n + ", expected " + expected);
+		for (int i = 0; i < 1000; i++)
+			map.put("extra" + i, i);
+		for (int i = 0; i < 1000; i++)
+			check(Integer.valueOf(i).equals(map.get("extra" + i)), "extra" + i);
+		for (int i = 0; i < 1000; i++)
+			map.remove("extra" + i);
+		check(map.size() == expected, "size after extra " + map.size());
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition)
+			throw new AssertionError(message);
+	}
+}
@@ -0,0 +1,70 @@
+package com.jatesun.collection.map;
+
+import java.util.Random;
+
+/**
+ *
+ * @author jatesun
+ * @description MyHashMap桶指纹（enableFingerprints）的对比：查找的key全部不存在，比较打开和不打开指纹时每次get的耗时。
+ *              随机key和连续key两种分布，装填因子0.75（链很短）和4（链很长）各跑一次。
+ *              没有JMH，每组重复若干轮取最快的一轮，数字只用来比较同一台机器上的两种模式。
+ *              运行：java com.jatesun.collection.map.FingerprintBenchmark [元素个数]，默认200万。
+ * @date 2026年10月18日
+ */
+public class FingerprintBenchmark {
+
+	private static final int ROUNDS = 8;
+
+	private static final int PASSES = 4;// 每轮把所有查找的key过几遍
+
+	private static int sink;// 命中次数，防止查找被优化掉
+
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+		for (boolean random : new boolean[] { true, false }) {
+			for (float loadFactor : new float[] { 0.75f, 4f }) {
+				MyHashMap<Integer, Integer> map = fill(n, loadFactor, random);
+				Integer[] misses = misses(n, random);
+				double plain = measure(map, misses);
+				map.enableFingerprints();
+				double fingerprinted = measure(map, misses);
+				map.disableFingerprints();
+				System.out.printf("%s keys, lf %-4s: %6.1f -> %6.1f ns/miss%n", random ? "random" : "sequential", loadFactor,
+						plain, fingerprinted);
+			}
+		}
+		System.out.println("hits " + sink);// 随机key碰巧命中的次数，应该很少
+	}
+
+	// 随机key用固定的种子，连续key是0到n-1
+	static MyHashMap<Integer, Integer> fill(int n, float loadFactor, boolean random) {
+		MyHashMap<Integer, Integer> map = new MyHashMap<Integer, Integer>(16, loadFactor);
+		Random r = new Random(7);
+		for (int i = 0; i < n; i++)
+			map.put(random ? r.nextInt() : i, i);
+		return map;
+	}
+
+	// 不在map里的key：随机key换一个种子（碰巧相同的极少，算在sink里），连续key取n之后的
+	static Integer[] misses(int n, boolean random) {
+		Integer[] keys = new Integer[1 << 20];
+		Random r = new Random(1);
+		for (int i = 0; i < keys.length; i++)
+			keys[i] = random ? r.nextInt() : n + i;
+		return keys;
+	}
+
+	// 返回最快一轮里每次get的纳秒数
+	static double measure(MyHashMap<Integer, Integer> map, Integer[] keys) {
+		long best = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			for (int pass = 0; pass < PASSES; pass++)
+				for (Integer key : keys)
+					if (map.get(key) != null)
+						sink++;
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return best / ((double) PASSES * keys.length);
+	}
+}
@@ -0,0 +1,82 @@
+package com.jatesun.collection.map;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ *
+ * @author jatesun
+ * @description LruCache的检查：putAll、替换value、removeEldestEntry都要遵守maximumSize/maximumWeight并计入淘汰次数。
+ *              没有引入测试框架，直接运行main，失败时抛AssertionError。
+ * @date 2026年10月18日
+ */
+public class LruCacheTest {
+
+	public static void main(String[] args) {
+		putAllHonorsMaximumSize();
+		putAllHonorsMaximumWeight();
+		heavyReplacementIsEvicted();
+		removeEldestEntryIsHonored();
+		System.out.println("LruCacheTest ok");
+	}
+
+	// 空缓存的putAll不能走批量装入，否则一个元素都不淘汰
+	static void putAllHonorsMaximumSize() {
+		Map<Integer, Integer> source = new LinkedHashMap<Integer, Integer>();
+		for (int i = 0; i < 100; i++)
+			source.put(i, i);
+		LruCache<Integer, Integer> cache = new LruCache<Integer, Integer>(10);
+		cache.putAll(source);
+		check(cache.size() == 10, "size " + cache.size());
+		check(cache.evictionCount() == 90, "evictions " + cache.evictionCount());
+		for (int i = 90; i < 100; i++)
+			check(cache.containsKey(i), "missing " + i);
+		// 非空时同样逐个淘汰
+		cache.putAll(source);
+		check(cache.size() == 10, "size after second putAll " + cache.size());
+	}
+
+	static void putAllHonorsMaximumWeight() {
+		Map<Integer, String> source = new LinkedHashMap<Integer, String>();
+		for (int i = 0; i < 100; i++)
+			source.put(i, "vvvvv");
+		LruCache<Integer, String> cache = new LruCache<Integer, String>(50, (k, v) -> v.length());
+		cache.putAll(source);
+		check(cache.weightedSize() == 50, "weight " + cache.weightedSize());
+		check(cache.size() == 10, "size " + cache.size());
+		check(cache.evictionCount() == 90, "evictions " + cache.evictionCount());
+	}
+
+	// 替换后自己就超过maximumWeight的entry最后被淘汰
+	static void heavyReplacementIsEvicted() {
+		LruCache<String, String> cache = new LruCache<String, String>(10, (k, v) -> v.length());
+		cache.put("a", "aaa");
+		cache.put("b", "bbb");
+		cache.put("a", "aaaaaaaaaaaaaaaaaaaa");
+		check(cache.isEmpty(), "not empty " + cache);
+		check(cache.weightedSize() == 0, "weight " + cache.weightedSize());
+		check(cache.evictionCount() == 2, "evictions " + cache.evictionCount());
+		// 淘汰后链表仍然完整
+		cache.put("c", "cc");
+		check(cache.keySet().iterator().next().equals("c"), "list " + cache);
+	}
+
+	static void removeEldestEntryIsHonored() {
+		LruCache<Integer, Integer> cache = new LruCache<Integer, Integer>(100) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<Integer, Integer> eldest) {
+				return size() > 3;
+			}
+		};
+		for (int i = 0; i < 10; i++)
+			cache.put(i, i);
+		check(cache.size() == 3, "size " + cache.size());
+		check(cache.evictionCount() == 7, "evictions " + cache.evictionCount());
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition)
+			throw new AssertionError(message);
+	}
+}
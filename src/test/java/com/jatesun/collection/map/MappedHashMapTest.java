@@ -0,0 +1,63 @@
+package com.jatesun.collection.map;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ *
+ * @author jatesun
+ * @description MappedHashMap关闭以后，关闭之前创建的迭代器不能再读已经释放的文件映射：next、remove抛IllegalStateException，
+ *              而不是NullPointerException。数据文件放在临时目录，结束时删除。
+ *              没有引入测试框架，直接运行main，失败时抛AssertionError。
+ * @date 2026年10月18日
+ */
+public class MappedHashMapTest {
+
+	public static void main(String[] args) throws IOException {
+		File dir = File.createTempFile("mapped", "");
+		check(dir.delete() && dir.mkdir(), "cannot create " + dir);
+		try {
+			iteratorFailsAfterClose(new File(dir, "a.dat"));
+		} finally {
+			for (File f : dir.listFiles())
+				f.delete();
+			dir.delete();
+		}
+		System.out.println("MappedHashMapTest ok");
+	}
+
+	static void iteratorFailsAfterClose(File file) throws IOException {
+		MappedHashMap<String, String> map = new MappedHashMap<String, String>(file, ByteCodecs.STRING, ByteCodecs.STRING, 16);
+		for (int i = 0; i < 100; i++)
+			map.put("k" + i, "v" + i);
+		Iterator<Map.Entry<String, String>> it = map.entrySet().iterator();
+		it.next();
+		map.close();
+		try {
+			it.next();
+			throw new AssertionError("next after close");
+		} catch (IllegalStateException expected) {
+		}
+		try {
+			it.remove();
+			throw new AssertionError("remove after close");
+		} catch (IllegalStateException expected) {
+		}
+		try {
+			map.entrySet().iterator();
+			throw new AssertionError("iterator after close");
+		} catch (IllegalStateException expected) {
+		}
+		// 重新打开后数据还在
+		map = new MappedHashMap<String, String>(file, ByteCodecs.STRING, ByteCodecs.STRING);
+		check(map.size() == 100 && "v42".equals(map.get("k42")), "reopen " + map.size());
+		map.close();
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition)
+			throw new AssertionError(message);
+	}
+}
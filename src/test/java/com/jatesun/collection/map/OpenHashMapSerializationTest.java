@@ -0,0 +1,93 @@
+package com.jatesun.collection.map;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Map;
+
+/**
+ *
+ * @author jatesun
+ * @description MyOpenHashMap、MySwissHashMap反序列化时检查流里的容量和元素个数：正常的流能还原，
+ *              容量不是2的幂、超过最大容量、不大于元素个数，或者元素个数为负时抛InvalidObjectException。
+ *              坏的流是把正常流里紧挨着写的容量和元素个数两个int改掉得到的。
+ *              没有引入测试框架，直接运行main，失败时抛AssertionError。
+ * @date 2026年10月18日
+ */
+public class OpenHashMapSerializationTest {
+
+	public static void main(String[] args) throws Exception {
+		MyOpenHashMap<String, Integer> open = new MyOpenHashMap<String, Integer>(64);
+		MySwissHashMap<String, Integer> swiss = new MySwissHashMap<String, Integer>(64);
+		for (int i = 0; i < 3; i++) {
+			open.put("k" + i, i);
+			swiss.put("k" + i, i);
+		}
+		checkEquals(roundTrip(open), open);
+		checkEquals(roundTrip(swiss), swiss);
+		int[][] corrupted = { { 48, 3 }, { 0, 3 }, { -64, 3 }, { Integer.MIN_VALUE, 3 }, { 2, 3 }, { 64, 64 }, { 64, 100 },
+				{ 64, -1 } };
+		for (int[] c : corrupted) {
+			rejects(open, 64, c[0], c[1]);
+			rejects(swiss, 128, c[0], c[1]);
+		}
+		System.out.println("OpenHashMapSerializationTest ok");
+	}
+
+	static byte[] serialize(Object o) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(o);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	static Object deserialize(byte[] data) throws IOException, ClassNotFoundException {
+		return new ObjectInputStream(new ByteArrayInputStream(data)).readObject();
+	}
+
+	static Object roundTrip(Object o) throws IOException, ClassNotFoundException {
+		return deserialize(serialize(o));
+	}
+
+	// 把流里的(capacity, 3)改成(newCapacity, newSize)后反序列化，必须抛InvalidObjectException
+	static void rejects(Map<String, Integer> map, int capacity, int newCapacity, int newSize) throws Exception {
+		byte[] data = serialize(map);
+		int at = indexOf(data, ints(capacity, map.size()));
+		check(at >= 0, "capacity and size not found in the stream");
+		System.arraycopy(ints(newCapacity, newSize), 0, data, at, 8);
+		try {
+			deserialize(data);
+		} catch (InvalidObjectException expected) {
+			return;
+		}
+		throw new AssertionError(map.getClass().getSimpleName() + " accepted capacity " + newCapacity + ", size " + newSize);
+	}
+
+	static byte[] ints(int a, int b) {
+		return new byte[] { (byte) (a >>> 24), (byte) (a >>> 16), (byte) (a >>> 8), (byte) a, (byte) (b >>> 24),
+				(byte) (b >>> 16), (byte) (b >>> 8), (byte) b };
+	}
+
+	static int indexOf(byte[] data, byte[] pattern) {
+		outer: for (int i = 0; i + pattern.length <= data.length; i++) {
+			for (int j = 0; j < pattern.length; j++)
+				if (data[i + j] != pattern[j])
+					continue outer;
+			return i;
+		}
+		return -1;
+	}
+
+	private static void checkEquals(Object actual, Map<String, Integer> expected) {
+		check(expected.equals(actual), "round trip " + actual);
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition)
+			throw new AssertionError(message);
+	}
+}
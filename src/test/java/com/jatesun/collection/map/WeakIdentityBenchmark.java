@@ -0,0 +1,132 @@
+package com.jatesun.collection.map;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.WeakHashMap;
+
+/**
+ *
+ * @author jatesun
+ * @description IdentityMyHashMap、WeakMyHashMap与JDK对应类的对比，分两部分：
+ * 		·lookup：100万个Object key，随机查找200万次（全部命中），比较put和get每次的耗时；
+ * 		·gc：200万个key其中90%变成不可达，gc之后第一次get、接下来1000次get和size()清理剩余entry的耗时，
+ * 		  WeakMyHashMap的读操作分批清理，WeakHashMap第一次操作就清理全部。
+ *              没有JMH，lookup每组取5轮里最快的一轮，gc部分重复3次，数字只用来比较同一台机器上的几种map。
+ *              运行：java com.jatesun.collection.map.WeakIdentityBenchmark [lookup|gc]，不带参数两部分都跑。
+ * @date 2026年10月18日
+ */
+public class WeakIdentityBenchmark {
+
+	private static final String[] NAMES = { "MyHashMap", "HashMap", "IdentityHashMap", "IdentityMyHashMap", "WeakHashMap",
+			"WeakMyHashMap", "WeakMyHashMap(identity)" };
+
+	private static int sink;
+
+	public static void main(String[] args) throws InterruptedException {
+		String part = args.length > 0 ? args[0] : "all";
+		if (!part.equals("gc"))
+			lookup();
+		if (!part.equals("lookup"))
+			gc(2000000);
+		System.out.println("hits " + sink);
+	}
+
+	static Map<Object, Object> create(String name) {
+		switch (name) {
+		case "MyHashMap":
+			return new MyHashMap<Object, Object>();
+		case "HashMap":
+			return new HashMap<Object, Object>();
+		case "IdentityHashMap":
+			return new IdentityHashMap<Object, Object>();
+		case "IdentityMyHashMap":
+			return new IdentityMyHashMap<Object, Object>();
+		case "WeakHashMap":
+			return new WeakHashMap<Object, Object>();
+		case "WeakMyHashMap":
+			return new WeakMyHashMap<Object, Object>();
+		default:
+			return new WeakMyHashMap<Object, Object>(16, 0.75f, true);
+		}
+	}
+
+	static void lookup() {
+		int n = 1 << 20;
+		Object[] keys = new Object[n];
+		for (int i = 0; i < n; i++)
+			keys[i] = new Object();
+		Object[] probes = new Object[1 << 21];
+		Random r = new Random(1);
+		for (int i = 0; i < probes.length; i++)
+			probes[i] = keys[r.nextInt(n)];
+		for (int rep = 0; rep < 2; rep++) {// 第一遍只用来预热
+			for (String name : NAMES) {
+				Map<Object, Object> map = create(name);
+				long start = System.nanoTime();
+				for (Object key : keys)
+					map.put(key, key);
+				long put = System.nanoTime() - start;
+				long best = Long.MAX_VALUE;
+				for (int round = 0; round < 5; round++) {
+					start = System.nanoTime();
+					for (Object key : probes)
+						if (map.get(key) != null)
+							sink++;
+					best = Math.min(best, System.nanoTime() - start);
+				}
+				if (rep == 1)
+					System.out.printf("%-24s put %6.1f ns/op  get %6.1f ns/op%n", name, put / (double) n,
+							best / (double) probes.length);
+			}
+		}
+	}
+
+	static void gc(int n) throws InterruptedException {
+		Object probe = new Object();
+		for (int rep = 0; rep < 3; rep++) {
+			WeakMyHashMap<Object, Object> weak = new WeakMyHashMap<Object, Object>(16, 0.75f, true);
+			Object[] kept = fill(weak, n);
+			collect();
+			long t0 = System.nanoTime();
+			weak.get(probe);
+			long t1 = System.nanoTime();
+			for (int i = 0; i < 1000; i++)
+				weak.get(probe);
+			long t2 = System.nanoTime();
+			int size = weak.size();
+			long t3 = System.nanoTime();
+			System.out.printf("WeakMyHashMap: first get %.3f ms, next 1000 gets %.2f ms, size() %.1f ms -> %d (kept %d)%n",
+					(t1 - t0) / 1e6, (t2 - t1) / 1e6, (t3 - t2) / 1e6, size, kept.length);
+			weak = null;
+
+			WeakHashMap<Object, Object> jdk = new WeakHashMap<Object, Object>();
+			kept = fill(jdk, n);
+			collect();
+			t0 = System.nanoTime();
+			jdk.get(probe);
+			t1 = System.nanoTime();
+			System.out.printf("WeakHashMap:   first get %.1f ms -> %d (kept %d)%n", (t1 - t0) / 1e6, jdk.size(), kept.length);
+		}
+	}
+
+	// 每10个key留一个强引用
+	static Object[] fill(Map<Object, Object> map, int n) {
+		Object[] kept = new Object[n / 10];
+		for (int i = 0; i < n; i++) {
+			Object key = new Object();
+			map.put(key, new byte[16]);
+			if (i % 10 == 0)
+				kept[i / 10] = key;
+		}
+		return kept;
+	}
+
+	private static void collect() throws InterruptedException {
+		System.gc();
+		Thread.sleep(200);
+		System.gc();
+		Thread.sleep(200);
+	}
+}
@@ -0,0 +1,82 @@
+package com.jatesun.collection.map;
+
+/**
+ *
+ * @author jatesun
+ * @description WeakMyHashMap的回收检查：key只被map引用时，gc之后entry从桶里摘除，size()随之减小，还有强引用的key和null键保留。
+ *              gc什么时候回收、引用什么时候进队列都不确定，这里反复System.gc()，最多等MAX_ATTEMPTS次，超时算失败。
+ *              没有引入测试框架，直接运行main，失败时抛AssertionError。
+ * @date 2026年10月18日
+ */
+public class WeakMyHashMapTest {
+
+	private static final int MAX_ATTEMPTS = 50;
+
+	private static final int KEYS = 10000;
+
+	public static void main(String[] args) throws InterruptedException {
+		clearedKeysAreExpunged(false);
+		clearedKeysAreExpunged(true);
+		readsExpungeInBatches();
+		System.out.println("WeakMyHashMapTest ok");
+	}
+
+	// 每10个key留一个强引用，其余的只被map引用
+	static Object[] fill(WeakMyHashMap<Object, Object> map) {
+		Object[] kept = new Object[KEYS / 10];
+		for (int i = 0; i < KEYS; i++) {
+			Object key = new Object();
+			map.put(key, new byte[16]);
+			if (i % 10 == 0)
+				kept[i / 10] = key;
+		}
+		map.put(null, "null");
+		return kept;
+	}
+
+	static void clearedKeysAreExpunged(boolean identityKeys) throws InterruptedException {
+		WeakMyHashMap<Object, Object> map = new WeakMyHashMap<Object, Object>(16, 0.75f, identityKeys);
+		Object[] kept = fill(map);
+		int expected = kept.length + 1;
+		check(map.size() == KEYS + 1, "size before gc " + map.size());
+		for (int attempt = 0; attempt < MAX_ATTEMPTS && map.size() > expected; attempt++) {
+			System.gc();
+			Thread.sleep(20);
+		}
+		check(map.size() == expected, "size after gc " + map.size() + ", expected " + expected);
+		check(chained(map) == expected, "entries left in buckets " + chained(map));
+		for (Object key : kept)
+			check(map.containsKey(key), "strongly reachable key was removed");
+		check("null".equals(map.get(null)), "null key was removed");
+	}
+
+	// 只调用get，每次最多清理EXPUNGE_BATCH个，调用次数足够时同样能清理完
+	static void readsExpungeInBatches() throws InterruptedException {
+		WeakMyHashMap<Object, Object> map = new WeakMyHashMap<Object, Object>();
+		Object[] kept = fill(map);
+		int expected = kept.length + 1;
+		Object probe = new Object();
+		for (int attempt = 0; attempt < MAX_ATTEMPTS && map.size > expected; attempt++) {
+			System.gc();
+			Thread.sleep(20);
+			for (int i = 0; i <= KEYS / WeakMyHashMap.EXPUNGE_BATCH; i++)
+				map.get(probe);
+		}
+		check(map.size == expected, "size after reads " + map.size + ", expected " + expected);
+		check(chained(map) == expected, "entries left in buckets " + chained(map));
+	}
+
+	// 桶里实际挂着的entry个数
+	static int chained(WeakMyHashMap<Object, Object> map) {
+		int n = 0;
+		for (WeakMyHashMap.Entry<Object, Object> e : map.table)
+			for (; e != null; e = e.next)
+				n++;
+		return n;
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition)
+			throw new AssertionError(message);
+	}
+}